@@ -23,6 +23,9 @@
 package uk.gov.nationalarchives.pdi.step.atomics;
 
 import com.evolvedbinary.j8fu.Either;
+import com.evolvedbinary.j8fu.function.ConsumerE;
+import com.evolvedbinary.j8fu.function.RunnableE;
+import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.trans.Trans;
@@ -31,6 +34,26 @@ import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import uk.gov.nationalarchives.pdi.step.atomics.jfr.AtomicEvents;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.ContentionProfiler;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.LatencyConfig;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.LatencyExporter;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.MBeans;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepLatencies;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepMetrics;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepMetricsRegistry;
+import uk.gov.nationalarchives.pdi.step.atomics.prometheus.PrometheusExporter;
+import uk.gov.nationalarchives.pdi.step.atomics.watchdog.StepCopy;
+import uk.gov.nationalarchives.pdi.step.atomics.watchdog.Watchdog;
+
+import javax.annotation.Nullable;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static com.evolvedbinary.j8fu.Either.Left;
 import static com.evolvedbinary.j8fu.Either.Right;
@@ -42,14 +65,143 @@ public abstract class AbstractAtomicStep extends BaseStep implements StepInterfa
         CONTINUE,
         ERROR,
         TIMEOUT,
-        THREAD_INTERRUPTED
+        THREAD_INTERRUPTED,
+        STUCK
     }
 
+    /**
+     * Description of the awaited value when waiting for an Atomic Value to be created.
+     */
+    protected static final String AWAITED_CREATION = "(created)";
+
+    // <editor-fold desc="outcomes of waits which did not route to a fixed target">
+    protected static final String WAIT_OUTCOME_ACQUIRED = "ACQUIRED";
+    protected static final String WAIT_OUTCOME_MATCHED = "MATCHED";
+    protected static final String WAIT_OUTCOME_SET = "SET";
+    protected static final String WAIT_OUTCOME_FAILED = "FAILED";  // an exception was thrown
+
+    /**
+     * The time in milliseconds that the step thread waits for a worker
+     * to complete, before checking again for input rows.
+     */
+    private static final long WORKER_POLL_PERIOD = 20;
+    // </editor-fold>
+
     public AbstractAtomicStep(final StepMeta stepMeta, final StepDataInterface stepDataInterface, final int copyNr,
             final TransMeta transMeta, final Trans trans) {
         super(stepMeta, stepDataInterface, copyNr, transMeta, trans);
     }
 
+    @Override
+    public boolean init(final StepMetaInterface smi, final StepDataInterface sdi) {
+        if (!super.init(smi, sdi)) {
+            return false;
+        }
+
+        final AbstractAtomicStepData data = (AbstractAtomicStepData) sdi;
+
+        final LatencyConfig latencyConfig;
+        try {
+            latencyConfig = LatencyConfig.fromSystemProperties();
+        } catch (final IllegalArgumentException e) {
+            logError("Invalid latency configuration: " + e.getMessage(), e);
+            return false;
+        }
+        data.setMetrics(new StepMetrics(latencyConfig.isByNamespace()));
+        if (latencyConfig.isExportEnabled()) {
+            data.setLatencyExporter(new LatencyExporter(latencyConfig, getTransMeta() != null ? getTransMeta().getName() : null, getStepname(), getCopy()));
+        }
+
+        try {
+            PrometheusExporter.startIfConfigured();
+        } catch (final IllegalArgumentException e) {
+            logError("Invalid Prometheus configuration: " + e.getMessage(), e);
+            return false;
+        } catch (final IllegalStateException e) {
+            // metrics are optional, so the step can still run
+            logError(e.getMessage(), e);
+        }
+
+        final Watchdog watchdog;
+        try {
+            watchdog = Watchdog.startIfConfigured();
+        } catch (final IllegalArgumentException e) {
+            logError("Invalid watchdog configuration: " + e.getMessage(), e);
+            return false;
+        }
+        if (watchdog != null) {
+            final StepCopy stepCopy = new StepCopy(getTransMeta() != null ? getTransMeta().getName() : null, getStepname(), getCopy());
+            watchdog.register(stepCopy);
+            data.setWatchdog(watchdog, stepCopy);
+        }
+
+        // the journal and the shared region are optional, so the step can still run without them
+        for (final IllegalStateException e : AtomicStorage.INSTANCE.getStartupFailures()) {
+            logError(e.getMessage(), e);
+        }
+
+        registerMetrics(data);
+        return true;
+    }
+
+    @Override
+    public void dispose(final StepMetaInterface smi, final StepDataInterface sdi) {
+        final AbstractAtomicStepData data = (AbstractAtomicStepData) sdi;
+
+        @Nullable final WaitWorkerPool workerPool = data.getWorkerPool();
+        if (workerPool != null) {
+            workerPool.close();
+            data.setWorkerPool(null);
+        }
+
+        exportLatencies(data, true);
+        logMetrics(data);
+        unregisterMetrics(data);
+
+        final Watchdog watchdog = data.getWatchdog();
+        if (watchdog != null) {
+            watchdog.unregister(data.getStepCopy());
+            data.setWatchdog(null, null);
+        }
+
+        super.dispose(smi, sdi);
+    }
+
+    /**
+     * Registers the metrics of this step copy as a JMX MBean,
+     * and with the {@link StepMetricsRegistry} for exporters.
+     *
+     * Failure to register is logged, but does not prevent the step from running.
+     *
+     * @param data the Step Data instance
+     */
+    private void registerMetrics(final AbstractAtomicStepData data) {
+        final ObjectName metricsName = MBeans.stepMetricsName(getTransMeta() != null ? getTransMeta().getName() : null, getStepname(), getCopy());
+        try {
+            if (MBeans.register(data.getMetrics(), metricsName)) {
+                data.setMetricsName(metricsName);
+                StepMetricsRegistry.register(metricsName, data.getMetrics());
+            } else {
+                logDetailed("Metrics MBean is already registered by another step: {0}", metricsName);
+            }
+        } catch (final IllegalStateException e) {
+            logError("Unable to register metrics MBean: " + e.getMessage(), e);
+        }
+    }
+
+    private void unregisterMetrics(final AbstractAtomicStepData data) {
+        final ObjectName metricsName = data.getMetricsName();
+        if (metricsName != null) {
+            StepMetricsRegistry.unregister(metricsName);
+            try {
+                MBeans.unregister(metricsName);
+            } catch (final IllegalStateException e) {
+                logError("Unable to unregister metrics MBean: " + e.getMessage(), e);
+            }
+            data.setMetricsName(null);
+        }
+    }
+
     /**
      * Get the Atomic ID from the input row.
      *
@@ -58,15 +210,203 @@ public abstract class AbstractAtomicStep extends BaseStep implements StepInterfa
      *
      * @return the id from the row for the AtomicValue
      *
-     * @throws KettleStepException if the Atomic ID is not a String
+     * @throws KettleException if a field of the Atomic ID is not a String or an Integer
      */
     protected String getAtomicId(final AbstractAtomicStepData data, final Object[] row) throws KettleException {
-        final Object atomicIdFieldNameValue = row[data.getAtomicIdFieldIndex()];
-        if (atomicIdFieldNameValue instanceof String) {
-            return (String) atomicIdFieldNameValue;
-        } else {
-            throw new KettleException("Expected field " + data.getAtomicIdFieldName() + " to contain a String, but found "
-                    + atomicIdFieldNameValue.getClass());
+        return data.getAtomicIdReader().read(row);
+    }
+
+    /**
+     * Processes the rows of the same Atomic ID.
+     */
+    @FunctionalInterface
+    protected interface AtomicRowsProcessor {
+
+        /**
+         * Processes the rows of the same Atomic ID.
+         *
+         * @param atomicId the id of the AtomicValue
+         * @param rows the rows, in the order that they were read
+         * @param output receives the writes of the rows, exactly one for each row, in the order of the rows
+         *
+         * @throws KettleException if the rows cannot be processed
+         */
+        void process(String atomicId, List<Object[]> rows, ConsumerE<RunnableE<KettleException>, KettleException> output) throws KettleException;
+    }
+
+    /**
+     * Reads a batch of rows.
+     *
+     * The batch starts with the row that has already been read, and then drains
+     * the rows which are already available from the input row sets, up to
+     * {@link AbstractAtomicStepMeta#getBatchSize()}. This method does not wait
+     * for further rows to arrive.
+     *
+     * @param meta the Step Meta instance
+     * @param row the first row of the batch
+     *
+     * @return the rows, in the order that they were read
+     *
+     * @throws KettleException if reading a row causes an error
+     */
+    protected List<Object[]> readBatch(final AbstractAtomicStepMeta meta, Object[] row) throws KettleException {
+        final List<Object[]> batch = new ArrayList<>(Math.min(meta.getBatchSize(), 1024));
+        while (true) {
+            batch.add(row);
+
+            if (batch.size() >= meta.getBatchSize() || !isInputRowAvailable()) {
+                break;
+            }
+
+            row = getRow();
+            if (row == null) {
+                // no more rows, the next call to processRow will signal that we are DONE
+                break;
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Gets a batch of rows, see {@link #readBatch(AbstractAtomicStepMeta, Object[])}, grouped by their Atomic ID.
+     *
+     * @param meta the Step Meta instance
+     * @param data the Step Data instance
+     * @param row the first row of the batch
+     *
+     * @return the rows grouped by their Atomic ID, in the order that each
+     *     Atomic ID was first read. Within a group, the rows are in the order that they were read.
+     *
+     * @throws KettleException if an Atomic ID is not a String, or reading a row causes an error
+     */
+    protected Map<String, List<Object[]>> getBatch(final AbstractAtomicStepMeta meta, final AbstractAtomicStepData data, final Object[] row) throws KettleException {
+        final Map<String, List<Object[]>> batch = new LinkedHashMap<>();
+        for (final Object[] batchRow : readBatch(meta, row)) {
+            batch.computeIfAbsent(getAtomicId(data, batchRow), k -> new ArrayList<>()).add(batchRow);
+        }
+        return batch;
+    }
+
+    /**
+     * Processes a batch of rows on the step thread, a group of the rows of
+     * the same Atomic ID at a time, but outputs the rows in the order that they were read.
+     *
+     * The writes of the rows are held back until the whole batch has been processed,
+     * and are then run in the order that the rows were read.
+     *
+     * @param data the Step Data instance
+     * @param rows the rows of the batch, see {@link #readBatch(AbstractAtomicStepMeta, Object[])}
+     * @param processor processes the rows of each Atomic ID
+     *
+     * @throws KettleException if an Atomic ID is not a String, or the rows cannot be processed or written
+     */
+    @SuppressWarnings("unchecked")
+    protected void processBatch(final AbstractAtomicStepData data, final List<Object[]> rows, final AtomicRowsProcessor processor) throws KettleException {
+        // the position in the batch of each row of each Atomic ID
+        final Map<String, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            positions.computeIfAbsent(getAtomicId(data, rows.get(i)), k -> new ArrayList<>()).add(i);
+        }
+
+        final RunnableE<KettleException>[] puts = new RunnableE[rows.size()];
+        for (final Map.Entry<String, List<Integer>> group : positions.entrySet()) {
+            final List<Integer> groupPositions = group.getValue();
+            final List<Object[]> groupRows = new ArrayList<>(groupPositions.size());
+            for (final int position : groupPositions) {
+                groupRows.add(rows.get(position));
+            }
+
+            // the n'th write of the group is of the n'th row of the group
+            final int[] written = { 0 };
+            processor.process(group.getKey(), groupRows, put -> puts[groupPositions.get(written[0]++)] = put);
+        }
+
+        for (final RunnableE<KettleException> put : puts) {
+            if (put != null) {
+                put.run();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a row can be read from the input row sets without waiting.
+     *
+     * @return true if at least one of the input row sets has a row
+     */
+    protected boolean isInputRowAvailable() {
+        for (final RowSet rowSet : getInputRowSets()) {
+            if (rowSet.size() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts the pool of workers which wait on behalf of this step copy,
+     * see {@link AbstractAtomicStepMeta#getWorkers()}.
+     *
+     * @param meta the Step Meta instance
+     * @param data the Step Data instance
+     */
+    protected void startWorkerPool(final AbstractAtomicStepMeta meta, final AbstractAtomicStepData data) {
+        data.setWorkerPool(new WaitWorkerPool(meta.getWorkers(), meta.isOrderedOutput(),
+                WaitThreads.newExecutor(getStepname() + "." + getCopy() + "-wait-worker")));
+        logDetailed("Waiting on up to {0} rows at once on {1} worker threads",
+                Integer.toString(meta.getWorkers() * WaitWorkerPool.MAX_IN_FLIGHT_PER_WORKER), WaitThreads.isVirtual() ? "virtual" : "platform");
+    }
+
+    /**
+     * Submits the processing of rows which have the same Atomic ID to the workers.
+     *
+     * @param workerPool the pool of workers
+     * @param atomicId the id of the AtomicValue
+     * @param task processes the rows
+     *
+     * @throws KettleException if the rows of a completed wait cannot be written whilst waiting for space
+     */
+    protected void submitAtomicRows(final WaitWorkerPool workerPool, final String atomicId, final WaitWorkerPool.Task task) throws KettleException {
+        try {
+            workerPool.submit(atomicId, task);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();  // restore interrupted flag
+            throw new KettleException("Interrupted whilst submitting rows to the workers", e);
+        }
+    }
+
+    /**
+     * Outputs the rows of the workers as their waits complete.
+     *
+     * @param workerPool the pool of workers
+     * @param untilIdle true to wait until all of the waits have completed,
+     *     false to return as soon as an input row is available
+     *
+     * @throws KettleException if the rows cannot be written, or a worker failed
+     */
+    protected void emitCompleted(final WaitWorkerPool workerPool, final boolean untilIdle) throws KettleException {
+        try {
+            while (!workerPool.isIdle() && !isStopped() && (untilIdle || !isInputRowAvailable())) {
+                workerPool.emitCompleted(WORKER_POLL_PERIOD);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();  // restore interrupted flag
+            throw new KettleException("Interrupted whilst waiting for the workers", e);
+        }
+    }
+
+    /**
+     * Outputs the rows of any waits of the workers which have already completed.
+     *
+     * @param workerPool the pool of workers
+     *
+     * @throws KettleException if the rows cannot be written, or a worker failed
+     */
+    protected void emitAlreadyCompleted(final WaitWorkerPool workerPool) throws KettleException {
+        try {
+            workerPool.emitCompleted(0);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();  // restore interrupted flag
+            throw new KettleException("Interrupted whilst emitting the rows of the workers", e);
         }
     }
 
@@ -84,19 +424,50 @@ public abstract class AbstractAtomicStep extends BaseStep implements StepInterfa
      *    or the AtomicValue if it was retrieved (or initialised).
      */
     protected Either<GetAtomicRouteTarget, AtomicValue> getAtomic(final AbstractAtomicStepMeta meta, final AbstractAtomicStepData data, final String atomicId) {
+        if (ActionIfNoAtomic.Wait != meta.getActionIfNoAtomic()) {
+            return getAtomicOrRoute(meta, data, atomicId, Watchdog.Waiter.NONE, null);
+        }
+
+        // record the time-to-acquire when waiting for the atomic to be created
+        final AtomicEvents.Wait wait = AtomicEvents.get().beginWait(getStepname(), getCopy(), StepLatencies.Latency.ACQUIRE.getLabel(), atomicId, AWAITED_CREATION);
+        final Watchdog.Waiter waiter = data.newWaiter(atomicId, AWAITED_CREATION);
+        final WaitPause pause = data.newWaitPause(meta.getWaitStrategy(), atomicId, meta.getWaitAtomicCheckPeriod(), meta.getWaitAtomicTimeout());
+        final long start = System.nanoTime();
+        Either<GetAtomicRouteTarget, AtomicValue> routeOrAtomic = null;
+        try {
+            routeOrAtomic = getAtomicOrRoute(meta, data, atomicId, waiter, pause);
+            data.getMetrics().recordLatency(StepLatencies.Latency.ACQUIRE, atomicId, System.nanoTime() - start);
+        } finally {
+            // NOTE: always ended, otherwise the waiter and the pause's listener would outlive the wait
+            pause.end();
+            waiter.end();
+            wait.end(routeOrAtomic == null ? WAIT_OUTCOME_FAILED : routeOrAtomic.isLeft() ? routeOrAtomic.left().get().name() : WAIT_OUTCOME_ACQUIRED);
+        }
+        return routeOrAtomic;
+    }
+
+    /**
+     * @param pause the pause between checks, only used (and must not be null) when
+     *     {@link AbstractAtomicStepMeta#getActionIfNoAtomic()} is {@link ActionIfNoAtomic#Wait}.
+     */
+    private Either<GetAtomicRouteTarget, AtomicValue> getAtomicOrRoute(final AbstractAtomicStepMeta meta, final AbstractAtomicStepData data, final String atomicId, final Watchdog.Waiter waiter, @Nullable final WaitPause pause) {
         final ActionIfNoAtomic actionIfNoAtomic = meta.getActionIfNoAtomic();
         final AtomicType atomicType = meta.getAtomicType();
-        final long waitAtomicCheckPeriod = meta.getWaitAtomicCheckPeriod();
-        final long waitAtomicTimeout = meta.getWaitAtomicTimeout();
+
+        final StepMetrics metrics = data.getMetrics();
 
         long waitedForAtomic = 0;
+        long slowWaitThreshold = meta.isSlowWaitLogEnabled() ? meta.getSlowWaitThreshold() : Long.MAX_VALUE;
 
         while (true) {
             final AtomicValue atomicValue;
             if (ActionIfNoAtomic.Initialise == actionIfNoAtomic) {
                 atomicValue = data.getOrCreateAtomic(atomicId, atomicType, meta.getInitialiseAtomicValue());
+                metrics.recordInitialisation();
+                data.recordCreation(atomicId);
             } else {
                 atomicValue = data.getAtomic(atomicId, atomicType);
+                metrics.recordLookup(atomicValue != null);
             }
 
             if (atomicValue != null) {
@@ -115,24 +486,83 @@ public abstract class AbstractAtomicStep extends BaseStep implements StepInterfa
                 return Left(GetAtomicRouteTarget.ERROR);
 
             } else if (ActionIfNoAtomic.Wait == actionIfNoAtomic) {
-                final long sleptFor = sleepWithTimeout(waitAtomicCheckPeriod, waitedForAtomic, waitAtomicTimeout);
-                if (sleptFor > 0) {
-                    // slept OK
-                    waitedForAtomic += sleptFor;
+                if (pause.isWakeUp()) {
+                    // woke up, but the atomic value has still not been created
+                    data.recordContention(atomicId, ContentionProfiler.Kind.WAKE_UP);
+                }
+                if (isStuckWaitFailOver(data, waiter)) {
+                    return Left(GetAtomicRouteTarget.STUCK);
+                }
+                waiter.waiting();
+                final long waitStart = System.nanoTime();
+                final WaitPause.Outcome paused = pause.pause();
+                metrics.recordWait(System.nanoTime() - waitStart);
+                if (paused == WaitPause.Outcome.PAUSED) {
+                    // paused OK
+                    waitedForAtomic = pause.getWaited();
+                    if (waitedForAtomic >= slowWaitThreshold) {
+                        logSlowWait(data, StepLatencies.Latency.ACQUIRE, atomicId, AWAITED_CREATION, null, waitedForAtomic);
+                        slowWaitThreshold = Long.MAX_VALUE;  // only log once per wait
+                    }
                     // loop to try and get the atomic again
 
-                } else if (sleptFor == 0) {
-                    // TIMEOUT reached after sleeping
+                } else if (paused == WaitPause.Outcome.TIMEOUT) {
+                    // TIMEOUT reached after pausing
+                    metrics.recordTimeout();
+                    AtomicEvents.get().timeout(getStepname(), getCopy(), StepLatencies.Latency.ACQUIRE.getLabel(), atomicId, pause.getWaited(), StepMetrics.TARGET_ERROR);
                     return Left(GetAtomicRouteTarget.TIMEOUT);
 
                 } else {
-                    // Thread INTERRUPTED whilst sleeping
+                    // Thread INTERRUPTED whilst pausing
+                    metrics.recordInterrupt();
                     return Left(GetAtomicRouteTarget.THREAD_INTERRUPTED);
                 }
             }
         }  // end while
     }
 
+    /**
+     * Send row to the output target of the step for a route
+     * from {@link #getAtomic(AbstractAtomicStepMeta, AbstractAtomicStepData, String)}.
+     *
+     * @param meta the Step Meta instance
+     * @param data the Step Data instance
+     * @param atomicId the id of the AtomicValue
+     * @param row the row
+     * @param route the route
+     * @param logPrefix the prefix of the messages for the step, e.g. "Await", or "CAS"
+     * @param messageIfNoContinueTarget the exception message if there is no continue target
+     *
+     * @throws KettleException if the continue target cannot be found, or writing the row causes an error
+     */
+    protected void putRowToGetAtomicRoute(final AbstractAtomicStepMeta meta, final AbstractAtomicStepData data, final String atomicId, final Object[] row, final GetAtomicRouteTarget route, final String logPrefix, final String messageIfNoContinueTarget) throws KettleException {
+        switch (route) {
+            case CONTINUE:
+                putRowToContinueTarget(meta, data, atomicId, row, messageIfNoContinueTarget);
+                return;
+
+            case ERROR:
+                putRowToErrorTarget(data, row, ErrorCode.NO_SUCH_ATOMIC, logPrefix + " No Atomic object for id: " + atomicId + ", and ActionIfNoAtomic == Error");
+                return;
+
+            case TIMEOUT:
+                // NOTE: this is intentionally sent to the error target at this stage, the timeout target is reserved for the await value part of the step
+                putRowToErrorTarget(data, row, ErrorCode.NO_SUCH_ATOMIC_WAIT_TIMEOUT, logPrefix + " Timeout (" + meta.getWaitAtomicTimeout() + "ms) exceeded whilst waiting for Atomic object creation for id: " + atomicId + ", and ActionIfNoAtomic == Wait");
+                return;
+
+            case THREAD_INTERRUPTED:
+                putRowToErrorTarget(data, row, ErrorCode.NO_SUCH_ATOMIC_WAIT_INTERRUPTED, logPrefix + " Thread interrupted whilst waiting for Atomic object creation for id: " + atomicId + ", and ActionIfNoAtomic == Wait");
+                return;
+
+            case STUCK:
+                putRowToErrorTarget(data, row, ErrorCode.STUCK_WAIT, logPrefix + " Watchdog failed over stuck wait for Atomic object creation for id: " + atomicId + ", and ActionIfNoAtomic == Wait");
+                return;
+
+            default:
+                throw new IllegalArgumentException("Unknown GetAtomicRouteTarget: " + route.name());
+        }
+    }
+
     /**
      * Send row to the 'Continue' output target of the step.
      *
@@ -153,6 +583,7 @@ public abstract class AbstractAtomicStep extends BaseStep implements StepInterfa
 
             // send row to the Continue output of the step
             this.putRowTo(data.getOutputRowMeta(), row, data.getContinueOutputRowSet());
+            data.getMetrics().recordRow(StepMetrics.TARGET_CONTINUE);
 
             this.logDebug("No Atomic, CONTINUE: <{0}>", atomicId);
             logLineNumber();
@@ -180,6 +611,7 @@ public abstract class AbstractAtomicStep extends BaseStep implements StepInterfa
 
             // send row to the timeout output of the step
             this.putRowTo(data.getOutputRowMeta(), row, data.getTimeoutOutputRowSet());
+            data.getMetrics().recordRow(StepMetrics.TARGET_TIMEOUT);
 
             logLineNumber();
 
@@ -202,6 +634,7 @@ public abstract class AbstractAtomicStep extends BaseStep implements StepInterfa
     protected void putRowToErrorTarget(final AbstractAtomicStepData data, final Object[] row, final ErrorCode errorCode, final String errorMessage) throws KettleStepException {
         // send row to the error output of the step
         this.putError(data.getOutputRowMeta(), row, 1L, errorMessage, data.getAtomicIdFieldName(), errorCode.getCode());
+        data.getMetrics().recordRow(StepMetrics.TARGET_ERROR);
         logLineNumber();
     }
 
@@ -215,37 +648,111 @@ public abstract class AbstractAtomicStep extends BaseStep implements StepInterfa
      */
     protected void putRowToDefaultTarget(final AbstractAtomicStepData data, final Object[] row) throws KettleStepException {
         this.putRow(data.getOutputRowMeta(), row);
+        data.getMetrics().recordRow(StepMetrics.TARGET_DEFAULT);
         logLineNumber();
     }
 
     /**
-     * Sleeps and then tests if a timeout has been exceeded.
+     * Logs the number of lines read, and at detailed level the metrics
+     * of the step copy, as feedback whilst the step is running.
+     */
+    protected abstract void logLineNumber();
+
+    /**
+     * Logs the metrics of the step copy at detailed level.
+     *
+     * @param data the Step Data instance
+     */
+    protected void logMetrics(final AbstractAtomicStepData data) {
+        if (log.isDetailed()) {
+            logDetailed("Atomic metrics: {0}", data.getMetrics());
+        }
+    }
+
+    /**
+     * Exports the latencies of the step copy, if periodic export is enabled,
+     * see {@link LatencyConfig#PROP_LATENCY_EXPORT_INTERVAL}.
      *
-     * @param period the period to sleep for
-     * @param timeAlreadyWaited the amount of time previously waited for, e.g. if this function is called more than
-     *                          once in a loop then the result of this function should be added to
-     *                          {@code timeAlreadyWaited} and fed back into this parameter on the next call to it.
-     *                          Can be set to 0 to indicate no previous wait.
-     * @param timeout the timeout to check for, the test is {@code timeout != -1 && (timeAlreadyWaited + period) > timeout}.
-     *                Can be set to -1 to disable any timeout check, in which case 0 will never be returned from this function.
+     * Failure to export is logged, but does not prevent the step from running.
      *
-     * @return -1 indicates that the (sleeping) Thread was interrupted,
-     *          0 indicates that the timeout was exceeded,
-     *          a non-zero value is the {@code period} waited
+     * @param data the Step Data instance
+     * @param force true to export even if the export interval has not yet elapsed
      */
-    protected long sleepWithTimeout(final long period, long timeAlreadyWaited, final long timeout) {
+    protected void exportLatencies(final AbstractAtomicStepData data, final boolean force) {
+        final LatencyExporter latencyExporter = data.getLatencyExporter();
+        if (latencyExporter == null || !(force || latencyExporter.isDue())) {
+            return;
+        }
+
         try {
-            Thread.sleep(period);
-            timeAlreadyWaited += period;
-            if (timeout != -1 && timeAlreadyWaited > timeout) {
-                return 0;
+            final String summary = latencyExporter.export(data.getMetrics().getLatencies());
+            if (log.isBasic() && !summary.isEmpty()) {
+                logBasic("Atomic latencies: {0}", summary);
             }
-        } catch (final InterruptedException e) {
-            Thread.currentThread().interrupt(); // restore interrupted flag
-            return -1;
+        } catch (final IOException e) {
+            logError("Unable to export latencies: " + e.getMessage(), e);
         }
-        return period;
     }
 
-    protected abstract void logLineNumber();
+    /**
+     * Logs a wait which has exceeded the slow wait threshold of the step,
+     * unless this step copy has recently logged too many slow waits, see {@link SlowWaitLog}.
+     *
+     * @param data the Step Data instance
+     * @param wait the kind of wait
+     * @param atomicId the id of the AtomicValue
+     * @param awaitedValues a description of the awaited values
+     * @param atomicValue the current AtomicValue, or null if there is no such AtomicValue
+     * @param waited the time waited so far in milliseconds
+     */
+    protected void logSlowWait(final AbstractAtomicStepData data, final StepLatencies.Latency wait, final String atomicId,
+            final String awaitedValues, @Nullable final AtomicValue atomicValue, final long waited) {
+        final long suppressed = data.getSlowWaitLog().tryAcquire(System.nanoTime());
+        if (suppressed < 0) {
+            return;
+        }
+
+        logBasic("Slow wait: step={0}, copy={1}, wait={2}, atomicId={3}, awaited={4}, current={5}, elapsedMs={6}, row={7}, thread={8}, suppressed={9}",
+                getStepname(), Integer.toString(getCopy()), wait.getLabel(), atomicId, awaitedValues, valueOf(atomicValue),
+                Long.toString(waited), Long.toString(getLinesRead()), Thread.currentThread().getName(), Long.toString(suppressed));
+    }
+
+    /**
+     * Checks whether the {@link Watchdog} has found the wait of this step copy to be stuck.
+     * A finding is logged, and counted in the metrics, once per wait.
+     *
+     * @param data the Step Data instance
+     * @param waiter the waiter for the wait
+     *
+     * @return true if the wait should fail over to the error target
+     */
+    protected boolean isStuckWaitFailOver(final AbstractAtomicStepData data, final Watchdog.Waiter waiter) {
+        final Watchdog.Finding finding = waiter.getFinding();
+        if (finding == null) {
+            return false;
+        }
+
+        if (waiter.markReported()) {
+            data.getMetrics().recordStuckWait();
+            logError("Stuck wait: step={0}, copy={1}, {2}", getStepname(), Integer.toString(getCopy()), finding.toString());
+        }
+        return waiter.isFailOver();
+    }
+
+    private static String valueOf(@Nullable final AtomicValue atomicValue) {
+        if (atomicValue == null) {
+            return "null";
+        }
+
+        switch (atomicValue.getType()) {
+            case Boolean:
+                return Boolean.toString(((AtomicBooleanValue) atomicValue).get());
+
+            case Integer:
+                return Integer.toString(((AtomicIntegerValue) atomicValue).get());
+
+            default:
+                throw new IllegalArgumentException("Unknown AtomicType: " + atomicValue.getType().name());
+        }
+    }
 }
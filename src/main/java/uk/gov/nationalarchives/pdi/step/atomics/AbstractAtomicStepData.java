@@ -26,17 +26,32 @@ import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.ContentionProfiler;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.LatencyExporter;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepMetrics;
+import uk.gov.nationalarchives.pdi.step.atomics.watchdog.StepCopy;
+import uk.gov.nationalarchives.pdi.step.atomics.watchdog.Watchdog;
 
 import javax.annotation.Nullable;
+import javax.management.ObjectName;
 
 public abstract class AbstractAtomicStepData extends BaseStepData implements StepDataInterface {
 
     private RowMetaInterface outputRowMeta;
     private String atomicIdFieldName;
-    private int atomicIdFieldIndex;
+    private AtomicIdReader atomicIdReader;
     private final OutputMap outputRowSets = new OutputMap();
     private RowSet continueOutputRowSet = null;
     private RowSet timeoutOutputRowSet = null;
+    private AtomicStorageProvider storageProvider = AtomicStorage.INSTANCE;
+    private StepMetrics metrics = new StepMetrics();
+    @Nullable private ObjectName metricsName;
+    @Nullable private LatencyExporter latencyExporter;
+    private final SlowWaitLog slowWaitLog = new SlowWaitLog(System.nanoTime());
+    private final WaitHistory waitHistory = new WaitHistory();
+    @Nullable private Watchdog watchdog;
+    @Nullable private StepCopy stepCopy;
+    @Nullable private WaitWorkerPool workerPool;
 
     public AbstractAtomicStepData() {
         super();
@@ -44,18 +59,142 @@ public abstract class AbstractAtomicStepData extends BaseStepData implements Ste
 
     public @Nullable
     AtomicValue getAtomic(final String id, final AtomicType atomicType) throws IllegalStateException {
-        return AtomicStorage.INSTANCE.getAtomic(id, atomicType);
+        return storageProvider.getAtomic(id, atomicType);
     }
 
     public AtomicValue getOrCreateAtomic(final String id, final AtomicType atomicType, final String initialValue) throws IllegalStateException {
-        return AtomicStorage.INSTANCE.getOrCreateAtomic(id, atomicType, initialValue);
+        return storageProvider.getOrCreateAtomic(id, atomicType, initialValue);
     }
 
     public boolean removeAtomic(final String id) {
-        return AtomicStorage.INSTANCE.removeAtomic(id);
+        final boolean removed = storageProvider.removeAtomic(id);
+        if (removed && watchdog != null) {
+            watchdog.recordRemoval(id);
+        }
+        return removed;
+    }
+
+    public void recordContention(final String id, final ContentionProfiler.Kind kind) {
+        storageProvider.recordContention(id, kind);
+    }
+
+    /**
+     * Record that this step copy set an AtomicValue, for the {@link Watchdog}.
+     *
+     * @param id the id of the AtomicValue
+     */
+    public void recordSet(final String id) {
+        if (watchdog != null) {
+            watchdog.recordSet(stepCopy, id);
+        }
+    }
+
+    /**
+     * Record that this step copy got or created an AtomicValue, for the {@link Watchdog}.
+     *
+     * @param id the id of the AtomicValue
+     */
+    public void recordCreation(final String id) {
+        if (watchdog != null) {
+            watchdog.recordCreation(stepCopy, id);
+        }
+    }
+
+    /**
+     * Create a waiter for a possible wait of this step copy on an AtomicValue.
+     *
+     * @param id the id of the AtomicValue
+     * @param awaitedValues a description of the values that are awaited
+     *
+     * @return the waiter, which must be ended
+     */
+    public Watchdog.Waiter newWaiter(final String id, final String awaitedValues) {
+        return watchdog == null ? Watchdog.Waiter.NONE : watchdog.newWaiter(stepCopy, id, awaitedValues);
+    }
+
+    /**
+     * Create a pause for a wait of this step copy on an AtomicValue.
+     *
+     * @param waitStrategy the strategy for pausing between checks of the AtomicValue
+     * @param id the id of the AtomicValue
+     * @param period the check period in milliseconds
+     * @param timeout the timeout of the wait in milliseconds, or -1 for no timeout
+     *
+     * @return the pause, which must be ended
+     */
+    public WaitPause newWaitPause(final WaitStrategy waitStrategy, final String id, final long period, final long timeout) {
+        return new WaitPause(waitStrategy, id, storageProvider, waitStrategy == WaitStrategy.Adaptive ? waitHistory : null, period, timeout);
     }
 
     // <editor-fold desc="get/set properties">
+    public AtomicStorageProvider getStorageProvider() {
+        return storageProvider;
+    }
+
+    public void setStorageProvider(final AtomicStorageProvider storageProvider) {
+        this.storageProvider = storageProvider;
+    }
+
+    public StepMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(final StepMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public @Nullable ObjectName getMetricsName() {
+        return metricsName;
+    }
+
+    public void setMetricsName(@Nullable final ObjectName metricsName) {
+        this.metricsName = metricsName;
+    }
+
+    public @Nullable LatencyExporter getLatencyExporter() {
+        return latencyExporter;
+    }
+
+    public void setLatencyExporter(@Nullable final LatencyExporter latencyExporter) {
+        this.latencyExporter = latencyExporter;
+    }
+
+    SlowWaitLog getSlowWaitLog() {
+        return slowWaitLog;
+    }
+
+    public @Nullable Watchdog getWatchdog() {
+        return watchdog;
+    }
+
+    public @Nullable StepCopy getStepCopy() {
+        return stepCopy;
+    }
+
+    /**
+     * Set the watchdog which this step copy is registered with.
+     *
+     * @param watchdog the watchdog, or null if there is no watchdog
+     * @param stepCopy the step copy that is registered, or null if there is no watchdog
+     */
+    public void setWatchdog(@Nullable final Watchdog watchdog, @Nullable final StepCopy stepCopy) {
+        this.watchdog = watchdog;
+        this.stepCopy = stepCopy;
+    }
+
+    /**
+     * Get the pool of workers which wait on behalf of this step copy.
+     *
+     * @return the pool of workers, or null if this step copy waits on the step thread
+     */
+    public @Nullable WaitWorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    public void setWorkerPool(@Nullable final WaitWorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
     public RowMetaInterface getOutputRowMeta() {
         return outputRowMeta;
     }
@@ -72,12 +211,12 @@ public abstract class AbstractAtomicStepData extends BaseStepData implements Ste
         this.atomicIdFieldName = atomicIdFieldName;
     }
 
-    public int getAtomicIdFieldIndex() {
-        return atomicIdFieldIndex;
+    public AtomicIdReader getAtomicIdReader() {
+        return atomicIdReader;
     }
 
-    public void setAtomicIdFieldIndex(final int atomicIdFieldIndex) {
-        this.atomicIdFieldIndex = atomicIdFieldIndex;
+    public void setAtomicIdReader(final AtomicIdReader atomicIdReader) {
+        this.atomicIdReader = atomicIdReader;
     }
 
     public RowSet getContinueOutputRowSet() {
@@ -33,6 +33,7 @@ public abstract class AbstractAtomicStepMeta extends BaseStepMeta implements Ste
     // <editor-fold desc="settings XML element names">
     protected static final String ELEM_NAME_ATOMIC_ID_FIELD_NAME = "atomicIdFieldName";
     protected static final String ELEM_NAME_ATOMIC_TYPE = "atomicType";
+    protected static final String ELEM_NAME_STORAGE_PROVIDER = "storageProvider";
     protected static final String ELEM_NAME_ACTION_IF_NO_ATOMIC = "actionIfNoAtomic";
     protected static final String ATTR_NAME_CONTINUE_TARGET_STEP = "continueTargetStep";
     protected static final String ATTR_NAME_VALUE = "value";
@@ -42,21 +43,36 @@ public abstract class AbstractAtomicStepMeta extends BaseStepMeta implements Ste
     protected static final String ATTR_NAME_CHECK_PERIOD = "checkPeriod";
     protected static final String ATTR_NAME_TIMEOUT = "timeout";
     protected static final String ATTR_NAME_TIMEOUT_TARGET_STEP = "timeoutTargetStep";
+    protected static final String ELEM_NAME_SLOW_WAIT_THRESHOLD = "slowWaitThreshold";
+    protected static final String ELEM_NAME_BATCH_SIZE = "batchSize";
+    protected static final String ELEM_NAME_WAIT_STRATEGY = "waitStrategy";
+    protected static final String ELEM_NAME_WORKERS = "workers";
+    protected static final String ELEM_NAME_ORDERED_OUTPUT = "orderedOutput";
     // </editor-fold>
 
     protected static final long DEFAULT_CHECK_PERIOD = 100; // ms
     protected static final long TIMEOUT_DISABLED = -1; // No timeout
     protected static final long DEFAULT_TIMEOUT = TIMEOUT_DISABLED;
+    protected static final long SLOW_WAIT_DISABLED = -1; // No slow wait log
+    protected static final int BATCH_DISABLED = 1; // One row at a time
+    protected static final int WORKERS_DISABLED = 1; // Wait on the step thread
+    protected static final WaitStrategy DEFAULT_WAIT_STRATEGY = WaitStrategy.Adaptive;
 
     // <editor-fold desc="settings">
     protected String atomicIdFieldName;
     protected AtomicType atomicType;
+    @Nullable protected String storageProvider;
     protected ActionIfNoAtomic actionIfNoAtomic;
     protected String continueTargetStepname;
     @Nullable protected String initialiseAtomicValue;
     protected long waitAtomicCheckPeriod = DEFAULT_CHECK_PERIOD;
     protected long waitAtomicTimeout = DEFAULT_TIMEOUT;
     protected String timeoutTargetStepname;
+    protected long slowWaitThreshold = SLOW_WAIT_DISABLED;
+    protected int batchSize = BATCH_DISABLED;
+    protected WaitStrategy waitStrategy = DEFAULT_WAIT_STRATEGY;
+    protected int workers = WORKERS_DISABLED;
+    protected boolean orderedOutput = true;
     // </editor-fold>
 
     @Nullable protected StepMeta continueTargetStep;
@@ -66,12 +82,18 @@ public abstract class AbstractAtomicStepMeta extends BaseStepMeta implements Ste
     public void setDefault() {
         atomicIdFieldName = "";
         atomicType = AtomicType.Boolean;
+        storageProvider = null;
         actionIfNoAtomic = ActionIfNoAtomic.Continue;
         continueTargetStepname = null;
         initialiseAtomicValue = null;
         waitAtomicCheckPeriod = DEFAULT_CHECK_PERIOD;
         waitAtomicTimeout = DEFAULT_TIMEOUT;
         timeoutTargetStepname = null;
+        slowWaitThreshold = SLOW_WAIT_DISABLED;
+        batchSize = BATCH_DISABLED;
+        waitStrategy = DEFAULT_WAIT_STRATEGY;
+        workers = WORKERS_DISABLED;
+        orderedOutput = true;
     }
 
     // <editor-fold desc="settings getters and setters">
@@ -91,6 +113,19 @@ public abstract class AbstractAtomicStepMeta extends BaseStepMeta implements Ste
         this.atomicType = atomicType;
     }
 
+    /**
+     * Get the name of the {@link AtomicStorageProvider} to use.
+     *
+     * @return the name of the storage provider, or null for the default provider.
+     */
+    public @Nullable String getStorageProvider() {
+        return storageProvider;
+    }
+
+    public void setStorageProvider(@Nullable final String storageProvider) {
+        this.storageProvider = storageProvider;
+    }
+
     public ActionIfNoAtomic getActionIfNoAtomic() {
         return actionIfNoAtomic;
     }
@@ -155,6 +190,85 @@ public abstract class AbstractAtomicStepMeta extends BaseStepMeta implements Ste
         this.timeoutTargetStep = timeoutTargetStep;
     }
 
+    /**
+     * Get the time after which a wait is logged as slow.
+     *
+     * @return the threshold in milliseconds, or -1 if slow waits are not logged.
+     */
+    public long getSlowWaitThreshold() {
+        return slowWaitThreshold;
+    }
+
+    public void setSlowWaitThreshold(final long slowWaitThreshold) {
+        this.slowWaitThreshold = slowWaitThreshold;
+    }
+
+    public boolean isSlowWaitLogEnabled() {
+        return slowWaitThreshold >= 0;
+    }
+
+    /**
+     * Get the maximum number of available rows which are processed together,
+     * grouped by their Atomic ID.
+     *
+     * @return the batch size, or 1 if rows are processed one at a time.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public boolean isBatchEnabled() {
+        return batchSize > BATCH_DISABLED;
+    }
+
+    /**
+     * Get how the step pauses between its checks of an Atomic Value that it is waiting on.
+     *
+     * @return the wait strategy
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public void setWaitStrategy(final WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Get the number of workers which wait on the Atomic Values of this step copy.
+     *
+     * @return the number of workers, or 1 if the rows are waited on by the step thread.
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(final int workers) {
+        this.workers = workers;
+    }
+
+    public boolean isWorkersEnabled() {
+        return workers > WORKERS_DISABLED;
+    }
+
+    /**
+     * Get whether the rows waited on by the workers are output in the order that they were read.
+     *
+     * @return true if the rows are output in the order that they were read, false if the rows
+     *     are output as soon as their wait has completed.
+     */
+    public boolean isOrderedOutput() {
+        return orderedOutput;
+    }
+
+    public void setOrderedOutput(final boolean orderedOutput) {
+        this.orderedOutput = orderedOutput;
+    }
+
     // </editor-fold>
 
 }
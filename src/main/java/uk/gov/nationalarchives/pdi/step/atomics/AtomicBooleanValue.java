@@ -22,6 +22,7 @@
  */
 package uk.gov.nationalarchives.pdi.step.atomics;
 
+import javax.annotation.Nullable;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -31,7 +32,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class AtomicBooleanValue implements AtomicValue {
 
-    private final AtomicBoolean atomic;
+    @Nullable private final AtomicBoolean atomic;
 
     /**
      * Creates a new {@link AtomicBoolean} with the given initial value.
@@ -42,6 +43,15 @@ public class AtomicBooleanValue implements AtomicValue {
         this.atomic = new AtomicBoolean(initialValue);
     }
 
+    /**
+     * For subclasses which store the value elsewhere,
+     * and so must override {@link #get()} and
+     * {@link #compareAndSet(boolean, boolean)}.
+     */
+    protected AtomicBooleanValue() {
+        this.atomic = null;
+    }
+
     @Override
     public AtomicType getType() {
         return AtomicType.Boolean;
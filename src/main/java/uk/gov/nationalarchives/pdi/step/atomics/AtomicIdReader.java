@@ -0,0 +1,219 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.pentaho.di.core.exception.KettleException;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the Atomic ID from the fields of a row.
+ *
+ * The Atomic ID may be read from a single String or Integer field, or composed
+ * from several String and/or Integer fields, in which case their values are joined
+ * by {@link #COMPOSITE_SEPARATOR}. For example, the fields {@code batch} and {@code item},
+ * with the values {@code "b1"} and {@code 42L}, give the Atomic ID {@code b1:42},
+ * the namespace of which is then the value of the first field.
+ *
+ * The most recently read Atomic IDs are cached by the values of their fields,
+ * so that reading an Atomic ID which has recently been read does not allocate
+ * a new String, and returns the same instance of it, even when each row carries
+ * its own instance of a String field. The rows with the same Atomic ID therefore
+ * share a single instance of it, which is also the instance that the storage
+ * keeps when the Atomic ID is created from one of those rows, and so is reused
+ * when an Atomic Value that was discarded is recreated.
+ */
+@NotThreadSafe
+public class AtomicIdReader {
+
+    /**
+     * Separates the names of the fields of a composite Atomic ID.
+     */
+    public static final char FIELD_NAME_SEPARATOR = ',';
+
+    /**
+     * Separates the values of the fields of a composite Atomic ID.
+     */
+    public static final char COMPOSITE_SEPARATOR = ':';
+
+    static final int CACHE_SIZE = 1024;  // must be a power of 2
+
+    private final String[] fieldNames;
+    private final int[] fieldIndexes;
+
+    // direct-mapped cache of the most recently read Atomic IDs
+    private final String[] cachedIds;
+    @Nullable private final long[] cachedIntegers;  // only for a single Integer field
+    @Nullable private final String[] cachedStrings;  // only for a single String field
+    @Nullable private final Object[][] cachedValues;  // only for a composite Atomic ID
+
+    /**
+     * @param fieldNames the names of the fields of the Atomic ID
+     * @param fieldIndexes the indexes in the row of the fields of the Atomic ID
+     *
+     * @throws IllegalArgumentException if there are no fields, or the names and indexes differ in length
+     */
+    public AtomicIdReader(final String[] fieldNames, final int[] fieldIndexes) {
+        if (fieldNames.length == 0 || fieldNames.length != fieldIndexes.length) {
+            throw new IllegalArgumentException("Expected a name and an index for each of at least one field, but found "
+                    + fieldNames.length + " names and " + fieldIndexes.length + " indexes");
+        }
+        this.fieldNames = fieldNames.clone();
+        this.fieldIndexes = fieldIndexes.clone();
+        this.cachedIds = new String[CACHE_SIZE];
+        if (fieldIndexes.length == 1) {
+            this.cachedIntegers = new long[CACHE_SIZE];
+            this.cachedStrings = new String[CACHE_SIZE];
+            this.cachedValues = null;
+        } else {
+            this.cachedIntegers = null;
+            this.cachedStrings = null;
+            this.cachedValues = new Object[CACHE_SIZE][];
+        }
+    }
+
+    /**
+     * Parses the names of the fields of an Atomic ID.
+     *
+     * @param atomicIdFieldNames the name of a field, or the names of several fields separated by {@link #FIELD_NAME_SEPARATOR}
+     *
+     * @return the names of the fields, without any surrounding whitespace
+     */
+    public static String[] parseFieldNames(final String atomicIdFieldNames) {
+        final List<String> fieldNames = new ArrayList<>();
+        int start = 0;
+        while (start <= atomicIdFieldNames.length()) {
+            int end = atomicIdFieldNames.indexOf(FIELD_NAME_SEPARATOR, start);
+            if (end == -1) {
+                end = atomicIdFieldNames.length();
+            }
+            final String fieldName = atomicIdFieldNames.substring(start, end).trim();
+            if (!fieldName.isEmpty()) {
+                fieldNames.add(fieldName);
+            }
+            start = end + 1;
+        }
+        return fieldNames.toArray(new String[0]);
+    }
+
+    /**
+     * Read the Atomic ID from a row.
+     *
+     * @param row the row
+     *
+     * @return the Atomic ID
+     *
+     * @throws KettleException if a field of the Atomic ID is not a String or an Integer
+     */
+    public String read(final Object[] row) throws KettleException {
+        if (fieldIndexes.length > 1) {
+            return readComposite(row);
+        }
+
+        final Object value = row[fieldIndexes[0]];
+        if (value instanceof String) {
+            return readString((String) value);
+        } else if (value instanceof Long || value instanceof Integer) {
+            return readInteger(((Number) value).longValue());
+        } else {
+            throw invalidValue(0, value);
+        }
+    }
+
+    private String readString(final String value) {
+        // NOTE: the hash of a String is cached, and equals is an identity check for the same instance
+        final int slot = slot(value.hashCode());
+        final String cachedId = cachedStrings[slot];
+        if (cachedId != null && cachedId.equals(value)) {
+            return cachedId;
+        }
+
+        cachedStrings[slot] = value;
+        return value;
+    }
+
+    private String readInteger(final long value) {
+        final int slot = slot(Long.hashCode(value));
+        final String cachedId = cachedIds[slot];
+        if (cachedId != null && cachedIntegers[slot] == value) {
+            return cachedId;
+        }
+
+        final String atomicId = Long.toString(value);
+        cachedIntegers[slot] = value;
+        cachedIds[slot] = atomicId;
+        return atomicId;
+    }
+
+    private String readComposite(final Object[] row) throws KettleException {
+        int hash = 1;
+        for (int i = 0; i < fieldIndexes.length; i++) {
+            final Object value = row[fieldIndexes[i]];
+            if (!(value instanceof String || value instanceof Long || value instanceof Integer)) {
+                throw invalidValue(i, value);
+            }
+            hash = 31 * hash + value.hashCode();
+        }
+
+        final int slot = slot(hash);
+        final String cachedId = cachedIds[slot];
+        if (cachedId != null && isCachedValues(cachedValues[slot], row)) {
+            return cachedId;
+        }
+
+        final Object[] values = new Object[fieldIndexes.length];
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < fieldIndexes.length; i++) {
+            values[i] = row[fieldIndexes[i]];
+            if (i > 0) {
+                builder.append(COMPOSITE_SEPARATOR);
+            }
+            builder.append(values[i]);
+        }
+        final String atomicId = builder.toString();
+        cachedValues[slot] = values;
+        cachedIds[slot] = atomicId;
+        return atomicId;
+    }
+
+    private boolean isCachedValues(final Object[] values, final Object[] row) {
+        for (int i = 0; i < fieldIndexes.length; i++) {
+            if (!values[i].equals(row[fieldIndexes[i]])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private KettleException invalidValue(final int field, final Object value) {
+        return new KettleException("Expected field " + fieldNames[field] + " to contain a String or an Integer, but found "
+                + (value == null ? "null" : value.getClass()));
+    }
+
+    private static int slot(final int hash) {
+        return (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+    }
+}
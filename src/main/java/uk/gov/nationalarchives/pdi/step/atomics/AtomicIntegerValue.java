@@ -22,6 +22,7 @@
  */
 package uk.gov.nationalarchives.pdi.step.atomics;
 
+import javax.annotation.Nullable;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -31,7 +32,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class AtomicIntegerValue implements AtomicValue {
 
-    private final AtomicInteger atomic;
+    @Nullable private final AtomicInteger atomic;
 
     /**
      * Creates a new {@link AtomicInteger} with the given initial value.
@@ -42,6 +43,15 @@ public class AtomicIntegerValue implements AtomicValue {
         this.atomic = new AtomicInteger(initialValue);
     }
 
+    /**
+     * For subclasses which store the value elsewhere,
+     * and so must override {@link #get()} and
+     * {@link #compareAndSet(int, int)}.
+     */
+    protected AtomicIntegerValue() {
+        this.atomic = null;
+    }
+
     @Override
     public AtomicType getType() {
         return AtomicType.Integer;
@@ -0,0 +1,59 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+/**
+ * Listens for events on an Atomic Value,
+ * see {@link AtomicStorageProvider#addListener(String, AtomicListener)}.
+ *
+ * Listeners are called by the thread that caused the event,
+ * so they must be quick and must not block.
+ */
+@FunctionalInterface
+public interface AtomicListener {
+
+    enum Event {
+        /**
+         * The Atomic Value was created.
+         */
+        CREATED,
+
+        /**
+         * The value of the Atomic Value may have changed.
+         */
+        CHANGED,
+
+        /**
+         * The Atomic Value was removed.
+         */
+        REMOVED
+    }
+
+    /**
+     * Called when an event occurs on an Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param event the event
+     */
+    void onEvent(String id, Event event);
+}
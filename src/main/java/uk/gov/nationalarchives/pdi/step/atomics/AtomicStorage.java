@@ -26,10 +26,36 @@ import com.evolvedbinary.j8fu.function.ConsumerE;
 import com.evolvedbinary.j8fu.function.FunctionE;
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.jfr.AtomicEvents;
+import uk.gov.nationalarchives.pdi.step.atomics.journal.Journal;
+import uk.gov.nationalarchives.pdi.step.atomics.journal.JournalConfig;
+import uk.gov.nationalarchives.pdi.step.atomics.journal.JournaledBooleanValue;
+import uk.gov.nationalarchives.pdi.step.atomics.journal.JournaledIntegerValue;
+import uk.gov.nationalarchives.pdi.step.atomics.journal.JournaledValue;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.ContentionConfig;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.ContentionProfiler;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.MBeans;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.Rate;
+import uk.gov.nationalarchives.pdi.step.atomics.shared.SharedRegion;
+import uk.gov.nationalarchives.pdi.step.atomics.shared.SharedRegionConfig;
 
 import javax.annotation.Nullable;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -40,16 +66,170 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  *
  * This class follows a singleton-pattern and so
  * there is only ever one instance per-JVM.
+ *
+ * Optionally, Atomic Values in some namespaces may be
+ * made durable by recording their changes in a {@link Journal},
+ * see {@link JournalConfig}.
+ *
+ * If the journal or the shared region cannot be opened, then it is
+ * disabled rather than making the storage unusable, and the failure
+ * is reported by {@link #getStartupFailures()}.
+ *
+ * Optionally, Atomic Values in some namespaces may instead
+ * be stored in a {@link SharedRegion} so that they are shared
+ * with other JVMs on the same host, see {@link SharedRegionConfig}.
+ * Shared Atomic Values are never journaled.
+ *
+ * The storage is registered with the platform MBean server
+ * as {@link #MBEAN_NAME}, see {@link AtomicStorageMXBean}.
+ * Unless disabled, contention reported by steps is profiled
+ * to find the most contended ids, see {@link ContentionConfig}.
+ *
+ * The id with which an Atomic Value is created is stored as-is; the steps
+ * deduplicate the ids of their rows, see {@link AtomicIdReader}, so the ids
+ * of repeated rows are the same instance as the stored id.
  */
 @ThreadSafe
-public class AtomicStorage {
+public class AtomicStorage implements AtomicStorageProvider {
+
+    public static final String PROVIDER_NAME = "default";
+
+    public static final ObjectName MBEAN_NAME = MBeans.name("type=AtomicStorage");
 
     public static final AtomicStorage INSTANCE = new AtomicStorage();
 
     private final Storage storage;
+    private final ConcurrentMap<String, List<AtomicListener>> listeners = new ConcurrentHashMap<>();
+    @Nullable private final Journal journal;
+    @Nullable private final SharedRegion sharedRegion;
+    private final List<IllegalStateException> startupFailures = new ArrayList<>();
+
+    // statistics of the in-memory Atomic Values, so that they may be read without locking the storage
+    private final LongAdder[] countsByType = new LongAdder[AtomicType.values().length];
+    private final LongAdder idChars = new LongAdder();
+    private final Rate lookups = new Rate();
+    private final Rate creations = new Rate();
+    private final Rate removals = new Rate();
+    @Nullable private final ContentionProfiler contention;
 
     private AtomicStorage() {
+        for (int i = 0; i < countsByType.length; i++) {
+            countsByType[i] = new LongAdder();
+        }
         this.storage = new Storage();
+
+        SharedRegion sharedRegion = null;
+        try {
+            sharedRegion = openSharedRegion(SharedRegionConfig.fromSystemProperties());
+        } catch (final RuntimeException e) {
+            startupFailures.add(new IllegalStateException("The shared region of Atomic Values is disabled: " + e.getMessage(), e));
+        }
+        this.sharedRegion = sharedRegion;
+
+        Journal journal = null;
+        try {
+            journal = openJournal(JournalConfig.fromSystemProperties());
+        } catch (final RuntimeException e) {
+            startupFailures.add(new IllegalStateException("The journal of Atomic Values is disabled, so no Atomic Values are durable: " + e.getMessage(), e));
+        }
+        this.journal = journal;
+
+        final ContentionConfig contentionConfig = ContentionConfig.fromSystemProperties();
+        this.contention = contentionConfig != null ? new ContentionProfiler(contentionConfig) : null;
+        registerMBean();
+    }
+
+    /**
+     * Registers the storage with the platform MBean server.
+     *
+     * Management is optional, so if the MBean cannot
+     * be registered the storage is still usable.
+     */
+    private void registerMBean() {
+        try {
+            MBeans.register(new AtomicStorageManagement(this), MBEAN_NAME);
+        } catch (final IllegalStateException e) {
+            // no-op, the storage is not manageable via JMX
+        }
+    }
+
+    /**
+     * Opens the shared region.
+     *
+     * @param sharedRegionConfig the shared region configuration, or null if the shared region is not enabled
+     *
+     * @return the shared region, or null if the shared region is not enabled
+     *
+     * @throws IllegalStateException if the shared region is enabled but cannot be opened
+     */
+    private static @Nullable SharedRegion openSharedRegion(@Nullable final SharedRegionConfig sharedRegionConfig) throws IllegalStateException {
+        if (sharedRegionConfig == null) {
+            return null;
+        }
+
+        try {
+            return SharedRegion.open(sharedRegionConfig);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Unable to open the shared region of Atomic Values: " + sharedRegionConfig.getFile(), e);
+        }
+    }
+
+    /**
+     * Opens the journal and recovers any durable Atomic Values into storage.
+     *
+     * @param journalConfig the journal configuration, or null if the journal is not enabled
+     *
+     * @return the journal, or null if the journal is not enabled
+     *
+     * @throws IllegalStateException if the journal is enabled but cannot be opened
+     */
+    private @Nullable Journal openJournal(@Nullable final JournalConfig journalConfig) throws IllegalStateException {
+        if (journalConfig == null) {
+            return null;
+        }
+
+        final Journal journal;
+        try {
+            journal = Journal.open(journalConfig);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Unable to open the journal of Atomic Values in: " + journalConfig.getDirectory(), e);
+        }
+
+        storage.update(store -> {
+            for (final Map.Entry<String, Journal.Entry> recovered : journal.getRecovered().entrySet()) {
+                final String id = recovered.getKey();
+                final Journal.Entry entry = recovered.getValue();
+                switch (entry.getType()) {
+                    case Boolean:
+                        store.put(id, new JournaledBooleanValue(journal, id, entry.getValue() != 0));
+                        count(id, AtomicType.Boolean, 1);
+                        break;
+
+                    case Integer:
+                        store.put(id, new JournaledIntegerValue(journal, id, entry.getValue()));
+                        count(id, AtomicType.Integer, 1);
+                        break;
+                }
+            }
+        });
+
+        journal.startSnapshots(() -> storage.read(HashMap::new));
+        return journal;
+    }
+
+    @Override
+    public String getName() {
+        return PROVIDER_NAME;
+    }
+
+    /**
+     * Get the failures that occurred whilst opening the journal
+     * or the shared region, which were then disabled.
+     *
+     * @return the failures, or an empty list if there were none
+     */
+    public List<IllegalStateException> getStartupFailures() {
+        return Collections.unmodifiableList(startupFailures);
     }
 
     /**
@@ -62,8 +242,14 @@ public class AtomicStorage {
      *
      * @throws IllegalArgumentException if the the Atomic Value exists but has a different AtomicType to that which was requested
      */
+    @Override
     public @Nullable AtomicValue getAtomic(final String id, final AtomicType atomicType) throws IllegalStateException {
+        if (isShared(id)) {
+            return sharedRegion.get(id, atomicType);
+        }
+
         final AtomicValue atomicValue = storage.read(store -> store.get(id));
+        lookups.mark();
 
         if (atomicValue == null) {
             return null;
@@ -87,11 +273,17 @@ public class AtomicStorage {
      * @return the existing or newly created AtomicValue
      *
      * @throws IllegalArgumentException if the the Atomic Value exists but has a different AtomicType to that which was requested
+     * @throws UncheckedIOException if the Atomic Value is durable but its creation could not be written to the journal
      */
+    @Override
     public AtomicValue getOrCreateAtomic(final String id, final AtomicType atomicType, final String initialValue) throws IllegalStateException {
+        if (isShared(id)) {
+            return sharedRegion.getOrCreate(id, atomicType, initialValue);
+        }
 
         // 1) optimistically try and get the value
         final AtomicValue existingAtomic = storage.read(store -> store.get(id));
+        lookups.mark();
         if (existingAtomic != null) {
             if (atomicType != existingAtomic.getType()) {
                 throw new IllegalArgumentException("Requested type: " + atomicType + " but found type: " + existingAtomic.getType() + " for id: " + id);
@@ -100,7 +292,7 @@ public class AtomicStorage {
         }
 
         // 2) no such value, lock for write
-        return storage.write(store -> {
+        final AtomicValue atomicValue = storage.write(store -> {
 
             // 2.1) we must try and read the value again as this
             // thread may have been preempted between releasing
@@ -114,28 +306,446 @@ public class AtomicStorage {
             }
 
             // 3) still no value, so create one
-            atomicType.checkValidValue(initialValue);
-            switch (atomicType) {
-                case Boolean:
-                    atomic = new AtomicBooleanValue(Boolean.parseBoolean(initialValue));
-                    break;
+            atomic = newAtomic(id, atomicType, initialValue);
 
-                case Integer:
-                    atomic = new AtomicIntegerValue(Integer.parseInt(initialValue));
-                    break;
+            // 3.1) journal the atomic before storing it, so that it is not stored if it cannot be journaled
+            journalCreate(id, atomic);
 
-                default:
-                    throw new IllegalArgumentException("No such AtomicType: " + atomicType);
-            }
-
-            // 3.1) store the atomic
+            // 3.2) store the atomic
             store.put(id, atomic);
+            count(id, atomicType, 1);
+            creations.mark();
+            AtomicEvents.get().created(id, atomicType);
+            fireEvent(id, AtomicListener.Event.CREATED);
             return atomic;
         });
+
+        // 4) wait for the journal outside of the lock
+        syncJournal();
+        return atomicValue;
+    }
+
+    /**
+     * Get or Create a batch of Atomic Values in Storage.
+     *
+     * The write lock is taken only once for the entire batch.
+     * Either all of the Atomic Values in the batch that did not already
+     * exist are created, or none of them are; except that shared and
+     * non-shared Atomic Values in the same batch are created separately.
+     *
+     * @param atomicType the type of the Atomic Values
+     * @param batch pairs of the identifier and initial value of each Atomic Value
+     *
+     * @return the number of Atomic Values that were created, i.e. excluding those that already existed
+     *
+     * @throws IllegalArgumentException if an initial value is invalid for the AtomicType,
+     *     or if an Atomic Value exists but has a different AtomicType to that which was requested
+     * @throws UncheckedIOException if any of the Atomic Values are durable but their creation could not be written to the journal
+     */
+    @Override
+    public int getOrCreateAll(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> batch) throws IllegalArgumentException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        if (sharedRegion != null) {
+            final List<Map.Entry<String, String>> sharedBatch = new ArrayList<>();
+            final List<Map.Entry<String, String>> localBatch = new ArrayList<>();
+            for (final Map.Entry<String, String> idAndInitialValue : batch) {
+                if (sharedRegion.isShared(idAndInitialValue.getKey())) {
+                    sharedBatch.add(idAndInitialValue);
+                } else {
+                    localBatch.add(idAndInitialValue);
+                }
+            }
+
+            if (!sharedBatch.isEmpty()) {
+                final int created = sharedRegion.getOrCreateAll(atomicType, sharedBatch);
+                return created + (localBatch.isEmpty() ? 0 : getOrCreateAllLocal(atomicType, localBatch));
+            }
+        }
+
+        return getOrCreateAllLocal(atomicType, batch);
+    }
+
+    private int getOrCreateAllLocal(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> batch) throws IllegalArgumentException {
+
+        // 1) create the atomics before taking the lock, so that parsing and allocation are not done whilst holding it
+        final String[] ids = new String[batch.size()];
+        final AtomicValue[] atomics = new AtomicValue[batch.size()];
+        for (int i = 0; i < atomics.length; i++) {
+            final Map.Entry<String, String> idAndInitialValue = batch.get(i);
+            ids[i] = idAndInitialValue.getKey();
+            atomics[i] = newAtomic(ids[i], atomicType, idAndInitialValue.getValue());
+        }
+
+        // 2) lock once for the whole batch
+        final int created = storage.write(store -> {
+
+            // 2.1) check the type of any existing atomics before modifying the store
+            for (final Map.Entry<String, String> idAndInitialValue : batch) {
+                final AtomicValue existingAtomic = store.get(idAndInitialValue.getKey());
+                if (existingAtomic != null && atomicType != existingAtomic.getType()) {
+                    throw new IllegalArgumentException("Requested type: " + atomicType + " but found type: " + existingAtomic.getType() + " for id: " + idAndInitialValue.getKey());
+                }
+            }
+
+            // 2.2) pre-size the store so it is not rehashed more than once whilst inserting the batch
+            final Map<String, AtomicValue> sizedStore = storage.ensureCapacity(store.size() + batch.size());
+
+            // 2.3) find the atomics that do not yet exist, the first of any duplicate ids in the batch wins
+            final List<Map.Entry<String, AtomicValue>> toCreate = new ArrayList<>(atomics.length);
+            final Set<String> seen = new HashSet<>();
+            for (int i = 0; i < atomics.length; i++) {
+                if (!sizedStore.containsKey(ids[i]) && seen.add(ids[i])) {
+                    toCreate.add(new AbstractMap.SimpleImmutableEntry<>(ids[i], atomics[i]));
+                }
+            }
+
+            // 2.4) journal all of the atomics before storing any of them, so that none are stored if they cannot be journaled
+            journalCreateAll(toCreate);
+
+            // 2.5) store the atomics
+            for (final Map.Entry<String, AtomicValue> idAndAtomic : toCreate) {
+                final String id = idAndAtomic.getKey();
+                sizedStore.put(id, idAndAtomic.getValue());
+                count(id, atomicType, 1);
+                creations.mark();
+                AtomicEvents.get().created(id, atomicType);
+                fireEvent(id, AtomicListener.Event.CREATED);
+            }
+            return toCreate.size();
+        });
+
+        // 3) wait for the journal outside of the lock, the whole batch is written together
+        if (created > 0) {
+            syncJournal();
+        }
+        return created;
+    }
+
+    /**
+     * Create a new Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     * @param initialValue the initial value for the Atomic Value
+     *
+     * @return the new AtomicValue, which is journaled if its namespace is durable
+     *
+     * @throws IllegalArgumentException if the initial value is invalid for the AtomicType
+     */
+    private AtomicValue newAtomic(final String id, final AtomicType atomicType, final String initialValue) throws IllegalArgumentException {
+        atomicType.checkValidValue(initialValue);
+        final boolean durable = journal != null && journal.isDurable(id);
+        switch (atomicType) {
+            case Boolean:
+                final boolean booleanValue = Boolean.parseBoolean(initialValue);
+                return durable ? new JournaledBooleanValue(journal, id, booleanValue) : new AtomicBooleanValue(booleanValue);
+
+            case Integer:
+                final int intValue = Integer.parseInt(initialValue);
+                return durable ? new JournaledIntegerValue(journal, id, intValue) : new AtomicIntegerValue(intValue);
+
+            default:
+                throw new IllegalArgumentException("No such AtomicType: " + atomicType);
+        }
     }
 
+    @Override
     public boolean removeAtomic(final String id) {
-        return storage.write(store -> store.remove(id)) != null;
+        if (isShared(id)) {
+            return sharedRegion.remove(id);
+        }
+
+        final boolean removed = storage.write(store -> {
+            final AtomicValue atomicValue = store.remove(id);
+            if (atomicValue == null) {
+                return false;
+            }
+            count(id, atomicValue.getType(), -1);
+            removals.mark();
+            AtomicEvents.get().removed(id);
+            journalRemove(id, atomicValue);
+            fireEvent(id, AtomicListener.Event.REMOVED);
+            return true;
+        });
+
+        if (removed) {
+            syncJournal();
+        }
+        return removed;
+    }
+
+    /**
+     * Remove all Atomic Values whose id starts with a prefix.
+     *
+     * The write lock is taken only once for all of the Atomic Values.
+     * Atomic Values in the shared region are not removed,
+     * as they cannot be enumerated.
+     *
+     * @param prefix the prefix of the ids
+     *
+     * @return the number of Atomic Values that were removed
+     *
+     * @throws IllegalArgumentException if the prefix is empty
+     * @throws UncheckedIOException if any of the Atomic Values are durable but their removal could not be written to the journal
+     */
+    int removeByPrefix(final String prefix) throws IllegalArgumentException {
+        if (prefix.isEmpty()) {
+            throw new IllegalArgumentException("The prefix must not be empty");
+        }
+
+        final int removed = storage.write(store -> {
+            int removedByPrefix = 0;
+            for (final Iterator<Map.Entry<String, AtomicValue>> it = store.entrySet().iterator(); it.hasNext(); ) {
+                final Map.Entry<String, AtomicValue> entry = it.next();
+                final String id = entry.getKey();
+                if (id.startsWith(prefix)) {
+                    it.remove();
+                    count(id, entry.getValue().getType(), -1);
+                    removals.mark();
+                    AtomicEvents.get().removed(id);
+                    journalRemove(id, entry.getValue());
+                    fireEvent(id, AtomicListener.Event.REMOVED);
+                    removedByPrefix++;
+                }
+            }
+            return removedByPrefix;
+        });
+
+        if (removed > 0) {
+            syncJournal();
+        }
+        return removed;
+    }
+
+    /**
+     * Get an Atomic Value from Storage regardless of its type.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return null if there is no such atomic with the provided id, otherwise the AtomicValue
+     */
+    @Nullable AtomicValue getAtomic(final String id) {
+        if (isShared(id)) {
+            for (final AtomicType atomicType : AtomicType.values()) {
+                try {
+                    return sharedRegion.get(id, atomicType);
+                } catch (final IllegalArgumentException e) {
+                    // no-op, the Atomic Value has a different type
+                }
+            }
+            return null;
+        }
+
+        return storage.read(store -> store.get(id));
+    }
+
+    @Override
+    public void recordContention(final String id, final ContentionProfiler.Kind kind) {
+        if (contention != null) {
+            contention.record(id, kind);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * {@link AtomicListener.Event#CREATED} and {@link AtomicListener.Event#REMOVED}
+     * are reported, and {@link AtomicListener.Event#CHANGED} when a value is changed
+     * through {@link #notifyChanged(String)}. Changes made by other JVMs to Atomic
+     * Values in the shared region are not reported.
+     */
+    @Override
+    public boolean addListener(final String id, final AtomicListener listener) {
+        // NOTE: compute is atomic with respect to removeListener, which may discard an empty list
+        listeners.compute(id, (k, idListeners) -> {
+            if (idListeners == null) {
+                idListeners = new CopyOnWriteArrayList<>();
+            }
+            idListeners.add(listener);
+            return idListeners;
+        });
+        return true;
+    }
+
+    @Override
+    public boolean removeListener(final String id, final AtomicListener listener) {
+        final boolean[] removed = { false };
+        listeners.computeIfPresent(id, (k, idListeners) -> {
+            removed[0] = idListeners.remove(listener);
+            return idListeners.isEmpty() ? null : idListeners;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public void notifyChanged(final String id) {
+        // NOTE: cheap when nothing is listening, as fireEvent is then a single map lookup
+        fireEvent(id, AtomicListener.Event.CHANGED);
+    }
+
+    private void fireEvent(final String id, final AtomicListener.Event event) {
+        final List<AtomicListener> idListeners = listeners.get(id);
+        if (idListeners != null) {
+            for (final AtomicListener listener : idListeners) {
+                listener.onEvent(id, event);
+            }
+        }
+    }
+
+    /**
+     * Updates the counts of the in-memory Atomic Values.
+     *
+     * Must only be called whilst holding the write lock.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     * @param delta 1 if the Atomic Value was stored, or -1 if it was removed
+     */
+    private void count(final String id, final AtomicType atomicType, final int delta) {
+        countsByType[atomicType.ordinal()].add(delta);
+        idChars.add((long) delta * id.length());
+    }
+
+    /**
+     * Recalculates the counts of the in-memory Atomic Values.
+     *
+     * Must only be called whilst holding the write lock.
+     *
+     * @param store the storage map
+     */
+    private void recount(final Map<String, AtomicValue> store) {
+        for (final LongAdder count : countsByType) {
+            count.reset();
+        }
+        idChars.reset();
+        for (final Map.Entry<String, AtomicValue> entry : store.entrySet()) {
+            count(entry.getKey(), entry.getValue().getType(), 1);
+        }
+    }
+
+    long getCount(final AtomicType atomicType) {
+        return countsByType[atomicType.ordinal()].sum();
+    }
+
+    long getIdChars() {
+        return idChars.sum();
+    }
+
+    Rate getLookups() {
+        return lookups;
+    }
+
+    Rate getCreations() {
+        return creations;
+    }
+
+    Rate getRemovals() {
+        return removals;
+    }
+
+    @Nullable ContentionProfiler getContention() {
+        return contention;
+    }
+
+    /**
+     * Determines if an Atomic Value is stored in the shared region.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return true if the Atomic Value is shared
+     */
+    private boolean isShared(final String id) {
+        return sharedRegion != null && sharedRegion.isShared(id);
+    }
+
+    /**
+     * Records the creation of an Atomic Value in the journal,
+     * if its namespace is durable.
+     *
+     * Must only be called whilst holding the write lock,
+     * so that the journal records are in the same order
+     * as the changes to the storage.
+     */
+    private void journalCreate(final String id, final AtomicValue atomicValue) {
+        if (journal != null && journal.isDurable(id)) {
+            try {
+                journal.appendCreate(id, atomicValue);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Records the creation of several Atomic Values in the journal,
+     * for those whose namespace is durable.
+     *
+     * Either all of the creations are recorded, or none of them are.
+     *
+     * Must only be called whilst holding the write lock.
+     */
+    private void journalCreateAll(final List<Map.Entry<String, AtomicValue>> atomics) {
+        if (journal == null) {
+            return;
+        }
+
+        final List<Map.Entry<String, AtomicValue>> durableAtomics = new ArrayList<>(atomics.size());
+        for (final Map.Entry<String, AtomicValue> idAndAtomic : atomics) {
+            if (journal.isDurable(idAndAtomic.getKey())) {
+                durableAtomics.add(idAndAtomic);
+            }
+        }
+
+        if (!durableAtomics.isEmpty()) {
+            try {
+                journal.appendCreateAll(durableAtomics);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Records the removal of an Atomic Value in the journal,
+     * if its namespace is durable.
+     *
+     * The removal is recorded through the Atomic Value itself,
+     * so that no later change through a stale reference to it
+     * is journaled, see {@link JournaledValue#appendRemove()}.
+     *
+     * Must only be called whilst holding the write lock.
+     */
+    private void journalRemove(final String id, final AtomicValue atomicValue) {
+        if (journal != null && journal.isDurable(id)) {
+            try {
+                if (atomicValue instanceof JournaledValue) {
+                    ((JournaledValue) atomicValue).appendRemove();
+                } else {
+                    journal.appendRemove(id);
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Waits for everything appended to the journal to become durable.
+     *
+     * Should be called without holding the lock, so that
+     * concurrent changes can share the same write to disk.
+     */
+    private void syncJournal() {
+        if (journal != null) {
+            try {
+                journal.sync();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
 
     /**
@@ -144,7 +754,10 @@ public class AtomicStorage {
      * Used for testing!
      */
     void clear() {
-        storage.update(Map::clear);
+        storage.update(store -> {
+            store.clear();
+            recount(store);
+        });
     }
 
     /**
@@ -169,6 +782,7 @@ public class AtomicStorage {
         storage.update(store -> {
             store.clear();
             store.putAll(atomicValues);
+            recount(store);
         });
     }
 
@@ -183,14 +797,72 @@ public class AtomicStorage {
      * @return the previous atomic value associated with the id
      */
     @Nullable AtomicValue put(final String id, final AtomicValue atomicValue) {
-        return storage.write(store -> store.put(id, atomicValue));
+        return storage.write(store -> {
+            final AtomicValue previous = store.put(id, atomicValue);
+            if (previous != null) {
+                count(id, previous.getType(), -1);
+            }
+            count(id, atomicValue.getType(), 1);
+            return previous;
+        });
     }
 
     @ThreadSafe
     private static class Storage {
+        private static final int DEFAULT_CAPACITY = 16;
+        private static final float LOAD_FACTOR = 0.75f;
+
         private final ReadWriteLock lock = new ReentrantReadWriteLock();
         @GuardedBy("lock")
-        private final Map<String, AtomicValue> store = new HashMap<>();
+        private Map<String, AtomicValue> store = new HashMap<>(DEFAULT_CAPACITY, LOAD_FACTOR);
+        @GuardedBy("lock")
+        private int capacity = DEFAULT_CAPACITY;
+
+        /**
+         * Ensures that the store can hold at least {@code size} entries
+         * without being rehashed.
+         *
+         * Must only be called whilst holding the write lock.
+         *
+         * @param size the number of entries that the store should be able to hold
+         *
+         * @return the store, which may have been replaced by a larger store
+         */
+        Map<String, AtomicValue> ensureCapacity(final int size) {
+            // the store also grows itself as entries are put, and a HashMap never shrinks
+            capacity = Math.max(capacity, capacityFor(store.size()));
+
+            if (size <= (int) (capacity * LOAD_FACTOR)) {
+                return store;
+            }
+
+            int newCapacity = capacity;
+            while (size > (int) (newCapacity * LOAD_FACTOR) && newCapacity < (1 << 30)) {
+                newCapacity <<= 1;
+            }
+
+            final Map<String, AtomicValue> newStore = new HashMap<>(newCapacity, LOAD_FACTOR);
+            newStore.putAll(store);
+            this.store = newStore;
+            this.capacity = newCapacity;
+            return newStore;
+        }
+
+        /**
+         * Get the minimum capacity of a store, which has grown from
+         * {@link #DEFAULT_CAPACITY} by doubling, that holds {@code size} entries.
+         *
+         * @param size the number of entries in the store
+         *
+         * @return the capacity
+         */
+        static int capacityFor(final int size) {
+            int capacity = DEFAULT_CAPACITY;
+            while (size > (int) (capacity * LOAD_FACTOR) && capacity < (1 << 30)) {
+                capacity <<= 1;
+            }
+            return capacity;
+        }
 
         <T, E extends Throwable> T read(final FunctionE<Map<String, AtomicValue>, T, E> reader) throws E {
             this.lock.readLock().lock();
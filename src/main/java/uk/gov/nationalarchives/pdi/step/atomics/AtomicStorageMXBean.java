@@ -0,0 +1,205 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import javax.annotation.Nullable;
+import java.beans.ConstructorProperties;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX management interface of {@link AtomicStorage}.
+ *
+ * The attributes are read from counters which are maintained
+ * as Atomic Values are created and removed, and so never take
+ * the write lock of the storage or copy the storage.
+ *
+ * Counts and the heap estimate only include Atomic Values
+ * which are held in memory, i.e. not those in the shared region.
+ */
+public interface AtomicStorageMXBean {
+
+    /**
+     * The default number of ids reported by {@link #getTopContendedIds()}.
+     */
+    int DEFAULT_TOP_CONTENDED_IDS = 10;
+
+    /**
+     * Get the number of Atomic Values.
+     *
+     * @return the number of Atomic Values
+     */
+    long getCount();
+
+    /**
+     * Get the number of Atomic Values of each type.
+     *
+     * @return the number of Atomic Values by the name of their {@link AtomicType}
+     */
+    Map<String, Long> getCountsByType();
+
+    /**
+     * Get an estimate of the heap memory used by the Atomic Values,
+     * including their ids and the storage's hash table.
+     *
+     * @return the estimated number of bytes
+     */
+    long getEstimatedHeapBytes();
+
+    long getLookups();
+
+    double getLookupsPerSecond();
+
+    long getCreations();
+
+    double getCreationsPerSecond();
+
+    long getRemovals();
+
+    double getRemovalsPerSecond();
+
+    /**
+     * Get the most contended ids, i.e. those that steps most
+     * often failed to compare and set, or had to wait for.
+     *
+     * @return up to {@link #DEFAULT_TOP_CONTENDED_IDS} ids, in descending order of contention
+     */
+    List<ContendedId> getTopContendedIds();
+
+    /**
+     * Get the most contended ids.
+     *
+     * @param limit the maximum number of ids to return
+     *
+     * @return the ids, in descending order of contention
+     */
+    List<ContendedId> topContendedIds(int limit);
+
+    /**
+     * Get the total number of contention events on all ids,
+     * this is an estimate if contention is sampled.
+     *
+     * @return the total number of contention events, or 0 if contention is not profiled
+     */
+    long getTotalContention();
+
+    /**
+     * Get a report of the most contended ids, one per line.
+     *
+     * @param limit the maximum number of ids to report
+     *
+     * @return the report
+     */
+    String contentionReport(int limit);
+
+    /**
+     * Get the value of an Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return the value, or null if there is no such Atomic Value
+     */
+    @Nullable String lookup(String id);
+
+    /**
+     * Set the value of an existing Atomic Value,
+     * regardless of its current value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param value the new value
+     *
+     * @throws IllegalArgumentException if there is no such Atomic Value, or the value is invalid for its type
+     */
+    void forceSet(String id, String value) throws IllegalArgumentException;
+
+    /**
+     * Remove an Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return true if the Atomic Value was removed, false if there was no such Atomic Value
+     */
+    boolean remove(String id);
+
+    /**
+     * Remove all Atomic Values whose id starts with a prefix.
+     *
+     * Atomic Values in the shared region are not removed,
+     * as they cannot be enumerated.
+     *
+     * @param prefix the prefix of the ids, must not be empty
+     *
+     * @return the number of Atomic Values that were removed
+     *
+     * @throws IllegalArgumentException if the prefix is empty
+     */
+    int removeByPrefix(String prefix) throws IllegalArgumentException;
+
+    /**
+     * Reset the operation counts and contention counts.
+     */
+    void resetStatistics();
+
+    /**
+     * The contention on an Atomic Value.
+     *
+     * The contention is an estimate, which may over-count
+     * by at most the error, see {@link uk.gov.nationalarchives.pdi.step.atomics.metrics.ContentionProfiler}.
+     */
+    class ContendedId {
+        private final String id;
+        private final long contention;
+        private final long error;
+        private final long casFailures;
+        private final long wakeUps;
+
+        @ConstructorProperties({"id", "contention", "error", "casFailures", "wakeUps"})
+        public ContendedId(final String id, final long contention, final long error, final long casFailures, final long wakeUps) {
+            this.id = id;
+            this.contention = contention;
+            this.error = error;
+            this.casFailures = casFailures;
+            this.wakeUps = wakeUps;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getContention() {
+            return contention;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        public long getCasFailures() {
+            return casFailures;
+        }
+
+        public long getWakeUps() {
+            return wakeUps;
+        }
+    }
+}
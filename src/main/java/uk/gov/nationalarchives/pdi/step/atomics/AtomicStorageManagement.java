@@ -0,0 +1,231 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.ContentionProfiler;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Implementation of {@link AtomicStorageMXBean}.
+ */
+@ThreadSafe
+final class AtomicStorageManagement implements AtomicStorageMXBean {
+
+    // estimated sizes assuming compressed oops, see getEstimatedHeapBytes()
+    private static final long ENTRY_BYTES = 32;       // HashMap.Node
+    private static final long ID_BYTES = 24 + 16;     // String and its array header
+    private static final long ID_CHAR_BYTES = 2;      // upper bound, Latin-1 ids on Java 9+ use 1
+    private static final long VALUE_BYTES = 16 + 16;  // AtomicValue and its java.util.concurrent.atomic value
+    private static final long TABLE_SLOT_BYTES = 4;
+    private static final int MIN_TABLE_SIZE = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final AtomicStorage atomicStorage;
+
+    AtomicStorageManagement(final AtomicStorage atomicStorage) {
+        this.atomicStorage = atomicStorage;
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (final AtomicType atomicType : AtomicType.values()) {
+            count += atomicStorage.getCount(atomicType);
+        }
+        return count;
+    }
+
+    @Override
+    public Map<String, Long> getCountsByType() {
+        final Map<String, Long> countsByType = new TreeMap<>();
+        for (final AtomicType atomicType : AtomicType.values()) {
+            countsByType.put(atomicType.name(), atomicStorage.getCount(atomicType));
+        }
+        return countsByType;
+    }
+
+    @Override
+    public long getEstimatedHeapBytes() {
+        final long count = getCount();
+        long tableSize = MIN_TABLE_SIZE;
+        while (tableSize * LOAD_FACTOR < count) {
+            tableSize <<= 1;
+        }
+        return tableSize * TABLE_SLOT_BYTES
+                + count * (ENTRY_BYTES + ID_BYTES + VALUE_BYTES)
+                + atomicStorage.getIdChars() * ID_CHAR_BYTES;
+    }
+
+    @Override
+    public long getLookups() {
+        return atomicStorage.getLookups().getCount();
+    }
+
+    @Override
+    public double getLookupsPerSecond() {
+        return atomicStorage.getLookups().getRatePerSecond();
+    }
+
+    @Override
+    public long getCreations() {
+        return atomicStorage.getCreations().getCount();
+    }
+
+    @Override
+    public double getCreationsPerSecond() {
+        return atomicStorage.getCreations().getRatePerSecond();
+    }
+
+    @Override
+    public long getRemovals() {
+        return atomicStorage.getRemovals().getCount();
+    }
+
+    @Override
+    public double getRemovalsPerSecond() {
+        return atomicStorage.getRemovals().getRatePerSecond();
+    }
+
+    @Override
+    public List<ContendedId> getTopContendedIds() {
+        return topContendedIds(DEFAULT_TOP_CONTENDED_IDS);
+    }
+
+    @Override
+    public List<ContendedId> topContendedIds(final int limit) {
+        final ContentionProfiler contention = atomicStorage.getContention();
+        if (contention == null) {
+            return new ArrayList<>();
+        }
+
+        final List<ContentionProfiler.Entry> top = contention.top(limit);
+        final List<ContendedId> contendedIds = new ArrayList<>(top.size());
+        for (final ContentionProfiler.Entry entry : top) {
+            contendedIds.add(new ContendedId(entry.getId(), entry.getCount(), entry.getError(), entry.getCasFailures(), entry.getWakeUps()));
+        }
+        return contendedIds;
+    }
+
+    @Override
+    public long getTotalContention() {
+        final ContentionProfiler contention = atomicStorage.getContention();
+        return contention != null ? contention.getTotal() : 0;
+    }
+
+    @Override
+    public String contentionReport(final int limit) {
+        final ContentionProfiler contention = atomicStorage.getContention();
+        if (contention == null) {
+            return "Contention profiling is disabled";
+        }
+
+        final StringBuilder report = new StringBuilder();
+        report.append("Total contention: ").append(contention.getTotal())
+                .append(" (capacity=").append(contention.getCapacity())
+                .append(", sample-rate=").append(contention.getSampleRate()).append(')');
+        int rank = 1;
+        for (final ContentionProfiler.Entry entry : contention.top(limit)) {
+            report.append(System.lineSeparator()).append(rank++).append(". ").append(entry);
+        }
+        return report.toString();
+    }
+
+    @Override
+    public @Nullable String lookup(final String id) {
+        final AtomicValue atomicValue = atomicStorage.getAtomic(id);
+        if (atomicValue == null) {
+            return null;
+        }
+
+        switch (atomicValue.getType()) {
+            case Boolean:
+                return Boolean.toString(((AtomicBooleanValue) atomicValue).get());
+
+            case Integer:
+                return Integer.toString(((AtomicIntegerValue) atomicValue).get());
+
+            default:
+                throw new IllegalArgumentException("Unknown AtomicType: " + atomicValue.getType());
+        }
+    }
+
+    @Override
+    public void forceSet(final String id, final String value) throws IllegalArgumentException {
+        final AtomicValue atomicValue = atomicStorage.getAtomic(id);
+        if (atomicValue == null) {
+            throw new IllegalArgumentException("No such Atomic Value: " + id);
+        }
+
+        atomicValue.getType().checkValidValue(value);
+        switch (atomicValue.getType()) {
+            case Boolean:
+                final AtomicBooleanValue atomicBoolean = (AtomicBooleanValue) atomicValue;
+                final boolean booleanValue = Boolean.parseBoolean(value);
+                boolean currentBoolean;
+                do {
+                    currentBoolean = atomicBoolean.get();
+                } while (!atomicBoolean.compareAndSet(currentBoolean, booleanValue));
+                break;
+
+            case Integer:
+                final AtomicIntegerValue atomicInteger = (AtomicIntegerValue) atomicValue;
+                final int intValue = Integer.parseInt(value);
+                int currentInt;
+                do {
+                    currentInt = atomicInteger.get();
+                } while (!atomicInteger.compareAndSet(currentInt, intValue));
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown AtomicType: " + atomicValue.getType());
+        }
+        atomicStorage.notifyChanged(id);
+    }
+
+    @Override
+    public boolean remove(final String id) {
+        return atomicStorage.removeAtomic(id);
+    }
+
+    @Override
+    public int removeByPrefix(final String prefix) throws IllegalArgumentException {
+        return atomicStorage.removeByPrefix(prefix);
+    }
+
+    @Override
+    public void resetStatistics() {
+        atomicStorage.getLookups().reset();
+        atomicStorage.getCreations().reset();
+        atomicStorage.getRemovals().reset();
+        final ContentionProfiler contention = atomicStorage.getContention();
+        if (contention != null) {
+            contention.reset();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.ContentionProfiler;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A storage engine for Atomic Values.
+ *
+ * Each step selects the provider that it uses by name,
+ * see {@link AbstractAtomicStepMeta#getStorageProvider()}.
+ * The default provider is {@link AtomicStorage#INSTANCE},
+ * additional providers are discovered by {@link java.util.ServiceLoader},
+ * see {@link AtomicStorageProviders}.
+ *
+ * Implementations must be thread-safe.
+ */
+public interface AtomicStorageProvider {
+
+    /**
+     * Get the name of the provider.
+     *
+     * @return the unique name of the provider
+     */
+    String getName();
+
+    /**
+     * Get an Atomic Value from Storage.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     *
+     * @return null if there is no such atomic with the provided id, otherwise the AtomicValue
+     *
+     * @throws IllegalArgumentException if the the Atomic Value exists but has a different AtomicType to that which was requested
+     */
+    @Nullable AtomicValue getAtomic(String id, AtomicType atomicType) throws IllegalArgumentException;
+
+    /**
+     * Get an Atomic Value from Storage,
+     * or Create it if there is no existing Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     * @param initialValue the initial value for the Atomic Value if it is created
+     *
+     * @return the existing or newly created AtomicValue
+     *
+     * @throws IllegalArgumentException if the the Atomic Value exists but has a different AtomicType to that which was requested
+     */
+    AtomicValue getOrCreateAtomic(String id, AtomicType atomicType, String initialValue) throws IllegalArgumentException;
+
+    /**
+     * Get or Create a batch of Atomic Values in Storage.
+     *
+     * @param atomicType the type of the Atomic Values
+     * @param batch pairs of the identifier and initial value of each Atomic Value
+     *
+     * @return the number of Atomic Values that were created, i.e. excluding those that already existed
+     *
+     * @throws IllegalArgumentException if an initial value is invalid for the AtomicType,
+     *     or if an Atomic Value exists but has a different AtomicType to that which was requested
+     */
+    int getOrCreateAll(AtomicType atomicType, List<? extends Map.Entry<String, String>> batch) throws IllegalArgumentException;
+
+    /**
+     * Get or Create many Atomic Values in Storage.
+     *
+     * The ids and initial values are consumed in batches of {@code batchSize},
+     * each of which is passed to {@link #getOrCreateAll(AtomicType, List)}.
+     *
+     * @param atomicType the type of the Atomic Values
+     * @param idsAndInitialValues pairs of the identifier and initial value of each Atomic Value
+     * @param batchSize the maximum number of Atomic Values to create in each batch
+     *
+     * @return the number of Atomic Values that were created, i.e. excluding those that already existed
+     *
+     * @throws IllegalArgumentException if an initial value is invalid for the AtomicType,
+     *     or if an Atomic Value exists but has a different AtomicType to that which was requested
+     */
+    default long getOrCreateAll(final AtomicType atomicType, final Iterator<? extends Map.Entry<String, String>> idsAndInitialValues, final int batchSize) throws IllegalArgumentException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be greater than zero");
+        }
+
+        long created = 0;
+        final List<Map.Entry<String, String>> batch = new ArrayList<>(batchSize);
+        while (idsAndInitialValues.hasNext()) {
+            batch.add(idsAndInitialValues.next());
+            if (batch.size() == batchSize) {
+                created += getOrCreateAll(atomicType, batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            created += getOrCreateAll(atomicType, batch);
+        }
+
+        return created;
+    }
+
+    /**
+     * Remove an Atomic Value from Storage.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return true if the Atomic Value was removed, false if there was no such Atomic Value
+     */
+    boolean removeAtomic(String id);
+
+    /**
+     * Listen for events on an Atomic Value.
+     *
+     * Which events are reported depends on the provider,
+     * callers must still check the value of the Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param listener the listener
+     *
+     * @return true if the listener was added, false if the provider does not support listeners
+     */
+    default boolean addListener(final String id, final AtomicListener listener) {
+        return false;
+    }
+
+    /**
+     * Stop listening for events on an Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param listener the listener
+     *
+     * @return true if the listener was removed, false otherwise
+     */
+    default boolean removeListener(final String id, final AtomicListener listener) {
+        return false;
+    }
+
+    /**
+     * Report that the caller has changed the value of an Atomic Value,
+     * so that the provider may notify its listeners with {@link AtomicListener.Event#CHANGED}.
+     *
+     * Providers which report changes by other means may ignore this.
+     *
+     * @param id the identifier of the Atomic Value
+     */
+    default void notifyChanged(final String id) {
+        // no-op
+    }
+
+    /**
+     * Record that a step could not match or set an Atomic Value.
+     *
+     * Providers may use this to report the most contended ids.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param kind the kind of contention
+     */
+    default void recordContention(final String id, final ContentionProfiler.Kind kind) {
+        // no-op
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.isNullOrEmpty;
+
+/**
+ * Registry of the available {@link AtomicStorageProvider}s.
+ *
+ * The default provider {@link AtomicStorage#INSTANCE} is always
+ * available, additional providers are discovered by {@link ServiceLoader}
+ * from {@code META-INF/services/uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageProvider}.
+ */
+public final class AtomicStorageProviders {
+
+    private AtomicStorageProviders() {
+    }
+
+    /**
+     * Get a provider by name.
+     *
+     * @param name the name of the provider, or null (or empty) for the default provider
+     *
+     * @return the provider
+     *
+     * @throws IllegalArgumentException if there is no such provider
+     */
+    public static AtomicStorageProvider get(@Nullable final String name) throws IllegalArgumentException {
+        if (isNullOrEmpty(name)) {
+            return AtomicStorage.INSTANCE;
+        }
+
+        final AtomicStorageProvider provider = Holder.PROVIDERS.get(name);
+        if (provider == null) {
+            throw new IllegalArgumentException("No such Atomic Storage Provider: " + name);
+        }
+        return provider;
+    }
+
+    /**
+     * Get the names of the available providers.
+     *
+     * @return the names of the providers, the default provider is first
+     */
+    public static Set<String> getNames() {
+        return Holder.PROVIDERS.keySet();
+    }
+
+    /**
+     * Lazily discovers the providers.
+     */
+    private static final class Holder {
+        private static final Map<String, AtomicStorageProvider> PROVIDERS = discover();
+
+        private Holder() {
+        }
+
+        private static Map<String, AtomicStorageProvider> discover() {
+            final Map<String, AtomicStorageProvider> providers = new LinkedHashMap<>();
+            providers.put(AtomicStorage.INSTANCE.getName(), AtomicStorage.INSTANCE);
+
+            // NOTE: use the plugin's class loader, not the thread context class loader
+            final ServiceLoader<AtomicStorageProvider> serviceLoader = ServiceLoader.load(AtomicStorageProvider.class, AtomicStorageProvider.class.getClassLoader());
+            for (final AtomicStorageProvider provider : serviceLoader) {
+                providers.putIfAbsent(provider.getName(), provider);
+            }
+
+            return Collections.unmodifiableMap(providers);
+        }
+    }
+}
@@ -32,7 +32,8 @@ public enum ErrorCode {
     NO_SUCH_ATOMIC_WAIT_INTERRUPTED("NSA3", "Thread interrupted whilst waiting for Atomic Value creation"),
     AWAIT_ATOMIC_WAIT_INTERRUPTED("AWA4", "Thread interrupted whilst waiting for Atomic Value"),
     CAS_ATOMIC_WAIT_INTERRUPTED("CAS5", "Thread interrupted whilst waiting to CAS Atomic Value"),
-    CAS_FAILED("CAS6", "Comparison failed when setting value");
+    CAS_FAILED("CAS6", "Comparison failed when setting value"),
+    STUCK_WAIT("WDG7", "Watchdog failed over a stuck wait for Atomic Value");
 
     private final String code;
     private final String description;
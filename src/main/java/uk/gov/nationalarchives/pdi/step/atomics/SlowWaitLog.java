@@ -0,0 +1,80 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits the slow wait log of a step copy, so that
+ * many slow waits at once cannot flood the log.
+ *
+ * Up to {@link #BURST} slow waits may be logged at once,
+ * after which one more may be logged every {@link #INTERVAL_NANOS}.
+ * Slow waits which are not logged are counted, and the count is
+ * reported with the next slow wait that is logged.
+ *
+ * Slow waits may be logged concurrently by the workers of a step copy.
+ */
+@ThreadSafe
+class SlowWaitLog {
+
+    static final int BURST = 5;
+    static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @GuardedBy("this") private long permits = BURST;
+    @GuardedBy("this") private long lastRefill;
+    @GuardedBy("this") private long suppressed;
+
+    SlowWaitLog(final long nowNanos) {
+        this.lastRefill = nowNanos;
+    }
+
+    /**
+     * Acquire a permit to log a slow wait.
+     *
+     * @param nowNanos the current value of {@link System#nanoTime()}
+     *
+     * @return the number of slow waits that were suppressed since the last
+     *     slow wait that was logged, or -1 if this slow wait must not be logged
+     */
+    synchronized long tryAcquire(final long nowNanos) {
+        final long refills = (nowNanos - lastRefill) / INTERVAL_NANOS;
+        if (refills > 0) {
+            permits = Math.min(BURST, permits + refills);
+            lastRefill += refills * INTERVAL_NANOS;
+        }
+
+        if (permits == 0) {
+            suppressed++;
+            return -1;
+        }
+
+        permits--;
+        final long wasSuppressed = suppressed;
+        suppressed = 0;
+        return wasSuppressed;
+    }
+}
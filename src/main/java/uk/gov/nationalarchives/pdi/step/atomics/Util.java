@@ -23,9 +23,21 @@
 package uk.gov.nationalarchives.pdi.step.atomics;
 
 import javax.annotation.Nullable;
+import java.util.HashSet;
+import java.util.Set;
 
 public interface Util {
 
+    /**
+     * Separates the namespace from the rest of an Atomic ID.
+     */
+    char NAMESPACE_SEPARATOR = ':';
+
+    /**
+     * Matches every namespace.
+     */
+    String ALL_NAMESPACES = "*";
+
     /**
      * Given a String, returns null if the String is empty, or
      * otherwise the String.
@@ -164,4 +176,50 @@ public interface Util {
         }
         return s;
     }
+
+    /**
+     * Get the namespace of an Atomic ID.
+     *
+     * The namespace is the part of the id before the first
+     * {@link #NAMESPACE_SEPARATOR}, ids without a separator
+     * are in the default (empty) namespace.
+     *
+     * @param id an Atomic ID
+     *
+     * @return the namespace, or the empty string for the default namespace
+     */
+    static String namespaceOf(final String id) {
+        final int idx = id.indexOf(NAMESPACE_SEPARATOR);
+        if (idx == -1) {
+            return "";
+        }
+        return id.substring(0, idx);
+    }
+
+    /**
+     * Parses a comma separated list of namespaces.
+     *
+     * @param s a comma separated list of namespaces
+     *
+     * @return the set of namespaces
+     */
+    static Set<String> parseNamespaces(final String s) {
+        final Set<String> namespaces = new HashSet<>();
+        for (final String namespace : s.split(",")) {
+            namespaces.add(namespace.trim());
+        }
+        return namespaces;
+    }
+
+    /**
+     * Determines if an Atomic ID is in one of the namespaces.
+     *
+     * @param id an Atomic ID
+     * @param namespaces a set of namespaces, which may contain {@link #ALL_NAMESPACES}
+     *
+     * @return true if the id is in one of the namespaces, false otherwise.
+     */
+    static boolean isInNamespaces(final String id, final Set<String> namespaces) {
+        return namespaces.contains(ALL_NAMESPACES) || namespaces.contains(namespaceOf(id));
+    }
 }
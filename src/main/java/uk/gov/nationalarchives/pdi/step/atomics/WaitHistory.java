@@ -0,0 +1,80 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The recent durations of waits of a step copy, by Atomic ID,
+ * from which {@link WaitStrategy#Adaptive} predicts the duration of the next wait.
+ *
+ * Each Atomic ID is hashed to one of a fixed number of slots, which holds an
+ * exponentially weighted moving average of the durations of the waits on the ids
+ * of that slot. Ids that share a slot also share their average, so memory is
+ * bounded regardless of how many ids are waited on.
+ */
+@ThreadSafe
+class WaitHistory {
+
+    static final int SLOTS = 1024;  // must be a power of two
+
+    /**
+     * The weight of the previous average, as a shift, i.e. each new duration has a weight of 1/4.
+     */
+    private static final int WEIGHT_SHIFT = 2;
+
+    // the average in nanoseconds plus one, or 0 if there have been no waits
+    private final AtomicLongArray averages = new AtomicLongArray(SLOTS);
+
+    /**
+     * Get the expected duration of a wait.
+     *
+     * @param atomicId the id of the AtomicValue
+     *
+     * @return the expected duration in nanoseconds, or -1 if there have been no waits on the id
+     */
+    long expected(final String atomicId) {
+        return averages.get(slot(atomicId)) - 1;
+    }
+
+    /**
+     * Record the duration of a wait.
+     *
+     * @param atomicId the id of the AtomicValue
+     * @param nanos the duration of the wait in nanoseconds
+     */
+    void record(final String atomicId, final long nanos) {
+        final int slot = slot(atomicId);
+        final long previous = averages.get(slot);
+        final long average = previous == 0 ? nanos : (previous - 1) + ((nanos - (previous - 1)) >> WEIGHT_SHIFT);
+        // NOTE: a lost update from a concurrent wait only loses one sample
+        averages.lazySet(slot, average + 1);
+    }
+
+    private static int slot(final String atomicId) {
+        final int h = atomicId.hashCode();
+        return (h ^ (h >>> 16)) & (SLOTS - 1);
+    }
+}
@@ -0,0 +1,314 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Pauses between the checks of a single wait on an Atomic Value,
+ * according to a {@link WaitStrategy}, and tracks how long has been waited.
+ *
+ * A wait pause must be used by the thread that created it,
+ * and must be ended by {@link #end()} when the wait is over.
+ */
+@NotThreadSafe
+public class WaitPause {
+
+    /**
+     * The outcome of a pause.
+     */
+    public enum Outcome {
+        /**
+         * The pause completed, and the Atomic Value should be checked again.
+         */
+        PAUSED,
+
+        /**
+         * The timeout of the wait was exceeded.
+         */
+        TIMEOUT,
+
+        /**
+         * The thread was interrupted, its interrupted flag remains set.
+         */
+        INTERRUPTED
+    }
+
+    /**
+     * The maximum time that {@link WaitStrategy#Adaptive} spins for.
+     */
+    static final long MAX_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * The maximum time that {@link WaitStrategy#Adaptive} spins and yields for.
+     */
+    static final long MAX_YIELD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * The expected duration of a wait, when there have not yet been any waits on the Atomic ID.
+     */
+    static final long UNKNOWN_EXPECTED_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    /**
+     * The number of spins in each pause of {@link WaitStrategy#Spin}.
+     */
+    static final int SPIN_ITERATIONS = 64;
+
+    @Nullable private static final MethodHandle ON_SPIN_WAIT = findOnSpinWait();
+
+    private final WaitStrategy strategy;
+    private final String atomicId;
+    private final AtomicStorageProvider storageProvider;
+    @Nullable private final WaitHistory history;
+    private final long period;
+    private final long timeout;
+    private final Thread thread;
+    private final long start;
+    private final long spinUntil;
+    private final long yieldUntil;
+    private final AtomicListener listener;
+
+    private boolean listenRequested;
+    private boolean listening;
+    private boolean wakeUp;
+    private long waited;
+
+    /**
+     * @param strategy the wait strategy
+     * @param atomicId the id of the AtomicValue that is waited on
+     * @param storageProvider the storage provider of the AtomicValue, for notifications
+     * @param history the history of waits of the step copy, for {@link WaitStrategy#Adaptive}
+     * @param period the check period in milliseconds, i.e. the longest time that a pause may last
+     * @param timeout the timeout of the wait in milliseconds, or -1 for no timeout
+     */
+    WaitPause(final WaitStrategy strategy, final String atomicId, final AtomicStorageProvider storageProvider,
+            @Nullable final WaitHistory history, final long period, final long timeout) {
+        this.strategy = strategy;
+        this.atomicId = atomicId;
+        this.storageProvider = storageProvider;
+        this.history = history;
+        this.period = period;
+        this.timeout = timeout;
+        this.thread = Thread.currentThread();
+        this.start = System.nanoTime();
+        this.listener = (id, event) -> LockSupport.unpark(thread);
+
+        if (strategy == WaitStrategy.Adaptive) {
+            long expected = history != null ? history.expected(atomicId) : -1;
+            if (expected < 0) {
+                expected = UNKNOWN_EXPECTED_NANOS;
+            }
+            if (expected > MAX_YIELD_NANOS) {
+                // a long wait is expected, so park from the start
+                this.spinUntil = start;
+                this.yieldUntil = start;
+            } else {
+                this.spinUntil = start + Math.min(MAX_SPIN_NANOS, expected * 2);
+                this.yieldUntil = start + Math.min(MAX_YIELD_NANOS, expected * 4);
+            }
+        } else {
+            this.spinUntil = start;
+            this.yieldUntil = start;
+        }
+    }
+
+    /**
+     * Pauses before the next check of the AtomicValue.
+     *
+     * @return the outcome of the pause
+     */
+    public Outcome pause() {
+        if (strategy == WaitStrategy.Sleep) {
+            return sleep();
+        }
+
+        wakeUp = false;
+        switch (strategy) {
+            case Spin:
+                spin();
+                break;
+
+            case Yield:
+                Thread.yield();
+                break;
+
+            case Park:
+                park();
+                break;
+
+            case Adaptive:
+                final long now = System.nanoTime();
+                if (now - spinUntil < 0) {
+                    spin();
+                } else if (now - yieldUntil < 0) {
+                    Thread.yield();
+                } else {
+                    park();
+                }
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown WaitStrategy: " + strategy.name());
+        }
+
+        if (thread.isInterrupted()) {
+            return Outcome.INTERRUPTED;
+        }
+
+        waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (timeout != -1 && waited > timeout) {
+            return Outcome.TIMEOUT;
+        }
+        return Outcome.PAUSED;
+    }
+
+    /**
+     * Pauses until a condition holds, e.g. until a contender
+     * reaches the head of its queue, for up to the check period.
+     *
+     * Whatever the strategy, the thread parks rather than sleeps, so that it
+     * may be woken by {@link LockSupport#unpark(Thread)} as soon as the condition
+     * holds, rather than at the end of a check period.
+     *
+     * @param ready the condition, which is checked before and after each park
+     *
+     * @return the outcome of the pause
+     */
+    public Outcome pauseUntil(final BooleanSupplier ready) {
+        final long parkStart = System.nanoTime();
+        final long parkUntil = parkStart + TimeUnit.MILLISECONDS.toNanos(period);
+        wakeUp = false;
+        long remaining;
+        while (!ready.getAsBoolean() && (remaining = parkUntil - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+            wakeUp = true;
+            if (thread.isInterrupted()) {
+                return Outcome.INTERRUPTED;
+            }
+        }
+
+        if (strategy == WaitStrategy.Sleep) {
+            // NOTE: Sleep counts the time that it has paused for, rather than the time since the start
+            waited += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - parkStart);
+        } else {
+            waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        if (timeout != -1 && waited > timeout) {
+            return Outcome.TIMEOUT;
+        }
+        return Outcome.PAUSED;
+    }
+
+    /**
+     * Get the time waited so far.
+     *
+     * @return the time waited in milliseconds
+     */
+    public long getWaited() {
+        return waited;
+    }
+
+    /**
+     * Whether the last pause blocked the thread, i.e. it was
+     * a sleep or a park rather than a spin or a yield.
+     *
+     * @return true if the thread has woken up from the last pause
+     */
+    public boolean isWakeUp() {
+        return wakeUp;
+    }
+
+    /**
+     * Ends the wait, stops listening for notifications, and for
+     * {@link WaitStrategy#Adaptive} records the duration of the wait.
+     */
+    public void end() {
+        if (listening) {
+            storageProvider.removeListener(atomicId, listener);
+            listening = false;
+        }
+        if (history != null) {
+            history.record(atomicId, System.nanoTime() - start);
+        }
+    }
+
+    private Outcome sleep() {
+        try {
+            Thread.sleep(period);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt(); // restore interrupted flag
+            return Outcome.INTERRUPTED;
+        }
+        wakeUp = true;
+        waited += period;
+        if (timeout != -1 && waited > timeout) {
+            return Outcome.TIMEOUT;
+        }
+        return Outcome.PAUSED;
+    }
+
+    private void park() {
+        if (!listenRequested) {
+            // NOTE: the value is always checked again after the park, so an event before this is not lost
+            listening = storageProvider.addListener(atomicId, listener);
+            listenRequested = true;
+        }
+        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(period));
+        wakeUp = true;
+    }
+
+    private static void spin() {
+        for (int i = 0; i < SPIN_ITERATIONS; i++) {
+            onSpinWait();
+        }
+    }
+
+    /**
+     * Calls {@code Thread.onSpinWait()} when running on Java 9 or newer.
+     */
+    private static void onSpinWait() {
+        if (ON_SPIN_WAIT != null) {
+            try {
+                ON_SPIN_WAIT.invokeExact();
+            } catch (final Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+    }
+
+    private static @Nullable MethodHandle findOnSpinWait() {
+        try {
+            return MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (final NoSuchMethodException | IllegalAccessException e) {
+            return null;  // Java 8
+        }
+    }
+}
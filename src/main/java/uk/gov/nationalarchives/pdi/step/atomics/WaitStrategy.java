@@ -0,0 +1,57 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+/**
+ * How a step pauses between its checks
+ * of an Atomic Value that it is waiting on.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spin briefly at first, then yield, and then park as for {@link #Park},
+     * depending on how long recent waits on the same Atomic ID lasted.
+     */
+    Adaptive,
+
+    /**
+     * Busy-spin, checking the Atomic Value again after each short spin.
+     */
+    Spin,
+
+    /**
+     * Yield the thread, checking the Atomic Value again when it is rescheduled.
+     */
+    Yield,
+
+    /**
+     * Park the thread for the check period, or until the storage provider
+     * notifies an event on the Atomic ID, if the provider supports listeners.
+     */
+    Park,
+
+    /**
+     * Sleep for the check period.
+     */
+    Sleep;
+}
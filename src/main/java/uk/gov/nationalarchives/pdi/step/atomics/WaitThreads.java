@@ -0,0 +1,83 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads on which steps wait for Atomic values,
+ * e.g. the workers of the Await step.
+ *
+ * This is the Java 8 implementation, which creates platform daemon threads.
+ * When the plugin is built with JDK 21 or newer, the jar is a Multi-Release JAR,
+ * and on Java 21 or newer this class is replaced by one which creates virtual threads,
+ * unless {@link #PROP_VIRTUAL_THREADS} is {@code false}.
+ */
+public final class WaitThreads {
+
+    /**
+     * Set to {@code false} to use platform threads rather than virtual threads on Java 21 or newer.
+     */
+    public static final String PROP_VIRTUAL_THREADS = "ATOMICS_VIRTUAL_THREADS";
+
+    private WaitThreads() {
+    }
+
+    /**
+     * @return true if the threads are virtual threads.
+     */
+    public static boolean isVirtual() {
+        return false;
+    }
+
+    /**
+     * Creates a factory for threads on which steps wait.
+     *
+     * @param namePrefix the prefix of the names of the threads
+     *
+     * @return the thread factory
+     */
+    public static ThreadFactory newThreadFactory(final String namePrefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, namePrefix + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates an executor which runs each of its tasks on its own thread
+     * on which a step waits, reusing the threads of completed tasks.
+     *
+     * @param namePrefix the prefix of the names of the threads
+     *
+     * @return the executor
+     */
+    public static ExecutorService newExecutor(final String namePrefix) {
+        return Executors.newCachedThreadPool(newThreadFactory(namePrefix));
+    }
+}
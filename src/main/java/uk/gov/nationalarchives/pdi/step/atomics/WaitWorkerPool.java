@@ -0,0 +1,282 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import com.evolvedbinary.j8fu.function.RunnableE;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.pentaho.di.core.exception.KettleException;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of workers which wait on Atomic Values on behalf of a single
+ * copy of a step, so that the step copy can wait on many
+ * independent Atomic IDs at once.
+ *
+ * The tasks of each Atomic ID form a lane, and the tasks of a lane are always run
+ * in the order that they were submitted, one after another, just as they would be
+ * on the step thread. Each lane which has tasks is run as its own task of an
+ * executor, e.g. on its own virtual thread, see {@link WaitThreads#newExecutor(String)},
+ * so a long wait on one Atomic ID never holds up the tasks of another.
+ *
+ * The workers do not write rows themselves, as the rows of a step copy must
+ * only be written from the step thread; instead each task collects the writes
+ * that it would make, and these are run on the step thread by {@link #emitCompleted(long)}.
+ *
+ * When the output is ordered, the writes of completed tasks are held back
+ * until the writes of all of the tasks submitted before them have been run,
+ * otherwise the writes are run as soon as their task has completed.
+ *
+ * The methods {@link #submit(String, Task)}, {@link #emitCompleted(long)},
+ * and {@link #isIdle()} must only be called from the step thread.
+ */
+@ThreadSafe
+public class WaitWorkerPool {
+
+    /**
+     * The maximum number of tasks which may be submitted for each worker before they are emitted.
+     */
+    public static final int MAX_IN_FLIGHT_PER_WORKER = 16;
+
+    /**
+     * A task that is run by a worker.
+     */
+    @FunctionalInterface
+    public interface Task {
+
+        /**
+         * Runs the task.
+         *
+         * @param puts the writes of rows which the task would make, these are run on the step thread.
+         *
+         * @throws KettleException if the task fails
+         */
+        void run(List<RunnableE<KettleException>> puts) throws KettleException;
+    }
+
+    private final ExecutorService executor;
+    private final boolean orderedOutput;
+    private final int maxInFlight;
+    private final BlockingQueue<Job> completed = new LinkedBlockingQueue<>();
+    @GuardedBy("lanes") private final Map<String, Lane> lanes = new HashMap<>();
+
+    // only accessed by the step thread
+    private long nextSequence;
+    private long nextToEmit;
+    private int inFlight;
+    private final Map<Long, Job> reorderBuffer = new HashMap<>();
+
+    /**
+     * @param workers the number of workers, each of which may have up to {@link #MAX_IN_FLIGHT_PER_WORKER} tasks in flight
+     * @param orderedOutput true if the writes of tasks should be run in the order that the tasks were submitted
+     * @param threadFactory the factory for the threads of the workers
+     */
+    public WaitWorkerPool(final int workers, final boolean orderedOutput, final ThreadFactory threadFactory) {
+        this(workers, orderedOutput, Executors.newCachedThreadPool(threadFactory));
+    }
+
+    /**
+     * @param workers the number of workers, each of which may have up to {@link #MAX_IN_FLIGHT_PER_WORKER} tasks in flight
+     * @param orderedOutput true if the writes of tasks should be run in the order that the tasks were submitted
+     * @param executor the executor which runs the lanes of tasks, it is shut down by {@link #close()}
+     */
+    public WaitWorkerPool(final int workers, final boolean orderedOutput, final ExecutorService executor) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Workers must be greater than zero, but was " + workers);
+        }
+        this.executor = executor;
+        this.orderedOutput = orderedOutput;
+        this.maxInFlight = workers * MAX_IN_FLIGHT_PER_WORKER;
+    }
+
+    /**
+     * Submits a task to the lane for its Atomic ID.
+     *
+     * If the pool already has the maximum number of tasks in flight,
+     * completed tasks are emitted until there is space for this task.
+     *
+     * @param atomicId the id of the AtomicValue that the task awaits
+     * @param task the task
+     *
+     * @throws KettleException if an emitted task failed, or running its writes causes an error
+     * @throws InterruptedException if the step thread is interrupted whilst waiting for space
+     */
+    public void submit(final String atomicId, final Task task) throws KettleException, InterruptedException {
+        while (inFlight >= maxInFlight) {
+            emit(completed.take());
+        }
+
+        final Job job = new Job(nextSequence++, task);
+        inFlight++;
+
+        final Lane lane;
+        synchronized (lanes) {
+            final Lane running = lanes.get(atomicId);
+            if (running != null) {
+                running.jobs.add(job);
+                return;
+            }
+            lane = new Lane(atomicId, job);
+            lanes.put(atomicId, lane);
+        }
+        executor.execute(lane);
+    }
+
+    /**
+     * Emits the tasks which have completed, by running their writes.
+     *
+     * @param timeout the time in milliseconds to wait for a task to complete if none have yet completed,
+     *     or 0 to not wait.
+     *
+     * @throws KettleException if an emitted task failed, or running its writes causes an error
+     * @throws InterruptedException if the step thread is interrupted whilst waiting
+     */
+    public void emitCompleted(final long timeout) throws KettleException, InterruptedException {
+        Job job = timeout > 0 ? completed.poll(timeout, TimeUnit.MILLISECONDS) : completed.poll();
+        while (job != null) {
+            emit(job);
+            job = completed.poll();
+        }
+    }
+
+    /**
+     * @return true if there are no tasks in flight, i.e. all of the submitted tasks have been emitted.
+     */
+    public boolean isIdle() {
+        return inFlight == 0;
+    }
+
+    /**
+     * Stops the workers, and waits for them to finish. The workers are interrupted,
+     * so any task that is waiting will complete early, the tasks which have
+     * not yet started are not run, and the writes of neither are run.
+     */
+    public void close() {
+        executor.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();  // restore interrupted flag
+        }
+    }
+
+    private void emit(final Job job) throws KettleException {
+        if (!orderedOutput) {
+            run(job);
+            return;
+        }
+
+        reorderBuffer.put(job.sequence, job);
+        Job next;
+        while ((next = reorderBuffer.remove(nextToEmit)) != null) {
+            nextToEmit++;
+            run(next);
+        }
+    }
+
+    private void run(final Job job) throws KettleException {
+        inFlight--;
+        if (job.failure != null) {
+            if (job.failure instanceof KettleException) {
+                throw (KettleException) job.failure;
+            }
+            throw new KettleException(job.failure);
+        }
+        for (final RunnableE<KettleException> put : job.puts) {
+            put.run();
+        }
+    }
+
+    /**
+     * Runs the tasks of a single Atomic ID in turn, until there are none left.
+     */
+    private final class Lane implements Runnable {
+        private final String atomicId;
+        @GuardedBy("lanes") private final Queue<Job> jobs = new ArrayDeque<>();
+
+        Lane(final String atomicId, final Job first) {
+            this.atomicId = atomicId;
+            this.jobs.add(first);
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                final Job job;
+                synchronized (lanes) {
+                    job = jobs.poll();
+                    if (job == null) {
+                        lanes.remove(atomicId);
+                        return;
+                    }
+                }
+
+                try {
+                    job.task.run(job.puts);
+                } catch (final Throwable t) {
+                    // NOTE: an Error must also complete the job, else the step thread would wait for it forever
+                    job.failure = t;
+                }
+                completed.add(job);
+            }
+            // the pool was closed
+        }
+    }
+
+    /**
+     * A task, and its result. Handed between the step thread
+     * and a worker by the lane and the completed queue, which publish its state.
+     */
+    private static final class Job {
+        private final long sequence;
+        private final Task task;
+        private final List<RunnableE<KettleException>> puts = new ArrayList<>();
+        @Nullable private Throwable failure;
+
+        Job(final long sequence, final Task task) {
+            this.sequence = sequence;
+            this.task = task;
+        }
+    }
+}
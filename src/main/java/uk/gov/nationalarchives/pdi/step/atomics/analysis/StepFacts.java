@@ -0,0 +1,169 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.analysis;
+
+import net.jcip.annotations.Immutable;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What can be statically determined about how a step
+ * of a transformation synchronises on Atomic Values.
+ *
+ * Values are normalised for their {@link uk.gov.nationalarchives.pdi.step.atomics.AtomicType},
+ * e.g. {@code TRUE} is {@code true}, and {@code 01} is {@code 1}.
+ */
+@Immutable
+public final class StepFacts {
+    private final String stepName;
+    private final List<String> previousSteps;
+    private final boolean atomic;
+    @Nullable private final Set<String> atomicIds;
+    private final boolean awaitsCreation;
+    private final Set<String> awaits;
+    @Nullable private final Set<String> creates;
+    private final Set<String> sets;
+    private final boolean discards;
+
+    /**
+     * Facts about a step which does not use Atomic Values.
+     *
+     * @param stepName the name of the step
+     * @param previousSteps the names of the steps which send rows to the step
+     */
+    public StepFacts(final String stepName, final List<String> previousSteps) {
+        this(stepName, previousSteps, false, Collections.emptySet(), false, Collections.emptySet(), Collections.emptySet(), Collections.emptySet(), false);
+    }
+
+    /**
+     * Facts about a step which uses Atomic Values.
+     *
+     * @param stepName the name of the step
+     * @param previousSteps the names of the steps which send rows to the step
+     * @param atomicIds the Atomic IDs that the step uses, or null if they cannot be determined
+     * @param awaitsCreation true if the step waits for the Atomic Values to be created
+     * @param awaits the values that the step waits for, empty if the step does not wait for a value
+     * @param creates the values that the step creates Atomic Values with, or null if they cannot be determined
+     * @param sets the values that the step sets
+     * @param discards true if the step may discard the Atomic Values
+     */
+    public StepFacts(final String stepName, final List<String> previousSteps, @Nullable final Set<String> atomicIds,
+            final boolean awaitsCreation, final Set<String> awaits, @Nullable final Set<String> creates,
+            final Set<String> sets, final boolean discards) {
+        this(stepName, previousSteps, true, atomicIds, awaitsCreation, awaits, creates, sets, discards);
+    }
+
+    private StepFacts(final String stepName, final List<String> previousSteps, final boolean atomic,
+            @Nullable final Set<String> atomicIds, final boolean awaitsCreation, final Set<String> awaits,
+            @Nullable final Set<String> creates, final Set<String> sets, final boolean discards) {
+        this.stepName = stepName;
+        this.previousSteps = previousSteps;
+        this.atomic = atomic;
+        this.atomicIds = atomicIds;
+        this.awaitsCreation = awaitsCreation;
+        this.awaits = awaits;
+        this.creates = creates;
+        this.sets = sets;
+        this.discards = discards;
+    }
+
+    public String getStepName() {
+        return stepName;
+    }
+
+    public List<String> getPreviousSteps() {
+        return previousSteps;
+    }
+
+    public boolean isAtomic() {
+        return atomic;
+    }
+
+    public @Nullable Set<String> getAtomicIds() {
+        return atomicIds;
+    }
+
+    public boolean isAwaitsCreation() {
+        return awaitsCreation;
+    }
+
+    public Set<String> getAwaits() {
+        return awaits;
+    }
+
+    public @Nullable Set<String> getCreates() {
+        return creates;
+    }
+
+    public Set<String> getSets() {
+        return sets;
+    }
+
+    public boolean isDiscards() {
+        return discards;
+    }
+
+    /**
+     * Determines if the step may use an Atomic Value.
+     *
+     * @param atomicId the id of the Atomic Value
+     *
+     * @return true if the step uses the Atomic ID, or its Atomic IDs cannot be determined
+     */
+    boolean mayUse(final String atomicId) {
+        return atomic && (atomicIds == null || atomicIds.contains(atomicId));
+    }
+
+    /**
+     * Determines if the step may create an Atomic Value.
+     *
+     * @param atomicId the id of the Atomic Value
+     * @param value the value, or null for any value
+     *
+     * @return true if the step may create the Atomic Value
+     */
+    boolean mayCreate(final String atomicId, @Nullable final String value) {
+        if (!mayUse(atomicId)) {
+            return false;
+        }
+        if (creates == null) {
+            return true;
+        }
+        return value == null ? !creates.isEmpty() : creates.contains(value);
+    }
+
+    /**
+     * Determines if the step may set an Atomic Value.
+     *
+     * @param atomicId the id of the Atomic Value
+     * @param value the value
+     *
+     * @return true if the step may set the Atomic Value
+     */
+    boolean maySet(final String atomicId, final String value) {
+        return mayUse(atomicId) && sets.contains(value);
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.analysis;
+
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.constant.ConstantMeta;
+import org.pentaho.di.trans.steps.datagrid.DataGridMeta;
+import org.pentaho.di.trans.steps.getvariable.GetVariableMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+import uk.gov.nationalarchives.pdi.step.atomics.AbstractAtomicStepMeta;
+import uk.gov.nationalarchives.pdi.step.atomics.ActionIfNoAtomic;
+import uk.gov.nationalarchives.pdi.step.atomics.ActionIfUnableToSet;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicIdReader;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.await.AwaitStepMeta;
+import uk.gov.nationalarchives.pdi.step.atomics.await.AwaitTarget;
+import uk.gov.nationalarchives.pdi.step.atomics.bulkinitialise.BulkInitialiseStepMeta;
+import uk.gov.nationalarchives.pdi.step.atomics.compareandset.CompareAndSetStepMeta;
+import uk.gov.nationalarchives.pdi.step.atomics.compareandset.CompareAndSetTarget;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.isNotEmpty;
+
+/**
+ * Reads the {@link StepFacts} of the steps of a transformation.
+ *
+ * The values of a field are statically determined by finding the step
+ * which is the origin of the field, which must be one of:
+ * <i>Add constants</i>, <i>Generate rows</i>, <i>Data grid</i>, or
+ * <i>Get variables</i> (where the variable is resolved in the transformation).
+ */
+final class StepFactsReader {
+
+    private StepFactsReader() {
+    }
+
+    static List<StepFacts> read(final TransMeta transMeta) {
+        final List<StepFacts> steps = new ArrayList<>();
+        for (final StepMeta stepMeta : transMeta.getSteps()) {
+            final List<String> previousSteps = new ArrayList<>();
+            for (final StepMeta previousStep : transMeta.findPreviousSteps(stepMeta)) {
+                previousSteps.add(previousStep.getName());
+            }
+
+            final StepMetaInterface meta = stepMeta.getStepMetaInterface();
+            if (meta instanceof AwaitStepMeta) {
+                steps.add(readAwait(transMeta, stepMeta, previousSteps, (AwaitStepMeta) meta));
+            } else if (meta instanceof CompareAndSetStepMeta) {
+                steps.add(readCompareAndSet(transMeta, stepMeta, previousSteps, (CompareAndSetStepMeta) meta));
+            } else if (meta instanceof BulkInitialiseStepMeta) {
+                steps.add(readBulkInitialise(transMeta, stepMeta, previousSteps, (BulkInitialiseStepMeta) meta));
+            } else {
+                steps.add(new StepFacts(stepMeta.getName(), previousSteps));
+            }
+        }
+        return steps;
+    }
+
+    private static StepFacts readAwait(final TransMeta transMeta, final StepMeta stepMeta, final List<String> previousSteps, final AwaitStepMeta meta) {
+        final AtomicType atomicType = meta.getAtomicType();
+        final Set<String> awaits = new HashSet<>();
+        boolean discards = false;
+        if (meta.getAwaitValues() != null) {
+            for (final AwaitTarget awaitTarget : meta.getAwaitValues()) {
+                if (awaitTarget.getAtomicValue() == null) {
+                    // awaiting null, i.e. discarded, is assumed to always be possible
+                    awaits.clear();
+                    break;
+                }
+                awaits.add(normalise(atomicType, awaitTarget.getAtomicValue()));
+            }
+            for (final AwaitTarget awaitTarget : meta.getAwaitValues()) {
+                discards |= awaitTarget.isDiscardAtomic();
+            }
+        }
+
+        return new StepFacts(stepMeta.getName(), previousSteps, readAtomicIds(transMeta, stepMeta, meta),
+                meta.getActionIfNoAtomic() == ActionIfNoAtomic.Wait, awaits, readCreates(meta), Collections.emptySet(), discards);
+    }
+
+    private static StepFacts readCompareAndSet(final TransMeta transMeta, final StepMeta stepMeta, final List<String> previousSteps, final CompareAndSetStepMeta meta) {
+        final AtomicType atomicType = meta.getAtomicType();
+        final Set<String> awaits = new HashSet<>();
+        final Set<String> sets = new HashSet<>();
+        if (meta.getCompareAndSetValues() != null) {
+            for (final CompareAndSetTarget compareAndSetTarget : meta.getCompareAndSetValues()) {
+                if (meta.getActionIfUnableToSet() == ActionIfUnableToSet.Loop) {
+                    // the step only waits for a compare value when it loops
+                    awaits.add(normalise(atomicType, compareAndSetTarget.getCompareValue()));
+                }
+                sets.add(normalise(atomicType, compareAndSetTarget.getSetValue()));
+            }
+        }
+
+        return new StepFacts(stepMeta.getName(), previousSteps, readAtomicIds(transMeta, stepMeta, meta),
+                meta.getActionIfNoAtomic() == ActionIfNoAtomic.Wait, awaits, readCreates(meta), sets, false);
+    }
+
+    private static StepFacts readBulkInitialise(final TransMeta transMeta, final StepMeta stepMeta, final List<String> previousSteps, final BulkInitialiseStepMeta meta) {
+        final AtomicType atomicType = meta.getAtomicType();
+        @Nullable Set<String> creates;
+        if (isNotEmpty(meta.getInitialiseAtomicValueFieldName())) {
+            creates = readFieldValues(transMeta, stepMeta, meta.getInitialiseAtomicValueFieldName());
+            if (creates != null) {
+                final Set<String> normalised = new HashSet<>();
+                for (final String value : creates) {
+                    normalised.add(normalise(atomicType, value));
+                }
+                creates = normalised;
+            }
+        } else if (meta.getInitialiseAtomicValue() != null) {
+            creates = Collections.singleton(normalise(atomicType, meta.getInitialiseAtomicValue()));
+        } else {
+            creates = null;
+        }
+
+        return new StepFacts(stepMeta.getName(), previousSteps, readAtomicIdValues(transMeta, stepMeta, meta.getAtomicIdFieldName()),
+                false, Collections.emptySet(), creates, Collections.emptySet(), false);
+    }
+
+    private static @Nullable Set<String> readAtomicIds(final TransMeta transMeta, final StepMeta stepMeta, final AbstractAtomicStepMeta meta) {
+        return readAtomicIdValues(transMeta, stepMeta, meta.getAtomicIdFieldName());
+    }
+
+    /**
+     * Statically determines the Atomic IDs of the rows received by a step.
+     *
+     * The Atomic IDs of a composite Atomic ID, see {@link AtomicIdReader}, are only
+     * determined when each of its fields has a single value.
+     *
+     * @param transMeta the transformation
+     * @param stepMeta the step
+     * @param atomicIdFieldNames the names of the fields of the Atomic ID
+     *
+     * @return the Atomic IDs, or null if they cannot be determined
+     */
+    static @Nullable Set<String> readAtomicIdValues(final TransMeta transMeta, final StepMeta stepMeta, @Nullable final String atomicIdFieldNames) {
+        if (atomicIdFieldNames == null) {
+            return null;
+        }
+
+        final String[] fieldNames = AtomicIdReader.parseFieldNames(atomicIdFieldNames);
+        if (fieldNames.length == 0) {
+            return null;
+        } else if (fieldNames.length == 1) {
+            return readFieldValues(transMeta, stepMeta, fieldNames[0]);
+        }
+
+        final StringBuilder atomicId = new StringBuilder();
+        for (final String fieldName : fieldNames) {
+            final Set<String> values = readFieldValues(transMeta, stepMeta, fieldName);
+            if (values == null || values.size() != 1) {
+                return null;
+            }
+            if (atomicId.length() > 0) {
+                atomicId.append(AtomicIdReader.COMPOSITE_SEPARATOR);
+            }
+            atomicId.append(values.iterator().next());
+        }
+        return Collections.singleton(atomicId.toString());
+    }
+
+    private static Set<String> readCreates(final AbstractAtomicStepMeta meta) {
+        if (meta.getActionIfNoAtomic() != ActionIfNoAtomic.Initialise || meta.getInitialiseAtomicValue() == null) {
+            return Collections.emptySet();
+        }
+        return Collections.singleton(normalise(meta.getAtomicType(), meta.getInitialiseAtomicValue()));
+    }
+
+    /**
+     * Statically determines the values of a field of the rows received by a step.
+     *
+     * @param transMeta the transformation
+     * @param stepMeta the step
+     * @param fieldName the name of the field
+     *
+     * @return the values of the field, or null if they cannot be determined
+     */
+    static @Nullable Set<String> readFieldValues(final TransMeta transMeta, final StepMeta stepMeta, @Nullable final String fieldName) {
+        if (fieldName == null) {
+            return null;
+        }
+
+        final RowMetaInterface prev;
+        try {
+            prev = transMeta.getPrevStepFields(stepMeta);
+        } catch (final KettleStepException e) {
+            return null;
+        }
+        final ValueMetaInterface valueMeta = prev == null ? null : prev.searchValueMeta(fieldName);
+        final StepMeta origin = valueMeta == null || valueMeta.getOrigin() == null ? null : transMeta.findStep(valueMeta.getOrigin());
+        if (origin == null) {
+            return null;
+        }
+
+        final StepMetaInterface originMeta = origin.getStepMetaInterface();
+        if (originMeta instanceof ConstantMeta) {
+            final ConstantMeta constantMeta = (ConstantMeta) originMeta;
+            final int idx = indexOf(constantMeta.getFieldName(), fieldName);
+            return idx == -1 || constantMeta.getValue()[idx] == null ? null : Collections.singleton(constantMeta.getValue()[idx]);
+
+        } else if (originMeta instanceof RowGeneratorMeta) {
+            final RowGeneratorMeta rowGeneratorMeta = (RowGeneratorMeta) originMeta;
+            final int idx = indexOf(rowGeneratorMeta.getFieldName(), fieldName);
+            return idx == -1 || rowGeneratorMeta.getValue()[idx] == null ? null : Collections.singleton(rowGeneratorMeta.getValue()[idx]);
+
+        } else if (originMeta instanceof DataGridMeta) {
+            final DataGridMeta dataGridMeta = (DataGridMeta) originMeta;
+            final int idx = indexOf(dataGridMeta.getFieldName(), fieldName);
+            if (idx == -1 || dataGridMeta.getDataLines() == null) {
+                return null;
+            }
+            final Set<String> values = new HashSet<>();
+            for (final List<String> line : dataGridMeta.getDataLines()) {
+                if (idx >= line.size() || line.get(idx) == null) {
+                    return null;
+                }
+                values.add(line.get(idx));
+            }
+            return values;
+
+        } else if (originMeta instanceof GetVariableMeta) {
+            final GetVariableMeta.FieldDefinition[] fieldDefinitions = ((GetVariableMeta) originMeta).getFieldDefinitions();
+            if (fieldDefinitions != null) {
+                for (final GetVariableMeta.FieldDefinition fieldDefinition : fieldDefinitions) {
+                    if (fieldName.equals(fieldDefinition.getFieldName()) && fieldDefinition.getVariableString() != null) {
+                        final String value = transMeta.environmentSubstitute(fieldDefinition.getVariableString());
+                        // the variable is only known when the transformation runs
+                        return value == null || value.contains("${") || value.contains("%%") ? null : Collections.singleton(value);
+                    }
+                }
+            }
+            return null;
+
+        } else {
+            return null;
+        }
+    }
+
+    private static int indexOf(@Nullable final String[] fieldNames, final String fieldName) {
+        if (fieldNames != null) {
+            for (int i = 0; i < fieldNames.length; i++) {
+                if (fieldName.equals(fieldNames[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Normalises a value in the same way as it is parsed by the steps.
+     *
+     * @param atomicType the type of the Atomic Value
+     * @param value the value
+     *
+     * @return the normalised value
+     */
+    static String normalise(final AtomicType atomicType, final String value) {
+        switch (atomicType) {
+            case Boolean:
+                return Boolean.toString(Boolean.parseBoolean(value));
+
+            case Integer:
+                try {
+                    return Integer.toString(Integer.parseInt(value));
+                } catch (final NumberFormatException e) {
+                    return value;
+                }
+
+            default:
+                throw new IllegalArgumentException("Unknown AtomicType: " + atomicType.name());
+        }
+    }
+}
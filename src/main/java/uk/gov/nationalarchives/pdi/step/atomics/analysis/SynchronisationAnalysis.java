@@ -0,0 +1,451 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.analysis;
+
+import net.jcip.annotations.Immutable;
+import org.pentaho.di.trans.TransMeta;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Static analysis of how the steps of a transformation
+ * synchronise on Atomic Values.
+ *
+ * From the {@link StepFacts} of each step, the analysis determines
+ * which steps can make progress: a step can receive rows if it has no
+ * previous steps, or any of its previous steps can make progress; and
+ * it can then make progress if, for each of its Atomic IDs, the Atomic
+ * Value can be created by a step which can receive rows, and one of its
+ * awaited values can be created by a step which can receive rows, or set
+ * by a step which can make progress.
+ *
+ * Each step which can receive rows, but can never make progress, is
+ * reported with a {@link Finding}. As Atomic Values may also be set by
+ * other transformations in the same JVM, findings are warnings rather than errors.
+ * Steps whose Atomic IDs cannot be statically determined are assumed to make progress,
+ * and to be able to create or set any Atomic ID.
+ */
+@Immutable
+public final class SynchronisationAnalysis {
+
+    /**
+     * Description of the awaited value when waiting for an Atomic Value to be created.
+     */
+    static final String AWAITED_CREATION = "(created)";
+
+    /**
+     * Kinds of problem found by the analysis.
+     */
+    public enum FindingKind {
+        /**
+         * No step in the transformation sets any of the awaited values.
+         */
+        UNSETTABLE,
+
+        /**
+         * The steps which set the awaited values are themselves (transitively) waiting on this step.
+         */
+        CYCLIC_WAIT,
+
+        /**
+         * The steps which set the awaited values can never make progress.
+         */
+        BLOCKED
+    }
+
+    /**
+     * Kinds of relationship between a step and an Atomic Value.
+     */
+    public enum RelationKind {
+        AWAITS("awaits"),
+        CREATES("creates"),
+        SETS("sets"),
+        DISCARDS("discards");
+
+        private final String label;
+
+        RelationKind(final String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * A wait of a step which can never be satisfied.
+     */
+    @Immutable
+    public static final class Finding {
+        private final FindingKind kind;
+        private final String atomicId;
+        private final String awaitedValues;
+        private final List<String> blockingSteps;
+
+        Finding(final FindingKind kind, final String atomicId, final String awaitedValues, final List<String> blockingSteps) {
+            this.kind = kind;
+            this.atomicId = atomicId;
+            this.awaitedValues = awaitedValues;
+            this.blockingSteps = blockingSteps;
+        }
+
+        public FindingKind getKind() {
+            return kind;
+        }
+
+        public String getAtomicId() {
+            return atomicId;
+        }
+
+        /**
+         * @return the awaited values separated by commas, or {@code (created)}
+         */
+        public String getAwaitedValues() {
+            return awaitedValues;
+        }
+
+        /**
+         * @return the steps which could satisfy the wait but cannot make progress, separated by commas
+         */
+        public String getBlockingSteps() {
+            return String.join(",", blockingSteps);
+        }
+
+        @Override
+        public String toString() {
+            return kind + ": " + atomicId + "=[" + awaitedValues + "]"
+                    + (blockingSteps.isEmpty() ? "" : " blocked by " + getBlockingSteps());
+        }
+    }
+
+    /**
+     * A relationship between a step and an Atomic Value, e.g. for lineage.
+     */
+    @Immutable
+    public static final class Relation {
+        private final RelationKind kind;
+        private final String atomicId;
+        @Nullable private final String value;
+
+        Relation(final RelationKind kind, final String atomicId, @Nullable final String value) {
+            this.kind = kind;
+            this.atomicId = atomicId;
+            this.value = value;
+        }
+
+        public RelationKind getKind() {
+            return kind;
+        }
+
+        public String getAtomicId() {
+            return atomicId;
+        }
+
+        /**
+         * @return the value, or null if the relationship is not to a specific value
+         */
+        public @Nullable String getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return kind.getLabel() + " " + atomicId + (value == null ? "" : "=" + value);
+        }
+    }
+
+    /**
+     * An unsatisfied wait, and the steps which could satisfy it.
+     */
+    private static final class BlockedWait {
+        final String awaitedValues;
+        final List<StepFacts> providers;
+
+        BlockedWait(final String awaitedValues, final List<StepFacts> providers) {
+            this.awaitedValues = awaitedValues;
+            this.providers = providers;
+        }
+    }
+
+    private final Map<String, StepFacts> steps;
+    private final Set<String> receiving = new HashSet<>();
+    private final Set<String> progressing = new HashSet<>();
+    private final Map<String, List<Finding>> findings = new HashMap<>();
+
+    private SynchronisationAnalysis(final Collection<StepFacts> steps) {
+        this.steps = new LinkedHashMap<>();
+        for (final StepFacts step : steps) {
+            this.steps.put(step.getStepName(), step);
+        }
+        solve();
+        report();
+    }
+
+    /**
+     * Analyses the steps of a transformation.
+     *
+     * @param transMeta the transformation
+     *
+     * @return the analysis
+     */
+    public static SynchronisationAnalysis of(final TransMeta transMeta) {
+        return analyse(StepFactsReader.read(transMeta));
+    }
+
+    /**
+     * Analyses steps.
+     *
+     * @param steps the facts about each step
+     *
+     * @return the analysis
+     */
+    public static SynchronisationAnalysis analyse(final Collection<StepFacts> steps) {
+        return new SynchronisationAnalysis(steps);
+    }
+
+    /**
+     * Get the Atomic IDs which could be statically determined.
+     *
+     * @return the Atomic IDs
+     */
+    public Set<String> getAtomicIds() {
+        final Set<String> atomicIds = new TreeSet<>();
+        for (final StepFacts step : steps.values()) {
+            if (step.getAtomicIds() != null) {
+                atomicIds.addAll(step.getAtomicIds());
+            }
+        }
+        return atomicIds;
+    }
+
+    /**
+     * Get the problems found for a step.
+     *
+     * @param stepName the name of the step
+     *
+     * @return the findings, empty if there are no problems
+     */
+    public List<Finding> getFindings(final String stepName) {
+        final List<Finding> stepFindings = findings.get(stepName);
+        return stepFindings == null ? Collections.emptyList() : stepFindings;
+    }
+
+    /**
+     * Get the relationships between a step and the Atomic Values
+     * which could be statically determined.
+     *
+     * @param stepName the name of the step
+     *
+     * @return the relationships
+     */
+    public List<Relation> getRelations(final String stepName) {
+        final StepFacts step = steps.get(stepName);
+        if (step == null || step.getAtomicIds() == null) {
+            return Collections.emptyList();
+        }
+
+        final List<Relation> relations = new ArrayList<>();
+        for (final String atomicId : new TreeSet<>(step.getAtomicIds())) {
+            if (step.isAwaitsCreation()) {
+                relations.add(new Relation(RelationKind.AWAITS, atomicId, null));
+            }
+            for (final String value : new TreeSet<>(step.getAwaits())) {
+                relations.add(new Relation(RelationKind.AWAITS, atomicId, value));
+            }
+            if (step.getCreates() == null) {
+                relations.add(new Relation(RelationKind.CREATES, atomicId, null));
+            } else {
+                for (final String value : new TreeSet<>(step.getCreates())) {
+                    relations.add(new Relation(RelationKind.CREATES, atomicId, value));
+                }
+            }
+            for (final String value : new TreeSet<>(step.getSets())) {
+                relations.add(new Relation(RelationKind.SETS, atomicId, value));
+            }
+            if (step.isDiscards()) {
+                relations.add(new Relation(RelationKind.DISCARDS, atomicId, null));
+            }
+        }
+        return relations;
+    }
+
+    /**
+     * Computes the steps which can receive rows, and which can make progress,
+     * by iterating until neither changes.
+     */
+    private void solve() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (final StepFacts step : steps.values()) {
+                if (!receiving.contains(step.getStepName()) && canReceive(step)) {
+                    receiving.add(step.getStepName());
+                    changed = true;
+                }
+                if (receiving.contains(step.getStepName()) && !progressing.contains(step.getStepName()) && getBlockedWaits(step).isEmpty()) {
+                    progressing.add(step.getStepName());
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private boolean canReceive(final StepFacts step) {
+        if (step.getPreviousSteps().isEmpty()) {
+            return true;
+        }
+        for (final String previousStep : step.getPreviousSteps()) {
+            if (progressing.contains(previousStep)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the waits of a step which are not yet satisfied.
+     *
+     * @param step the step
+     *
+     * @return the unsatisfied waits by Atomic ID
+     */
+    private Map<String, BlockedWait> getBlockedWaits(final StepFacts step) {
+        if (!step.isAtomic() || step.getAtomicIds() == null) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, BlockedWait> blockedWaits = new TreeMap<>();
+        for (final String atomicId : step.getAtomicIds()) {
+            final BlockedWait blockedWait = getBlockedWait(step, atomicId);
+            if (blockedWait != null) {
+                blockedWaits.put(atomicId, blockedWait);
+            }
+        }
+        return blockedWaits;
+    }
+
+    private @Nullable BlockedWait getBlockedWait(final StepFacts step, final String atomicId) {
+        if (step.isAwaitsCreation()) {
+            final List<StepFacts> creators = new ArrayList<>();
+            boolean created = false;
+            for (final StepFacts other : steps.values()) {
+                if (other.mayCreate(atomicId, null)) {
+                    creators.add(other);
+                    created |= receiving.contains(other.getStepName());
+                }
+            }
+            if (!created) {
+                return new BlockedWait(AWAITED_CREATION, creators);
+            }
+        }
+
+        if (step.getAwaits().isEmpty()) {
+            return null;
+        }
+
+        final List<StepFacts> providers = new ArrayList<>();
+        for (final StepFacts other : steps.values()) {
+            for (final String value : step.getAwaits()) {
+                final boolean creates = other.mayCreate(atomicId, value);
+                final boolean sets = other.maySet(atomicId, value);
+                if ((creates && receiving.contains(other.getStepName())) || (sets && progressing.contains(other.getStepName()))) {
+                    return null;
+                }
+                if ((creates || sets) && !providers.contains(other)) {
+                    providers.add(other);
+                }
+            }
+        }
+        return new BlockedWait(String.join(",", new TreeSet<>(step.getAwaits())), providers);
+    }
+
+    /**
+     * Reports each step which can receive rows, but can never make progress.
+     */
+    private void report() {
+        for (final StepFacts step : steps.values()) {
+            if (!receiving.contains(step.getStepName()) || progressing.contains(step.getStepName())) {
+                continue;
+            }
+
+            for (final Map.Entry<String, BlockedWait> blockedWait : getBlockedWaits(step).entrySet()) {
+                final List<StepFacts> providers = blockedWait.getValue().providers;
+                final FindingKind kind;
+                if (providers.isEmpty()) {
+                    kind = FindingKind.UNSETTABLE;
+                } else if (isWaitingOn(providers, step)) {
+                    kind = FindingKind.CYCLIC_WAIT;
+                } else {
+                    kind = FindingKind.BLOCKED;
+                }
+
+                final List<String> blockingSteps = new ArrayList<>();
+                for (final StepFacts provider : providers) {
+                    blockingSteps.add(provider.getStepName());
+                }
+                findings.computeIfAbsent(step.getStepName(), k -> new ArrayList<>())
+                        .add(new Finding(kind, blockedWait.getKey(), blockedWait.getValue().awaitedValues, blockingSteps));
+            }
+        }
+    }
+
+    /**
+     * Determines if any of the providers are (transitively) waiting on a step.
+     *
+     * @param providers the steps which could satisfy a wait of the step
+     * @param step the step
+     *
+     * @return true if the step is reachable from the providers in the graph of blocked steps
+     */
+    private boolean isWaitingOn(final List<StepFacts> providers, final StepFacts step) {
+        final Deque<StepFacts> pending = new ArrayDeque<>(providers);
+        final Set<String> visited = new HashSet<>();
+        while (!pending.isEmpty()) {
+            final StepFacts blocked = pending.pop();
+            if (blocked.getStepName().equals(step.getStepName())) {
+                return true;
+            }
+            if (!visited.add(blocked.getStepName())) {
+                continue;
+            }
+
+            if (!receiving.contains(blocked.getStepName())) {
+                // waiting for rows from its previous steps
+                for (final String previousStep : blocked.getPreviousSteps()) {
+                    final StepFacts previous = steps.get(previousStep);
+                    if (previous != null) {
+                        pending.push(previous);
+                    }
+                }
+            } else {
+                // waiting on Atomic Values
+                for (final BlockedWait blockedWait : getBlockedWaits(blocked).values()) {
+                    pending.addAll(blockedWait.providers);
+                }
+            }
+        }
+        return false;
+    }
+}
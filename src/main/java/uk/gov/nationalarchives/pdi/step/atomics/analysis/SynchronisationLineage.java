@@ -0,0 +1,98 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.analysis;
+
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.metaverse.api.IMetaverseBuilder;
+import org.pentaho.metaverse.api.IMetaverseNode;
+import org.pentaho.metaverse.api.IMetaverseObjectFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the relationships between a step and the Atomic Values,
+ * found by {@link SynchronisationAnalysis}, as metaverse lineage.
+ *
+ * Each Atomic Value is a node whose id only depends on the Atomic ID,
+ * so that the lineage of Atomic Values which are shared between
+ * transformations is connected.
+ */
+public final class SynchronisationLineage {
+
+    public static final String NODE_TYPE_ATOMIC_VALUE = "Atomic Value";
+    public static final String PROPERTY_ATOMIC_VALUES = "atomicValues";
+    public static final String PROPERTY_SYNCHRONISATION_WARNINGS = "synchronisationWarnings";
+
+    private SynchronisationLineage() {
+    }
+
+    /**
+     * Adds the lineage of a step.
+     *
+     * @param metaverseBuilder the builder of the metaverse
+     * @param metaverseObjectFactory the factory for metaverse nodes
+     * @param transMeta the transformation
+     * @param stepMeta the step
+     * @param rootNode the node of the step
+     */
+    public static void addLineage(final IMetaverseBuilder metaverseBuilder, final IMetaverseObjectFactory metaverseObjectFactory,
+            final TransMeta transMeta, final StepMeta stepMeta, final IMetaverseNode rootNode) {
+        final SynchronisationAnalysis analysis = SynchronisationAnalysis.of(transMeta);
+
+        final List<SynchronisationAnalysis.Relation> relations = analysis.getRelations(stepMeta.getName());
+        final Map<String, IMetaverseNode> atomicNodes = new HashMap<>();
+        final StringBuilder atomicValues = new StringBuilder();
+        for (final SynchronisationAnalysis.Relation relation : relations) {
+            IMetaverseNode atomicNode = atomicNodes.get(relation.getAtomicId());
+            if (atomicNode == null) {
+                atomicNode = metaverseObjectFactory.createNodeObject("atomic:" + relation.getAtomicId(), relation.getAtomicId(), NODE_TYPE_ATOMIC_VALUE);
+                metaverseBuilder.addNode(atomicNode);
+                atomicNodes.put(relation.getAtomicId(), atomicNode);
+            }
+            metaverseBuilder.addLink(rootNode, relation.getKind().getLabel(), atomicNode);
+
+            if (atomicValues.length() > 0) {
+                atomicValues.append("; ");
+            }
+            atomicValues.append(relation);
+        }
+        if (atomicValues.length() > 0) {
+            rootNode.setProperty(PROPERTY_ATOMIC_VALUES, atomicValues.toString());
+        }
+
+        final List<SynchronisationAnalysis.Finding> findings = analysis.getFindings(stepMeta.getName());
+        if (!findings.isEmpty()) {
+            final StringBuilder warnings = new StringBuilder();
+            for (final SynchronisationAnalysis.Finding finding : findings) {
+                if (warnings.length() > 0) {
+                    warnings.append("; ");
+                }
+                warnings.append(finding);
+            }
+            rootNode.setProperty(PROPERTY_SYNCHRONISATION_WARNINGS, warnings.toString());
+        }
+    }
+}
@@ -23,6 +23,8 @@
 package uk.gov.nationalarchives.pdi.step.atomics.await;
 
 import com.evolvedbinary.j8fu.Either;
+import com.evolvedbinary.j8fu.function.ConsumerE;
+import com.evolvedbinary.j8fu.function.RunnableE;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -33,9 +35,16 @@ import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.*;
 import org.pentaho.di.trans.step.errorhandling.StreamInterface;
 import uk.gov.nationalarchives.pdi.step.atomics.*;
+import uk.gov.nationalarchives.pdi.step.atomics.jfr.AtomicEvents;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.ContentionProfiler;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepLatencies;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepMetrics;
+import uk.gov.nationalarchives.pdi.step.atomics.watchdog.Watchdog;
 
 import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.evolvedbinary.j8fu.Either.Left;
@@ -47,13 +56,16 @@ public class AwaitStep extends AbstractAtomicStep {
     private enum AwaitAtomicRouteTarget {
         DEFAULT,
         TIMEOUT,
-        THREAD_INTERRUPTED
+        THREAD_INTERRUPTED,
+        STUCK
     }
 
     static final String IGNORE_STEPNAME_FOR_TEST = "__IGNORE_STEPNAME_FOR_TEST__";
 
     private static final Class<?> PKG = AwaitStep.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
+    @Nullable private String awaitedValues;  // lazily initialised by getAwaitedValues
+
     public AwaitStep(final StepMeta stepMeta, final StepDataInterface stepDataInterface, final int copyNr,
             final TransMeta transMeta, final Trans trans) {
         super(stepMeta, stepDataInterface, copyNr, transMeta, trans);
@@ -61,79 +73,221 @@ public class AwaitStep extends AbstractAtomicStep {
 
     @Override
     public boolean processRow(final StepMetaInterface smi, final StepDataInterface sdi) throws KettleException {
+        final AwaitStepMeta meta = (AwaitStepMeta) smi;
+        final AwaitStepData data = (AwaitStepData) sdi;
+
+        @Nullable final WaitWorkerPool workerPool = data.getWorkerPool();
+        if (workerPool != null) {
+            // whilst there are no input rows, output the rows of the workers as their awaits complete
+            emitCompleted(workerPool, false);
+        }
 
         final Object[] row = getRow(); // try and get a row
         if (row == null) {
             // no more rows...
+            if (workerPool != null) {
+                emitCompleted(workerPool, true);
+            }
             setOutputDone();
             return false;  // signal that we are DONE
 
         }
 
         // process a row...
-        final AwaitStepMeta meta = (AwaitStepMeta) smi;
-        final AwaitStepData data = (AwaitStepData) sdi;
-
         if (first) {
             first = false;
 
             // map input to output streams
             createOutputValueMapping(meta, data);
+
+            // initialise before any worker can read it
+            getAwaitedValues(meta);
         }
 
-        final String atomicId = getAtomicId(data, row);
+        if (workerPool != null) {
+            if (meta.isBatchEnabled()) {
+                for (final Map.Entry<String, List<Object[]>> group : getBatch(meta, data, row).entrySet()) {
+                    submitAtomicRows(workerPool, meta, data, group.getKey(), group.getValue());
+                }
+            } else {
+                submitAtomicRows(workerPool, meta, data, getAtomicId(data, row), Collections.singletonList(row));
+            }
+
+            // output the rows of any awaits which have already completed
+            emitAlreadyCompleted(workerPool);
+
+        } else if (meta.isBatchEnabled()) {
+            processBatch(data, readBatch(meta, row), (atomicId, rows, output) -> processAtomicRows(meta, data, atomicId, rows, output));
+        } else {
+            processAtomicRows(meta, data, getAtomicId(data, row), Collections.singletonList(row), RunnableE::run);
+        }
+
+        return true;  // row(s) done!
+    }
+
+    /**
+     * Submits rows which have the same Atomic ID to a worker, which processes them
+     * by {@link #processAtomicRows(AwaitStepMeta, AwaitStepData, String, List, ConsumerE)}.
+     *
+     * @param workerPool the pool of workers
+     * @param meta the Await Step Meta instance
+     * @param data the Await Step Data instance
+     * @param atomicId the id of the AtomicValue
+     * @param rows the rows
+     *
+     * @throws KettleException if the rows of a completed await cannot be written whilst waiting for a worker
+     */
+    private void submitAtomicRows(final WaitWorkerPool workerPool, final AwaitStepMeta meta, final AwaitStepData data, final String atomicId, final List<Object[]> rows) throws KettleException {
+        submitAtomicRows(workerPool, atomicId, puts -> processAtomicRows(meta, data, atomicId, rows, puts::add));
+    }
+
+    /**
+     * Processes rows which have the same Atomic ID.
+     *
+     * The AtomicValue is retrieved (or initialised), and awaited, once for all of the rows,
+     * and then all of the rows are sent to the same output target. If the matched await value
+     * discards the AtomicValue, only the first row is sent to its output target, and each of
+     * the remaining rows must then retrieve, and await, the AtomicValue again.
+     *
+     * Each write of a row is passed to {@code output}, which either runs it immediately
+     * on the step thread, or collects it to be run later on the step thread when this
+     * method is called by a worker, see {@link WaitWorkerPool}.
+     *
+     * @param meta the Await Step Meta instance
+     * @param data the Await Step Data instance
+     * @param atomicId the id of the AtomicValue
+     * @param rows the rows
+     * @param output receives the writes of the rows
+     *
+     * @throws KettleException if an output target cannot be found, or writing a row causes an error
+     */
+    private void processAtomicRows(final AwaitStepMeta meta, final AwaitStepData data, final String atomicId, final List<Object[]> rows,
+            final ConsumerE<RunnableE<KettleException>, KettleException> output) throws KettleException {
 
         // 1. get (or initialise) the AtomicValue
         final Either<GetAtomicRouteTarget, AtomicValue> routeOrAtomic = getAtomic(meta, data, atomicId);
         if (routeOrAtomic.isLeft()) {
-            // could not get (or initialise) AtomicValue, so route row to specific output target...
+            // could not get (or initialise) AtomicValue, so route rows to specific output target...
             final GetAtomicRouteTarget route = routeOrAtomic.left().get();
-            switch (route) {
-                case CONTINUE:
-                    putRowToContinueTarget(meta, data, atomicId, row, BaseMessages.getString(PKG, "AwaitStep.Log.NoContinueTargetStep"));
-                    return true;
-
-                case ERROR:
-                    putRowToErrorTarget(data, row, ErrorCode.NO_SUCH_ATOMIC, "Await No Atomic object for id: " + atomicId + ", and ActionIfNoAtomic == Error");
-                    return true;
-
-                case TIMEOUT:
-                    // NOTE: this is intentionally sent to the error target at this stage, the timeout target is reserved for the await value part further below
-                    putRowToErrorTarget(data, row, ErrorCode.NO_SUCH_ATOMIC_WAIT_TIMEOUT, "Await Timeout (" + meta.getWaitAtomicTimeout() + "ms) exceeded whilst waiting for Atomic object creation for id: " + atomicId + ", and ActionIfNoAtomic == Wait");
-                    return true;
-
-                case THREAD_INTERRUPTED:
-                    putRowToErrorTarget(data, row, ErrorCode.NO_SUCH_ATOMIC_WAIT_INTERRUPTED, "Await Thread interrupted whilst waiting for Atomic object creation for id: " + atomicId + ", and ActionIfNoAtomic == Wait");
-                    return true;
+            for (final Object[] row : rows) {
+                output.accept(() -> putRowToGetAtomicRoute(meta, data, atomicId, row, route, "Await", BaseMessages.getString(PKG, "AwaitStep.Log.NoContinueTargetStep")));
             }
+            return;
         }
 
         // At this point we have an AtomicValue
         final AtomicValue atomicValue = routeOrAtomic.right().get();
 
         // 2. Check/Wait until the AtomicValue reaches one of the await values, and then get the target
-        final Either<AwaitAtomicRouteTarget, AwaitTarget> routeOrAwaitTarget = awaitAndGetTarget(meta, data, atomicId, atomicValue);
+        final Either<AwaitAtomicRouteTarget, AwaitTarget> routeOrAwaitTarget = await(meta, data, atomicId, atomicValue);
         if (routeOrAwaitTarget.isLeft()) {
-            // AtomicValue never reached one of the await values, so route row to specific failure output target...
+            // AtomicValue never reached one of the await values, so route rows to specific failure output target...
             final AwaitAtomicRouteTarget route = routeOrAwaitTarget.left().get();
-            switch (route) {
-                case DEFAULT:
-                    putRowToDefaultTarget(data, row);
-                    return true;
-
-                case TIMEOUT:
-                    putRowToTimeoutTarget(meta, data, row, BaseMessages.getString(PKG, "AwaitStep.Log.NoTimeoutTargetStep"));
-                    return true;
-
-                case THREAD_INTERRUPTED:
-                    putRowToErrorTarget(data, row, ErrorCode.AWAIT_ATOMIC_WAIT_INTERRUPTED, "Thread interrupted whilst waiting for Atomic value for id: " + atomicId);
-                    return true;
+            for (final Object[] row : rows) {
+                output.accept(() -> putRowToAwaitRoute(meta, data, atomicId, row, route));
             }
+            return;
         }
 
         // At this point we have an AwaitTarget, i.e. the AtomicValue matches an await value
         final AwaitTarget awaitTarget = routeOrAwaitTarget.right().get();
 
+        if (!awaitTarget.isDiscardAtomic()) {
+            for (final Object[] row : rows) {
+                output.accept(() -> putRowToAwaitTarget(data, atomicId, awaitTarget, row));
+            }
+            return;
+        }
+
+        final Object[] firstRow = rows.get(0);
+        output.accept(() -> putRowToAwaitTarget(data, atomicId, awaitTarget, firstRow));
+
+        // discard the atomic as the user requested to do so
+        if (!data.removeAtomic(atomicId)) {
+            this.logError("Unable to discard Atomic with ID: {0}", atomicId);
+        }
+
+        // the AtomicValue awaited by the remaining rows no longer exists
+        for (int i = 1; i < rows.size(); i++) {
+            processAtomicRows(meta, data, atomicId, Collections.singletonList(rows.get(i)), output);
+        }
+    }
+
+    /**
+     * Waits for the AtomicValue to become one of the await values,
+     * whilst recording the wait for events, the watchdog, and the latencies.
+     *
+     * @param meta the Await Step Meta instance
+     * @param data the Await Step Data instance
+     * @param atomicId the id of the AtomicValue
+     * @param atomicValue the AtomicValue on which we await to reach a specific value
+     *
+     * @return Either a route to target if the AtomicValue never matches one of the await values,
+     *    or the AwaitTarget to route the output to when it matches one of the await values.
+     */
+    private Either<AwaitAtomicRouteTarget, AwaitTarget> await(final AwaitStepMeta meta, final AwaitStepData data, final String atomicId, final AtomicValue atomicValue) {
+        final AtomicEvents.Wait wait = AtomicEvents.get().beginWait(getStepname(), getCopy(), StepLatencies.Latency.MATCH.getLabel(), atomicId, getAwaitedValues(meta));
+        final Watchdog.Waiter waiter = data.newWaiter(atomicId, getAwaitedValues(meta));
+        final WaitPause pause = data.newWaitPause(meta.getWaitStrategy(), atomicId, meta.getWaitLoopCheckPeriod(), meta.getWaitLoopTimeout());
+        final long awaitStart = System.nanoTime();
+        Either<AwaitAtomicRouteTarget, AwaitTarget> routeOrAwaitTarget = null;
+        try {
+            routeOrAwaitTarget = awaitAndGetTarget(meta, data, atomicId, atomicValue, waiter, pause);
+            data.getMetrics().recordLatency(StepLatencies.Latency.MATCH, atomicId, System.nanoTime() - awaitStart);
+        } finally {
+            pause.end();
+            waiter.end();
+            wait.end(routeOrAwaitTarget == null ? WAIT_OUTCOME_FAILED : routeOrAwaitTarget.isLeft() ? routeOrAwaitTarget.left().get().name() : WAIT_OUTCOME_MATCHED);
+        }
+        return routeOrAwaitTarget;
+    }
+
+    /**
+     * Send row to the output target of the step for a route from
+     * {@link #awaitAndGetTarget(AwaitStepMeta, AwaitStepData, String, AtomicValue, Watchdog.Waiter, WaitPause)}.
+     *
+     * @param meta the Await Step Meta instance
+     * @param data the Await Step Data instance
+     * @param atomicId the id of the AtomicValue
+     * @param row the row
+     * @param route the route
+     *
+     * @throws KettleException if the timeout target cannot be found, or writing the row causes an error
+     */
+    private void putRowToAwaitRoute(final AwaitStepMeta meta, final AwaitStepData data, final String atomicId, final Object[] row, final AwaitAtomicRouteTarget route) throws KettleException {
+        switch (route) {
+            case DEFAULT:
+                putRowToDefaultTarget(data, row);
+                return;
+
+            case TIMEOUT:
+                putRowToTimeoutTarget(meta, data, row, BaseMessages.getString(PKG, "AwaitStep.Log.NoTimeoutTargetStep"));
+                return;
+
+            case THREAD_INTERRUPTED:
+                putRowToErrorTarget(data, row, ErrorCode.AWAIT_ATOMIC_WAIT_INTERRUPTED, "Thread interrupted whilst waiting for Atomic value for id: " + atomicId);
+                return;
+
+            case STUCK:
+                putRowToErrorTarget(data, row, ErrorCode.STUCK_WAIT, "Watchdog failed over stuck wait for Atomic value for id: " + atomicId);
+                return;
+
+            default:
+                throw new IllegalArgumentException("Unknown AwaitAtomicRouteTarget: " + route.name());
+        }
+    }
+
+    /**
+     * Send row to the output targets of the step for a matched await value.
+     *
+     * @param data the Await Step Data instance
+     * @param atomicId the id of the AtomicValue
+     * @param awaitTarget the matched await value
+     * @param row the row
+     *
+     * @throws KettleException if the output targets cannot be found, or writing the row causes an error
+     */
+    private void putRowToAwaitTarget(final AwaitStepData data, final String atomicId, final AwaitTarget awaitTarget, final Object[] row) throws KettleException {
         // We now send the input row to specific targets for Await success
         final Set<RowSet> atomicValueTargetRowSets = data.getOutputRowSets().get(awaitTarget.getAtomicValue());
         if (atomicValueTargetRowSets == null || atomicValueTargetRowSets.isEmpty()) {
@@ -144,36 +298,31 @@ public class AwaitStep extends AbstractAtomicStep {
         for (final RowSet awaitValueTargetRowSet : atomicValueTargetRowSets) {
             this.putRowTo(data.getOutputRowMeta(), row, awaitValueTargetRowSet);
         }
+        data.getMetrics().recordRow(awaitTarget.getTargetStep() != null ? awaitTarget.getTargetStep().getName() : awaitTarget.getTargetStepname());
 
         this.logDebug("Await DONE: <{0}>[{1}]", atomicId, strNullIfNull(nullIfEmpty(awaitTarget.getAtomicValue())));
 
-        if (awaitTarget.isDiscardAtomic()) {
-            // discard the atomic if user requested to do so
-            if (!data.removeAtomic(atomicId)) {
-                this.logError("Unable to discard Atomic with ID: {0}", atomicId);
-            }
-        }
-
         logLineNumber();
-
-        return true;  // row done!
     }
 
     /**
      * Attempts to wait for the AtomicValue to become one of the await values.
      *
-     * This method internally will loop approximately every {@link AwaitStepMeta#getWaitLoopCheckPeriod()}
-     * until the AtomicValue matches one of the await values, or {@link AwaitStepMeta#getWaitLoopTimeout()} is reached.
+     * This method internally will loop, pausing between checks by {@link AwaitStepMeta#getWaitStrategy()}
+     * for up to {@link AwaitStepMeta#getWaitLoopCheckPeriod()}, until the AtomicValue matches one of the
+     * await values, or {@link AwaitStepMeta#getWaitLoopTimeout()} is reached.
      *
      * @param meta the Await Step Meta instance
      * @param data the Await Step Data instance
      * @param atomicId the id of the AtomicValue
      * @param atomicValue the AtomicValue on which we await to reach a specific value
+     * @param waiter the waiter for the watchdog
+     * @param pause the pause between checks
      *
      * @return Either a route to target if the AtomicValue never matches one of the await values,
      *    or the AwaitTarget to route the output to when it matches one of the await values.
      */
-    private Either<AwaitAtomicRouteTarget, AwaitTarget> awaitAndGetTarget(final AwaitStepMeta meta, final AwaitStepData data, final String atomicId, AtomicValue atomicValue) {
+    private Either<AwaitAtomicRouteTarget, AwaitTarget> awaitAndGetTarget(final AwaitStepMeta meta, final AwaitStepData data, final String atomicId, AtomicValue atomicValue, final Watchdog.Waiter waiter, final WaitPause pause) {
         final AtomicType atomicType = meta.getAtomicType();
         final List<AwaitTarget> awaitValues = meta.getAwaitValues();
         if (awaitValues != null && !awaitValues.isEmpty()) {
@@ -181,10 +330,10 @@ public class AwaitStep extends AbstractAtomicStep {
             // check if one of the options is to await for `null`
             final AwaitTarget awaitNullTarget = AwaitTarget.findAwaitTargetForNullValue(awaitValues);
 
-            final long waitLoopCheckPeriod = meta.getWaitLoopCheckPeriod();
-            final long waitLoopTimeout = meta.getWaitLoopTimeout();
+            final StepMetrics metrics = data.getMetrics();
 
             long waited = 0;
+            long slowWaitThreshold = meta.isSlowWaitLogEnabled() ? meta.getSlowWaitThreshold() : Long.MAX_VALUE;
             while (true) {
 
                 if (awaitNullTarget != null && atomicValue == null) {
@@ -221,25 +370,44 @@ public class AwaitStep extends AbstractAtomicStep {
                     }  // end for
                 }
 
-                // wait and check again
-                final long sleptFor = sleepWithTimeout(waitLoopCheckPeriod, waited, waitLoopTimeout);
-
-                if (sleptFor > 0) {
-                    // slept OK
-                    waited += sleptFor;
+                // none of the values matched, wait and check again
+                if (pause.isWakeUp()) {
+                    // woke up, but the atomic value still does not match
+                    data.recordContention(atomicId, ContentionProfiler.Kind.WAKE_UP);
+                }
+                if (isStuckWaitFailOver(data, waiter)) {
+                    return Left(AwaitAtomicRouteTarget.STUCK);
+                }
+                waiter.waiting();
+                final long waitStart = System.nanoTime();
+                final WaitPause.Outcome paused = pause.pause();
+                metrics.recordWait(System.nanoTime() - waitStart);
+
+                if (paused == WaitPause.Outcome.PAUSED) {
+                    // paused OK
+                    waited = pause.getWaited();
                     // loop to try and match the atomic value again
 
-                }  else if (sleptFor == 0) {
-                    // TIMEOUT reached after sleeping
+                }  else if (paused == WaitPause.Outcome.TIMEOUT) {
+                    // TIMEOUT reached after pausing
+                    metrics.recordTimeout();
+                    AtomicEvents.get().timeout(getStepname(), getCopy(), StepLatencies.Latency.MATCH.getLabel(), atomicId, pause.getWaited(), StepMetrics.TARGET_TIMEOUT);
                     return Left(AwaitAtomicRouteTarget.TIMEOUT);
 
                 } else {
-                    // Thread INTERRUPTED whilst sleeping
+                    // Thread INTERRUPTED whilst pausing
+                    metrics.recordInterrupt();
                     return Left(AwaitAtomicRouteTarget.THREAD_INTERRUPTED);
                 }
 
                 // refresh the atomic object
                 atomicValue = data.getAtomic(atomicId, atomicType);
+                metrics.recordLookup(atomicValue != null);
+
+                if (waited >= slowWaitThreshold) {
+                    logSlowWait(data, StepLatencies.Latency.MATCH, atomicId, getAwaitedValues(meta), atomicValue, waited);
+                    slowWaitThreshold = Long.MAX_VALUE;  // only log once per wait
+                }
 
             }  // end while
         }
@@ -248,18 +416,45 @@ public class AwaitStep extends AbstractAtomicStep {
         return Left(AwaitAtomicRouteTarget.DEFAULT);
     }
 
+    /**
+     * Get a description of the await values, for events.
+     *
+     * @param meta the Await Step Meta instance
+     *
+     * @return the await values, separated by commas
+     */
+    private String getAwaitedValues(final AwaitStepMeta meta) {
+        if (awaitedValues == null) {
+            final StringBuilder builder = new StringBuilder();
+            final List<AwaitTarget> awaitValues = meta.getAwaitValues();
+            if (awaitValues != null) {
+                for (final AwaitTarget awaitValue : awaitValues) {
+                    if (builder.length() > 0) {
+                        builder.append(',');
+                    }
+                    builder.append(strNullIfNull(awaitValue.getAtomicValue()));
+                }
+            }
+            awaitedValues = builder.toString();
+        }
+        return awaitedValues;
+    }
+
     @Override
     protected void logLineNumber() {
+        exportLatencies((AwaitStepData) getStepDataInterface(), false);
         if (checkFeedback(getLinesRead())) {
             if (log.isBasic()) {
                 logBasic(BaseMessages.getString(PKG, "AwaitStep.Log.LineNumber") + getLinesRead());
             }
+            logMetrics((AwaitStepData) getStepDataInterface());
         }
     }
 
     @Override
     public boolean init(final StepMetaInterface smi, final StepDataInterface sdi) {
         final AwaitStepMeta meta = (AwaitStepMeta) smi;
+        final AwaitStepData data = (AwaitStepData) sdi;
 
         if (!super.init(smi, sdi)) {
             return false;
@@ -270,6 +465,28 @@ public class AwaitStep extends AbstractAtomicStep {
             return false;
         }
 
+        final String storageProvider = environmentSubstitute(meta.getStorageProvider());
+        try {
+            data.setStorageProvider(AtomicStorageProviders.get(storageProvider));
+        } catch (final IllegalArgumentException e) {
+            logError(BaseMessages.getString(PKG, "AwaitStep.Log.NoSuchStorageProvider", storageProvider));
+            return false;
+        }
+
+        if (meta.getBatchSize() < 1) {
+            logError(BaseMessages.getString(PKG, "AwaitStep.Log.InvalidBatchSize", Integer.toString(meta.getBatchSize())));
+            return false;
+        }
+
+        if (meta.getWorkers() < 1) {
+            logError(BaseMessages.getString(PKG, "AwaitStep.Log.InvalidWorkers", Integer.toString(meta.getWorkers())));
+            return false;
+        }
+
+        if (meta.isWorkersEnabled()) {
+            startWorkerPool(meta, data);
+        }
+
         return true;
     }
 
@@ -292,10 +509,18 @@ public class AwaitStep extends AbstractAtomicStep {
 
         final String atomicIdFieldName = environmentSubstitute(meta.getAtomicIdFieldName());
         data.setAtomicIdFieldName(atomicIdFieldName);
-        data.setAtomicIdFieldIndex(getInputRowMeta().indexOfValue(atomicIdFieldName));
-        if (data.getAtomicIdFieldIndex() < 0) {
-            throw new KettleException(BaseMessages.getString( PKG, "AwaitStep.Exception.UnableToFindFieldName", atomicIdFieldName));
+        final String[] atomicIdFieldNames = AtomicIdReader.parseFieldNames(atomicIdFieldName);
+        if (atomicIdFieldNames.length == 0) {
+            throw new KettleException(BaseMessages.getString(PKG, "AwaitStep.Exception.UnableToFindFieldName", atomicIdFieldName));
+        }
+        final int[] atomicIdFieldIndexes = new int[atomicIdFieldNames.length];
+        for (int i = 0; i < atomicIdFieldNames.length; i++) {
+            atomicIdFieldIndexes[i] = getInputRowMeta().indexOfValue(atomicIdFieldNames[i]);
+            if (atomicIdFieldIndexes[i] < 0) {
+                throw new KettleException(BaseMessages.getString(PKG, "AwaitStep.Exception.UnableToFindFieldName", atomicIdFieldNames[i]));
+            }
         }
+        data.setAtomicIdReader(new AtomicIdReader(atomicIdFieldNames, atomicIdFieldIndexes));
 
         final StepIOMetaInterface ioMeta = meta.getStepIOMeta();
 
@@ -24,7 +24,6 @@ package uk.gov.nationalarchives.pdi.step.atomics.await;
 
 import uk.gov.nationalarchives.pdi.step.atomics.AbstractAtomicStepData;
 
-
 public class AwaitStepData extends AbstractAtomicStepData {
 
     public AwaitStepData() {
@@ -47,8 +47,11 @@ import org.pentaho.di.ui.core.widget.TableView;
 import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
 import uk.gov.nationalarchives.pdi.step.atomics.ActionIfNoAtomic;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorage;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageProviders;
 import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
 import uk.gov.nationalarchives.pdi.step.atomics.NumberVerifyListener;
+import uk.gov.nationalarchives.pdi.step.atomics.WaitStrategy;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -77,6 +80,8 @@ public class AwaitStepDialog extends BaseStepDialog implements StepDialogInterfa
     private TextVar wAtomicIdField;
     private Label wAtomicTypeLabel;
     private Combo wAtomicTypeField;
+    private Label wStorageProviderLabel;
+    private Combo wStorageProviderField;
     private Label wActionIfNoAtomicLabel;
     private Combo wActionIfNoAtomicField;
     private Label wContinueAtomicTargetLabel;
@@ -98,6 +103,15 @@ public class AwaitStepDialog extends BaseStepDialog implements StepDialogInterfa
     private Text wWaitLoopTimeoutField;
     private Label wTimeoutTargetLabel;
     private CCombo wTimeoutTargetField;
+    private Label wSlowWaitThresholdLabel;
+    private Text wSlowWaitThresholdField;
+    private Label wBatchSizeLabel;
+    private Text wBatchSizeField;
+    private Label wWorkersLabel;
+    private Text wWorkersField;
+    private Button wOrderedOutputField;
+    private Label wWaitStrategyLabel;
+    private Combo wWaitStrategyField;
     private ModifyListener lsFieldsModify;
 
     public AwaitStepDialog(final Shell parent, final Object in, final TransMeta tr, final String sname) {
@@ -208,12 +222,33 @@ public class AwaitStepDialog extends BaseStepDialog implements StepDialogInterfa
                 .result();
         wAtomicIdField.setLayoutData(fdAtomicIdText);
 
+        // storage provider label/field
+        wStorageProviderLabel = new Label(settingsGroup, SWT.LEFT);
+        props.setLook(wStorageProviderLabel);
+        wStorageProviderLabel.setText(BaseMessages.getString(PKG, "AwaitStepDialog.ComboStorageProvider"));
+        final FormData fdStorageProviderLabel = new FormDataBuilder().left()
+                .top(wAtomicIdLabel, ELEMENT_SPACING)
+                .result();
+        wStorageProviderLabel.setLayoutData(fdStorageProviderLabel);
+
+        wStorageProviderField = new Combo(settingsGroup, SWT.DROP_DOWN | SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        for (final String storageProviderName : AtomicStorageProviders.getNames()) {
+            wStorageProviderField.add(storageProviderName);
+        }
+        props.setLook(wStorageProviderField);
+        wStorageProviderField.addModifyListener(lsFieldsModify);
+        final FormData fdStorageProviderField = new FormDataBuilder().left(wStorageProviderLabel, LABEL_SPACING)
+                .top(wAtomicIdLabel, ELEMENT_SPACING)
+                .width(MEDIUM_FIELD)
+                .result();
+        wStorageProviderField.setLayoutData(fdStorageProviderField);
+
         // atomic type label/field
         wAtomicTypeLabel = new Label(settingsGroup, SWT.LEFT);
         props.setLook(wAtomicTypeLabel);
         wAtomicTypeLabel.setText(BaseMessages.getString(PKG, "AwaitStepDialog.ComboAtomicType"));
         final FormData fdAtomicTypeLabel = new FormDataBuilder().left()
-                .top(wAtomicIdLabel, ELEMENT_SPACING)
+                .top(wStorageProviderLabel, ELEMENT_SPACING)
                 .result();
         wAtomicTypeLabel.setLayoutData(fdAtomicTypeLabel);
 
@@ -261,7 +296,7 @@ public class AwaitStepDialog extends BaseStepDialog implements StepDialogInterfa
             }
         });
         final FormData fdAtomicTypeField = new FormDataBuilder().left(wAtomicTypeLabel, LABEL_SPACING)
-                .top(wAtomicIdLabel, ELEMENT_SPACING)
+                .top(wStorageProviderLabel, ELEMENT_SPACING)
                 .width(SMALL_FIELD)
                 .result();
         wAtomicTypeField.setLayoutData(fdAtomicTypeField);
@@ -492,6 +527,99 @@ public class AwaitStepDialog extends BaseStepDialog implements StepDialogInterfa
                 .result();
         wTimeoutTargetField.setLayoutData(fdTimeoutTargetField);
 
+        // slow wait threshold label/field
+        wSlowWaitThresholdLabel = new Label(waitLoopGroup, SWT.LEFT);
+        props.setLook(wSlowWaitThresholdLabel);
+        wSlowWaitThresholdLabel.setText(BaseMessages.getString(PKG, "AwaitStepDialog.TextFieldSlowWaitThreshold"));
+        final FormData fdSlowWaitThresholdLabel = new FormDataBuilder().left()
+                .top(wTimeoutTargetLabel, ELEMENT_SPACING)
+                .result();
+        wSlowWaitThresholdLabel.setLayoutData(fdSlowWaitThresholdLabel);
+
+        wSlowWaitThresholdField = new Text(waitLoopGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wSlowWaitThresholdField);
+        wSlowWaitThresholdField.addModifyListener(lsFieldsModify);
+        wSlowWaitThresholdField.addVerifyListener(new NumberVerifyListener(Long::parseLong));
+        final FormData fdSlowWaitThresholdField = new FormDataBuilder().left(wSlowWaitThresholdLabel, LABEL_SPACING)
+                .top(wTimeoutTargetLabel, ELEMENT_SPACING)
+                .width(SMALL_FIELD)
+                .result();
+        wSlowWaitThresholdField.setLayoutData(fdSlowWaitThresholdField);
+
+        // batch size label/field
+        wBatchSizeLabel = new Label(waitLoopGroup, SWT.LEFT);
+        props.setLook(wBatchSizeLabel);
+        wBatchSizeLabel.setText(BaseMessages.getString(PKG, "AwaitStepDialog.TextFieldBatchSize"));
+        final FormData fdBatchSizeLabel = new FormDataBuilder().left()
+                .top(wSlowWaitThresholdLabel, ELEMENT_SPACING)
+                .result();
+        wBatchSizeLabel.setLayoutData(fdBatchSizeLabel);
+
+        wBatchSizeField = new Text(waitLoopGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wBatchSizeField);
+        wBatchSizeField.addModifyListener(lsFieldsModify);
+        wBatchSizeField.addVerifyListener(new NumberVerifyListener(Integer::parseInt));
+        final FormData fdBatchSizeField = new FormDataBuilder().left(wBatchSizeLabel, LABEL_SPACING)
+                .top(wSlowWaitThresholdLabel, ELEMENT_SPACING)
+                .width(SMALL_FIELD)
+                .result();
+        wBatchSizeField.setLayoutData(fdBatchSizeField);
+
+        // workers label/field
+        wWorkersLabel = new Label(waitLoopGroup, SWT.LEFT);
+        props.setLook(wWorkersLabel);
+        wWorkersLabel.setText(BaseMessages.getString(PKG, "AwaitStepDialog.TextFieldWorkers"));
+        final FormData fdWorkersLabel = new FormDataBuilder().left()
+                .top(wBatchSizeLabel, ELEMENT_SPACING)
+                .result();
+        wWorkersLabel.setLayoutData(fdWorkersLabel);
+
+        wWorkersField = new Text(waitLoopGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wWorkersField);
+        wWorkersField.addModifyListener(lsFieldsModify);
+        wWorkersField.addVerifyListener(new NumberVerifyListener(Integer::parseInt));
+        final FormData fdWorkersField = new FormDataBuilder().left(wWorkersLabel, LABEL_SPACING)
+                .top(wBatchSizeLabel, ELEMENT_SPACING)
+                .width(SMALL_FIELD)
+                .result();
+        wWorkersField.setLayoutData(fdWorkersField);
+
+        // ordered output checkbox
+        wOrderedOutputField = new Button(waitLoopGroup, SWT.CHECK);
+        props.setLook(wOrderedOutputField);
+        wOrderedOutputField.setText(BaseMessages.getString(PKG, "AwaitStepDialog.CheckBoxOrderedOutput"));
+        wOrderedOutputField.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(final SelectionEvent selectionEvent) {
+                meta.setChanged();
+            }
+        });
+        final FormData fdOrderedOutputField = new FormDataBuilder().left()
+                .top(wWorkersLabel, ELEMENT_SPACING)
+                .result();
+        wOrderedOutputField.setLayoutData(fdOrderedOutputField);
+
+        // wait strategy label/field
+        wWaitStrategyLabel = new Label(waitLoopGroup, SWT.LEFT);
+        props.setLook(wWaitStrategyLabel);
+        wWaitStrategyLabel.setText(BaseMessages.getString(PKG, "AwaitStepDialog.ComboWaitStrategy"));
+        final FormData fdWaitStrategyLabel = new FormDataBuilder().left()
+                .top(wOrderedOutputField, ELEMENT_SPACING)
+                .result();
+        wWaitStrategyLabel.setLayoutData(fdWaitStrategyLabel);
+
+        wWaitStrategyField = new Combo(waitLoopGroup, SWT.DROP_DOWN | SWT.READ_ONLY | SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        for (final WaitStrategy waitStrategy : WaitStrategy.values()) {
+            wWaitStrategyField.add(waitStrategy.name());
+        }
+        props.setLook(wWaitStrategyField);
+        wWaitStrategyField.addModifyListener(lsFieldsModify);
+        final FormData fdWaitStrategyField = new FormDataBuilder().left(wWaitStrategyLabel, LABEL_SPACING)
+                .top(wOrderedOutputField, ELEMENT_SPACING)
+                .width(MEDIUM_FIELD)
+                .result();
+        wWaitStrategyField.setLayoutData(fdWaitStrategyField);
+
         //Cancel and OK buttons for the bottom of the window.
         wCancel = new Button(shell, SWT.PUSH);
         wCancel.setText(BaseMessages.getString(PKG, "System.Button.Cancel"));
@@ -613,6 +741,9 @@ public class AwaitStepDialog extends BaseStepDialog implements StepDialogInterfa
         }
         wAtomicTypeField.setText(atomicType.name());
 
+        final String storageProvider = meta.getStorageProvider();
+        wStorageProviderField.setText(storageProvider != null ? storageProvider : AtomicStorage.PROVIDER_NAME);
+
         ActionIfNoAtomic actionIfNoAtomic = meta.getActionIfNoAtomic();
         if (actionIfNoAtomic == null) {
             actionIfNoAtomic = ActionIfNoAtomic.Continue;
@@ -660,6 +791,12 @@ public class AwaitStepDialog extends BaseStepDialog implements StepDialogInterfa
         wWaitLoopTimeoutField.setText(Long.toString(meta.getWaitLoopTimeout()));
 
         wTimeoutTargetField.setText(meta.getTimeoutTargetStep() == null ? "" : meta.getTimeoutTargetStep().getName());
+
+        wSlowWaitThresholdField.setText(Long.toString(meta.getSlowWaitThreshold()));
+        wBatchSizeField.setText(Integer.toString(meta.getBatchSize()));
+        wWorkersField.setText(Integer.toString(meta.getWorkers()));
+        wOrderedOutputField.setSelection(meta.isOrderedOutput());
+        wWaitStrategyField.setText(meta.getWaitStrategy().name());
     }
 
     private void saveData() {
@@ -709,6 +846,8 @@ public class AwaitStepDialog extends BaseStepDialog implements StepDialogInterfa
 
         meta.setAtomicIdFieldName(wAtomicIdField.getText());
         meta.setAtomicType(atomicType);
+        final String storageProvider = nullIfEmpty(wStorageProviderField.getText());
+        meta.setStorageProvider(AtomicStorage.PROVIDER_NAME.equals(storageProvider) ? null : storageProvider);
         meta.setActionIfNoAtomic(actionIfNoAtomic);
         if (ActionIfNoAtomic.Continue == actionIfNoAtomic) {
             final String continueTargetName = this.wContinueAtomicTargetField.getText();
@@ -760,5 +899,38 @@ public class AwaitStepDialog extends BaseStepDialog implements StepDialogInterfa
         } else {
             meta.setTimeoutTargetStep(null);
         }
+
+        try {
+            final long slowWaitThreshold = Long.parseLong(wSlowWaitThresholdField.getText());
+            meta.setSlowWaitThreshold(slowWaitThreshold);
+        } catch (final NumberFormatException e) {
+            //TODO(AR) show an error to the user
+            throw e;
+        }
+
+        try {
+            final int batchSize = Integer.parseInt(wBatchSizeField.getText());
+            meta.setBatchSize(batchSize);
+        } catch (final NumberFormatException e) {
+            //TODO(AR) show an error to the user
+            throw e;
+        }
+
+        try {
+            final int workers = Integer.parseInt(wWorkersField.getText());
+            meta.setWorkers(workers);
+        } catch (final NumberFormatException e) {
+            //TODO(AR) show an error to the user
+            throw e;
+        }
+
+        meta.setOrderedOutput(wOrderedOutputField.getSelection());
+
+        try {
+            meta.setWaitStrategy(WaitStrategy.valueOf(wWaitStrategyField.getText()));
+        } catch (final IllegalArgumentException e) {
+            //TODO(AR) show an error to the user
+            throw e;
+        }
     }
 }
@@ -46,6 +46,8 @@ import org.w3c.dom.Node;
 import uk.gov.nationalarchives.pdi.step.atomics.AbstractAtomicStepMeta;
 import uk.gov.nationalarchives.pdi.step.atomics.ActionIfNoAtomic;
 import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.WaitStrategy;
+import uk.gov.nationalarchives.pdi.step.atomics.analysis.SynchronisationAnalysis;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
@@ -89,7 +91,8 @@ public class AwaitStepMeta extends AbstractAtomicStepMeta {
         final StringBuilder builder = new StringBuilder();
         builder
                 .append(XMLHandler.addTagValue(ELEM_NAME_ATOMIC_ID_FIELD_NAME, atomicIdFieldName))
-                .append(XMLHandler.addTagValue(ELEM_NAME_ATOMIC_TYPE, atomicType.name()));
+                .append(XMLHandler.addTagValue(ELEM_NAME_ATOMIC_TYPE, atomicType.name()))
+                .append(XMLHandler.addTagValue(ELEM_NAME_STORAGE_PROVIDER, storageProvider));
 
         if (actionIfNoAtomic == ActionIfNoAtomic.Initialise) {
             builder.append(XMLHandler.addTagValue(ELEM_NAME_ACTION_IF_NO_ATOMIC, actionIfNoAtomic.name(), true, ATTR_NAME_VALUE, initialiseAtomicValue));
@@ -124,6 +127,26 @@ public class AwaitStepMeta extends AbstractAtomicStepMeta {
                     .append(XMLHandler.addTagValue(ELEM_NAME_WAIT_LOOP, null, true, ATTR_NAME_CHECK_PERIOD, Long.toString(waitLoopCheckPeriod), ATTR_NAME_TIMEOUT, Long.toString(waitLoopTimeout)));
         }
 
+        if (slowWaitThreshold != SLOW_WAIT_DISABLED) {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_SLOW_WAIT_THRESHOLD, slowWaitThreshold));
+        }
+
+        if (waitStrategy != DEFAULT_WAIT_STRATEGY) {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_WAIT_STRATEGY, waitStrategy.name()));
+        }
+
+        if (batchSize != BATCH_DISABLED) {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_BATCH_SIZE, batchSize));
+        }
+
+        if (workers != WORKERS_DISABLED) {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_WORKERS, workers));
+        }
+
+        if (!orderedOutput) {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_ORDERED_OUTPUT, Boolean.toString(orderedOutput)));
+        }
+
         return builder.toString();
     }
 
@@ -142,6 +165,8 @@ public class AwaitStepMeta extends AbstractAtomicStepMeta {
                 }
             }
 
+            this.storageProvider = nullIfEmpty(XMLHandler.getTagValue(stepnode, ELEM_NAME_STORAGE_PROVIDER));
+
             final String xActionIfNoAtomic = XMLHandler.getTagValue(stepnode, ELEM_NAME_ACTION_IF_NO_ATOMIC);
             if (xActionIfNoAtomic != null) {
                 try {
@@ -228,6 +253,47 @@ public class AwaitStepMeta extends AbstractAtomicStepMeta {
                     this.timeoutTargetStepname = xTimeoutTargetStepname;
                 }
             }
+
+            final String xSlowWaitThreshold = XMLHandler.getTagValue(stepnode, ELEM_NAME_SLOW_WAIT_THRESHOLD);
+            if (xSlowWaitThreshold != null) {
+                try {
+                    this.slowWaitThreshold = Long.parseLong(xSlowWaitThreshold);
+                } catch (final NumberFormatException e) {
+                    throw new KettleXMLException("Slow Wait Threshold '" + xSlowWaitThreshold + "' is invalid: " + e.getMessage(), e);
+                }
+            }
+
+            final String xWaitStrategy = XMLHandler.getTagValue(stepnode, ELEM_NAME_WAIT_STRATEGY);
+            if (xWaitStrategy != null) {
+                try {
+                    this.waitStrategy = WaitStrategy.valueOf(xWaitStrategy);
+                } catch (final IllegalArgumentException e) {
+                    throw new KettleXMLException("Wait Strategy '" + xWaitStrategy + "' is invalid: " + e.getMessage(), e);
+                }
+            }
+
+            final String xBatchSize = XMLHandler.getTagValue(stepnode, ELEM_NAME_BATCH_SIZE);
+            if (xBatchSize != null) {
+                try {
+                    this.batchSize = Integer.parseInt(xBatchSize);
+                } catch (final NumberFormatException e) {
+                    throw new KettleXMLException("Batch Size '" + xBatchSize + "' is invalid: " + e.getMessage(), e);
+                }
+            }
+
+            final String xWorkers = XMLHandler.getTagValue(stepnode, ELEM_NAME_WORKERS);
+            if (xWorkers != null) {
+                try {
+                    this.workers = Integer.parseInt(xWorkers);
+                } catch (final NumberFormatException e) {
+                    throw new KettleXMLException("Workers '" + xWorkers + "' is invalid: " + e.getMessage(), e);
+                }
+            }
+
+            final String xOrderedOutput = XMLHandler.getTagValue(stepnode, ELEM_NAME_ORDERED_OUTPUT);
+            if (xOrderedOutput != null) {
+                this.orderedOutput = Boolean.parseBoolean(xOrderedOutput);
+            }
         }
     }
 
@@ -256,6 +322,16 @@ public class AwaitStepMeta extends AbstractAtomicStepMeta {
                       final RowMetaInterface info, final VariableSpace space, final Repository repository,
                       final IMetaStore metaStore) {
 
+        if (batchSize < 1) {
+            final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "AwaitStepMeta.CheckResult.BatchSizeInvalid", Integer.toString(batchSize)), stepMeta);
+            remarks.add(cr);
+        }
+
+        if (workers < 1) {
+            final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "AwaitStepMeta.CheckResult.WorkersInvalid", Integer.toString(workers)), stepMeta);
+            remarks.add(cr);
+        }
+
         final StepIOMetaInterface ioMeta = this.getStepIOMeta();
         final List<StreamInterface> targetStreams = ioMeta.getTargetStreams();
         for (final StreamInterface targetStream : targetStreams) {
@@ -285,6 +361,14 @@ public class AwaitStepMeta extends AbstractAtomicStepMeta {
             final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "AwaitStepMeta.CheckResult.NoInputReceivedFromOtherSteps"), stepMeta);
             remarks.add(cr);
         }
+
+        // check the synchronisation with the other steps of the transformation
+        if (transMeta != null) {
+            for (final SynchronisationAnalysis.Finding finding : SynchronisationAnalysis.of(transMeta).getFindings(stepMeta.getName())) {
+                final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_WARNING, BaseMessages.getString(PKG, "AwaitStepMeta.CheckResult.Synchronisation." + finding.getKind().name(), finding.getAtomicId(), finding.getAwaitedValues(), finding.getBlockingSteps()), stepMeta);
+                remarks.add(cr);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,304 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.bulkinitialise;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.*;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicIdReader;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageProviders;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.MBeans;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepMetrics;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepMetricsRegistry;
+import uk.gov.nationalarchives.pdi.step.atomics.prometheus.PrometheusExporter;
+
+import javax.management.ObjectName;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.isNotEmpty;
+
+public class BulkInitialiseStep extends BaseStep implements StepInterface {
+
+    private static final Class<?> PKG = BulkInitialiseStep.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+    public BulkInitialiseStep(final StepMeta stepMeta, final StepDataInterface stepDataInterface, final int copyNr,
+            final TransMeta transMeta, final Trans trans) {
+        super(stepMeta, stepDataInterface, copyNr, transMeta, trans);
+    }
+
+    @Override
+    public boolean processRow(final StepMetaInterface smi, final StepDataInterface sdi) throws KettleException {
+        final BulkInitialiseStepMeta meta = (BulkInitialiseStepMeta) smi;
+        final BulkInitialiseStepData data = (BulkInitialiseStepData) sdi;
+
+        final Object[] row = getRow(); // try and get a row
+        if (row == null) {
+            // no more rows... initialise any remaining partial batch
+            if (!first) {
+                initialiseBatch(meta, data);
+            }
+
+            setOutputDone();
+            return false;  // signal that we are DONE
+        }
+
+        if (first) {
+            first = false;
+
+            prepare(meta, data);
+        }
+
+        // buffer the row
+        final String atomicId = getAtomicId(data, row);
+        final String initialValue = getInitialValue(meta, data, row);
+        data.getBufferedIdsAndInitialValues().add(new AbstractMap.SimpleImmutableEntry<>(atomicId, initialValue));
+        data.getBufferedRows().add(row);
+
+        // initialise the batch if it is full
+        if (data.getBufferedRows().size() >= meta.getBatchSize()) {
+            initialiseBatch(meta, data);
+        }
+
+        return true;  // row done!
+    }
+
+    /**
+     * Creates all of the buffered Atomic Values which do not yet exist,
+     * and then sends the buffered rows to the output of the step.
+     *
+     * @param meta the Step Meta instance
+     * @param data the Step Data instance
+     *
+     * @throws KettleException if the Atomic Values cannot be initialised, or writing a row causes an error
+     */
+    private void initialiseBatch(final BulkInitialiseStepMeta meta, final BulkInitialiseStepData data) throws KettleException {
+        final List<Map.Entry<String, String>> idsAndInitialValues = data.getBufferedIdsAndInitialValues();
+        if (idsAndInitialValues.isEmpty()) {
+            return;
+        }
+
+        final int created;
+        try {
+            created = data.getOrCreateAll(meta.getAtomicType(), idsAndInitialValues);
+        } catch (final IllegalArgumentException e) {
+            throw new KettleException(BaseMessages.getString(PKG, "BulkInitialiseStep.Exception.UnableToInitialiseBatch", e.getMessage()), e);
+        }
+
+        data.getMetrics().recordCreations(created);
+        this.logDetailed("Bulk Initialised {0} new Atomics from batch of {1}", created, idsAndInitialValues.size());
+
+        // send the rows of the batch to the output of the step
+        final List<Object[]> rows = data.getBufferedRows();
+        for (final Object[] row : rows) {
+            this.putRow(data.getOutputRowMeta(), row);
+            data.getMetrics().recordRow(StepMetrics.TARGET_DEFAULT);
+            logLineNumber(data);
+        }
+
+        rows.clear();
+        idsAndInitialValues.clear();
+    }
+
+    /**
+     * Get the Atomic ID from the input row.
+     *
+     * @param data the Step Data instance
+     * @param row the row
+     *
+     * @return the id from the row for the AtomicValue
+     *
+     * @throws KettleException if a field of the Atomic ID is not a String or an Integer
+     */
+    private String getAtomicId(final BulkInitialiseStepData data, final Object[] row) throws KettleException {
+        return data.getAtomicIdReader().read(row);
+    }
+
+    /**
+     * Get the initial value for the Atomic from the input row,
+     * or if there is no such field (or it is null) then the initial
+     * value from the Step Meta.
+     *
+     * @param meta the Step Meta instance
+     * @param data the Step Data instance
+     * @param row the row
+     *
+     * @return the initial value for the AtomicValue
+     */
+    private String getInitialValue(final BulkInitialiseStepMeta meta, final BulkInitialiseStepData data, final Object[] row) {
+        if (data.getInitialiseAtomicValueFieldIndex() > -1) {
+            final Object initialValue = row[data.getInitialiseAtomicValueFieldIndex()];
+            if (initialValue != null) {
+                return initialValue.toString();
+            }
+        }
+        return meta.getInitialiseAtomicValue();
+    }
+
+    private void logLineNumber(final BulkInitialiseStepData data) {
+        if (checkFeedback(getLinesRead())) {
+            if (log.isBasic()) {
+                logBasic(BaseMessages.getString(PKG, "BulkInitialiseStep.Log.LineNumber") + getLinesRead());
+            }
+            logMetrics(data);
+        }
+    }
+
+    private void logMetrics(final BulkInitialiseStepData data) {
+        if (log.isDetailed()) {
+            logDetailed("Atomic metrics: {0}", data.getMetrics());
+        }
+    }
+
+    @Override
+    public boolean init(final StepMetaInterface smi, final StepDataInterface sdi) {
+        final BulkInitialiseStepMeta meta = (BulkInitialiseStepMeta) smi;
+        final BulkInitialiseStepData data = (BulkInitialiseStepData) sdi;
+
+        if (!super.init(smi, sdi)) {
+            return false;
+        }
+
+        if (Utils.isEmpty(meta.getAtomicIdFieldName())) {
+            logError(BaseMessages.getString(PKG, "BulkInitialiseStep.Log.NoAtomicIDFieldSpecified"));
+            return false;
+        }
+
+        final String storageProvider = environmentSubstitute(meta.getStorageProvider());
+        try {
+            data.setStorageProvider(AtomicStorageProviders.get(storageProvider));
+        } catch (final IllegalArgumentException e) {
+            logError(BaseMessages.getString(PKG, "BulkInitialiseStep.Log.NoSuchStorageProvider", storageProvider));
+            return false;
+        }
+
+        if (meta.getBatchSize() < 1) {
+            logError(BaseMessages.getString(PKG, "BulkInitialiseStep.Log.InvalidBatchSize", Integer.toString(meta.getBatchSize())));
+            return false;
+        }
+
+        try {
+            PrometheusExporter.startIfConfigured();
+        } catch (final IllegalArgumentException e) {
+            logError("Invalid Prometheus configuration: " + e.getMessage(), e);
+            return false;
+        } catch (final IllegalStateException e) {
+            // metrics are optional, so the step can still run
+            logError(e.getMessage(), e);
+        }
+
+        registerMetrics(data);
+        return true;
+    }
+
+    @Override
+    public void dispose(final StepMetaInterface smi, final StepDataInterface sdi) {
+        final BulkInitialiseStepData data = (BulkInitialiseStepData) sdi;
+        logMetrics(data);
+        unregisterMetrics(data);
+
+        super.dispose(smi, sdi);
+    }
+
+    /**
+     * Registers the metrics of this step copy as a JMX MBean,
+     * and with the {@link StepMetricsRegistry} for exporters.
+     *
+     * Failure to register is logged, but does not prevent the step from running.
+     *
+     * @param data the Step Data instance
+     */
+    private void registerMetrics(final BulkInitialiseStepData data) {
+        final ObjectName metricsName = MBeans.stepMetricsName(getTransMeta() != null ? getTransMeta().getName() : null, getStepname(), getCopy());
+        try {
+            if (MBeans.register(data.getMetrics(), metricsName)) {
+                data.setMetricsName(metricsName);
+                StepMetricsRegistry.register(metricsName, data.getMetrics());
+            } else {
+                logDetailed("Metrics MBean is already registered by another step: {0}", metricsName);
+            }
+        } catch (final IllegalStateException e) {
+            logError("Unable to register metrics MBean: " + e.getMessage(), e);
+        }
+    }
+
+    private void unregisterMetrics(final BulkInitialiseStepData data) {
+        final ObjectName metricsName = data.getMetricsName();
+        if (metricsName != null) {
+            StepMetricsRegistry.unregister(metricsName);
+            try {
+                MBeans.unregister(metricsName);
+            } catch (final IllegalStateException e) {
+                logError("Unable to unregister metrics MBean: " + e.getMessage(), e);
+            }
+            data.setMetricsName(null);
+        }
+    }
+
+    /**
+     * This will prepare step for execution:
+     * <ol>
+     * <li>will copy input row meta info, fields info, etc. step related info
+     * <li>will find the indexes of the atomic id and initial value fields
+     * <li>will allocate the buffers for the batch
+     * </ol>
+     *
+     * @throws KettleException
+     *           if something goes wrong during step preparation.
+     */
+    void prepare(final BulkInitialiseStepMeta meta, final BulkInitialiseStepData data) throws KettleException {
+        final RowMetaInterface outputRowMeta = getInputRowMeta().clone();
+        meta.getFields(outputRowMeta, getStepname(), null, null, this, repository, metaStore);
+        data.setOutputRowMeta(outputRowMeta);
+
+        final String atomicIdFieldName = environmentSubstitute(meta.getAtomicIdFieldName());
+        data.setAtomicIdFieldName(atomicIdFieldName);
+        final String[] atomicIdFieldNames = AtomicIdReader.parseFieldNames(atomicIdFieldName);
+        if (atomicIdFieldNames.length == 0) {
+            throw new KettleException(BaseMessages.getString(PKG, "BulkInitialiseStep.Exception.UnableToFindFieldName", atomicIdFieldName));
+        }
+        final int[] atomicIdFieldIndexes = new int[atomicIdFieldNames.length];
+        for (int i = 0; i < atomicIdFieldNames.length; i++) {
+            atomicIdFieldIndexes[i] = getInputRowMeta().indexOfValue(atomicIdFieldNames[i]);
+            if (atomicIdFieldIndexes[i] < 0) {
+                throw new KettleException(BaseMessages.getString(PKG, "BulkInitialiseStep.Exception.UnableToFindFieldName", atomicIdFieldNames[i]));
+            }
+        }
+        data.setAtomicIdReader(new AtomicIdReader(atomicIdFieldNames, atomicIdFieldIndexes));
+
+        final String initialiseAtomicValueFieldName = environmentSubstitute(meta.getInitialiseAtomicValueFieldName());
+        if (isNotEmpty(initialiseAtomicValueFieldName)) {
+            data.setInitialiseAtomicValueFieldIndex(getInputRowMeta().indexOfValue(initialiseAtomicValueFieldName));
+            if (data.getInitialiseAtomicValueFieldIndex() < 0) {
+                throw new KettleException(BaseMessages.getString(PKG, "BulkInitialiseStep.Exception.UnableToFindFieldName", initialiseAtomicValueFieldName));
+            }
+        }
+
+        data.initBuffers(meta.getBatchSize());
+    }
+}
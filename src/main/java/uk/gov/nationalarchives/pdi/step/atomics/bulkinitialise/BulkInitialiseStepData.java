@@ -0,0 +1,131 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.bulkinitialise;
+
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.step.BaseStepData;
+import org.pentaho.di.trans.step.StepDataInterface;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicIdReader;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorage;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageProvider;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepMetrics;
+
+import javax.annotation.Nullable;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class BulkInitialiseStepData extends BaseStepData implements StepDataInterface {
+
+    private RowMetaInterface outputRowMeta;
+    private String atomicIdFieldName;
+    private AtomicIdReader atomicIdReader;
+    private int initialiseAtomicValueFieldIndex = -1;
+    private List<Object[]> bufferedRows;
+    private List<Map.Entry<String, String>> bufferedIdsAndInitialValues;
+    private AtomicStorageProvider storageProvider = AtomicStorage.INSTANCE;
+    private final StepMetrics metrics = new StepMetrics();
+    @Nullable private ObjectName metricsName;
+
+    public BulkInitialiseStepData() {
+        super();
+    }
+
+    public int getOrCreateAll(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> idsAndInitialValues) throws IllegalArgumentException {
+        return storageProvider.getOrCreateAll(atomicType, idsAndInitialValues);
+    }
+
+    public AtomicStorageProvider getStorageProvider() {
+        return storageProvider;
+    }
+
+    public void setStorageProvider(final AtomicStorageProvider storageProvider) {
+        this.storageProvider = storageProvider;
+    }
+
+    public StepMetrics getMetrics() {
+        return metrics;
+    }
+
+    public @Nullable ObjectName getMetricsName() {
+        return metricsName;
+    }
+
+    public void setMetricsName(@Nullable final ObjectName metricsName) {
+        this.metricsName = metricsName;
+    }
+
+    /**
+     * Allocates the buffers used for holding a batch.
+     *
+     * @param batchSize the maximum number of rows in a batch
+     */
+    void initBuffers(final int batchSize) {
+        this.bufferedRows = new ArrayList<>(batchSize);
+        this.bufferedIdsAndInitialValues = new ArrayList<>(batchSize);
+    }
+
+    // <editor-fold desc="get/set properties">
+    public RowMetaInterface getOutputRowMeta() {
+        return outputRowMeta;
+    }
+
+    public void setOutputRowMeta(final RowMetaInterface outputRowMeta) {
+        this.outputRowMeta = outputRowMeta;
+    }
+
+    public String getAtomicIdFieldName() {
+        return atomicIdFieldName;
+    }
+
+    public void setAtomicIdFieldName(final String atomicIdFieldName) {
+        this.atomicIdFieldName = atomicIdFieldName;
+    }
+
+    public AtomicIdReader getAtomicIdReader() {
+        return atomicIdReader;
+    }
+
+    public void setAtomicIdReader(final AtomicIdReader atomicIdReader) {
+        this.atomicIdReader = atomicIdReader;
+    }
+
+    public int getInitialiseAtomicValueFieldIndex() {
+        return initialiseAtomicValueFieldIndex;
+    }
+
+    public void setInitialiseAtomicValueFieldIndex(final int initialiseAtomicValueFieldIndex) {
+        this.initialiseAtomicValueFieldIndex = initialiseAtomicValueFieldIndex;
+    }
+
+    List<Object[]> getBufferedRows() {
+        return bufferedRows;
+    }
+
+    List<Map.Entry<String, String>> getBufferedIdsAndInitialValues() {
+        return bufferedIdsAndInitialValues;
+    }
+    // </editor-fold>
+}
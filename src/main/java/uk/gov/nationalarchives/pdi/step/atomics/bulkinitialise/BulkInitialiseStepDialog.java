@@ -0,0 +1,484 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.bulkinitialise;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.ScrolledComposite;
+import org.eclipse.swt.events.*;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.layout.FormAttachment;
+import org.eclipse.swt.layout.FormData;
+import org.eclipse.swt.layout.FormLayout;
+import org.eclipse.swt.widgets.*;
+import org.pentaho.di.core.plugins.PluginInterface;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.BaseStepMeta;
+import org.pentaho.di.trans.step.StepDialogInterface;
+import org.pentaho.di.ui.core.ConstUI;
+import org.pentaho.di.ui.core.FormDataBuilder;
+import org.pentaho.di.ui.core.gui.GUIResource;
+import org.pentaho.di.ui.core.widget.TextVar;
+import org.pentaho.di.ui.trans.step.BaseStepDialog;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorage;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageProviders;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.NumberVerifyListener;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.*;
+
+public class BulkInitialiseStepDialog extends BaseStepDialog implements StepDialogInterface {
+
+    private static Class<?> PKG = BulkInitialiseStepMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+    private static final int MARGIN_SIZE = 15;
+    private static final int LABEL_SPACING = 5;
+    private static final int ELEMENT_SPACING = 10;
+
+    private static final int MEDIUM_FIELD = 250;
+    private static final int SMALL_FIELD = 75;
+
+    private BulkInitialiseStepMeta meta;
+
+    private ScrolledComposite scrolledComposite;
+    private Composite contentComposite;
+    private Label wStepNameLabel;
+    private Text wStepNameField;
+    private Label wAtomicIdLabel;
+    private TextVar wAtomicIdField;
+    private Label wAtomicTypeLabel;
+    private Combo wAtomicTypeField;
+    private Label wStorageProviderLabel;
+    private Combo wStorageProviderField;
+    private Label wInitialiseAtomicValueLabel;
+    private Combo wInitialiseAtomicBooleanField;
+    private TextVar wInitialiseAtomicIntegerField;
+    private Label wInitialiseAtomicValueFieldLabel;
+    private TextVar wInitialiseAtomicValueFieldField;
+    private Label wBatchSizeLabel;
+    private Text wBatchSizeField;
+    private ModifyListener lsFieldsModify;
+
+    public BulkInitialiseStepDialog(final Shell parent, final Object in, final TransMeta tr, final String sname) {
+        super(parent, (BaseStepMeta) in, tr, sname);
+        meta = (BulkInitialiseStepMeta) in;
+    }
+
+    @Override
+    public String open() {
+        //Set up window
+        final Shell parent = getParent();
+        final Display display = parent.getDisplay();
+
+        shell = new Shell(parent, SWT.DIALOG_TRIM | SWT.RESIZE | SWT.MIN | SWT.MAX);
+        shell.setMinimumSize(450, 335);
+        props.setLook(shell);
+        setShellImage(shell, meta);
+
+        lsFieldsModify = new ModifyListener() {
+            @Override
+            public void modifyText(ModifyEvent e) {
+                meta.setChanged();
+            }
+        };
+
+        //15 pixel margins
+        final FormLayout formLayout = new FormLayout();
+        formLayout.marginLeft = MARGIN_SIZE;
+        formLayout.marginHeight = MARGIN_SIZE;
+        shell.setLayout(formLayout);
+        shell.setText(BaseMessages.getString(PKG, "BulkInitialiseStepDialog.Shell.Title"));
+
+        //Build a scrolling composite and a composite for holding all content
+        scrolledComposite = new ScrolledComposite(shell, SWT.V_SCROLL);
+        contentComposite = new Composite(scrolledComposite, SWT.NONE);
+        final FormLayout contentLayout = new FormLayout();
+        contentLayout.marginRight = MARGIN_SIZE;
+        contentComposite.setLayout(contentLayout);
+        final FormData compositeLayoutData = new FormDataBuilder().fullSize()
+                .result();
+        contentComposite.setLayoutData(compositeLayoutData);
+        props.setLook(contentComposite);
+
+        //Step name label and text field
+        wStepNameLabel = new Label(contentComposite, SWT.RIGHT);
+        wStepNameLabel.setText(BaseMessages.getString(PKG, "BulkInitialiseStepDialog.Stepname.Label"));
+        props.setLook(wStepNameLabel);
+        final FormData fdStepNameLabel = new FormDataBuilder().left()
+                .top()
+                .result();
+        wStepNameLabel.setLayoutData(fdStepNameLabel);
+
+        wStepNameField = new Text(contentComposite, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wStepNameField.setText(stepname);
+        props.setLook(wStepNameField);
+        wStepNameField.addModifyListener(lsFieldsModify);
+        final FormData fdStepName = new FormDataBuilder().left()
+                .top(wStepNameLabel, LABEL_SPACING)
+                .width(MEDIUM_FIELD)
+                .result();
+        wStepNameField.setLayoutData(fdStepName);
+
+        //Job icon, centered vertically between the top of the label and the bottom of the field.
+        final Label wicon = new Label(contentComposite, SWT.CENTER);
+        wicon.setImage(getImage());
+        final FormData fdIcon = new FormDataBuilder().right()
+                .top(0, 4)
+                .bottom(new FormAttachment(wStepNameField, 0, SWT.BOTTOM))
+                .result();
+        wicon.setLayoutData(fdIcon);
+        props.setLook(wicon);
+
+        //Spacer between entry info and content
+        final Label topSpacer = new Label(contentComposite, SWT.HORIZONTAL | SWT.SEPARATOR);
+        final FormData fdSpacer = new FormDataBuilder().fullWidth()
+                .top(wStepNameField, MARGIN_SIZE)
+                .result();
+        topSpacer.setLayoutData(fdSpacer);
+
+        // Group for settings
+        final Group settingsGroup = new Group(contentComposite, SWT.SHADOW_ETCHED_IN);
+        props.setLook(settingsGroup);
+        settingsGroup.setText(BaseMessages.getString(PKG, "BulkInitialiseStepDialog.GroupText.Settings"));
+        final FormLayout settingsGroupLayout = new FormLayout();
+        settingsGroupLayout.marginWidth = MARGIN_SIZE;
+        settingsGroupLayout.marginHeight = MARGIN_SIZE;
+        settingsGroup.setLayout(settingsGroupLayout);
+        final FormData settingsGroupLayoutData = new FormDataBuilder().fullWidth()
+                .top(topSpacer, MARGIN_SIZE)
+                .result();
+        settingsGroup.setLayoutData(settingsGroupLayoutData);
+
+        // atomic id name label/field
+        wAtomicIdLabel = new Label(settingsGroup, SWT.LEFT);
+        props.setLook(wAtomicIdLabel);
+        wAtomicIdLabel.setText(BaseMessages.getString(PKG, "BulkInitialiseStepDialog.TextFieldAtomicId"));
+        final FormData fdAtomicIdLabel = new FormDataBuilder().left()
+                .top()
+                .result();
+        wAtomicIdLabel.setLayoutData(fdAtomicIdLabel);
+
+        wAtomicIdField = new TextVar(transMeta, settingsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wAtomicIdField);
+        wAtomicIdField.addModifyListener(lsFieldsModify);
+        final FormData fdAtomicIdText = new FormDataBuilder().left(wAtomicIdLabel, LABEL_SPACING)
+                .top()
+                .width(MEDIUM_FIELD)
+                .result();
+        wAtomicIdField.setLayoutData(fdAtomicIdText);
+
+        // storage provider label/field
+        wStorageProviderLabel = new Label(settingsGroup, SWT.LEFT);
+        props.setLook(wStorageProviderLabel);
+        wStorageProviderLabel.setText(BaseMessages.getString(PKG, "BulkInitialiseStepDialog.ComboStorageProvider"));
+        final FormData fdStorageProviderLabel = new FormDataBuilder().left()
+                .top(wAtomicIdLabel, ELEMENT_SPACING)
+                .result();
+        wStorageProviderLabel.setLayoutData(fdStorageProviderLabel);
+
+        wStorageProviderField = new Combo(settingsGroup, SWT.DROP_DOWN | SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        for (final String storageProviderName : AtomicStorageProviders.getNames()) {
+            wStorageProviderField.add(storageProviderName);
+        }
+        props.setLook(wStorageProviderField);
+        wStorageProviderField.addModifyListener(lsFieldsModify);
+        final FormData fdStorageProviderField = new FormDataBuilder().left(wStorageProviderLabel, LABEL_SPACING)
+                .top(wAtomicIdLabel, ELEMENT_SPACING)
+                .width(MEDIUM_FIELD)
+                .result();
+        wStorageProviderField.setLayoutData(fdStorageProviderField);
+
+        // atomic type label/field
+        wAtomicTypeLabel = new Label(settingsGroup, SWT.LEFT);
+        props.setLook(wAtomicTypeLabel);
+        wAtomicTypeLabel.setText(BaseMessages.getString(PKG, "BulkInitialiseStepDialog.ComboAtomicType"));
+        final FormData fdAtomicTypeLabel = new FormDataBuilder().left()
+                .top(wStorageProviderLabel, ELEMENT_SPACING)
+                .result();
+        wAtomicTypeLabel.setLayoutData(fdAtomicTypeLabel);
+
+        wAtomicTypeField = new Combo(settingsGroup, SWT.DROP_DOWN | SWT.READ_ONLY | SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        for (final AtomicType atomicType : AtomicType.values()) {
+            wAtomicTypeField.add(atomicType.name());
+        }
+        props.setLook(wAtomicTypeField);
+        wAtomicTypeField.addModifyListener(lsFieldsModify);
+        wAtomicTypeField.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(final SelectionEvent selectionEvent) {
+                final String selected = wAtomicTypeField.getText();
+                final AtomicType atomicType = AtomicType.valueOf(selected);
+
+                wInitialiseAtomicBooleanField.setVisible(atomicType == AtomicType.Boolean);
+                wInitialiseAtomicIntegerField.setVisible(atomicType == AtomicType.Integer);
+            }
+        });
+        final FormData fdAtomicTypeField = new FormDataBuilder().left(wAtomicTypeLabel, LABEL_SPACING)
+                .top(wStorageProviderLabel, ELEMENT_SPACING)
+                .width(SMALL_FIELD)
+                .result();
+        wAtomicTypeField.setLayoutData(fdAtomicTypeField);
+
+        // initial value label/field
+        wInitialiseAtomicValueLabel = new Label(settingsGroup, SWT.LEFT);
+        props.setLook(wInitialiseAtomicValueLabel);
+        wInitialiseAtomicValueLabel.setText(BaseMessages.getString(PKG, "BulkInitialiseStepDialog.TextFieldInitialValue"));
+        final FormData fdInitialiseAtomicValueLabel = new FormDataBuilder().left()
+                .top(wAtomicTypeLabel, ELEMENT_SPACING)
+                .result();
+        wInitialiseAtomicValueLabel.setLayoutData(fdInitialiseAtomicValueLabel);
+
+        wInitialiseAtomicBooleanField = new Combo(settingsGroup, SWT.DROP_DOWN | SWT.READ_ONLY | SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wInitialiseAtomicBooleanField.add("false");
+        wInitialiseAtomicBooleanField.add("true");
+        props.setLook(wInitialiseAtomicBooleanField);
+        wInitialiseAtomicBooleanField.addModifyListener(lsFieldsModify);
+        final FormData fdInitialiseAtomicBooleanField = new FormDataBuilder().left(wInitialiseAtomicValueLabel, LABEL_SPACING)
+                .top(wAtomicTypeLabel, ELEMENT_SPACING)
+                .width(SMALL_FIELD)
+                .result();
+        wInitialiseAtomicBooleanField.setLayoutData(fdInitialiseAtomicBooleanField);
+
+        wInitialiseAtomicIntegerField = new TextVar(transMeta, settingsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wInitialiseAtomicIntegerField);
+        wInitialiseAtomicIntegerField.addModifyListener(lsFieldsModify);
+        wInitialiseAtomicIntegerField.getTextWidget().addVerifyListener(new NumberVerifyListener(Integer::parseInt));
+        final FormData fdInitialiseAtomicField = new FormDataBuilder().left(wInitialiseAtomicValueLabel, LABEL_SPACING)
+                .top(wAtomicTypeLabel, ELEMENT_SPACING)
+                .width(SMALL_FIELD)
+                .result();
+        wInitialiseAtomicIntegerField.setLayoutData(fdInitialiseAtomicField);
+
+        // initial value field name label/field
+        wInitialiseAtomicValueFieldLabel = new Label(settingsGroup, SWT.LEFT);
+        props.setLook(wInitialiseAtomicValueFieldLabel);
+        wInitialiseAtomicValueFieldLabel.setText(BaseMessages.getString(PKG, "BulkInitialiseStepDialog.TextFieldInitialValueField"));
+        final FormData fdInitialiseAtomicValueFieldLabel = new FormDataBuilder().left()
+                .top(wInitialiseAtomicValueLabel, ELEMENT_SPACING)
+                .result();
+        wInitialiseAtomicValueFieldLabel.setLayoutData(fdInitialiseAtomicValueFieldLabel);
+
+        wInitialiseAtomicValueFieldField = new TextVar(transMeta, settingsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wInitialiseAtomicValueFieldField);
+        wInitialiseAtomicValueFieldField.addModifyListener(lsFieldsModify);
+        final FormData fdInitialiseAtomicValueFieldField = new FormDataBuilder().left(wInitialiseAtomicValueFieldLabel, LABEL_SPACING)
+                .top(wInitialiseAtomicValueLabel, ELEMENT_SPACING)
+                .width(MEDIUM_FIELD)
+                .result();
+        wInitialiseAtomicValueFieldField.setLayoutData(fdInitialiseAtomicValueFieldField);
+
+        // batch size label/field
+        wBatchSizeLabel = new Label(settingsGroup, SWT.LEFT);
+        props.setLook(wBatchSizeLabel);
+        wBatchSizeLabel.setText(BaseMessages.getString(PKG, "BulkInitialiseStepDialog.TextFieldBatchSize"));
+        final FormData fdBatchSizeLabel = new FormDataBuilder().left()
+                .top(wInitialiseAtomicValueFieldLabel, ELEMENT_SPACING)
+                .result();
+        wBatchSizeLabel.setLayoutData(fdBatchSizeLabel);
+
+        wBatchSizeField = new Text(settingsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wBatchSizeField);
+        wBatchSizeField.addModifyListener(lsFieldsModify);
+        wBatchSizeField.addVerifyListener(new NumberVerifyListener(Integer::parseInt));
+        final FormData fdBatchSizeField = new FormDataBuilder().left(wBatchSizeLabel, LABEL_SPACING)
+                .top(wInitialiseAtomicValueFieldLabel, ELEMENT_SPACING)
+                .width(SMALL_FIELD)
+                .result();
+        wBatchSizeField.setLayoutData(fdBatchSizeField);
+
+        //Cancel and OK buttons for the bottom of the window.
+        wCancel = new Button(shell, SWT.PUSH);
+        wCancel.setText(BaseMessages.getString(PKG, "System.Button.Cancel"));
+        final FormData fdCancel = new FormDataBuilder().right(100, -MARGIN_SIZE)
+                .bottom()
+                .result();
+        wCancel.setLayoutData(fdCancel);
+
+        wOK = new Button(shell, SWT.PUSH);
+        wOK.setText(BaseMessages.getString(PKG, "System.Button.OK"));
+        final FormData fdOk = new FormDataBuilder().right(wCancel, -LABEL_SPACING)
+                .bottom()
+                .result();
+        wOK.setLayoutData(fdOk);
+
+        //Space between bottom buttons and the settings, final layout for settings
+        final Label bottomSpacer = new Label(shell, SWT.HORIZONTAL | SWT.SEPARATOR);
+        final FormData fdhSpacer = new FormDataBuilder().left()
+                .right(100, -MARGIN_SIZE)
+                .bottom(wCancel, -MARGIN_SIZE)
+                .result();
+        bottomSpacer.setLayoutData(fdhSpacer);
+
+        //Add everything to the scrolling composite
+        scrolledComposite.setContent(contentComposite);
+        scrolledComposite.setExpandVertical(true);
+        scrolledComposite.setExpandHorizontal(true);
+        scrolledComposite.setMinSize(contentComposite.computeSize(SWT.DEFAULT, SWT.DEFAULT));
+
+        scrolledComposite.setLayout(new FormLayout());
+        final FormData fdScrolledComposite = new FormDataBuilder().fullWidth()
+                .top()
+                .bottom(bottomSpacer, -MARGIN_SIZE * 4)
+                .result();
+        scrolledComposite.setLayoutData(fdScrolledComposite);
+        props.setLook(scrolledComposite);
+
+        //Listeners
+        lsCancel = new Listener() {
+            @Override
+            public void handleEvent(final Event e) {
+                cancel();
+            }
+        };
+        lsOK = new Listener() {
+            @Override
+            public void handleEvent(final Event e) {
+                ok();
+            }
+        };
+
+        wOK.addListener(SWT.Selection, lsOK);
+        wCancel.addListener(SWT.Selection, lsCancel);
+
+        lsDef = new SelectionAdapter() {
+            public void widgetDefaultSelected(final SelectionEvent e) {
+                ok();
+            }
+        };
+        wStepNameField.addSelectionListener(lsDef);
+
+        shell.addShellListener(new ShellAdapter() {
+            public void shellClosed(final ShellEvent e) {
+                cancel();
+            }
+        });
+
+        //Show shell
+        setSize();
+        getData(meta);
+        meta.setChanged(changed);
+        shell.open();
+        while (!shell.isDisposed()) {
+            if (!display.readAndDispatch()) {
+                display.sleep();
+            }
+        }
+
+        changed = meta.hasChanged();
+
+        return stepname;
+    }
+
+    private Image getImage() {
+        final PluginInterface plugin =
+                PluginRegistry.getInstance().getPlugin(StepPluginType.class, stepMeta.getStepMetaInterface());
+        final String id = plugin.getIds()[0];
+        if (id != null) {
+            return GUIResource.getInstance().getImagesSteps().get(id).getAsBitmapForSize(shell.getDisplay(),
+                    ConstUI.ICON_SIZE, ConstUI.ICON_SIZE);
+        }
+        return null;
+    }
+
+    private void cancel() {
+        dispose();
+    }
+
+    private void ok() {
+        // SAVE DATA
+        saveData();
+
+        // NOTIFY CHANGE
+        meta.setChanged(true);
+
+        stepname = wStepNameField.getText();
+        dispose();
+    }
+
+    private void getData(final BulkInitialiseStepMeta meta) {
+        final String atomicId = meta.getAtomicIdFieldName();
+        if (atomicId != null) {
+            wAtomicIdField.setText(atomicId);
+        }
+
+        AtomicType atomicType = meta.getAtomicType();
+        if (atomicType == null) {
+            atomicType = AtomicType.Boolean;
+        }
+        wAtomicTypeField.setText(atomicType.name());
+
+        final String storageProvider = meta.getStorageProvider();
+        wStorageProviderField.setText(storageProvider != null ? storageProvider : AtomicStorage.PROVIDER_NAME);
+
+        final String initialiseAtomicValue = meta.getInitialiseAtomicValue();
+        if (initialiseAtomicValue != null) {
+            if (AtomicType.Boolean == atomicType) {
+                wInitialiseAtomicBooleanField.setText(initialiseAtomicValue);
+                wInitialiseAtomicIntegerField.setText("0");
+            } else if (AtomicType.Integer == atomicType) {
+                wInitialiseAtomicIntegerField.setText(initialiseAtomicValue);
+                wInitialiseAtomicBooleanField.setText("false");
+            }
+        } else {
+            wInitialiseAtomicBooleanField.setText("false");
+            wInitialiseAtomicIntegerField.setText("0");
+        }
+        wInitialiseAtomicBooleanField.setVisible(atomicType == AtomicType.Boolean);
+        wInitialiseAtomicIntegerField.setVisible(atomicType == AtomicType.Integer);
+
+        wInitialiseAtomicValueFieldField.setText(emptyIfNull(meta.getInitialiseAtomicValueFieldName()));
+
+        wBatchSizeField.setText(Integer.toString(meta.getBatchSize()));
+    }
+
+    private void saveData() {
+        final AtomicType atomicType;
+        try {
+            atomicType = AtomicType.valueOf(wAtomicTypeField.getText());
+        } catch (final IllegalArgumentException e) {
+            //TODO(AR) show an error to the user
+            throw e;
+        }
+
+        meta.setAtomicIdFieldName(wAtomicIdField.getText());
+        meta.setAtomicType(atomicType);
+        final String storageProvider = nullIfEmpty(wStorageProviderField.getText());
+        meta.setStorageProvider(AtomicStorage.PROVIDER_NAME.equals(storageProvider) ? null : storageProvider);
+        if (AtomicType.Boolean == atomicType) {
+            meta.setInitialiseAtomicValue(wInitialiseAtomicBooleanField.getText());
+        } else if (AtomicType.Integer == atomicType) {
+            meta.setInitialiseAtomicValue(wInitialiseAtomicIntegerField.getText());
+        }
+        meta.setInitialiseAtomicValueFieldName(nullIfEmpty(wInitialiseAtomicValueFieldField.getText()));
+
+        try {
+            final int batchSize = Integer.parseInt(wBatchSizeField.getText());
+            meta.setBatchSize(batchSize);
+        } catch (final NumberFormatException e) {
+            //TODO(AR) show an error to the user
+            throw e;
+        }
+    }
+}
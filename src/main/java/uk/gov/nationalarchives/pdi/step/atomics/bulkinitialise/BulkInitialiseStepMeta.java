@@ -0,0 +1,282 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.bulkinitialise;
+
+import org.pentaho.di.core.CheckResult;
+import org.pentaho.di.core.CheckResultInterface;
+import org.pentaho.di.core.annotations.Step;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.repository.ObjectId;
+import org.pentaho.di.repository.Repository;
+import org.pentaho.di.repository.RepositoryDirectory;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.*;
+import org.pentaho.metastore.api.IMetaStore;
+import org.w3c.dom.Node;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.isNotEmpty;
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.isNullOrEmpty;
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.nullIfEmpty;
+
+@Step(id = "BulkInitialiseStep", image = "BulkInitialiseStep.svg", name = "Bulk Initialise Atomic Values",
+        description = "Initialises many Atomic Values in batches", categoryDescription = "Flow")
+public class BulkInitialiseStepMeta extends BaseStepMeta implements StepMetaInterface {
+
+    private static Class<?> PKG = BulkInitialiseStep.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+    // <editor-fold desc="settings XML element names">
+    private static final String ELEM_NAME_ATOMIC_ID_FIELD_NAME = "atomicIdFieldName";
+    private static final String ELEM_NAME_ATOMIC_TYPE = "atomicType";
+    private static final String ELEM_NAME_STORAGE_PROVIDER = "storageProvider";
+    private static final String ELEM_NAME_INITIALISE_ATOMIC_VALUE = "initialiseAtomicValue";
+    private static final String ATTR_NAME_FIELD_NAME = "fieldName";
+    private static final String ELEM_NAME_BATCH_SIZE = "batchSize";
+    // </editor-fold>
+
+    static final int DEFAULT_BATCH_SIZE = 10_000;
+
+    // <editor-fold desc="settings">
+    private String atomicIdFieldName;
+    private AtomicType atomicType;
+    @Nullable private String storageProvider;
+    @Nullable private String initialiseAtomicValue;
+    @Nullable private String initialiseAtomicValueFieldName;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    // </editor-fold>
+
+    @Override
+    public void setDefault() {
+        atomicIdFieldName = "";
+        atomicType = AtomicType.Boolean;
+        storageProvider = null;
+        initialiseAtomicValue = "false";
+        initialiseAtomicValueFieldName = null;
+        batchSize = DEFAULT_BATCH_SIZE;
+    }
+
+    @Override
+    public String getXML() throws KettleException {
+        final StringBuilder builder = new StringBuilder();
+        builder
+                .append(XMLHandler.addTagValue(ELEM_NAME_ATOMIC_ID_FIELD_NAME, atomicIdFieldName))
+                .append(XMLHandler.addTagValue(ELEM_NAME_ATOMIC_TYPE, atomicType.name()))
+                .append(XMLHandler.addTagValue(ELEM_NAME_STORAGE_PROVIDER, storageProvider));
+
+        if (!isNullOrEmpty(initialiseAtomicValueFieldName)) {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_INITIALISE_ATOMIC_VALUE, initialiseAtomicValue, true, ATTR_NAME_FIELD_NAME, initialiseAtomicValueFieldName));
+        } else {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_INITIALISE_ATOMIC_VALUE, initialiseAtomicValue));
+        }
+
+        builder.append(XMLHandler.addTagValue(ELEM_NAME_BATCH_SIZE, Integer.toString(batchSize)));
+
+        return builder.toString();
+    }
+
+    @Override
+    public void loadXML(final Node stepnode, final List<DatabaseMeta> databases, final IMetaStore metaStore) throws KettleXMLException {
+        final String xAtomicIdFieldName = XMLHandler.getTagValue(stepnode, ELEM_NAME_ATOMIC_ID_FIELD_NAME);
+        if (xAtomicIdFieldName != null) {
+            this.atomicIdFieldName = xAtomicIdFieldName;
+
+            final String xAtomicType = XMLHandler.getTagValue(stepnode, ELEM_NAME_ATOMIC_TYPE);
+            if (xAtomicType != null) {
+                try {
+                    this.atomicType = AtomicType.valueOf(xAtomicType);
+                } catch (final IllegalArgumentException e) {
+                    throw new KettleXMLException("Atomic type is invalid: '" + xAtomicType + "': " + e.getMessage(), e);
+                }
+            }
+
+            this.storageProvider = nullIfEmpty(XMLHandler.getTagValue(stepnode, ELEM_NAME_STORAGE_PROVIDER));
+
+            final String xInitialiseAtomicValue = XMLHandler.getTagValue(stepnode, ELEM_NAME_INITIALISE_ATOMIC_VALUE);
+            if (xInitialiseAtomicValue != null) {
+                this.initialiseAtomicValue = xInitialiseAtomicValue;
+            }
+            final Node nInitialiseAtomicValue = XMLHandler.getSubNode(stepnode, ELEM_NAME_INITIALISE_ATOMIC_VALUE);
+            if (nInitialiseAtomicValue != null) {
+                final String xInitialiseAtomicValueFieldName = XMLHandler.getTagAttribute(nInitialiseAtomicValue, ATTR_NAME_FIELD_NAME);
+                if (xInitialiseAtomicValueFieldName != null) {
+                    this.initialiseAtomicValueFieldName = xInitialiseAtomicValueFieldName;
+                }
+            }
+
+            final String xBatchSize = XMLHandler.getTagValue(stepnode, ELEM_NAME_BATCH_SIZE);
+            if (xBatchSize != null) {
+                try {
+                    this.batchSize = Integer.parseInt(xBatchSize);
+                } catch (final NumberFormatException e) {
+                    throw new KettleXMLException("Batch size '" + xBatchSize + "' is invalid: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void saveRep(final Repository repo, final IMetaStore metaStore, final ObjectId id_transformation, final ObjectId id_step)
+            throws KettleException {
+
+        final String rep = getXML();
+        repo.saveStepAttribute(id_transformation, id_step, "step-xml", rep);
+    }
+
+    @Override
+    public void readRep(final Repository repo, final IMetaStore metaStore, final ObjectId id_step, final List<DatabaseMeta> databases) throws KettleException {
+        final String rep = repo.getStepAttributeString(id_step, "step-xml");
+        if (rep == null || rep.isEmpty()) {
+            setDefault();
+        }
+
+        final Node stepnode = XMLHandler.loadXMLString(rep);
+        loadXML(stepnode, (List<DatabaseMeta>)null, (IMetaStore)null);
+    }
+
+    @Override
+    public void check(final List<CheckResultInterface> remarks, final TransMeta transMeta,
+                      final StepMeta stepMeta, final RowMetaInterface prev, final String input[], final String output[],
+                      final RowMetaInterface info, final VariableSpace space, final Repository repository,
+                      final IMetaStore metaStore) {
+
+        if (batchSize < 1) {
+            final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "BulkInitialiseStepMeta.CheckResult.BatchSizeInvalid", Integer.toString(batchSize)), stepMeta);
+            remarks.add(cr);
+        }
+
+        if (isNullOrEmpty(initialiseAtomicValueFieldName)) {
+            try {
+                atomicType.checkValidValue(initialiseAtomicValue);
+            } catch (final IllegalArgumentException e) {
+                final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "BulkInitialiseStepMeta.CheckResult.InitialiseValueInvalid", e.getMessage()), stepMeta);
+                remarks.add(cr);
+            }
+        }
+
+        if (prev == null || prev.size() == 0) {
+            final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_WARNING, BaseMessages.getString(PKG, "BulkInitialiseStepMeta.CheckResult.NotReceivingFields"), stepMeta);
+            remarks.add(cr);
+        } else {
+            final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_OK, BaseMessages.getString(PKG, "BulkInitialiseStepMeta.CheckResult.StepRecevingData", prev.size() + ""), stepMeta);
+            remarks.add(cr);
+
+            if (isNotEmpty(atomicIdFieldName) && prev.indexOfValue(atomicIdFieldName) < 0) {
+                final CheckResult crField = new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "BulkInitialiseStepMeta.CheckResult.FieldNotFound", atomicIdFieldName), stepMeta);
+                remarks.add(crField);
+            }
+            if (isNotEmpty(initialiseAtomicValueFieldName) && prev.indexOfValue(initialiseAtomicValueFieldName) < 0) {
+                final CheckResult crField = new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "BulkInitialiseStepMeta.CheckResult.FieldNotFound", initialiseAtomicValueFieldName), stepMeta);
+                remarks.add(crField);
+            }
+        }
+
+        // See if we have input streams leading to this step!
+        if (input.length > 0) {
+            final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_OK, BaseMessages.getString(PKG, "BulkInitialiseStepMeta.CheckResult.StepRecevingData2"), stepMeta);
+            remarks.add(cr);
+        } else {
+            final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "BulkInitialiseStepMeta.CheckResult.NoInputReceivedFromOtherSteps"), stepMeta);
+            remarks.add(cr);
+        }
+    }
+
+    @Override
+    public StepInterface getStep(final StepMeta stepMeta, final StepDataInterface stepDataInterface, final int cnr, final TransMeta tr, final Trans trans) {
+        return new BulkInitialiseStep(stepMeta, stepDataInterface, cnr, tr, trans);
+    }
+
+    @Override
+    public StepDataInterface getStepData() {
+        return new BulkInitialiseStepData();
+    }
+
+    @Override
+    public RepositoryDirectory getRepositoryDirectory() {
+        return super.getRepositoryDirectory();
+    }
+
+    @Override
+    public String getDialogClassName() {
+        return "uk.gov.nationalarchives.pdi.step.atomics.bulkinitialise.BulkInitialiseStepDialog";
+    }
+
+    // <editor-fold desc="settings getters and setters">
+    public String getAtomicIdFieldName() {
+        return atomicIdFieldName;
+    }
+
+    public void setAtomicIdFieldName(final String atomicIdFieldName) {
+        this.atomicIdFieldName = atomicIdFieldName;
+    }
+
+    public AtomicType getAtomicType() {
+        return atomicType;
+    }
+
+    public void setAtomicType(final AtomicType atomicType) {
+        this.atomicType = atomicType;
+    }
+
+    public @Nullable String getStorageProvider() {
+        return storageProvider;
+    }
+
+    public void setStorageProvider(@Nullable final String storageProvider) {
+        this.storageProvider = storageProvider;
+    }
+
+    public @Nullable String getInitialiseAtomicValue() {
+        return initialiseAtomicValue;
+    }
+
+    public void setInitialiseAtomicValue(@Nullable final String initialiseAtomicValue) {
+        this.initialiseAtomicValue = initialiseAtomicValue;
+    }
+
+    public @Nullable String getInitialiseAtomicValueFieldName() {
+        return initialiseAtomicValueFieldName;
+    }
+
+    public void setInitialiseAtomicValueFieldName(@Nullable final String initialiseAtomicValueFieldName) {
+        this.initialiseAtomicValueFieldName = initialiseAtomicValueFieldName;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+    // </editor-fold>
+}
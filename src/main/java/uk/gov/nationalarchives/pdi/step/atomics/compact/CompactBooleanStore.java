@@ -0,0 +1,316 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.compact;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.compact.CompactIdIndex.encodeId;
+
+/**
+ * Compact storage for very large numbers of Boolean Atomic Values.
+ *
+ * Each value is a 16-bit lane of fixed-size segments of
+ * {@link AtomicLongArray}, which holds the value together with
+ * a generation, see {@link CompactBooleanValue}, so values are
+ * updated by a lock-free compare-and-set of the word that holds
+ * their lane. Segments are allocated as they are needed, and are
+ * never moved.
+ *
+ * Ids are mapped to their lane by a {@link CompactIdIndex}.
+ * Creating and removing Atomic Values takes the write lock,
+ * and finding them takes the read lock.
+ *
+ * The lane of a removed Atomic Value is added to a free list, and is
+ * reused by the next Atomic Value that is created. Removing an Atomic
+ * Value increments the generation of its lane, so a stale reference
+ * to a removed Atomic Value becomes detached, and cannot change the value
+ * of a different Atomic Value. A lane which has reached its last
+ * generation is retired rather than reused, so its generation never wraps
+ * around to that of a stale reference; this costs one lane (2 bytes) for each
+ * {@link CompactBooleanValue#GENERATIONS} Atomic Values that are created in it.
+ */
+@ThreadSafe
+public class CompactBooleanStore {
+
+    /**
+     * The maximum length in bytes of the UTF-8 encoded id of a compact Atomic Value.
+     */
+    public static final int MAX_ID_LENGTH = CompactIdIndex.MAX_ID_LENGTH;
+
+    // each segment holds 2^16 values, in 16-bit lanes of its words
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_VALUES = 1 << SEGMENT_SHIFT;
+    private static final int LANES_PER_WORD = Long.SIZE / CompactBooleanValue.LANE_BITS;
+    private static final int SEGMENT_WORDS = SEGMENT_VALUES / LANES_PER_WORD;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    @GuardedBy("lock") private final CompactIdIndex index = new CompactIdIndex();
+    @GuardedBy("lock") private AtomicLongArray[] segments = new AtomicLongArray[1];
+    @GuardedBy("lock") private int nextLaneIndex;
+    @GuardedBy("lock") private int[] freeLaneIndexes = new int[16];
+    @GuardedBy("lock") private int freeCount;
+
+    /**
+     * Get an Atomic Value from the store.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     *
+     * @return null if there is no such atomic with the provided id, otherwise the AtomicValue
+     *
+     * @throws IllegalArgumentException if the the Atomic Value exists but has a different AtomicType to that which was requested
+     */
+    public @Nullable AtomicValue get(final String id, final AtomicType atomicType) throws IllegalArgumentException {
+        final byte[] idBytes = encodeId(id);
+        lock.readLock().lock();
+        try {
+            final int laneIndex = index.get(idBytes);
+            if (laneIndex == -1) {
+                return null;
+            }
+            return valueAt(laneIndex, id, atomicType);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get an Atomic Value from the store,
+     * or Create it if there is no existing Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     * @param initialValue the initial value for the Atomic Value if it is created
+     *
+     * @return the existing or newly created AtomicValue
+     *
+     * @throws IllegalArgumentException if the the Atomic Value exists but has a different AtomicType to that which was requested,
+     *     or if an Atomic Value which is not a Boolean would be created
+     * @throws IllegalStateException if the store is full
+     */
+    public AtomicValue getOrCreate(final String id, final AtomicType atomicType, final String initialValue) throws IllegalArgumentException, IllegalStateException {
+        final byte[] idBytes = encodeId(id);
+
+        // 1) optimistically try and get the value
+        lock.readLock().lock();
+        try {
+            final int existingLaneIndex = index.get(idBytes);
+            if (existingLaneIndex != -1) {
+                return valueAt(existingLaneIndex, id, atomicType);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // 2) no such value, lock for create
+        final boolean value = encodeValue(id, atomicType, initialValue);
+        lock.writeLock().lock();
+        try {
+
+            // 2.1) another thread may have created it before we took the lock
+            final int laneIndex = index.get(idBytes);
+            if (laneIndex != -1) {
+                return valueAt(laneIndex, id, atomicType);
+            }
+
+            // 3) still no value, so create one
+            return valueAt(create(idBytes, value), id, atomicType);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get or Create a batch of Atomic Values in the store.
+     *
+     * The write lock is taken only once for the entire batch.
+     *
+     * @param atomicType the type of the Atomic Values
+     * @param batch pairs of the identifier and initial value of each Atomic Value
+     *
+     * @return the number of Atomic Values that were created, i.e. excluding those that already existed
+     *
+     * @throws IllegalArgumentException if an initial value is invalid for the AtomicType,
+     *     or if an Atomic Value which is not a Boolean would be created
+     * @throws IllegalStateException if the store is full
+     */
+    public int getOrCreateAll(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> batch) throws IllegalArgumentException, IllegalStateException {
+        final byte[][] idBytes = new byte[batch.size()][];
+        final boolean[] values = new boolean[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            idBytes[i] = encodeId(batch.get(i).getKey());
+            values[i] = encodeValue(batch.get(i).getKey(), atomicType, batch.get(i).getValue());
+        }
+
+        lock.writeLock().lock();
+        try {
+            int created = 0;
+            for (int i = 0; i < idBytes.length; i++) {
+                if (index.get(idBytes[i]) == -1) {
+                    create(idBytes[i], values[i]);
+                    created++;
+                }
+            }
+            return created;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove an Atomic Value from the store.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return true if the Atomic Value was removed, false if there was no such Atomic Value
+     */
+    public boolean remove(final String id) {
+        final byte[] idBytes = encodeId(id);
+        lock.writeLock().lock();
+        try {
+            final int laneIndex = index.remove(idBytes);
+            if (laneIndex == -1) {
+                return false;
+            }
+
+            // detach any stale references, and then add the lane to the free list, unless it is retired
+            final CompactBooleanValue lane = valueAt(laneIndex);
+            if (!lane.nextGeneration()) {
+                return true;
+            }
+            if (freeCount == freeLaneIndexes.length) {
+                freeLaneIndexes = Arrays.copyOf(freeLaneIndexes, freeCount * 2);
+            }
+            freeLaneIndexes[freeCount++] = laneIndex;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of Atomic Values in the store.
+     *
+     * @return the number of Atomic Values
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of lanes which have ever been used,
+     * i.e. including those which are free for reuse.
+     *
+     * Used for testing!
+     *
+     * @return the number of lanes
+     */
+    int lanes() {
+        lock.readLock().lock();
+        try {
+            return nextLaneIndex;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Creates an Atomic Value for an id which is not in the store.
+     *
+     * Must only be called whilst holding the write lock.
+     *
+     * @return the index of the lane
+     */
+    @GuardedBy("lock")
+    private int create(final byte[] idBytes, final boolean value) throws IllegalStateException {
+        final int laneIndex;
+        if (freeCount > 0) {
+            // reuse the lane of a removed Atomic Value, its generation was incremented when it was removed
+            laneIndex = freeLaneIndexes[--freeCount];
+
+        } else {
+            if (nextLaneIndex == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Compact Boolean store is full, it has " + index.size() + " Atomic Values");
+            }
+
+            laneIndex = nextLaneIndex;
+            final int segment = laneIndex >>> SEGMENT_SHIFT;
+            if (segment == segments.length) {
+                segments = Arrays.copyOf(segments, segments.length * 2);
+            }
+            if (segments[segment] == null) {
+                segments[segment] = new AtomicLongArray(SEGMENT_WORDS);
+            }
+            nextLaneIndex++;
+        }
+
+        index.put(idBytes, laneIndex);
+
+        // other lanes of the same word may be changed concurrently, so the lane is set by a compare-and-set
+        valueAt(laneIndex).initialise(value);
+        return laneIndex;
+    }
+
+    /**
+     * Must only be called whilst holding the read or write lock, so that
+     * the lane cannot be removed, and its generation is that of its Atomic Value.
+     */
+    @GuardedBy("lock")
+    private CompactBooleanValue valueAt(final int laneIndex) {
+        final AtomicLongArray segment = segments[laneIndex >>> SEGMENT_SHIFT];
+        final int value = laneIndex & (SEGMENT_VALUES - 1);
+        return new CompactBooleanValue(segment, value / LANES_PER_WORD, (value % LANES_PER_WORD) * CompactBooleanValue.LANE_BITS);
+    }
+
+    @GuardedBy("lock")
+    private AtomicValue valueAt(final int laneIndex, final String id, final AtomicType atomicType) throws IllegalArgumentException {
+        if (atomicType != AtomicType.Boolean) {
+            throw new IllegalArgumentException("Requested type: " + atomicType + " but found type: " + AtomicType.Boolean + " for id: " + id);
+        }
+        return valueAt(laneIndex);
+    }
+
+    private static boolean encodeValue(final String id, final AtomicType atomicType, final String value) throws IllegalArgumentException {
+        if (atomicType != AtomicType.Boolean) {
+            throw new IllegalArgumentException("Only Boolean Atomic Values can be stored compactly, but requested type: " + atomicType + " for id: " + id);
+        }
+        atomicType.checkValidValue(value);
+        return Boolean.parseBoolean(value);
+    }
+}
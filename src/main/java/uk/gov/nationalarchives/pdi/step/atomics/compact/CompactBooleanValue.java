@@ -0,0 +1,174 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.compact;
+
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicBooleanValue;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An {@link AtomicBooleanValue} whose value is a
+ * 16-bit lane of a word of a {@link CompactBooleanStore}.
+ *
+ * The lowest bit of the lane is the value, and the remaining bits are
+ * a generation, which is incremented when the Atomic Value is removed,
+ * so that the lane may be reused for a new Atomic Value. The generation
+ * never wraps around, a lane is retired once it reaches its last generation,
+ * see {@link #nextGeneration()}.
+ *
+ * Once the Atomic Value has been removed, this value becomes detached: it
+ * continues from the last value that it saw, and no longer changes the lane.
+ * Unlike a removed on-heap Atomic Value, each stale reference is detached on
+ * its own, so a change made through one stale reference is not seen by another,
+ * nor is a change made through another reference that this reference had not yet seen.
+ */
+@ThreadSafe
+public class CompactBooleanValue extends AtomicBooleanValue {
+
+    static final int LANE_BITS = 16;
+
+    /**
+     * The number of generations of a lane.
+     */
+    static final int GENERATIONS = 1 << (LANE_BITS - 1);
+
+    private static final int LANE_MASK = (1 << LANE_BITS) - 1;
+
+    private final AtomicLongArray segment;
+    private final int word;
+    private final int shift;
+    private final int generation;
+    private volatile boolean lastValue;
+    @Nullable private volatile AtomicBoolean detached;
+
+    CompactBooleanValue(final AtomicLongArray segment, final int word, final int shift) {
+        this.segment = segment;
+        this.word = word;
+        this.shift = shift;
+        final int lane = laneOf(segment.get(word));
+        this.generation = lane >>> 1;
+        this.lastValue = (lane & 1) != 0;
+    }
+
+    @Override
+    public boolean get() {
+        final AtomicBoolean detachedValue = detached;
+        if (detachedValue != null) {
+            return detachedValue.get();
+        }
+
+        final int lane = laneOf(segment.get(word));
+        if (lane >>> 1 != generation) {
+            return detach().get();
+        }
+        return observe((lane & 1) != 0);
+    }
+
+    @Override
+    public boolean compareAndSet(final boolean expect, final boolean update) {
+        final AtomicBoolean detachedValue = detached;
+        if (detachedValue != null) {
+            return detachedValue.compareAndSet(expect, update);
+        }
+
+        while (true) {
+            final long current = segment.get(word);
+            final int lane = laneOf(current);
+            if (lane >>> 1 != generation) {
+                // the Atomic Value has been removed
+                return detach().compareAndSet(expect, update);
+            }
+            if (((lane & 1) != 0) != expect) {
+                observe(!expect);
+                return false;
+            }
+            if (expect == update) {
+                return true;
+            }
+
+            // retry if another lane of the same word was changed concurrently
+            if (segment.compareAndSet(word, current, withLane(current, (generation << 1) | (update ? 1 : 0)))) {
+                observe(update);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Sets the value of a newly created Atomic Value, keeping the generation of the lane.
+     *
+     * @param value the initial value
+     */
+    void initialise(final boolean value) {
+        long current;
+        do {
+            current = segment.get(word);
+        } while (!segment.compareAndSet(word, current, withLane(current, (generation << 1) | (value ? 1 : 0))));
+        lastValue = value;
+    }
+
+    /**
+     * Increments the generation of the lane when its Atomic Value
+     * is removed, so that any references to it become detached.
+     *
+     * @return true if the lane may be reused, or false if it has reached
+     *     its last generation, and must be retired, as reusing it would
+     *     wrap its generation around to that of a stale reference
+     */
+    boolean nextGeneration() {
+        final int nextGeneration = generation + 1;
+        long current;
+        do {
+            // NOTE: a stale reference may still compare-and-set the lane until its generation is incremented
+            current = segment.get(word);
+        } while (!segment.compareAndSet(word, current, withLane(current, nextGeneration << 1)));
+        return nextGeneration < GENERATIONS - 1;
+    }
+
+    private boolean observe(final boolean value) {
+        if (value != lastValue) {
+            lastValue = value;
+        }
+        return value;
+    }
+
+    private synchronized AtomicBoolean detach() {
+        AtomicBoolean detachedValue = detached;
+        if (detachedValue == null) {
+            detachedValue = new AtomicBoolean(lastValue);
+            detached = detachedValue;
+        }
+        return detachedValue;
+    }
+
+    private int laneOf(final long current) {
+        return (int) (current >>> shift) & LANE_MASK;
+    }
+
+    private long withLane(final long current, final int lane) {
+        return (current & ~((long) LANE_MASK << shift)) | ((long) lane << shift);
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.compact;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * An open-addressing hash table from the id of
+ * an Atomic Value to the index of its value.
+ *
+ * The table is two int arrays, the offset of the id and
+ * the index of its value. The UTF-8 encoded ids are packed
+ * end-to-end into large byte chunks rather than held as Strings.
+ * The space used by the ids of removed entries is reclaimed when
+ * the table is next resized.
+ */
+@NotThreadSafe
+class CompactIdIndex {
+
+    /**
+     * The maximum length in bytes of the UTF-8 encoded id of a compact Atomic Value.
+     */
+    static final int MAX_ID_LENGTH = 0xFFFF;
+
+    // each chunk of ids holds 1 MB, every id is prefixed by its length as 2 bytes
+    private static final int CHUNK_SHIFT = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int MAX_CHUNKS = Integer.MAX_VALUE >>> CHUNK_SHIFT;
+
+    private static final int SLOT_EMPTY = -1;
+    private static final int SLOT_REMOVED = -2;
+
+    // leave some empty slots so that probing stays short
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] idOffsets;
+    private int[] valueIndexes;
+    private int live;
+    private int used;
+
+    private byte[][] chunks;
+    private int chunkCount;
+    private int chunkEnd;
+
+    CompactIdIndex() {
+        this.idOffsets = new int[MIN_CAPACITY];
+        this.valueIndexes = newValueIndexes(MIN_CAPACITY);
+        this.chunks = new byte[1][];
+    }
+
+    /**
+     * Get the index of the value of an id.
+     *
+     * @param idBytes the UTF-8 encoded id
+     *
+     * @return the index of the value, or -1 if there is no such id
+     */
+    int get(final byte[] idBytes) {
+        final int slot = find(idBytes);
+        return slot == -1 ? -1 : valueIndexes[slot];
+    }
+
+    /**
+     * Put the index of the value of an id which is not in the table.
+     *
+     * @param idBytes the UTF-8 encoded id
+     * @param valueIndex the index of the value, must not be negative
+     *
+     * @throws IllegalStateException if the table is full
+     */
+    void put(final byte[] idBytes, final int valueIndex) throws IllegalStateException {
+        if (used + 1 > (int) (valueIndexes.length * MAX_LOAD_FACTOR)) {
+            resize(live + 1);
+        }
+
+        // the id is known to be absent, so the first removed slot may be reused
+        insert(idBytes, 0, idBytes.length, appendId(idBytes, 0, idBytes.length), valueIndex);
+        live++;
+    }
+
+    /**
+     * Remove an id.
+     *
+     * @param idBytes the UTF-8 encoded id
+     *
+     * @return the index of the value of the removed id, or -1 if there was no such id
+     */
+    int remove(final byte[] idBytes) {
+        final int slot = find(idBytes);
+        if (slot == -1) {
+            return -1;
+        }
+        final int valueIndex = valueIndexes[slot];
+        valueIndexes[slot] = SLOT_REMOVED;
+        live--;
+        return valueIndex;
+    }
+
+    /**
+     * Get the number of ids in the table.
+     *
+     * @return the number of ids
+     */
+    int size() {
+        return live;
+    }
+
+    /**
+     * Find the live slot for an id.
+     *
+     * @return the index of the slot, or -1 if there is no live slot for the id
+     */
+    private int find(final byte[] idBytes) {
+        final int mask = valueIndexes.length - 1;
+        int slot = hash(idBytes, 0, idBytes.length) & mask;
+
+        // the load factor guarantees that there is always an empty slot
+        while (true) {
+            final int valueIndex = valueIndexes[slot];
+            if (valueIndex == SLOT_EMPTY) {
+                return -1;
+            }
+            if (valueIndex != SLOT_REMOVED && idEquals(idOffsets[slot], idBytes)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void insert(final byte[] id, final int from, final int length, final int idOffset, final int valueIndex) {
+        final int mask = valueIndexes.length - 1;
+        int slot = hash(id, from, length) & mask;
+        while (valueIndexes[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        if (valueIndexes[slot] == SLOT_EMPTY) {
+            used++;
+        }
+        idOffsets[slot] = idOffset;
+        valueIndexes[slot] = valueIndex;
+    }
+
+    /**
+     * Rebuilds the table and the chunks of ids with only the live ids,
+     * so that at most half of the slots are used.
+     */
+    private void resize(final int required) throws IllegalStateException {
+        final int capacity = ceilingPowerOfTwo(Math.max(MIN_CAPACITY, (long) required * 2));
+
+        final int[] oldIdOffsets = idOffsets;
+        final int[] oldValueIndexes = valueIndexes;
+        final byte[][] oldChunks = chunks;
+
+        idOffsets = new int[capacity];
+        valueIndexes = newValueIndexes(capacity);
+        used = 0;
+        chunks = new byte[Math.max(1, chunkCount)][];
+        chunkCount = 0;
+        chunkEnd = 0;
+
+        for (int oldSlot = 0; oldSlot < oldValueIndexes.length; oldSlot++) {
+            if (oldValueIndexes[oldSlot] >= 0) {
+                final int oldIdOffset = oldIdOffsets[oldSlot];
+                final byte[] chunk = oldChunks[oldIdOffset >>> CHUNK_SHIFT];
+                final int from = (oldIdOffset & (CHUNK_SIZE - 1)) + 2;
+                final int length = idLength(chunk, oldIdOffset & (CHUNK_SIZE - 1));
+                insert(chunk, from, length, appendId(chunk, from, length), oldValueIndexes[oldSlot]);
+            }
+        }
+    }
+
+    /**
+     * Appends an id to the chunks.
+     *
+     * @return the offset of the id in the chunks
+     */
+    private int appendId(final byte[] id, final int from, final int length) throws IllegalStateException {
+        if (chunkCount == 0 || chunkEnd + 2 + length > CHUNK_SIZE) {
+            if (chunkCount == MAX_CHUNKS) {
+                throw new IllegalStateException("Compact store is full, the ids of its Atomic Values use " + ((long) chunkCount * CHUNK_SIZE) + " bytes");
+            }
+            if (chunkCount == chunks.length) {
+                chunks = Arrays.copyOf(chunks, Math.min(MAX_CHUNKS, chunks.length * 2));
+            }
+            chunks[chunkCount++] = new byte[CHUNK_SIZE];
+            chunkEnd = 0;
+        }
+
+        final byte[] chunk = chunks[chunkCount - 1];
+        final int idOffset = ((chunkCount - 1) << CHUNK_SHIFT) | chunkEnd;
+        chunk[chunkEnd] = (byte) (length >>> 8);
+        chunk[chunkEnd + 1] = (byte) length;
+        System.arraycopy(id, from, chunk, chunkEnd + 2, length);
+        chunkEnd += 2 + length;
+        return idOffset;
+    }
+
+    private boolean idEquals(final int idOffset, final byte[] idBytes) {
+        final byte[] chunk = chunks[idOffset >>> CHUNK_SHIFT];
+        final int pos = idOffset & (CHUNK_SIZE - 1);
+        if (idLength(chunk, pos) != idBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < idBytes.length; i++) {
+            if (chunk[pos + 2 + i] != idBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int idLength(final byte[] chunk, final int pos) {
+        return ((chunk[pos] & 0xFF) << 8) | (chunk[pos + 1] & 0xFF);
+    }
+
+    /**
+     * The table uses the low bits of the hash,
+     * so callers that shard ids should use the high bits.
+     */
+    static int hash(final byte[] id, final int from, final int length) {
+        int h = 0;
+        for (int i = from; i < from + length; i++) {
+            h = 31 * h + id[i];
+        }
+        // spread the low bits, as the ids of a population often differ only in their last few characters
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    static byte[] encodeId(final String id) throws IllegalArgumentException {
+        final byte[] idBytes = id.getBytes(UTF_8);
+        if (idBytes.length > MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("The id of a compact Atomic Value must be no longer than " + MAX_ID_LENGTH + " bytes, but was " + idBytes.length + ": " + id);
+        }
+        return idBytes;
+    }
+
+    private static int[] newValueIndexes(final int capacity) {
+        final int[] valueIndexes = new int[capacity];
+        Arrays.fill(valueIndexes, SLOT_EMPTY);
+        return valueIndexes;
+    }
+
+    private static int ceilingPowerOfTwo(final long n) throws IllegalStateException {
+        if (n > (1 << 30)) {
+            throw new IllegalStateException("Compact store is full, capacity is too large: " + n);
+        }
+        return n <= 1 ? 1 : Integer.highestOneBit((int) n - 1) << 1;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.compact;
+
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageProvider;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link AtomicStorageProvider} which stores every
+ * Atomic Value in a {@link CompactIntegerStore}, for
+ * very large numbers of Integer Atomic Values.
+ *
+ * Boolean Atomic Values cannot be created by this provider.
+ */
+@ThreadSafe
+public class CompactIntegerStorageProvider implements AtomicStorageProvider {
+
+    public static final String PROVIDER_NAME = "compact-integer";
+
+    private final CompactIntegerStore store = new CompactIntegerStore();
+
+    @Override
+    public String getName() {
+        return PROVIDER_NAME;
+    }
+
+    @Override
+    public @Nullable AtomicValue getAtomic(final String id, final AtomicType atomicType) throws IllegalArgumentException {
+        return store.get(id, atomicType);
+    }
+
+    @Override
+    public AtomicValue getOrCreateAtomic(final String id, final AtomicType atomicType, final String initialValue) throws IllegalArgumentException {
+        return store.getOrCreate(id, atomicType, initialValue);
+    }
+
+    @Override
+    public int getOrCreateAll(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> batch) throws IllegalArgumentException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        return store.getOrCreateAll(atomicType, batch);
+    }
+
+    @Override
+    public boolean removeAtomic(final String id) {
+        return store.remove(id);
+    }
+}
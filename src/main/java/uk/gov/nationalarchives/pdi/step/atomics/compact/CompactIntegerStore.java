@@ -0,0 +1,385 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.compact;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.compact.CompactIdIndex.encodeId;
+
+/**
+ * Compact storage for very large numbers of Integer Atomic Values.
+ *
+ * Each value is a 64-bit slot of fixed-size segments of
+ * {@link AtomicLongArray}, which holds the value together with
+ * a generation, see {@link CompactIntegerValue}, so values are
+ * updated by a lock-free compare-and-set of their slot. Segments
+ * are allocated as they are needed, and are never moved.
+ *
+ * Ids are split by their hash between a fixed number of shards,
+ * each of which has its own lock, {@link CompactIdIndex} and
+ * segments. Creating and removing Atomic Values takes the write
+ * lock of their shard, and finding them takes the read lock of their
+ * shard. As the index of each shard is resized independently, a resize
+ * only blocks the ids of one shard, and only rehashes a fraction of
+ * all the ids.
+ *
+ * The slot of a removed Atomic Value is linked into a free list of
+ * its shard, and is reused by the next Atomic Value that is created
+ * in the shard. Removing an Atomic Value increments the generation of
+ * its slot, so a stale reference to a removed Atomic Value becomes
+ * detached, and can never change the value of a different Atomic Value.
+ */
+@ThreadSafe
+public class CompactIntegerStore {
+
+    /**
+     * The maximum length in bytes of the UTF-8 encoded id of a compact Atomic Value.
+     */
+    public static final int MAX_ID_LENGTH = CompactIdIndex.MAX_ID_LENGTH;
+
+    private static final int SHARD_BITS = 6;
+    private static final int SHARDS = 1 << SHARD_BITS;
+
+    // each segment of a shard holds 2^14 values
+    private static final int SEGMENT_SHIFT = 14;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    // the end of the free list of slots
+    private static final int NO_FREE_SLOT = -1;
+
+    private final Shard[] shards;
+
+    public CompactIntegerStore() {
+        this.shards = new Shard[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Get an Atomic Value from the store.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     *
+     * @return null if there is no such atomic with the provided id, otherwise the AtomicValue
+     *
+     * @throws IllegalArgumentException if the the Atomic Value exists but has a different AtomicType to that which was requested
+     */
+    public @Nullable AtomicValue get(final String id, final AtomicType atomicType) throws IllegalArgumentException {
+        final byte[] idBytes = encodeId(id);
+        final Shard shard = shardFor(idBytes);
+        shard.lock.readLock().lock();
+        try {
+            final int slot = shard.index.get(idBytes);
+            if (slot == -1) {
+                return null;
+            }
+            return shard.valueAt(slot, id, atomicType);
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get an Atomic Value from the store,
+     * or Create it if there is no existing Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     * @param initialValue the initial value for the Atomic Value if it is created
+     *
+     * @return the existing or newly created AtomicValue
+     *
+     * @throws IllegalArgumentException if the the Atomic Value exists but has a different AtomicType to that which was requested,
+     *     or if an Atomic Value which is not an Integer would be created
+     * @throws IllegalStateException if the store is full
+     */
+    public AtomicValue getOrCreate(final String id, final AtomicType atomicType, final String initialValue) throws IllegalArgumentException, IllegalStateException {
+        final byte[] idBytes = encodeId(id);
+        final Shard shard = shardFor(idBytes);
+
+        // 1) optimistically try and get the value
+        shard.lock.readLock().lock();
+        try {
+            final int existingSlot = shard.index.get(idBytes);
+            if (existingSlot != -1) {
+                return shard.valueAt(existingSlot, id, atomicType);
+            }
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+
+        // 2) no such value, lock for create
+        final int value = encodeValue(id, atomicType, initialValue);
+        shard.lock.writeLock().lock();
+        try {
+
+            // 2.1) another thread may have created it before we took the lock
+            final int slot = shard.index.get(idBytes);
+            if (slot != -1) {
+                return shard.valueAt(slot, id, atomicType);
+            }
+
+            // 3) still no value, so create one
+            return shard.valueAt(shard.create(idBytes, value), id, atomicType);
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get or Create a batch of Atomic Values in the store.
+     *
+     * The write lock of each shard is taken only once for the entire batch.
+     *
+     * @param atomicType the type of the Atomic Values
+     * @param batch pairs of the identifier and initial value of each Atomic Value
+     *
+     * @return the number of Atomic Values that were created, i.e. excluding those that already existed
+     *
+     * @throws IllegalArgumentException if an initial value is invalid for the AtomicType,
+     *     or if an Atomic Value which is not an Integer would be created
+     * @throws IllegalStateException if the store is full
+     */
+    public int getOrCreateAll(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> batch) throws IllegalArgumentException, IllegalStateException {
+        final byte[][] idBytes = new byte[batch.size()][];
+        final int[] values = new int[batch.size()];
+        final int[] shardStarts = new int[SHARDS + 1];
+        for (int i = 0; i < batch.size(); i++) {
+            idBytes[i] = encodeId(batch.get(i).getKey());
+            values[i] = encodeValue(batch.get(i).getKey(), atomicType, batch.get(i).getValue());
+            shardStarts[shardIndex(idBytes[i]) + 1]++;
+        }
+
+        // group the batch by shard, keeping the order of the batch within each shard
+        for (int s = 0; s < SHARDS; s++) {
+            shardStarts[s + 1] += shardStarts[s];
+        }
+        final int[] order = new int[batch.size()];
+        final int[] shardEnds = Arrays.copyOf(shardStarts, SHARDS);
+        for (int i = 0; i < batch.size(); i++) {
+            order[shardEnds[shardIndex(idBytes[i])]++] = i;
+        }
+
+        int created = 0;
+        for (int s = 0; s < SHARDS; s++) {
+            if (shardStarts[s] == shardStarts[s + 1]) {
+                continue;
+            }
+
+            final Shard shard = shards[s];
+            shard.lock.writeLock().lock();
+            try {
+                for (int j = shardStarts[s]; j < shardStarts[s + 1]; j++) {
+                    final int i = order[j];
+                    if (shard.index.get(idBytes[i]) == -1) {
+                        shard.create(idBytes[i], values[i]);
+                        created++;
+                    }
+                }
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Remove an Atomic Value from the store.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return true if the Atomic Value was removed, false if there was no such Atomic Value
+     */
+    public boolean remove(final String id) {
+        final byte[] idBytes = encodeId(id);
+        final Shard shard = shardFor(idBytes);
+        shard.lock.writeLock().lock();
+        try {
+            final int slot = shard.index.remove(idBytes);
+            if (slot == -1) {
+                return false;
+            }
+            shard.freeSlot(slot);
+            return true;
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of Atomic Values in the store.
+     *
+     * The shards are counted one at a time, so the result is only
+     * exact if no Atomic Values are concurrently created or removed.
+     *
+     * @return the number of Atomic Values
+     */
+    public long size() {
+        long size = 0;
+        for (final Shard shard : shards) {
+            shard.lock.readLock().lock();
+            try {
+                size += shard.index.size();
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the number of slots which have ever been used,
+     * i.e. including those which are free for reuse.
+     *
+     * Used for testing!
+     *
+     * @return the number of slots
+     */
+    long slots() {
+        long slots = 0;
+        for (final Shard shard : shards) {
+            shard.lock.readLock().lock();
+            try {
+                slots += shard.nextSlot;
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+        return slots;
+    }
+
+    private Shard shardFor(final byte[] idBytes) {
+        return shards[shardIndex(idBytes)];
+    }
+
+    /**
+     * Uses the high bits of the hash, as the index of the shard uses the low bits.
+     */
+    private static int shardIndex(final byte[] idBytes) {
+        return CompactIdIndex.hash(idBytes, 0, idBytes.length) >>> (Integer.SIZE - SHARD_BITS);
+    }
+
+    private static int encodeValue(final String id, final AtomicType atomicType, final String value) throws IllegalArgumentException {
+        if (atomicType != AtomicType.Integer) {
+            throw new IllegalArgumentException("Only Integer Atomic Values can be stored compactly, but requested type: " + atomicType + " for id: " + id);
+        }
+        atomicType.checkValidValue(value);
+        return Integer.parseInt(value);
+    }
+
+    private static final class Shard {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        @GuardedBy("lock") private final CompactIdIndex index = new CompactIdIndex();
+        @GuardedBy("lock") private AtomicLongArray[] segments = new AtomicLongArray[1];
+        @GuardedBy("lock") private int nextSlot;
+        @GuardedBy("lock") private int freeSlot = NO_FREE_SLOT;
+
+        /**
+         * Creates an Atomic Value for an id which is not in the shard.
+         *
+         * Must only be called whilst holding the write lock.
+         *
+         * @return the index of the slot
+         */
+        @GuardedBy("lock")
+        private int create(final byte[] idBytes, final int value) throws IllegalStateException {
+            final int slot;
+            final int generation;
+            if (freeSlot != NO_FREE_SLOT) {
+                // reuse the slot of a removed Atomic Value, its generation was incremented when it was removed
+                slot = freeSlot;
+                final long freeWord = segments[slot >>> SEGMENT_SHIFT].get(slot & (SEGMENT_SIZE - 1));
+                freeSlot = CompactIntegerValue.valueOf(freeWord);
+                generation = CompactIntegerValue.generationOf(freeWord);
+
+            } else {
+                if (nextSlot == Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Compact Integer store is full, a shard has " + index.size() + " Atomic Values");
+                }
+
+                slot = nextSlot;
+                final int segment = slot >>> SEGMENT_SHIFT;
+                if (segment == segments.length) {
+                    segments = Arrays.copyOf(segments, segments.length * 2);
+                }
+                if (segments[segment] == null) {
+                    segments[segment] = new AtomicLongArray(SEGMENT_SIZE);
+                }
+                nextSlot++;
+                generation = 0;
+            }
+
+            index.put(idBytes, slot);
+
+            // only stale references, of an older generation, can reference the slot until the write lock is released
+            segments[slot >>> SEGMENT_SHIFT].set(slot & (SEGMENT_SIZE - 1), CompactIntegerValue.word(generation, value));
+            return slot;
+        }
+
+        /**
+         * Links the slot of a removed Atomic Value into the free list.
+         *
+         * The generation of the slot is incremented, so that any stale references
+         * to the removed Atomic Value become detached, and whilst the slot is free
+         * its value is the index of the next free slot.
+         *
+         * Must only be called whilst holding the write lock.
+         */
+        @GuardedBy("lock")
+        private void freeSlot(final int slot) {
+            final AtomicLongArray segment = segments[slot >>> SEGMENT_SHIFT];
+            final int i = slot & (SEGMENT_SIZE - 1);
+            long word;
+            do {
+                // NOTE: a stale reference may still compare-and-set the slot until its generation is incremented
+                word = segment.get(i);
+            } while (!segment.compareAndSet(i, word, CompactIntegerValue.word(CompactIntegerValue.generationOf(word) + 1, freeSlot)));
+            freeSlot = slot;
+        }
+
+        @GuardedBy("lock")
+        private AtomicValue valueAt(final int slot, final String id, final AtomicType atomicType) throws IllegalArgumentException {
+            if (atomicType != AtomicType.Integer) {
+                throw new IllegalArgumentException("Requested type: " + atomicType + " but found type: " + AtomicType.Integer + " for id: " + id);
+            }
+            // NOTE: the slot cannot be removed whilst we hold the lock, so its generation is that of this Atomic Value
+            final AtomicLongArray segment = segments[slot >>> SEGMENT_SHIFT];
+            final int i = slot & (SEGMENT_SIZE - 1);
+            final long word = segment.get(i);
+            return new CompactIntegerValue(segment, i, CompactIntegerValue.generationOf(word), CompactIntegerValue.valueOf(word));
+        }
+    }
+}
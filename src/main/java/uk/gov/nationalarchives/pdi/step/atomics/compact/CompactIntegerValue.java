@@ -0,0 +1,123 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.compact;
+
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicIntegerValue;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An {@link AtomicIntegerValue} whose value is
+ * a slot of a {@link CompactIntegerStore}.
+ *
+ * Each slot is a 64-bit word of a generation and a value. The generation
+ * is incremented when the Atomic Value is removed, so that the slot may be
+ * reused for a new Atomic Value. Once the Atomic Value has been removed, this
+ * value becomes detached: it continues from the last value that it saw, and no
+ * longer changes the slot. Unlike a removed on-heap Atomic Value, each stale
+ * reference is detached on its own, so a change made through one stale reference
+ * is not seen by another, nor is a change made through another reference that
+ * this reference had not yet seen.
+ */
+@ThreadSafe
+public class CompactIntegerValue extends AtomicIntegerValue {
+
+    private final AtomicLongArray segment;
+    private final int slot;
+    private final int generation;
+    private volatile int lastValue;
+    @Nullable private volatile AtomicInteger detached;
+
+    CompactIntegerValue(final AtomicLongArray segment, final int slot, final int generation, final int value) {
+        this.segment = segment;
+        this.slot = slot;
+        this.generation = generation;
+        this.lastValue = value;
+    }
+
+    @Override
+    public int get() {
+        final AtomicInteger detachedValue = detached;
+        if (detachedValue != null) {
+            return detachedValue.get();
+        }
+
+        final long word = segment.get(slot);
+        if (generationOf(word) != generation) {
+            return detach().get();
+        }
+        return observe(valueOf(word));
+    }
+
+    @Override
+    public boolean compareAndSet(final int expect, final int update) {
+        final AtomicInteger detachedValue = detached;
+        if (detachedValue != null) {
+            return detachedValue.compareAndSet(expect, update);
+        }
+
+        if (segment.compareAndSet(slot, word(generation, expect), word(generation, update))) {
+            observe(update);
+            return true;
+        }
+
+        // either the value did not match, or the Atomic Value has been removed
+        final long word = segment.get(slot);
+        if (generationOf(word) != generation) {
+            return detach().compareAndSet(expect, update);
+        }
+        observe(valueOf(word));
+        return false;
+    }
+
+    private int observe(final int value) {
+        if (value != lastValue) {
+            lastValue = value;
+        }
+        return value;
+    }
+
+    private synchronized AtomicInteger detach() {
+        AtomicInteger detachedValue = detached;
+        if (detachedValue == null) {
+            detachedValue = new AtomicInteger(lastValue);
+            detached = detachedValue;
+        }
+        return detachedValue;
+    }
+
+    static long word(final int generation, final int value) {
+        return ((long) generation << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    static int generationOf(final long word) {
+        return (int) (word >>> 32);
+    }
+
+    static int valueOf(final long word) {
+        return (int) word;
+    }
+}
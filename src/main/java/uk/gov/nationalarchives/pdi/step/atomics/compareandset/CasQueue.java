@@ -0,0 +1,138 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.compareandset;
+
+import net.jcip.annotations.ThreadSafe;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Queues of the threads which are contending to CAS
+ * the same AtomicValue, in the order that they arrived.
+ *
+ * Used by the fair mode of the Compare And Set step, where only
+ * the contender at the head of the queue may attempt to CAS, so
+ * that a contender cannot be overtaken by those which arrived after it.
+ *
+ * Contenders are queued by a key, which should identify both the AtomicValue and
+ * the compare values, so that contenders which could never succeed at the same
+ * transition do not hold each other up.
+ */
+@ThreadSafe
+class CasQueue {
+
+    static final CasQueue INSTANCE = new CasQueue();
+
+    private final ConcurrentMap<String, ConcurrentLinkedQueue<Contender>> queues = new ConcurrentHashMap<>();
+
+    CasQueue() {
+    }
+
+    /**
+     * Join the back of the queue for a key.
+     *
+     * The caller must {@link Contender#leave()} the queue
+     * once it has finished contending.
+     *
+     * @param key the key of the queue
+     *
+     * @return the contender
+     */
+    Contender join(final String key) {
+        final Contender contender = new Contender(key, Thread.currentThread());
+        // NOTE: compute is atomic for the key, so a queue is never removed whilst we are adding to it
+        contender.queue = queues.compute(key, (k, queue) -> {
+            if (queue == null) {
+                queue = new ConcurrentLinkedQueue<>();
+            }
+            queue.add(contender);
+            return queue;
+        });
+        return contender;
+    }
+
+    /**
+     * Get the number of contenders in the queue for a key.
+     *
+     * @param key the key of the queue
+     *
+     * @return the number of contenders
+     */
+    int size(final String key) {
+        final ConcurrentLinkedQueue<Contender> queue = queues.get(key);
+        return queue == null ? 0 : queue.size();
+    }
+
+    private void leave(final Contender contender) {
+        final boolean[] wasHead = { false };
+        final ConcurrentLinkedQueue<Contender> queue = queues.computeIfPresent(contender.key, (k, q) -> {
+            wasHead[0] = q.peek() == contender;
+            q.remove(contender);
+            return q.isEmpty() ? null : q;
+        });
+
+        if (wasHead[0] && queue != null) {
+            // wake the next contender, so that it may attempt straight away rather than at the end of its pause
+            @Nullable final Contender next = queue.peek();
+            if (next != null) {
+                LockSupport.unpark(next.thread);
+            }
+        }
+    }
+
+    /**
+     * A thread in a queue.
+     */
+    final class Contender {
+        private final String key;
+        private final Thread thread;
+        private ConcurrentLinkedQueue<Contender> queue;
+
+        private Contender(final String key, final Thread thread) {
+            this.key = key;
+            this.thread = thread;
+        }
+
+        /**
+         * Determine if this contender is at the head
+         * of the queue, i.e. whether it may attempt to CAS.
+         *
+         * @return true if this contender is at the head of the queue
+         */
+        boolean isFirst() {
+            return queue.peek() == this;
+        }
+
+        /**
+         * Leave the queue, waking the next
+         * contender if this contender was at its head.
+         */
+        void leave() {
+            CasQueue.this.leave(this);
+        }
+    }
+}
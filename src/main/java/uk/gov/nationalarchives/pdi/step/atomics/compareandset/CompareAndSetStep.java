@@ -23,6 +23,8 @@
 package uk.gov.nationalarchives.pdi.step.atomics.compareandset;
 
 import com.evolvedbinary.j8fu.Either;
+import com.evolvedbinary.j8fu.function.ConsumerE;
+import com.evolvedbinary.j8fu.function.RunnableE;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -33,7 +35,14 @@ import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.*;
 import org.pentaho.di.trans.step.errorhandling.StreamInterface;
 import uk.gov.nationalarchives.pdi.step.atomics.*;
-
+import uk.gov.nationalarchives.pdi.step.atomics.jfr.AtomicEvents;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.ContentionProfiler;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepLatencies;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepMetrics;
+import uk.gov.nationalarchives.pdi.step.atomics.watchdog.Watchdog;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -49,11 +58,14 @@ public class CompareAndSetStep extends AbstractAtomicStep {
         SKIP,
         ERROR,
         TIMEOUT,
-        THREAD_INTERRUPTED
+        THREAD_INTERRUPTED,
+        STUCK
     }
 
     private static Class<?> PKG = CompareAndSetStep.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
+    @Nullable private String awaitedValues;  // lazily initialised by getAwaitedValues
+
     public CompareAndSetStep(final StepMeta stepMeta, final StepDataInterface stepDataInterface, final int copyNr,
                              final TransMeta transMeta, final Trans trans) {
         super(stepMeta, stepDataInterface, copyNr, transMeta, trans);
@@ -61,85 +73,207 @@ public class CompareAndSetStep extends AbstractAtomicStep {
 
     @Override
     public boolean processRow(final StepMetaInterface smi, final StepDataInterface sdi) throws KettleException {
+        final CompareAndSetStepMeta meta = (CompareAndSetStepMeta) smi;
+        final CompareAndSetStepData data = (CompareAndSetStepData) sdi;
+
+        @Nullable final WaitWorkerPool workerPool = data.getWorkerPool();
+        if (workerPool != null) {
+            // whilst there are no input rows, output the rows of the workers as their CAS completes
+            emitCompleted(workerPool, false);
+        }
+
         final Object[] row = getRow(); // try and get a row
         if (row == null) {
             // no more rows...
+            if (workerPool != null) {
+                emitCompleted(workerPool, true);
+            }
             setOutputDone();
             return false;  // signal that we are DONE
         }
 
         // process a row...
-        final CompareAndSetStepMeta meta = (CompareAndSetStepMeta) smi;
-        final CompareAndSetStepData data = (CompareAndSetStepData) sdi;
-
         if (first) {
             first = false;
 
             // map input to output streams
             createOutputValueMapping(meta, data);
+
+            // initialise before any worker can read it
+            getAwaitedValues(meta);
         }
 
-        final String atomicId = getAtomicId(data, row);
+        // NOTE: each row is a separate state transition, so the rows of a batch are not grouped, and are processed in the order that they were read
+        final List<Object[]> rows = meta.isBatchEnabled() ? readBatch(meta, row) : Collections.singletonList(row);
+        if (workerPool != null) {
+            for (final Object[] batchRow : rows) {
+                submitAtomicRow(workerPool, meta, data, getAtomicId(data, batchRow), batchRow);
+            }
+
+            // output the rows of any CAS which have already completed
+            emitAlreadyCompleted(workerPool);
+
+        } else {
+            for (final Object[] batchRow : rows) {
+                processAtomicRow(meta, data, getAtomicId(data, batchRow), batchRow, RunnableE::run);
+            }
+        }
+
+        return true;  // row(s) done!
+    }
+
+    /**
+     * Submits a row to a worker, which processes it by
+     * {@link #processAtomicRow(CompareAndSetStepMeta, CompareAndSetStepData, String, Object[], ConsumerE)}.
+     *
+     * The rows of the same Atomic ID are processed by the workers in the order that they were submitted.
+     *
+     * @param workerPool the pool of workers
+     * @param meta the CompareAndSet Step Meta instance
+     * @param data the CompareAndSet Step Data instance
+     * @param atomicId the id of the AtomicValue
+     * @param row the row
+     *
+     * @throws KettleException if the rows of a completed CAS cannot be written whilst waiting for a worker
+     */
+    private void submitAtomicRow(final WaitWorkerPool workerPool, final CompareAndSetStepMeta meta, final CompareAndSetStepData data, final String atomicId, final Object[] row) throws KettleException {
+        submitAtomicRows(workerPool, atomicId, puts -> processAtomicRow(meta, data, atomicId, row, puts::add));
+    }
+
+    /**
+     * Processes a row.
+     *
+     * The AtomicValue is retrieved (or initialised) for each row, even when batching,
+     * so that a row never CAS's an AtomicValue which has since been discarded (and
+     * perhaps recreated) by another step.
+     *
+     * The write of the row is passed to {@code output}, which either runs it immediately
+     * on the step thread, or collects it to be run later on the step thread when this
+     * method is called by a worker, see {@link WaitWorkerPool}.
+     *
+     * @param meta the CompareAndSet Step Meta instance
+     * @param data the CompareAndSet Step Data instance
+     * @param atomicId the id of the AtomicValue
+     * @param row the row
+     * @param output receives the write of the row
+     *
+     * @throws KettleException if an output target cannot be found, or writing the row causes an error
+     */
+    private void processAtomicRow(final CompareAndSetStepMeta meta, final CompareAndSetStepData data, final String atomicId, final Object[] row,
+            final ConsumerE<RunnableE<KettleException>, KettleException> output) throws KettleException {
 
         // 1. get (or initialise) the AtomicValue
         final Either<GetAtomicRouteTarget, AtomicValue> routeOrAtomic = getAtomic(meta, data, atomicId);
         if (routeOrAtomic.isLeft()) {
             // could not get (or initialise) AtomicValue, so route row to specific output target...
             final GetAtomicRouteTarget route = routeOrAtomic.left().get();
-            switch (route) {
-                case CONTINUE:
-                    putRowToContinueTarget(meta, data, atomicId, row, BaseMessages.getString(PKG, "CompareAndSetStep.Log.NoContinueTargetStep"));
-                    return true;
-
-                case ERROR:
-                    putRowToErrorTarget(data, row, ErrorCode.NO_SUCH_ATOMIC, "CAS No Atomic object for id: " + atomicId + ", and ActionIfNoAtomic == Error");
-                    return true;
-
-                case TIMEOUT:
-                    // NOTE: this is intentionally sent to the error target at this stage, the timeout target is reserved for the await value part further below
-                    putRowToErrorTarget(data, row, ErrorCode.NO_SUCH_ATOMIC_WAIT_TIMEOUT, "CAS Timeout (" + meta.getWaitAtomicTimeout() + "ms) exceeded whilst waiting for Atomic object creation for id: " + atomicId + ", and ActionIfNoAtomic == Wait");
-                    return true;
-
-                case THREAD_INTERRUPTED:
-                    putRowToErrorTarget(data, row, ErrorCode.NO_SUCH_ATOMIC_WAIT_INTERRUPTED, "CAS Thread interrupted whilst waiting for Atomic object creation for id: " + atomicId + ", and ActionIfNoAtomic == Wait");
-                    return true;
-            }
+            output.accept(() -> putRowToGetAtomicRoute(meta, data, atomicId, row, route, "CAS", BaseMessages.getString(PKG, "CompareAndSetStep.Log.NoContinueTargetStep")));
+            return;
         }
 
         // At this point we have an AtomicValue
         final AtomicValue atomicValue = routeOrAtomic.right().get();
 
-        // 2. Check/Wait until the AtomicValue reaches one of the await values, and then get the target
-        final Either<CASAtomicRouteTarget, CompareAndSetTarget> routeOrCasTarget = casAndGetTarget(meta, data, atomicId, atomicValue);
+        // 2. Try to CAS the AtomicValue, and then get the target
+        final Either<CASAtomicRouteTarget, CompareAndSetTarget> routeOrCasTarget = compareAndSet(meta, data, atomicId, atomicValue);
         if (routeOrCasTarget.isLeft()) {
             // AtomicValue never completed CAS, so route row to specific failure output target...
             final CASAtomicRouteTarget route = routeOrCasTarget.left().get();
-            switch (route) {
-                case DEFAULT:
-                    putRowToDefaultTarget(data, row);
-                    return true;
-
-                case SKIP:
-                    putRowToSkipTarget(meta, data, atomicId, row);
-                    return true;
-
-                case ERROR:
-                    putRowToErrorTarget(data, row, ErrorCode.CAS_FAILED, "Unable to Compare And Set Value for: " + atomicId + ", and ActionIfUnableToSet == Error");
-                    return true;
-
-                case TIMEOUT:
-                    putRowToTimeoutTarget(meta, data, row, BaseMessages.getString(PKG, "CompareAndSetStep.Log.NoTimeoutTargetStep"));
-                    return true;
-
-                case THREAD_INTERRUPTED:
-                    putRowToErrorTarget(data, row, ErrorCode.CAS_ATOMIC_WAIT_INTERRUPTED, "Thread interrupted whilst waiting to CAS Atomic value for id: " + atomicId);
-                    return true;
+            output.accept(() -> putRowToCasRoute(meta, data, atomicId, row, route));
+        } else {
+            // the AtomicValue completed CAS
+            final CompareAndSetTarget casTarget = routeOrCasTarget.right().get();
+            output.accept(() -> putRowToCasTarget(data, atomicId, casTarget, row));
+        }
+    }
+
+    /**
+     * Tries to CAS the AtomicValue, whilst recording the wait
+     * for events, the watchdog, and the latencies.
+     *
+     * @param meta the CompareAndSet Step Meta instance
+     * @param data the CompareAndSet Step Data instance
+     * @param atomicId the id of the AtomicValue
+     * @param atomicValue the AtomicValue on which we try to CAS
+     *
+     * @return Either a route to target if the AtomicValue cannot be CAS'd,
+     *    or the CompareAndSetTarget to route the output to when it has been CAS'd.
+     */
+    private Either<CASAtomicRouteTarget, CompareAndSetTarget> compareAndSet(final CompareAndSetStepMeta meta, final CompareAndSetStepData data, final String atomicId, final AtomicValue atomicValue) {
+        final AtomicEvents.Wait wait = AtomicEvents.get().beginWait(getStepname(), getCopy(), StepLatencies.Latency.CAS.getLabel(), atomicId, getAwaitedValues(meta));
+        final Watchdog.Waiter waiter = data.newWaiter(atomicId, getAwaitedValues(meta));
+        final WaitPause pause = data.newWaitPause(meta.getWaitStrategy(), atomicId, meta.getUnableToSetLoopCheckPeriod(), meta.getUnableToSetLoopTimeout());
+        @Nullable final CasQueue.Contender contender = meta.isFair() && ActionIfUnableToSet.Loop == meta.getActionIfUnableToSet() ? CasQueue.INSTANCE.join(getCasQueueKey(meta, data, atomicId)) : null;
+        final long casStart = System.nanoTime();
+        Either<CASAtomicRouteTarget, CompareAndSetTarget> routeOrCasTarget = null;
+        try {
+            routeOrCasTarget = casAndGetTarget(meta, data, atomicId, atomicValue, waiter, pause, contender);
+            data.getMetrics().recordLatency(StepLatencies.Latency.CAS, atomicId, System.nanoTime() - casStart);
+        } finally {
+            if (contender != null) {
+                contender.leave();
             }
+            pause.end();
+            waiter.end();
+            wait.end(routeOrCasTarget == null ? WAIT_OUTCOME_FAILED : routeOrCasTarget.isLeft() ? routeOrCasTarget.left().get().name() : WAIT_OUTCOME_SET);
         }
+        return routeOrCasTarget;
+    }
 
-        // At this point we have a CompareAndSetTarget, i.e. the AtomicValue completed CAS
-        final CompareAndSetTarget casTarget = routeOrCasTarget.right().get();
+    /**
+     * Send row to the output target of the step for a route from
+     * {@link #casAndGetTarget(CompareAndSetStepMeta, CompareAndSetStepData, String, AtomicValue, Watchdog.Waiter, WaitPause, CasQueue.Contender)}.
+     *
+     * @param meta the CompareAndSet Step Meta instance
+     * @param data the CompareAndSet Step Data instance
+     * @param atomicId the id of the AtomicValue
+     * @param row the row
+     * @param route the route
+     *
+     * @throws KettleException if the skip or timeout target cannot be found, or writing the row causes an error
+     */
+    private void putRowToCasRoute(final CompareAndSetStepMeta meta, final CompareAndSetStepData data, final String atomicId, final Object[] row, final CASAtomicRouteTarget route) throws KettleException {
+        switch (route) {
+            case DEFAULT:
+                putRowToDefaultTarget(data, row);
+                return;
+
+            case SKIP:
+                putRowToSkipTarget(meta, data, atomicId, row);
+                return;
+
+            case ERROR:
+                putRowToErrorTarget(data, row, ErrorCode.CAS_FAILED, "Unable to Compare And Set Value for: " + atomicId + ", and ActionIfUnableToSet == Error");
+                return;
+
+            case TIMEOUT:
+                putRowToTimeoutTarget(meta, data, row, BaseMessages.getString(PKG, "CompareAndSetStep.Log.NoTimeoutTargetStep"));
+                return;
+
+            case THREAD_INTERRUPTED:
+                putRowToErrorTarget(data, row, ErrorCode.CAS_ATOMIC_WAIT_INTERRUPTED, "Thread interrupted whilst waiting to CAS Atomic value for id: " + atomicId);
+                return;
+
+            case STUCK:
+                putRowToErrorTarget(data, row, ErrorCode.STUCK_WAIT, "Watchdog failed over stuck wait to CAS Atomic value for id: " + atomicId);
+                return;
+
+            default:
+                throw new IllegalArgumentException("Unknown CASAtomicRouteTarget: " + route.name());
+        }
+    }
 
+    /**
+     * Send row to the output targets of the step for a completed CAS.
+     *
+     * @param data the CompareAndSet Step Data instance
+     * @param atomicId the id of the AtomicValue
+     * @param casTarget the CAS which completed
+     * @param row the row
+     *
+     * @throws KettleException if the output targets cannot be found, or writing the row causes an error
+     */
+    private void putRowToCasTarget(final CompareAndSetStepData data, final String atomicId, final CompareAndSetTarget casTarget, final Object[] row) throws KettleException {
         // We now send the input row to specific targets for CAS success
         final Set<RowSet> casTargetRowSets = data.getOutputRowSets().get(casTarget.getCompareValue());
         if (casTargetRowSets == null || casTargetRowSets.isEmpty()) {
@@ -150,63 +284,88 @@ public class CompareAndSetStep extends AbstractAtomicStep {
         for (final RowSet casTargetRowSet : casTargetRowSets) {
             this.putRowTo(data.getOutputRowMeta(), row, casTargetRowSet);
         }
+        data.getMetrics().recordRow(casTarget.getTargetStep() != null ? casTarget.getTargetStep().getName() : casTarget.getTargetStepname());
 
         this.logDebug("CAS OK: <{0}>{1}", atomicId, casTarget.toString());
 
         logLineNumber();
-
-        return true;  // row done!
     }
 
     /**
      * Attempts to CAS the AtomicValue.
      *
-     * This method internally will loop approximately every {@link CompareAndSetStepMeta#getUnableToSetLoopCheckPeriod()} ()}
-     * until the AtomicValue matches one of the await values, or {@link CompareAndSetStepMeta#getUnableToSetLoopTimeout()} is reached.
+     * This method internally will loop, pausing between attempts by {@link CompareAndSetStepMeta#getWaitStrategy()}
+     * for up to {@link CompareAndSetStepMeta#getUnableToSetLoopCheckPeriod()}, until the AtomicValue matches one of the
+     * compare values, or {@link CompareAndSetStepMeta#getUnableToSetLoopTimeout()} is reached.
+     *
+     * When there is a contender, i.e. {@link CompareAndSetStepMeta#isFair()}, attempts are only made
+     * whilst the contender is at the head of its queue, and until then the contender parks
+     * by {@link WaitPause#pauseUntil(java.util.function.BooleanSupplier)}, whatever the wait strategy.
      *
      * @param meta the ComapreAndSet Step Meta instance
      * @param data the ComapreAndSet Step Data instance
      * @param atomicId the id of the AtomicValue
      * @param atomicValue the AtomicValue on which we try to CAS
+     * @param waiter the waiter for the watchdog
+     * @param pause the pause between attempts
+     * @param contender the contender in the queue for fair ordering, or null if ordering is not fair
      *
      * @return Either a route to target if the AtomicValue cannot be CAS'd,
      *    or the CompareAndSetTarget to route the output to when it has been CAS'd.
      */
-    private Either<CASAtomicRouteTarget, CompareAndSetTarget> casAndGetTarget(final CompareAndSetStepMeta meta, final CompareAndSetStepData data, final String atomicId, AtomicValue atomicValue) {
+    private Either<CASAtomicRouteTarget, CompareAndSetTarget> casAndGetTarget(final CompareAndSetStepMeta meta, final CompareAndSetStepData data, final String atomicId, AtomicValue atomicValue, final Watchdog.Waiter waiter, final WaitPause pause, @Nullable final CasQueue.Contender contender) {
         final AtomicType atomicType = meta.getAtomicType();
         final ActionIfUnableToSet actionIfUnableToSet = meta.getActionIfUnableToSet();
         final List<CompareAndSetTarget> compareAndSetValues = meta.getCompareAndSetValues();
         if (compareAndSetValues != null && !compareAndSetValues.isEmpty()) {
 
-            final long unableToSetLoopCheckPeriod = meta.getUnableToSetLoopCheckPeriod();
-            final long unableToSetTimeout = meta.getUnableToSetLoopTimeout();
+            final StepMetrics metrics = data.getMetrics();
 
             long waited = 0;
+            long slowWaitThreshold = meta.isSlowWaitLogEnabled() ? meta.getSlowWaitThreshold() : Long.MAX_VALUE;
             while (true) {
 
-                // try and set each value in turn
-                for (final CompareAndSetTarget compareAndSetValue : compareAndSetValues) {
-
-                    if (AtomicType.Boolean == atomicType) {
-                        final AtomicBooleanValue atomicBoolean = (AtomicBooleanValue) atomicValue;
-                        final boolean compareValue = Boolean.valueOf(compareAndSetValue.getCompareValue());
-                        final boolean setValue = Boolean.valueOf(compareAndSetValue.getSetValue());
-                        if (atomicBoolean.compareAndSet(compareValue, setValue)) {
-                            return Right(compareAndSetValue);
-                        }
-
-                    } else if (AtomicType.Integer == atomicType) {
-                        final AtomicIntegerValue atomicInteger = (AtomicIntegerValue) atomicValue;
-                        final int compareValue = Integer.valueOf(compareAndSetValue.getCompareValue());
-                        final int setValue = Integer.valueOf(compareAndSetValue.getSetValue());
-                        if (atomicInteger.compareAndSet(compareValue, setValue)) {
-                            return Right(compareAndSetValue);
+                // when fair, only the contender at the head of the queue may attempt
+                final boolean turn = contender == null || contender.isFirst();
+                if (turn) {
+
+                    // try and set each value in turn
+                    for (final CompareAndSetTarget compareAndSetValue : compareAndSetValues) {
+
+                        if (AtomicType.Boolean == atomicType) {
+                            final AtomicBooleanValue atomicBoolean = (AtomicBooleanValue) atomicValue;
+                            final boolean compareValue = Boolean.valueOf(compareAndSetValue.getCompareValue());
+                            final boolean setValue = Boolean.valueOf(compareAndSetValue.getSetValue());
+                            final boolean set = atomicBoolean.compareAndSet(compareValue, setValue);
+                            metrics.recordCasAttempt(set);
+                            AtomicEvents.get().casAttempt(getStepname(), getCopy(), atomicId, compareAndSetValue.getCompareValue(), compareAndSetValue.getSetValue(), set);
+                            if (set) {
+                                data.recordSet(atomicId);
+                                data.getStorageProvider().notifyChanged(atomicId);
+                                return Right(compareAndSetValue);
+                            }
+
+                        } else if (AtomicType.Integer == atomicType) {
+                            final AtomicIntegerValue atomicInteger = (AtomicIntegerValue) atomicValue;
+                            final int compareValue = Integer.valueOf(compareAndSetValue.getCompareValue());
+                            final int setValue = Integer.valueOf(compareAndSetValue.getSetValue());
+                            final boolean set = atomicInteger.compareAndSet(compareValue, setValue);
+                            metrics.recordCasAttempt(set);
+                            AtomicEvents.get().casAttempt(getStepname(), getCopy(), atomicId, compareAndSetValue.getCompareValue(), compareAndSetValue.getSetValue(), set);
+                            if (set) {
+                                data.recordSet(atomicId);
+                                data.getStorageProvider().notifyChanged(atomicId);
+                                return Right(compareAndSetValue);
+                            }
+
+                        } else {
+                            throw new IllegalArgumentException("Unknown AtomicType: " + atomicType.name());
                         }
+                    }  // end for
 
-                    } else {
-                        throw new IllegalArgumentException("Unknown AtomicType: " + atomicType.name());
-                    }
-                }  // end for
+                    // none of the values could be set
+                    data.recordContention(atomicId, ContentionProfiler.Kind.CAS_FAILURE);
+                }
 
                 if (ActionIfUnableToSet.Skip == actionIfUnableToSet) {
                     return Left(CASAtomicRouteTarget.SKIP);
@@ -217,20 +376,31 @@ public class CompareAndSetStep extends AbstractAtomicStep {
 
                 } else if (ActionIfUnableToSet.Loop == actionIfUnableToSet) {
 
-                    // wait before loop to reattempt CaS
-                    final long sleptFor = sleepWithTimeout(unableToSetLoopCheckPeriod, waited, unableToSetTimeout);
+                    if (isStuckWaitFailOver(data, waiter)) {
+                        return Left(CASAtomicRouteTarget.STUCK);
+                    }
 
-                    if (sleptFor > 0) {
-                        // slept OK
-                        waited += sleptFor;
+                    // wait before loop to reattempt CaS
+                    waiter.waiting();
+                    final long waitStart = System.nanoTime();
+                    // NOTE: a contender waiting for its turn parks whatever the strategy, so that it is woken when the head leaves
+                    final WaitPause.Outcome paused = turn ? pause.pause() : pause.pauseUntil(contender::isFirst);
+                    metrics.recordWait(System.nanoTime() - waitStart);
+
+                    if (paused == WaitPause.Outcome.PAUSED) {
+                        // paused OK
+                        waited = pause.getWaited();
                         // loop to try and match the atomic value again
 
-                    }  else if (sleptFor == 0) {
-                        // TIMEOUT reached after sleeping
+                    }  else if (paused == WaitPause.Outcome.TIMEOUT) {
+                        // TIMEOUT reached after pausing
+                        metrics.recordTimeout();
+                        AtomicEvents.get().timeout(getStepname(), getCopy(), StepLatencies.Latency.CAS.getLabel(), atomicId, pause.getWaited(), StepMetrics.TARGET_TIMEOUT);
                         return Left(CASAtomicRouteTarget.TIMEOUT);
 
                     } else {
-                        // Thread INTERRUPTED whilst sleeping
+                        // Thread INTERRUPTED whilst pausing
+                        metrics.recordInterrupt();
                         return Left(CASAtomicRouteTarget.THREAD_INTERRUPTED);
                     }
 
@@ -240,6 +410,12 @@ public class CompareAndSetStep extends AbstractAtomicStep {
 
                 // refresh the atomic object
                 atomicValue = data.getAtomic(atomicId, atomicType);
+                metrics.recordLookup(atomicValue != null);
+
+                if (waited >= slowWaitThreshold) {
+                    logSlowWait(data, StepLatencies.Latency.CAS, atomicId, getAwaitedValues(meta), atomicValue, waited);
+                    slowWaitThreshold = Long.MAX_VALUE;  // only log once per wait
+                }
 
             }  // end while
         }
@@ -265,6 +441,7 @@ public class CompareAndSetStep extends AbstractAtomicStep {
 
             // send row to the Skip output of the step
             this.putRowTo(data.getOutputRowMeta(), row, data.getSkipOutputRowSet());
+            data.getMetrics().recordRow(StepMetrics.TARGET_SKIP);
             this.logDebug("CAS SKIP: <{0}>",atomicId);
             logLineNumber();
 
@@ -274,18 +451,62 @@ public class CompareAndSetStep extends AbstractAtomicStep {
         }
     }
 
+    /**
+     * Get the key of the queue for fair ordering of the contenders to CAS an AtomicValue.
+     *
+     * Contenders only share a queue when they have the same compare and set values,
+     * as otherwise a contender which could never succeed might hold up the others.
+     *
+     * @param meta the Compare And Set Step Meta instance
+     * @param data the Compare And Set Step Data instance
+     * @param atomicId the id of the AtomicValue
+     *
+     * @return the key of the queue
+     */
+    private String getCasQueueKey(final CompareAndSetStepMeta meta, final CompareAndSetStepData data, final String atomicId) {
+        // NOTE: the name of the resolved provider, as the provider of the meta may be a variable
+        return data.getStorageProvider().getName() + '/' + atomicId + '/' + getAwaitedValues(meta);
+    }
+
+    /**
+     * Get a description of the compare and set values, for events.
+     *
+     * @param meta the Compare And Set Step Meta instance
+     *
+     * @return the compare and set values as {@code compare->set}, separated by commas
+     */
+    private String getAwaitedValues(final CompareAndSetStepMeta meta) {
+        if (awaitedValues == null) {
+            final StringBuilder builder = new StringBuilder();
+            final List<CompareAndSetTarget> compareAndSetValues = meta.getCompareAndSetValues();
+            if (compareAndSetValues != null) {
+                for (final CompareAndSetTarget compareAndSetValue : compareAndSetValues) {
+                    if (builder.length() > 0) {
+                        builder.append(',');
+                    }
+                    builder.append(compareAndSetValue.getCompareValue()).append("->").append(compareAndSetValue.getSetValue());
+                }
+            }
+            awaitedValues = builder.toString();
+        }
+        return awaitedValues;
+    }
+
     @Override
     protected void logLineNumber() {
+        exportLatencies((CompareAndSetStepData) getStepDataInterface(), false);
         if (checkFeedback(getLinesRead())) {
             if (log.isBasic()) {
                 logBasic(BaseMessages.getString(PKG, "CompareAndSetStep.Log.LineNumber") + getLinesRead());
             }
+            logMetrics((CompareAndSetStepData) getStepDataInterface());
         }
     }
 
     @Override
     public boolean init(final StepMetaInterface smi, final StepDataInterface sdi) {
         final CompareAndSetStepMeta meta = (CompareAndSetStepMeta) smi;
+        final CompareAndSetStepData data = (CompareAndSetStepData) sdi;
 
         if (!super.init(smi, sdi)) {
             return false;
@@ -296,6 +517,28 @@ public class CompareAndSetStep extends AbstractAtomicStep {
             return false;
         }
 
+        final String storageProvider = environmentSubstitute(meta.getStorageProvider());
+        try {
+            data.setStorageProvider(AtomicStorageProviders.get(storageProvider));
+        } catch (final IllegalArgumentException e) {
+            logError(BaseMessages.getString(PKG, "CompareAndSetStep.Log.NoSuchStorageProvider", storageProvider));
+            return false;
+        }
+
+        if (meta.getBatchSize() < 1) {
+            logError(BaseMessages.getString(PKG, "CompareAndSetStep.Log.InvalidBatchSize", Integer.toString(meta.getBatchSize())));
+            return false;
+        }
+
+        if (meta.getWorkers() < 1) {
+            logError(BaseMessages.getString(PKG, "CompareAndSetStep.Log.InvalidWorkers", Integer.toString(meta.getWorkers())));
+            return false;
+        }
+
+        if (meta.isWorkersEnabled()) {
+            startWorkerPool(meta, data);
+        }
+
         return true;
     }
 
@@ -318,10 +561,18 @@ public class CompareAndSetStep extends AbstractAtomicStep {
 
         final String atomicIdFieldName = environmentSubstitute(meta.getAtomicIdFieldName());
         data.setAtomicIdFieldName(atomicIdFieldName);
-        data.setAtomicIdFieldIndex(getInputRowMeta().indexOfValue(atomicIdFieldName));
-        if (data.getAtomicIdFieldIndex() < 0) {
-            throw new KettleException(BaseMessages.getString( PKG, "CompareAndSetStep.Exception.UnableToFindFieldName", atomicIdFieldName));
+        final String[] atomicIdFieldNames = AtomicIdReader.parseFieldNames(atomicIdFieldName);
+        if (atomicIdFieldNames.length == 0) {
+            throw new KettleException(BaseMessages.getString(PKG, "CompareAndSetStep.Exception.UnableToFindFieldName", atomicIdFieldName));
+        }
+        final int[] atomicIdFieldIndexes = new int[atomicIdFieldNames.length];
+        for (int i = 0; i < atomicIdFieldNames.length; i++) {
+            atomicIdFieldIndexes[i] = getInputRowMeta().indexOfValue(atomicIdFieldNames[i]);
+            if (atomicIdFieldIndexes[i] < 0) {
+                throw new KettleException(BaseMessages.getString(PKG, "CompareAndSetStep.Exception.UnableToFindFieldName", atomicIdFieldNames[i]));
+            }
         }
+        data.setAtomicIdReader(new AtomicIdReader(atomicIdFieldNames, atomicIdFieldIndexes));
 
         final StepIOMetaInterface ioMeta = meta.getStepIOMeta();
 
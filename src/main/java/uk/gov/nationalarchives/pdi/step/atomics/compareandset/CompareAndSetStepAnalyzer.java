@@ -27,6 +27,7 @@ import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
+import uk.gov.nationalarchives.pdi.step.atomics.analysis.SynchronisationLineage;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -41,7 +42,8 @@ public class CompareAndSetStepAnalyzer extends StepAnalyzer<CompareAndSetStepMet
 
     @Override
     protected void customAnalyze(final CompareAndSetStepMeta meta, final IMetaverseNode rootNode) throws MetaverseAnalyzerException {
-        // add any custom properties or relationships here
+        // the Atomic Values which the step synchronises on
+        SynchronisationLineage.addLineage(getMetaverseBuilder(), getMetaverseObjectFactory(), parentTransMeta, parentStepMeta, rootNode);
     }
 
     @Override
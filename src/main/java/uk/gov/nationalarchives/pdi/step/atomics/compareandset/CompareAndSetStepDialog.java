@@ -48,8 +48,11 @@ import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
 import uk.gov.nationalarchives.pdi.step.atomics.ActionIfNoAtomic;
 import uk.gov.nationalarchives.pdi.step.atomics.ActionIfUnableToSet;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorage;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageProviders;
 import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
 import uk.gov.nationalarchives.pdi.step.atomics.NumberVerifyListener;
+import uk.gov.nationalarchives.pdi.step.atomics.WaitStrategy;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -77,6 +80,8 @@ public class CompareAndSetStepDialog extends BaseStepDialog implements StepDialo
     private Label wAtomicIdLabel;
     private Label wAtomicTypeLabel;
     private Combo wAtomicTypeField;
+    private Label wStorageProviderLabel;
+    private Combo wStorageProviderField;
     private TextVar wAtomicIdField;
     private Label wActionIfNoAtomicLabel;
     private Combo wActionIfNoAtomicField;
@@ -99,6 +104,16 @@ public class CompareAndSetStepDialog extends BaseStepDialog implements StepDialo
     private Label wUnableToSetSkipTargetLabel;
     private CCombo wUnableToSetSkipTargetField;
     private TableView wCompareAndSetTableView;
+    private Label wSlowWaitThresholdLabel;
+    private Text wSlowWaitThresholdField;
+    private Label wBatchSizeLabel;
+    private Text wBatchSizeField;
+    private Label wWaitStrategyLabel;
+    private Combo wWaitStrategyField;
+    private Button wFairField;
+    private Label wWorkersLabel;
+    private Text wWorkersField;
+    private Button wOrderedOutputField;
     private ColumnInfo ciCompareValue;
     private ColumnInfo ciSetValue;
     private ColumnInfo ciTargetStep;
@@ -212,12 +227,33 @@ public class CompareAndSetStepDialog extends BaseStepDialog implements StepDialo
                 .result();
         wAtomicIdField.setLayoutData(fdAtomicIdText);
 
+        // storage provider label/field
+        wStorageProviderLabel = new Label(settingsGroup, SWT.LEFT);
+        props.setLook(wStorageProviderLabel);
+        wStorageProviderLabel.setText(BaseMessages.getString(PKG, "CompareAndSetStepDialog.ComboStorageProvider"));
+        final FormData fdStorageProviderLabel = new FormDataBuilder().left()
+                .top(wAtomicIdLabel, ELEMENT_SPACING)
+                .result();
+        wStorageProviderLabel.setLayoutData(fdStorageProviderLabel);
+
+        wStorageProviderField = new Combo(settingsGroup, SWT.DROP_DOWN | SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        for (final String storageProviderName : AtomicStorageProviders.getNames()) {
+            wStorageProviderField.add(storageProviderName);
+        }
+        props.setLook(wStorageProviderField);
+        wStorageProviderField.addModifyListener(lsFieldsModify);
+        final FormData fdStorageProviderField = new FormDataBuilder().left(wStorageProviderLabel, LABEL_SPACING)
+                .top(wAtomicIdLabel, ELEMENT_SPACING)
+                .width(MEDIUM_FIELD)
+                .result();
+        wStorageProviderField.setLayoutData(fdStorageProviderField);
+
         // atomic type label/field
         wAtomicTypeLabel = new Label(settingsGroup, SWT.LEFT);
         props.setLook(wAtomicTypeLabel);
         wAtomicTypeLabel.setText(BaseMessages.getString(PKG, "CompareAndSetStepDialog.ComboAtomicType"));
         final FormData fdAtomicTypeLabel = new FormDataBuilder().left()
-                .top(wAtomicIdLabel, ELEMENT_SPACING)
+                .top(wStorageProviderLabel, ELEMENT_SPACING)
                 .result();
         wAtomicTypeLabel.setLayoutData(fdAtomicTypeLabel);
 
@@ -270,7 +306,7 @@ public class CompareAndSetStepDialog extends BaseStepDialog implements StepDialo
             }
         });
         final FormData fdAtomicTypeField = new FormDataBuilder().left(wAtomicTypeLabel, LABEL_SPACING)
-                .top(wAtomicIdLabel, ELEMENT_SPACING)
+                .top(wStorageProviderLabel, ELEMENT_SPACING)
                 .width(SMALL_FIELD)
                 .result();
         wAtomicTypeField.setLayoutData(fdAtomicTypeField);
@@ -425,6 +461,7 @@ public class CompareAndSetStepDialog extends BaseStepDialog implements StepDialo
                 wUnableToSetLoopTimeoutField.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Loop);
                 wUnableToSetLoopTimeoutTargetLabel.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Loop);
                 wUnableToSetLoopTimeoutTargetField.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Loop);
+                wFairField.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Loop);
 
                 wUnableToSetSkipTargetLabel.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Skip);
                 wUnableToSetSkipTargetField.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Skip);
@@ -547,6 +584,113 @@ public class CompareAndSetStepDialog extends BaseStepDialog implements StepDialo
                 .result();
         wCompareAndSetTableView.setLayoutData(fdCompareAndSetTableView);
 
+        // slow wait threshold label/field
+        wSlowWaitThresholdLabel = new Label(settingsGroup, SWT.LEFT);
+        props.setLook(wSlowWaitThresholdLabel);
+        wSlowWaitThresholdLabel.setText(BaseMessages.getString(PKG, "CompareAndSetStepDialog.TextFieldSlowWaitThreshold"));
+        final FormData fdSlowWaitThresholdLabel = new FormDataBuilder().left()
+                .top(wCompareAndSetTableView, ELEMENT_SPACING)
+                .result();
+        wSlowWaitThresholdLabel.setLayoutData(fdSlowWaitThresholdLabel);
+
+        wSlowWaitThresholdField = new Text(settingsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wSlowWaitThresholdField);
+        wSlowWaitThresholdField.addModifyListener(lsFieldsModify);
+        wSlowWaitThresholdField.addVerifyListener(new NumberVerifyListener(Long::parseLong));
+        final FormData fdSlowWaitThresholdField = new FormDataBuilder().left(wSlowWaitThresholdLabel, LABEL_SPACING)
+                .top(wCompareAndSetTableView, ELEMENT_SPACING)
+                .width(SMALL_FIELD)
+                .result();
+        wSlowWaitThresholdField.setLayoutData(fdSlowWaitThresholdField);
+
+        // batch size label/field
+        wBatchSizeLabel = new Label(settingsGroup, SWT.LEFT);
+        props.setLook(wBatchSizeLabel);
+        wBatchSizeLabel.setText(BaseMessages.getString(PKG, "CompareAndSetStepDialog.TextFieldBatchSize"));
+        final FormData fdBatchSizeLabel = new FormDataBuilder().left()
+                .top(wSlowWaitThresholdLabel, ELEMENT_SPACING)
+                .result();
+        wBatchSizeLabel.setLayoutData(fdBatchSizeLabel);
+
+        wBatchSizeField = new Text(settingsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wBatchSizeField);
+        wBatchSizeField.addModifyListener(lsFieldsModify);
+        wBatchSizeField.addVerifyListener(new NumberVerifyListener(Integer::parseInt));
+        final FormData fdBatchSizeField = new FormDataBuilder().left(wBatchSizeLabel, LABEL_SPACING)
+                .top(wSlowWaitThresholdLabel, ELEMENT_SPACING)
+                .width(SMALL_FIELD)
+                .result();
+        wBatchSizeField.setLayoutData(fdBatchSizeField);
+
+        // wait strategy label/field
+        wWaitStrategyLabel = new Label(settingsGroup, SWT.LEFT);
+        props.setLook(wWaitStrategyLabel);
+        wWaitStrategyLabel.setText(BaseMessages.getString(PKG, "CompareAndSetStepDialog.ComboWaitStrategy"));
+        final FormData fdWaitStrategyLabel = new FormDataBuilder().left()
+                .top(wBatchSizeLabel, ELEMENT_SPACING)
+                .result();
+        wWaitStrategyLabel.setLayoutData(fdWaitStrategyLabel);
+
+        wWaitStrategyField = new Combo(settingsGroup, SWT.DROP_DOWN | SWT.READ_ONLY | SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        for (final WaitStrategy waitStrategy : WaitStrategy.values()) {
+            wWaitStrategyField.add(waitStrategy.name());
+        }
+        props.setLook(wWaitStrategyField);
+        wWaitStrategyField.addModifyListener(lsFieldsModify);
+        final FormData fdWaitStrategyField = new FormDataBuilder().left(wWaitStrategyLabel, LABEL_SPACING)
+                .top(wBatchSizeLabel, ELEMENT_SPACING)
+                .width(MEDIUM_FIELD)
+                .result();
+        wWaitStrategyField.setLayoutData(fdWaitStrategyField);
+
+        // fair ordering checkbox
+        wFairField = new Button(settingsGroup, SWT.CHECK);
+        props.setLook(wFairField);
+        wFairField.setText(BaseMessages.getString(PKG, "CompareAndSetStepDialog.CheckBoxFair"));
+        wFairField.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(final SelectionEvent selectionEvent) {
+                meta.setChanged();
+            }
+        });
+        final FormData fdFairField = new FormDataBuilder().left()
+                .top(wWaitStrategyLabel, ELEMENT_SPACING)
+                .result();
+        wFairField.setLayoutData(fdFairField);
+
+        // workers label/field
+        wWorkersLabel = new Label(settingsGroup, SWT.LEFT);
+        props.setLook(wWorkersLabel);
+        wWorkersLabel.setText(BaseMessages.getString(PKG, "CompareAndSetStepDialog.TextFieldWorkers"));
+        final FormData fdWorkersLabel = new FormDataBuilder().left()
+                .top(wFairField, ELEMENT_SPACING)
+                .result();
+        wWorkersLabel.setLayoutData(fdWorkersLabel);
+
+        wWorkersField = new Text(settingsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wWorkersField);
+        wWorkersField.addModifyListener(lsFieldsModify);
+        wWorkersField.addVerifyListener(new NumberVerifyListener(Integer::parseInt));
+        final FormData fdWorkersField = new FormDataBuilder().left(wWorkersLabel, LABEL_SPACING)
+                .top(wFairField, ELEMENT_SPACING)
+                .width(SMALL_FIELD)
+                .result();
+        wWorkersField.setLayoutData(fdWorkersField);
+
+        // ordered output checkbox
+        wOrderedOutputField = new Button(settingsGroup, SWT.CHECK);
+        props.setLook(wOrderedOutputField);
+        wOrderedOutputField.setText(BaseMessages.getString(PKG, "CompareAndSetStepDialog.CheckBoxOrderedOutput"));
+        wOrderedOutputField.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(final SelectionEvent selectionEvent) {
+                meta.setChanged();
+            }
+        });
+        final FormData fdOrderedOutputField = new FormDataBuilder().left()
+                .top(wWorkersLabel, ELEMENT_SPACING)
+                .result();
+        wOrderedOutputField.setLayoutData(fdOrderedOutputField);
 
         //Cancel and OK buttons for the bottom of the window.
         wCancel = new Button(shell, SWT.PUSH);
@@ -669,6 +813,9 @@ public class CompareAndSetStepDialog extends BaseStepDialog implements StepDialo
         }
         wAtomicTypeField.setText(atomicType.name());
 
+        final String storageProvider = meta.getStorageProvider();
+        wStorageProviderField.setText(storageProvider != null ? storageProvider : AtomicStorage.PROVIDER_NAME);
+
         ActionIfNoAtomic actionIfNoAtomic = meta.getActionIfNoAtomic();
         if (actionIfNoAtomic == null) {
             actionIfNoAtomic = ActionIfNoAtomic.Continue;
@@ -714,6 +861,12 @@ public class CompareAndSetStepDialog extends BaseStepDialog implements StepDialo
         wUnableToSetLoopTimeoutField.setText(Long.toString(meta.getUnableToSetLoopTimeout()));
         wUnableToSetLoopTimeoutTargetField.setText(meta.getTimeoutTargetStep() == null ? "" : meta.getTimeoutTargetStep().getName());
         wUnableToSetSkipTargetField.setText(meta.getSkipTargetStep() == null ? "" : meta.getSkipTargetStep().getName());
+        wSlowWaitThresholdField.setText(Long.toString(meta.getSlowWaitThreshold()));
+        wBatchSizeField.setText(Integer.toString(meta.getBatchSize()));
+        wWaitStrategyField.setText(meta.getWaitStrategy().name());
+        wFairField.setSelection(meta.isFair());
+        wWorkersField.setText(Integer.toString(meta.getWorkers()));
+        wOrderedOutputField.setSelection(meta.isOrderedOutput());
 
         wUnableToSetLoopCheckPeriodLabel.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Loop);
         wUnableToSetLoopCheckPeriodField.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Loop);
@@ -721,6 +874,7 @@ public class CompareAndSetStepDialog extends BaseStepDialog implements StepDialo
         wUnableToSetLoopTimeoutField.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Loop);
         wUnableToSetLoopTimeoutTargetLabel.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Loop);
         wUnableToSetLoopTimeoutTargetField.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Loop);
+        wFairField.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Loop);
         wUnableToSetSkipTargetLabel.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Skip);
         wUnableToSetSkipTargetField.setVisible(actionIfUnableToSet == ActionIfUnableToSet.Skip);
 
@@ -786,6 +940,8 @@ public class CompareAndSetStepDialog extends BaseStepDialog implements StepDialo
 
         meta.setAtomicIdFieldName(wAtomicIdField.getText());
         meta.setAtomicType(atomicType);
+        final String storageProvider = nullIfEmpty(wStorageProviderField.getText());
+        meta.setStorageProvider(AtomicStorage.PROVIDER_NAME.equals(storageProvider) ? null : storageProvider);
         meta.setActionIfNoAtomic(actionIfNoAtomic);
         if (ActionIfNoAtomic.Continue == actionIfNoAtomic) {
             final String continueTargetName = this.wContinueAtomicTargetField.getText();
@@ -827,6 +983,8 @@ public class CompareAndSetStepDialog extends BaseStepDialog implements StepDialo
                 } else {
                     meta.setTimeoutTargetStep(null);
                 }
+
+                meta.setFair(wFairField.getSelection());
             } catch (final NumberFormatException e) {
                 //TODO(AR) show an error to the user
                 throw e;
@@ -842,5 +1000,38 @@ public class CompareAndSetStepDialog extends BaseStepDialog implements StepDialo
         }
 
         meta.setCompareAndSetValues(compareAndSetValues);
+
+        try {
+            final long slowWaitThreshold = Long.parseLong(wSlowWaitThresholdField.getText());
+            meta.setSlowWaitThreshold(slowWaitThreshold);
+        } catch (final NumberFormatException e) {
+            //TODO(AR) show an error to the user
+            throw e;
+        }
+
+        try {
+            final int batchSize = Integer.parseInt(wBatchSizeField.getText());
+            meta.setBatchSize(batchSize);
+        } catch (final NumberFormatException e) {
+            //TODO(AR) show an error to the user
+            throw e;
+        }
+
+        try {
+            meta.setWaitStrategy(WaitStrategy.valueOf(wWaitStrategyField.getText()));
+        } catch (final IllegalArgumentException e) {
+            //TODO(AR) show an error to the user
+            throw e;
+        }
+
+        try {
+            final int workers = Integer.parseInt(wWorkersField.getText());
+            meta.setWorkers(workers);
+        } catch (final NumberFormatException e) {
+            //TODO(AR) show an error to the user
+            throw e;
+        }
+
+        meta.setOrderedOutput(wOrderedOutputField.getSelection());
     }
 }
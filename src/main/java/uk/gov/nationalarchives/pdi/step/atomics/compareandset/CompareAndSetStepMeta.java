@@ -49,12 +49,15 @@ import uk.gov.nationalarchives.pdi.step.atomics.AbstractAtomicStepMeta;
 import uk.gov.nationalarchives.pdi.step.atomics.ActionIfNoAtomic;
 import uk.gov.nationalarchives.pdi.step.atomics.ActionIfUnableToSet;
 import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.WaitStrategy;
+import uk.gov.nationalarchives.pdi.step.atomics.analysis.SynchronisationAnalysis;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 
 import static uk.gov.nationalarchives.pdi.step.atomics.Util.isNullOrEmpty;
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.nullIfEmpty;
 
 @Step(id = "CompareAndSetStep", image = "CompareAndSetStep.svg", name = "Compare And Set Atomic Value",
         description = "Compare and Set an Atomic Value", categoryDescription = "Flow")
@@ -67,6 +70,7 @@ public class CompareAndSetStepMeta extends AbstractAtomicStepMeta {
     private static final String ATTR_NAME_SKIP_TARGET_STEP = "skipTargetStep";
     private static final String ATTR_NAME_COMPARE = "compare";
     private static final String ATTR_NAME_SET = "set";
+    private static final String ELEM_NAME_FAIR = "fair";
     // </editor-fold>
 
     private static final Stream NEW_CONTINUE_STREAM = new Stream(StreamInterface.StreamType.TARGET, (StepMeta)null, BaseMessages.getString(PKG, "CompareAndSetStepMeta.TargetStream.Continue.Description", new String[0]), StreamIcon.TARGET, (Object)null);
@@ -80,6 +84,7 @@ public class CompareAndSetStepMeta extends AbstractAtomicStepMeta {
     private long unableToSetLoopCheckPeriod = DEFAULT_CHECK_PERIOD;
     private long unableToSetLoopTimeout = DEFAULT_TIMEOUT;
     @Nullable private List<CompareAndSetTarget> compareAndSetValues;
+    private boolean fair = false;
     // </editor-fold>
 
     @Nullable private StepMeta skipTargetStep;
@@ -91,6 +96,7 @@ public class CompareAndSetStepMeta extends AbstractAtomicStepMeta {
         unableToSetLoopCheckPeriod = DEFAULT_CHECK_PERIOD;
         unableToSetLoopTimeout = DEFAULT_TIMEOUT;
         compareAndSetValues = new ArrayList<>();
+        fair = false;
     }
 
     @Override
@@ -114,7 +120,8 @@ public class CompareAndSetStepMeta extends AbstractAtomicStepMeta {
         final StringBuilder builder = new StringBuilder();
         builder
                 .append(XMLHandler.addTagValue(ELEM_NAME_ATOMIC_ID_FIELD_NAME, atomicIdFieldName))
-                .append(XMLHandler.addTagValue(ELEM_NAME_ATOMIC_TYPE, atomicType.name()));
+                .append(XMLHandler.addTagValue(ELEM_NAME_ATOMIC_TYPE, atomicType.name()))
+                .append(XMLHandler.addTagValue(ELEM_NAME_STORAGE_PROVIDER, storageProvider));
 
         if (actionIfNoAtomic == ActionIfNoAtomic.Initialise) {
             builder.append(XMLHandler.addTagValue(ELEM_NAME_ACTION_IF_NO_ATOMIC, actionIfNoAtomic.name(), true, ATTR_NAME_VALUE, initialiseAtomicValue));
@@ -158,6 +165,30 @@ public class CompareAndSetStepMeta extends AbstractAtomicStepMeta {
             builder.append(XMLHandler.closeTag(ELEM_NAME_ATOMIC_VALUES));
         }
 
+        if (slowWaitThreshold != SLOW_WAIT_DISABLED) {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_SLOW_WAIT_THRESHOLD, slowWaitThreshold));
+        }
+
+        if (waitStrategy != DEFAULT_WAIT_STRATEGY) {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_WAIT_STRATEGY, waitStrategy.name()));
+        }
+
+        if (batchSize != BATCH_DISABLED) {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_BATCH_SIZE, batchSize));
+        }
+
+        if (fair) {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_FAIR, Boolean.toString(fair)));
+        }
+
+        if (workers != WORKERS_DISABLED) {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_WORKERS, workers));
+        }
+
+        if (!orderedOutput) {
+            builder.append(XMLHandler.addTagValue(ELEM_NAME_ORDERED_OUTPUT, Boolean.toString(orderedOutput)));
+        }
+
         return builder.toString();
     }
 
@@ -176,6 +207,8 @@ public class CompareAndSetStepMeta extends AbstractAtomicStepMeta {
                 }
             }
 
+            this.storageProvider = nullIfEmpty(XMLHandler.getTagValue(stepnode, ELEM_NAME_STORAGE_PROVIDER));
+
             final String xActionIfNoAtomic = XMLHandler.getTagValue(stepnode, ELEM_NAME_ACTION_IF_NO_ATOMIC);
             if (xActionIfNoAtomic != null) {
                 try {
@@ -275,6 +308,52 @@ public class CompareAndSetStepMeta extends AbstractAtomicStepMeta {
                     }
                 }
             }
+
+            final String xSlowWaitThreshold = XMLHandler.getTagValue(stepnode, ELEM_NAME_SLOW_WAIT_THRESHOLD);
+            if (xSlowWaitThreshold != null) {
+                try {
+                    this.slowWaitThreshold = Long.parseLong(xSlowWaitThreshold);
+                } catch (final NumberFormatException e) {
+                    throw new KettleXMLException("Slow Wait Threshold '" + xSlowWaitThreshold + "' is invalid: " + e.getMessage(), e);
+                }
+            }
+
+            final String xWaitStrategy = XMLHandler.getTagValue(stepnode, ELEM_NAME_WAIT_STRATEGY);
+            if (xWaitStrategy != null) {
+                try {
+                    this.waitStrategy = WaitStrategy.valueOf(xWaitStrategy);
+                } catch (final IllegalArgumentException e) {
+                    throw new KettleXMLException("Wait Strategy '" + xWaitStrategy + "' is invalid: " + e.getMessage(), e);
+                }
+            }
+
+            final String xBatchSize = XMLHandler.getTagValue(stepnode, ELEM_NAME_BATCH_SIZE);
+            if (xBatchSize != null) {
+                try {
+                    this.batchSize = Integer.parseInt(xBatchSize);
+                } catch (final NumberFormatException e) {
+                    throw new KettleXMLException("Batch Size '" + xBatchSize + "' is invalid: " + e.getMessage(), e);
+                }
+            }
+
+            final String xFair = XMLHandler.getTagValue(stepnode, ELEM_NAME_FAIR);
+            if (xFair != null) {
+                this.fair = Boolean.parseBoolean(xFair);
+            }
+
+            final String xWorkers = XMLHandler.getTagValue(stepnode, ELEM_NAME_WORKERS);
+            if (xWorkers != null) {
+                try {
+                    this.workers = Integer.parseInt(xWorkers);
+                } catch (final NumberFormatException e) {
+                    throw new KettleXMLException("Workers '" + xWorkers + "' is invalid: " + e.getMessage(), e);
+                }
+            }
+
+            final String xOrderedOutput = XMLHandler.getTagValue(stepnode, ELEM_NAME_ORDERED_OUTPUT);
+            if (xOrderedOutput != null) {
+                this.orderedOutput = Boolean.parseBoolean(xOrderedOutput);
+            }
         }
     }
 
@@ -303,6 +382,16 @@ public class CompareAndSetStepMeta extends AbstractAtomicStepMeta {
                       final RowMetaInterface info, final VariableSpace space, final Repository repository,
                       final IMetaStore metaStore) {
 
+        if (batchSize < 1) {
+            final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "CompareAndSetStepMeta.CheckResult.BatchSizeInvalid", Integer.toString(batchSize)), stepMeta);
+            remarks.add(cr);
+        }
+
+        if (workers < 1) {
+            final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "CompareAndSetStepMeta.CheckResult.WorkersInvalid", Integer.toString(workers)), stepMeta);
+            remarks.add(cr);
+        }
+
         final StepIOMetaInterface ioMeta = this.getStepIOMeta();
         final List<StreamInterface> targetStreams = ioMeta.getTargetStreams();
         for (final StreamInterface targetStream : targetStreams) {
@@ -332,6 +421,14 @@ public class CompareAndSetStepMeta extends AbstractAtomicStepMeta {
             final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "CompareAndSetStepMeta.CheckResult.NoInputReceivedFromOtherSteps"), stepMeta);
             remarks.add(cr);
         }
+
+        // check the synchronisation with the other steps of the transformation
+        if (transMeta != null) {
+            for (final SynchronisationAnalysis.Finding finding : SynchronisationAnalysis.of(transMeta).getFindings(stepMeta.getName())) {
+                final CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_WARNING, BaseMessages.getString(PKG, "CompareAndSetStepMeta.CheckResult.Synchronisation." + finding.getKind().name(), finding.getAtomicId(), finding.getAwaitedValues(), finding.getBlockingSteps()), stepMeta);
+                remarks.add(cr);
+            }
+        }
     }
 
     @Override
@@ -516,5 +613,21 @@ public class CompareAndSetStepMeta extends AbstractAtomicStepMeta {
     public void setCompareAndSetValues(@Nullable final List<CompareAndSetTarget> compareAndSetValues) {
         this.compareAndSetValues = compareAndSetValues;
     }
+
+    /**
+     * Determine if rows which are looping to CAS the same AtomicValue are served in the
+     * order in which they arrived, rather than by whichever next happens to retry first.
+     *
+     * Only applies when {@link #getActionIfUnableToSet()} is {@link ActionIfUnableToSet#Loop}.
+     *
+     * @return true if fair ordering is enabled
+     */
+    public boolean isFair() {
+        return fair;
+    }
+
+    public void setFair(final boolean fair) {
+        this.fair = fair;
+    }
     // </editor-fold>
 }
@@ -0,0 +1,81 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.coordinator;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.extension.ExtensionPoint;
+import org.pentaho.di.core.extension.ExtensionPointInterface;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorage;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Embeds a {@link CoordinatorServer} in Carte, when
+ * {@link CoordinatorConfig#PROP_COORDINATOR_SERVER} is set.
+ *
+ * The server coordinates the Atomic Values of the
+ * default storage of the Carte JVM, i.e. {@link AtomicStorage#INSTANCE}.
+ */
+@ExtensionPoint(
+        id = "AtomicsCoordinatorCarteStartup",
+        extensionPointId = "CarteStartup",
+        description = "Starts the Atomics Coordinator server when Carte starts"
+)
+public class CoordinatorCarteStartupExtensionPoint implements ExtensionPointInterface {
+
+    @Nullable private static CoordinatorServer server;
+
+    @Override
+    public void callExtensionPoint(final LogChannelInterface log, final Object object) throws KettleException {
+        final CoordinatorConfig config;
+        try {
+            config = CoordinatorConfig.fromSystemProperties();
+        } catch (final IllegalArgumentException e) {
+            throw new KettleException("Invalid Atomics Coordinator configuration: " + e.getMessage(), e);
+        }
+        if (!config.isServer()) {
+            return;
+        }
+
+        synchronized (CoordinatorCarteStartupExtensionPoint.class) {
+            if (server != null) {
+                return;
+            }
+
+            try {
+                final InetAddress bindAddress = config.getBindAddress() == null ? null : InetAddress.getByName(config.getBindAddress());
+                server = CoordinatorServer.start(bindAddress, config.getPort(), AtomicStorage.INSTANCE, config.getSecret());
+            } catch (final IOException e) {
+                throw new KettleException("Unable to start the Atomics Coordinator server on port: " + config.getPort(), e);
+            }
+
+            log.logBasic("Started the Atomics Coordinator server on: " + server.getAddress() + ":" + server.getPort());
+            if (config.getSecret() == null && !server.getAddress().isLoopbackAddress()) {
+                log.logError("The Atomics Coordinator server is reachable from other hosts, but " + CoordinatorConfig.PROP_COORDINATOR_SECRET + " is not set, so any client may modify its Atomic Values");
+            }
+        }
+    }
+}
@@ -0,0 +1,670 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.coordinator;
+
+import com.evolvedbinary.j8fu.function.FunctionE;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicListener;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.coordinator.CoordinatorProtocol.*;
+
+/**
+ * A client of a {@link CoordinatorServer}.
+ *
+ * A single connection is shared by all threads. Requests are
+ * pipelined, i.e. a request is sent without waiting for the
+ * responses to earlier requests, and each {@code ...Async}
+ * method returns a future of its response. The blocking methods
+ * wait for at most the configured timeout.
+ *
+ * Atomic Values may be watched, in which case their value is kept
+ * in a near-cache that is updated by the notifications which the
+ * server pushes whenever they change, so reading them does not
+ * require a round-trip to the server.
+ *
+ * If the connection fails then every outstanding and subsequent
+ * request fails with an {@link IOException}, and the client is closed.
+ */
+@ThreadSafe
+public class CoordinatorClient implements Closeable {
+
+    /**
+     * Receives the notifications pushed by the server for
+     * subscribed Atomic Values.
+     *
+     * Notifications are delivered by the thread which reads the
+     * connection, so a listener must not block, nor wait for
+     * the response to a request.
+     */
+    @FunctionalInterface
+    public interface NotificationListener {
+        void onNotification(String id, AtomicListener.Event event);
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    @GuardedBy("out") private final DataOutputStream out;
+    private final long timeout;
+    private final Thread reader;
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final ConcurrentMap<Integer, CompletableFuture<DataInputStream>> pending = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CachedValue> nearCache = new ConcurrentHashMap<>();
+    @Nullable private volatile NotificationListener notificationListener;
+    @Nullable private volatile IOException failure;
+
+    private CoordinatorClient(final Socket socket, final long timeout, @Nullable final String secret) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.timeout = timeout;
+        this.reader = new Thread(this::readFrames, "atomics-coordinator-client-" + socket.getRemoteSocketAddress());
+        this.reader.setDaemon(true);
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(secret == null ? "" : secret);
+        out.flush();
+
+        socket.setSoTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+        final byte status;
+        try {
+            status = in.readByte();
+        } catch (final EOFException e) {
+            throw new IOException("The Atomics Coordinator server closed the connection during the handshake", e);
+        }
+        if (status != STATUS_OK) {
+            throw new IOException("The Atomics Coordinator server rejected the connection, check that " + CoordinatorConfig.PROP_COORDINATOR_SECRET + " and the plugin version match those of the server");
+        }
+        socket.setSoTimeout(0);
+    }
+
+    /**
+     * Connects to a server.
+     *
+     * @param host the host of the server
+     * @param port the port of the server
+     * @param timeout the maximum time in milliseconds to wait to connect, and for each response
+     *
+     * @return the connected client
+     *
+     * @throws IOException if the client cannot connect to the server
+     */
+    public static CoordinatorClient connect(final String host, final int port, final long timeout) throws IOException {
+        return connect(host, port, timeout, null);
+    }
+
+    /**
+     * Connects to a server.
+     *
+     * @param host the host of the server
+     * @param port the port of the server
+     * @param timeout the maximum time in milliseconds to wait to connect, and for each response
+     * @param secret the shared secret of the server, or null if it has none
+     *
+     * @return the connected client
+     *
+     * @throws IOException if the client cannot connect to the server, or the server rejects the client
+     */
+    public static CoordinatorClient connect(final String host, final int port, final long timeout, @Nullable final String secret) throws IOException {
+        final Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), (int) Math.min(timeout, Integer.MAX_VALUE));
+            final CoordinatorClient client = new CoordinatorClient(socket, timeout, secret);
+            client.reader.start();
+            return client;
+        } catch (final IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    /**
+     * Set the listener which receives notifications for subscribed Atomic Values.
+     *
+     * @param notificationListener the listener, or null to remove the listener
+     */
+    public void setNotificationListener(@Nullable final NotificationListener notificationListener) {
+        this.notificationListener = notificationListener;
+    }
+
+    /**
+     * Determines if the client is closed, either explicitly
+     * or because the connection failed.
+     *
+     * @return true if the client is closed
+     */
+    public boolean isClosed() {
+        return failure != null;
+    }
+
+    @Override
+    public void close() {
+        fail(new IOException("The Atomics Coordinator client is closed"));
+    }
+
+    // <editor-fold desc="requests">
+    public @Nullable Integer get(final String id, final AtomicType atomicType) throws IllegalArgumentException, UncheckedIOException {
+        return await(getAsync(id, atomicType));
+    }
+
+    /**
+     * Get the value of an Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     *
+     * @return a future of the value, or of null if there is no such Atomic Value
+     */
+    public CompletableFuture<Integer> getAsync(final String id, final AtomicType atomicType) {
+        final ByteArrayOutputStream request = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream os = new DataOutputStream(request);
+            os.writeByte(encodeType(atomicType));
+            os.writeUTF(id);
+        } catch (final IOException e) {
+            return failed(e);
+        }
+        return send(OP_GET, request, is -> readStatus(is) == STATUS_OK ? is.readInt() : null);
+    }
+
+    public int getOrCreate(final String id, final AtomicType atomicType, final String initialValue) throws IllegalArgumentException, UncheckedIOException {
+        return await(getOrCreateAsync(id, atomicType, initialValue));
+    }
+
+    /**
+     * Get the value of an Atomic Value, creating it if it does not exist.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     * @param initialValue the initial value for the Atomic Value if it is created
+     *
+     * @return a future of the value
+     */
+    public CompletableFuture<Integer> getOrCreateAsync(final String id, final AtomicType atomicType, final String initialValue) {
+        final ByteArrayOutputStream request = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream os = new DataOutputStream(request);
+            os.writeByte(encodeType(atomicType));
+            os.writeUTF(id);
+            os.writeUTF(initialValue);
+        } catch (final IOException e) {
+            return failed(e);
+        }
+        return send(OP_GET_OR_CREATE, request, is -> {
+            readStatus(is);
+            return is.readInt();
+        });
+    }
+
+    public boolean compareAndSet(final String id, final AtomicType atomicType, final int expect, final int update) throws IllegalArgumentException, UncheckedIOException {
+        return await(compareAndSetAsync(id, atomicType, expect, update));
+    }
+
+    /**
+     * Compare and Set an Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     * @param expect the expected value
+     * @param update the new value
+     *
+     * @return a future of true if the value was set, or false if the value was not
+     *     the expected value or there is no such Atomic Value
+     */
+    public CompletableFuture<Boolean> compareAndSetAsync(final String id, final AtomicType atomicType, final int expect, final int update) {
+        final ByteArrayOutputStream request = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream os = new DataOutputStream(request);
+            os.writeByte(encodeType(atomicType));
+            os.writeUTF(id);
+            os.writeInt(expect);
+            os.writeInt(update);
+        } catch (final IOException e) {
+            return failed(e);
+        }
+        return send(OP_COMPARE_AND_SET, request, is -> readStatus(is) == STATUS_OK && is.readBoolean());
+    }
+
+    public boolean remove(final String id) throws UncheckedIOException {
+        return await(removeAsync(id));
+    }
+
+    /**
+     * Remove an Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return a future of true if the Atomic Value was removed
+     */
+    public CompletableFuture<Boolean> removeAsync(final String id) {
+        final ByteArrayOutputStream request = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream os = new DataOutputStream(request);
+            os.writeUTF(id);
+        } catch (final IOException e) {
+            return failed(e);
+        }
+        return send(OP_REMOVE, request, is -> {
+            readStatus(is);
+            return is.readBoolean();
+        });
+    }
+
+    public Integer[] getAll(final AtomicType atomicType, final List<String> ids) throws IllegalArgumentException, UncheckedIOException {
+        return await(getAllAsync(atomicType, ids));
+    }
+
+    /**
+     * Get the values of a batch of Atomic Values in a single request.
+     *
+     * @param atomicType the type of the Atomic Values
+     * @param ids the identifiers of the Atomic Values
+     *
+     * @return a future of the values, in the same order as the ids,
+     *     where a value is null if there is no such Atomic Value
+     */
+    public CompletableFuture<Integer[]> getAllAsync(final AtomicType atomicType, final List<String> ids) {
+        final ByteArrayOutputStream request = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream os = new DataOutputStream(request);
+            os.writeByte(encodeType(atomicType));
+            os.writeInt(ids.size());
+            for (final String id : ids) {
+                os.writeUTF(id);
+            }
+        } catch (final IOException e) {
+            return failed(e);
+        }
+        return send(OP_BATCH_GET, request, is -> {
+            readStatus(is);
+            final Integer[] values = new Integer[is.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                final byte status = is.readByte();
+                final int value = is.readInt();
+                values[i] = status == STATUS_OK ? value : null;
+            }
+            return values;
+        });
+    }
+
+    public boolean[] compareAndSetAll(final AtomicType atomicType, final List<String> ids, final int[] expects, final int[] updates) throws IllegalArgumentException, UncheckedIOException {
+        return await(compareAndSetAllAsync(atomicType, ids, expects, updates));
+    }
+
+    /**
+     * Compare and Set a batch of Atomic Values in a single request.
+     *
+     * Each Atomic Value is set individually, i.e. some
+     * may be set whilst others are not.
+     *
+     * @param atomicType the type of the Atomic Values
+     * @param ids the identifiers of the Atomic Values
+     * @param expects the expected value of each Atomic Value
+     * @param updates the new value of each Atomic Value
+     *
+     * @return a future of whether each Atomic Value was set, in the same order as the ids
+     */
+    public CompletableFuture<boolean[]> compareAndSetAllAsync(final AtomicType atomicType, final List<String> ids, final int[] expects, final int[] updates) {
+        if (expects.length != ids.size() || updates.length != ids.size()) {
+            throw new IllegalArgumentException("There must be an expected and update value for each id");
+        }
+
+        final ByteArrayOutputStream request = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream os = new DataOutputStream(request);
+            os.writeByte(encodeType(atomicType));
+            os.writeInt(ids.size());
+            for (int i = 0; i < expects.length; i++) {
+                os.writeUTF(ids.get(i));
+                os.writeInt(expects[i]);
+                os.writeInt(updates[i]);
+            }
+        } catch (final IOException e) {
+            return failed(e);
+        }
+        return send(OP_BATCH_COMPARE_AND_SET, request, is -> {
+            readStatus(is);
+            final boolean[] set = new boolean[is.readInt()];
+            for (int i = 0; i < set.length; i++) {
+                is.readByte();  // status
+                set[i] = is.readBoolean();
+                is.readInt();  // current value
+            }
+            return set;
+        });
+    }
+
+    public int getOrCreateAll(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> batch) throws IllegalArgumentException, UncheckedIOException {
+        return await(getOrCreateAllAsync(atomicType, batch));
+    }
+
+    /**
+     * Get or Create a batch of Atomic Values in a single request.
+     *
+     * @param atomicType the type of the Atomic Values
+     * @param batch pairs of the identifier and initial value of each Atomic Value
+     *
+     * @return a future of the number of Atomic Values that were created
+     */
+    public CompletableFuture<Integer> getOrCreateAllAsync(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> batch) {
+        final ByteArrayOutputStream request = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream os = new DataOutputStream(request);
+            os.writeByte(encodeType(atomicType));
+            os.writeInt(batch.size());
+            for (final Map.Entry<String, String> idAndInitialValue : batch) {
+                os.writeUTF(idAndInitialValue.getKey());
+                os.writeUTF(idAndInitialValue.getValue());
+            }
+        } catch (final IOException e) {
+            return failed(e);
+        }
+        return send(OP_BATCH_GET_OR_CREATE, request, is -> {
+            readStatus(is);
+            return is.readInt();
+        });
+    }
+
+    /**
+     * Watch an Atomic Value, so that its value is held
+     * in the near-cache of this client.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     *
+     * @return the near-cached value, which is updated whenever the Atomic Value changes
+     *
+     * @throws IllegalArgumentException if the Atomic Value exists but has a different AtomicType
+     * @throws UncheckedIOException if the request fails
+     */
+    public CachedValue watch(final String id, final AtomicType atomicType) throws IllegalArgumentException, UncheckedIOException {
+        CachedValue cachedValue = nearCache.get(id);
+        if (cachedValue == null) {
+            final CachedValue newCachedValue = new CachedValue(atomicType);
+            cachedValue = nearCache.putIfAbsent(id, newCachedValue);
+            if (cachedValue == null) {
+                cachedValue = newCachedValue;
+
+                final CompletableFuture<Integer> response = watchAsync(id, atomicType, newCachedValue);
+                response.whenComplete((value, e) -> {
+                    if (e != null) {
+                        nearCache.remove(id, newCachedValue);
+                        newCachedValue.ready.completeExceptionally(e);
+                    } else {
+                        newCachedValue.ready.complete(null);
+                    }
+                });
+            }
+        }
+
+        await(cachedValue.ready);
+        if (cachedValue.atomicType != atomicType) {
+            throw new IllegalArgumentException("Requested type: " + atomicType + " but watching type: " + cachedValue.atomicType + " for id: " + id);
+        }
+        return cachedValue;
+    }
+
+    /**
+     * Subscribe to the notifications of an Atomic Value,
+     * which are delivered to the {@link NotificationListener}.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @throws UncheckedIOException if the request fails
+     */
+    public void subscribe(final String id) throws UncheckedIOException {
+        await(watchAsync(id, null, null));
+    }
+
+    /**
+     * Watch an Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value, or null to only subscribe to notifications
+     * @param cachedValue the near-cached value to initialise from the response, or null
+     *
+     * @return a future of the value, or of null if there is no such Atomic Value
+     */
+    private CompletableFuture<Integer> watchAsync(final String id, @Nullable final AtomicType atomicType, @Nullable final CachedValue cachedValue) {
+        final ByteArrayOutputStream request = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream os = new DataOutputStream(request);
+            os.writeByte(encodeType(atomicType));
+            os.writeUTF(id);
+        } catch (final IOException e) {
+            return failed(e);
+        }
+        return send(OP_WATCH, request, is -> {
+            final Integer value = readStatus(is) == STATUS_OK ? is.readInt() : null;
+            if (cachedValue != null) {
+                // NOTE: set by the reader thread, before any later notification is processed
+                cachedValue.value = value;
+            }
+            return value;
+        });
+    }
+    // </editor-fold>
+
+    /**
+     * Sends a request.
+     *
+     * @param op the operation
+     * @param request the payload of the request
+     * @param responseReader reads the payload of the response,
+     *     this is called by the reader thread, so that responses and
+     *     notifications are processed in the order they were received
+     *
+     * @return the future response
+     */
+    private <T> CompletableFuture<T> send(final byte op, final ByteArrayOutputStream request, final FunctionE<DataInputStream, T, IOException> responseReader) {
+        int requestId;
+        do {
+            requestId = nextRequestId.incrementAndGet();
+        } while (requestId == NOTIFICATION_REQUEST_ID);
+
+        final CompletableFuture<DataInputStream> response = new CompletableFuture<>();
+        final CompletableFuture<T> result = response.thenApply(is -> {
+            try {
+                return responseReader.apply(is);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        pending.put(requestId, response);
+        final IOException localFailure = failure;
+        if (localFailure != null) {
+            pending.remove(requestId);
+            response.completeExceptionally(localFailure);
+            return result;
+        }
+
+        try {
+            synchronized (out) {
+                writeFrame(out, requestId, op, request);
+            }
+        } catch (final IOException e) {
+            fail(e);
+        }
+        return result;
+    }
+
+    private void readFrames() {
+        try {
+            while (true) {
+                final CoordinatorProtocol.Frame frame = readFrame(in);
+                final DataInputStream is = new DataInputStream(new ByteArrayInputStream(frame.payload));
+                if (frame.requestId == NOTIFICATION_REQUEST_ID) {
+                    onNotification(is);
+                } else {
+                    final CompletableFuture<DataInputStream> response = pending.remove(frame.requestId);
+                    if (response != null) {
+                        response.complete(is);
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            fail(e);
+        }
+    }
+
+    private void onNotification(final DataInputStream is) throws IOException {
+        final AtomicListener.Event event = decodeEvent(is.readByte());
+        final String id = is.readUTF();
+        final AtomicType atomicType = decodeType(is.readByte());
+        final int value = is.readInt();
+
+        final CachedValue cachedValue = nearCache.get(id);
+        if (cachedValue != null) {
+            if (event == AtomicListener.Event.REMOVED || atomicType != cachedValue.atomicType) {
+                cachedValue.value = null;
+            } else {
+                cachedValue.value = value;
+            }
+        }
+
+        final NotificationListener listener = notificationListener;
+        if (listener != null) {
+            try {
+                listener.onNotification(id, event);
+            } catch (final RuntimeException e) {
+                // must not stop the reader thread
+            }
+        }
+    }
+
+    private void fail(final IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        closeQuietly(socket);
+
+        for (final Integer requestId : pending.keySet()) {
+            final CompletableFuture<DataInputStream> response = pending.remove(requestId);
+            if (response != null) {
+                response.completeExceptionally(e);
+            }
+        }
+
+        // the near-cache can no longer be kept up to date
+        for (final CachedValue cachedValue : nearCache.values()) {
+            cachedValue.valid = false;
+        }
+    }
+
+    private <T> T await(final CompletableFuture<T> future) throws IllegalArgumentException, UncheckedIOException {
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted whilst waiting for the Atomics Coordinator"));
+        } catch (final TimeoutException e) {
+            throw new UncheckedIOException(new InterruptedIOException("Timed out after " + timeout + "ms whilst waiting for the Atomics Coordinator"));
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof IOException) {
+                throw new UncheckedIOException((IOException) cause);
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    private static byte readStatus(final DataInputStream is) throws IOException {
+        final byte status = is.readByte();
+        if (status == STATUS_ERROR) {
+            throw new IllegalArgumentException(is.readUTF());
+        }
+        return status;
+    }
+
+    private static <T> CompletableFuture<T> failed(final IOException e) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (final IOException e) {
+            // no-op
+        }
+    }
+
+    /**
+     * The near-cached value of a watched Atomic Value.
+     */
+    @ThreadSafe
+    public static final class CachedValue {
+        private final AtomicType atomicType;
+        private final CompletableFuture<Void> ready = new CompletableFuture<>();
+        @Nullable private volatile Integer value;
+        private volatile boolean valid = true;
+
+        private CachedValue(final AtomicType atomicType) {
+            this.atomicType = atomicType;
+        }
+
+        public AtomicType getType() {
+            return atomicType;
+        }
+
+        /**
+         * Get the value.
+         *
+         * @return the value, or null if there is no such Atomic Value
+         */
+        public @Nullable Integer getValue() {
+            return value;
+        }
+
+        /**
+         * Determines if the value is still being kept up to date.
+         *
+         * @return false if the client has been closed
+         */
+        public boolean isValid() {
+            return valid;
+        }
+    }
+}
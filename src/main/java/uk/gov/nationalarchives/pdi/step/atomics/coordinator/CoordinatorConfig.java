@@ -0,0 +1,185 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.coordinator;
+
+import net.jcip.annotations.Immutable;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.*;
+
+/**
+ * Configuration for the Atomics Coordinator,
+ * see {@link CoordinatorServer} and {@link CoordinatorStorageProvider}.
+ *
+ * The configuration is read from System Properties, which
+ * KETTLE also populates from {@code kettle.properties}.
+ */
+@Immutable
+public class CoordinatorConfig {
+
+    /**
+     * The host of the coordinator server that the
+     * {@link CoordinatorStorageProvider} connects to.
+     */
+    public static final String PROP_COORDINATOR_HOST = "ATOMICS_COORDINATOR_HOST";
+
+    /**
+     * The port of the coordinator server.
+     */
+    public static final String PROP_COORDINATOR_PORT = "ATOMICS_COORDINATOR_PORT";
+
+    /**
+     * The maximum time in milliseconds to wait to connect to,
+     * or for a response from, the coordinator server.
+     */
+    public static final String PROP_COORDINATOR_TIMEOUT = "ATOMICS_COORDINATOR_TIMEOUT";
+
+    /**
+     * A comma separated list of namespaces, or {@link uk.gov.nationalarchives.pdi.step.atomics.Util#ALL_NAMESPACES},
+     * whose Atomic Values are read-mostly and should be near-cached by the client.
+     */
+    public static final String PROP_COORDINATOR_NEAR_CACHE_NAMESPACES = "ATOMICS_COORDINATOR_NEAR_CACHE_NAMESPACES";
+
+    /**
+     * Set to {@code true} to start the coordinator server when Carte starts.
+     */
+    public static final String PROP_COORDINATOR_SERVER = "ATOMICS_COORDINATOR_SERVER";
+
+    /**
+     * The address that the coordinator server listens on,
+     * if not set then it listens only on the loopback address.
+     * Set to {@code 0.0.0.0} to listen on all addresses.
+     */
+    public static final String PROP_COORDINATOR_BIND_ADDRESS = "ATOMICS_COORDINATOR_BIND_ADDRESS";
+
+    /**
+     * A shared secret that clients must present to the coordinator
+     * server when they connect. If not set then the server accepts
+     * any client that can reach it.
+     */
+    public static final String PROP_COORDINATOR_SECRET = "ATOMICS_COORDINATOR_SECRET";
+
+    public static final int DEFAULT_PORT = 7941;
+    public static final long DEFAULT_TIMEOUT = 30_000;
+
+    @Nullable private final String host;
+    private final int port;
+    private final long timeout;
+    private final Set<String> nearCacheNamespaces;
+    private final boolean server;
+    @Nullable private final String bindAddress;
+    @Nullable private final String secret;
+
+    public CoordinatorConfig(@Nullable final String host, final int port, final long timeout, final Set<String> nearCacheNamespaces, final boolean server, @Nullable final String bindAddress, @Nullable final String secret) {
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("Port must be between 0 and 65535");
+        }
+        if (timeout < 1) {
+            throw new IllegalArgumentException("Timeout must be greater than zero");
+        }
+        this.host = host;
+        this.port = port;
+        this.timeout = timeout;
+        this.nearCacheNamespaces = Collections.unmodifiableSet(new HashSet<>(nearCacheNamespaces));
+        this.server = server;
+        this.bindAddress = bindAddress;
+        this.secret = secret;
+    }
+
+    /**
+     * Reads the coordinator configuration from the System Properties.
+     *
+     * @return the configuration
+     *
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public static CoordinatorConfig fromSystemProperties() throws IllegalArgumentException {
+        final String host = nullIfEmpty(System.getProperty(PROP_COORDINATOR_HOST));
+        final int port = (int) parseNumber(PROP_COORDINATOR_PORT, DEFAULT_PORT);
+        final long timeout = parseNumber(PROP_COORDINATOR_TIMEOUT, DEFAULT_TIMEOUT);
+
+        final String strNearCacheNamespaces = System.getProperty(PROP_COORDINATOR_NEAR_CACHE_NAMESPACES);
+        final Set<String> nearCacheNamespaces = isNullOrEmpty(strNearCacheNamespaces) ? Collections.emptySet() : parseNamespaces(strNearCacheNamespaces);
+
+        final boolean server = Boolean.parseBoolean(System.getProperty(PROP_COORDINATOR_SERVER));
+        final String bindAddress = nullIfEmpty(System.getProperty(PROP_COORDINATOR_BIND_ADDRESS));
+        final String secret = nullIfEmpty(System.getProperty(PROP_COORDINATOR_SECRET));
+
+        return new CoordinatorConfig(host, port, timeout, nearCacheNamespaces, server, bindAddress, secret);
+    }
+
+    private static long parseNumber(final String propertyName, final long defaultValue) throws IllegalArgumentException {
+        final String str = System.getProperty(propertyName);
+        if (isNullOrEmpty(str)) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(str.trim());
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(propertyName + " must be a number, but was: " + str, e);
+        }
+    }
+
+    /**
+     * Determines if an Atomic Value should be near-cached by the client.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return true if the namespace of the Atomic Value is near-cached
+     */
+    public boolean isNearCached(final String id) {
+        return !nearCacheNamespaces.isEmpty() && isInNamespaces(id, nearCacheNamespaces);
+    }
+
+    public @Nullable String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public Set<String> getNearCacheNamespaces() {
+        return nearCacheNamespaces;
+    }
+
+    public boolean isServer() {
+        return server;
+    }
+
+    public @Nullable String getBindAddress() {
+        return bindAddress;
+    }
+
+    public @Nullable String getSecret() {
+        return secret;
+    }
+}
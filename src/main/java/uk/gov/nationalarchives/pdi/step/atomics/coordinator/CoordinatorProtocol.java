@@ -0,0 +1,240 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.coordinator;
+
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicBooleanValue;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicIntegerValue;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicListener;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The binary protocol spoken between a {@link CoordinatorClient}
+ * and a {@link CoordinatorServer}.
+ *
+ * After connecting, the client sends {@link #MAGIC}, {@link #VERSION}
+ * and the shared secret as a UTF string (empty if it has none), and
+ * the server replies with a single status byte, either {@link #STATUS_OK},
+ * or {@link #STATUS_ERROR} before closing the connection if the version
+ * or secret does not match its own. Thereafter each message in either direction is a frame of:
+ * <pre>
+ *     int length       (of the rest of the frame)
+ *     int requestId
+ *     byte op
+ *     byte[] payload
+ * </pre>
+ *
+ * A client may send many requests without waiting for their responses
+ * (pipelining), the response to a request carries the same requestId
+ * and op. Frames sent by the server with the requestId
+ * {@link #NOTIFICATION_REQUEST_ID} are notifications that are
+ * pushed to clients that have watched an Atomic Value.
+ *
+ * Atomic Values are transferred as an int, where a Boolean is
+ * {@code 0} for false, or {@code 1} for true.
+ */
+final class CoordinatorProtocol {
+
+    static final int MAGIC = 0x41544D43;  // "ATMC"
+    static final byte VERSION = 2;
+
+    static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    static final int NOTIFICATION_REQUEST_ID = 0;
+
+    // <editor-fold desc="ops">
+    static final byte OP_GET = 1;
+    static final byte OP_GET_OR_CREATE = 2;
+    static final byte OP_COMPARE_AND_SET = 3;
+    static final byte OP_REMOVE = 4;
+    static final byte OP_BATCH_GET = 5;
+    static final byte OP_BATCH_COMPARE_AND_SET = 6;
+    static final byte OP_BATCH_GET_OR_CREATE = 7;
+    static final byte OP_WATCH = 8;
+    static final byte OP_NOTIFY = 9;
+    // </editor-fold>
+
+    // <editor-fold desc="response status">
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_NOT_FOUND = 1;
+    static final byte STATUS_ERROR = 2;
+    // </editor-fold>
+
+    /**
+     * Sent in place of an {@link AtomicType} when there is no type.
+     */
+    static final byte NO_TYPE = -1;
+
+    private CoordinatorProtocol() {
+    }
+
+    static byte encodeType(@Nullable final AtomicType atomicType) {
+        return atomicType == null ? NO_TYPE : (byte) atomicType.ordinal();
+    }
+
+    static @Nullable AtomicType decodeType(final byte b) throws IOException {
+        if (b == NO_TYPE) {
+            return null;
+        }
+        final AtomicType[] atomicTypes = AtomicType.values();
+        if (b < 0 || b >= atomicTypes.length) {
+            throw new IOException("Invalid Atomic Type: " + b);
+        }
+        return atomicTypes[b];
+    }
+
+    static byte encodeEvent(final AtomicListener.Event event) {
+        return (byte) event.ordinal();
+    }
+
+    static AtomicListener.Event decodeEvent(final byte b) throws IOException {
+        final AtomicListener.Event[] events = AtomicListener.Event.values();
+        if (b < 0 || b >= events.length) {
+            throw new IOException("Invalid event: " + b);
+        }
+        return events[b];
+    }
+
+    static int encodeBoolean(final boolean value) {
+        return value ? 1 : 0;
+    }
+
+    static boolean decodeBoolean(final int value) {
+        return value != 0;
+    }
+
+    /**
+     * Get the value of an Atomic Value as an int.
+     *
+     * @param atomicValue the Atomic Value
+     *
+     * @return the value
+     */
+    static int getValue(final AtomicValue atomicValue) {
+        if (atomicValue.getType() == AtomicType.Boolean) {
+            return encodeBoolean(((AtomicBooleanValue) atomicValue).get());
+        } else {
+            return ((AtomicIntegerValue) atomicValue).get();
+        }
+    }
+
+    /**
+     * Compare and Set the value of an Atomic Value from ints.
+     *
+     * @param atomicValue the Atomic Value
+     * @param expect the expected value
+     * @param update the new value
+     *
+     * @return true if the value was set
+     */
+    static boolean compareAndSetValue(final AtomicValue atomicValue, final int expect, final int update) {
+        if (atomicValue.getType() == AtomicType.Boolean) {
+            return ((AtomicBooleanValue) atomicValue).compareAndSet(decodeBoolean(expect), decodeBoolean(update));
+        } else {
+            return ((AtomicIntegerValue) atomicValue).compareAndSet(expect, update);
+        }
+    }
+
+    /**
+     * Writes a frame.
+     *
+     * The caller must hold the monitor of {@code out}
+     * if it may be written to concurrently.
+     *
+     * @param out the output stream
+     * @param requestId the id of the request
+     * @param op the operation
+     * @param payload the payload
+     *
+     * @throws IOException if the frame cannot be written
+     */
+    static void writeFrame(final DataOutputStream out, final int requestId, final byte op, final ByteArrayOutputStream payload) throws IOException {
+        out.writeInt(4 + 1 + payload.size());
+        out.writeInt(requestId);
+        out.writeByte(op);
+        payload.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Encodes a frame, so that it can be queued for writing later.
+     *
+     * @param requestId the id of the request
+     * @param op the operation
+     * @param payload the payload
+     *
+     * @return the encoded frame
+     */
+    static byte[] encodeFrame(final int requestId, final byte op, final ByteArrayOutputStream payload) {
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream(4 + 4 + 1 + payload.size());
+        try {
+            writeFrame(new DataOutputStream(frame), requestId, op, payload);
+        } catch (final IOException e) {
+            // ByteArrayOutputStream does not throw IOException
+            throw new UncheckedIOException(e);
+        }
+        return frame.toByteArray();
+    }
+
+    /**
+     * Reads a frame.
+     *
+     * @param in the input stream
+     *
+     * @return the frame
+     *
+     * @throws IOException if the frame cannot be read, or is invalid
+     */
+    static Frame readFrame(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 5 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        final int requestId = in.readInt();
+        final byte op = in.readByte();
+        final byte[] payload = new byte[length - 5];
+        in.readFully(payload);
+        return new Frame(requestId, op, payload);
+    }
+
+    /**
+     * A frame read from a stream.
+     */
+    static final class Frame {
+        final int requestId;
+        final byte op;
+        final byte[] payload;
+
+        Frame(final int requestId, final byte op, final byte[] payload) {
+            this.requestId = requestId;
+            this.op = op;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,647 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.coordinator;
+
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicListener;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageProvider;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.coordinator.CoordinatorProtocol.*;
+
+/**
+ * A server which coordinates access to the Atomic Values of
+ * an {@link AtomicStorageProvider} for remote JVMs, e.g. the
+ * Carte slave servers of a clustered transformation.
+ *
+ * Each connection is served by its own thread, which processes
+ * the requests of that connection in the order that they were sent.
+ * Requests that modify or watch an Atomic Value are processed whilst
+ * holding a lock for its id, and any notifications to watchers
+ * and the response are queued before that lock is released, so a
+ * client always receives the responses and notifications for an
+ * id in the order in which they happened.
+ *
+ * Each connection also has a writer thread which writes its queued
+ * frames to the socket, so that a slow client never blocks the
+ * processing of requests for other clients. A connection whose queue
+ * exceeds {@link #MAX_QUEUED_FRAMES} is closed.
+ *
+ * The protocol is not encrypted, so the server should only be
+ * reachable from a trusted network. By default it listens only on
+ * the loopback address, and it may require clients to present a
+ * shared secret when they connect.
+ *
+ * NOTE: Only changes made through the server are notified to
+ * watchers, so every step that synchronises on a coordinated
+ * Atomic Value should use the {@link CoordinatorStorageProvider},
+ * including those on the JVM that runs the server.
+ */
+@ThreadSafe
+public class CoordinatorServer implements Closeable {
+
+    private static final int LOCK_STRIPES = 64;
+    static final int MAX_QUEUED_FRAMES = 65_536;
+
+    private final AtomicStorageProvider storage;
+    @Nullable private final byte[] secret;
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final ConcurrentMap<String, Set<Connection>> watchers = new ConcurrentHashMap<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    private CoordinatorServer(final AtomicStorageProvider storage, @Nullable final String secret, final ServerSocket serverSocket) {
+        this.storage = storage;
+        this.secret = secret == null ? null : secret.getBytes(StandardCharsets.UTF_8);
+        this.serverSocket = serverSocket;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.acceptor = new Thread(this::acceptConnections, "atomics-coordinator-acceptor");
+        this.acceptor.setDaemon(true);
+    }
+
+    /**
+     * Starts a server which accepts any client.
+     *
+     * @param bindAddress the address to listen on, or null for the loopback address
+     * @param port the port to listen on, or 0 for any free port
+     * @param storage the storage of the Atomic Values to coordinate
+     *
+     * @return the running server
+     *
+     * @throws IOException if the server cannot listen on the port
+     */
+    public static CoordinatorServer start(@Nullable final InetAddress bindAddress, final int port, final AtomicStorageProvider storage) throws IOException {
+        return start(bindAddress, port, storage, null);
+    }
+
+    /**
+     * Starts a server.
+     *
+     * @param bindAddress the address to listen on, or null for the loopback address.
+     *     Use the wildcard address, e.g. {@code 0.0.0.0}, to listen on all addresses.
+     * @param port the port to listen on, or 0 for any free port
+     * @param storage the storage of the Atomic Values to coordinate
+     * @param secret the shared secret that clients must present, or null to accept any client
+     *
+     * @return the running server
+     *
+     * @throws IOException if the server cannot listen on the port
+     */
+    public static CoordinatorServer start(@Nullable final InetAddress bindAddress, final int port, final AtomicStorageProvider storage, @Nullable final String secret) throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(port, 0, bindAddress == null ? InetAddress.getLoopbackAddress() : bindAddress);
+        final CoordinatorServer server = new CoordinatorServer(storage, secret, serverSocket);
+        server.acceptor.start();
+        return server;
+    }
+
+    /**
+     * Get the address that the server is listening on.
+     *
+     * @return the address
+     */
+    public InetAddress getAddress() {
+        return serverSocket.getInetAddress();
+    }
+
+    /**
+     * Get the port that the server is listening on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (final Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (final IOException e) {
+                // either closed, or unable to accept this connection
+                continue;
+            }
+
+            final Connection connection;
+            try {
+                socket.setTcpNoDelay(true);
+                connection = new Connection(socket);
+            } catch (final IOException e) {
+                closeQuietly(socket);
+                continue;
+            }
+
+            connections.add(connection);
+            final Thread thread = new Thread(connection, "atomics-coordinator-connection-" + socket.getRemoteSocketAddress());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private ReentrantLock lockFor(final String id) {
+        return locks[(id.hashCode() & 0x7FFFFFFF) % LOCK_STRIPES];
+    }
+
+    /**
+     * Locks the ids of a batch.
+     *
+     * The locks are always taken in the same order to avoid deadlock.
+     *
+     * @param ids the ids
+     *
+     * @return the indexes of the locks that were taken
+     */
+    private int[] lockAll(final List<String> ids) {
+        final boolean[] needed = new boolean[LOCK_STRIPES];
+        for (final String id : ids) {
+            needed[(id.hashCode() & 0x7FFFFFFF) % LOCK_STRIPES] = true;
+        }
+        final int[] taken = new int[LOCK_STRIPES];
+        int count = 0;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            if (needed[i]) {
+                locks[i].lock();
+                taken[count++] = i;
+            }
+        }
+        return Arrays.copyOf(taken, count);
+    }
+
+    private void unlockAll(final int[] taken) {
+        for (int i = taken.length - 1; i >= 0; i--) {
+            locks[taken[i]].unlock();
+        }
+    }
+
+    /**
+     * Pushes a notification to the connections that are watching an Atomic Value.
+     *
+     * The caller must hold the lock for the id.
+     *
+     * @param id the id of the Atomic Value
+     * @param event the event
+     * @param atomicValue the Atomic Value, or null if it was removed
+     */
+    private void notifyWatchers(final String id, final AtomicListener.Event event, @Nullable final AtomicValue atomicValue) throws IOException {
+        final Set<Connection> idWatchers = watchers.get(id);
+        if (idWatchers == null) {
+            return;
+        }
+
+        final ByteArrayOutputStream notification = new ByteArrayOutputStream();
+        final DataOutputStream os = new DataOutputStream(notification);
+        os.writeByte(encodeEvent(event));
+        os.writeUTF(id);
+        os.writeByte(encodeType(atomicValue == null ? null : atomicValue.getType()));
+        os.writeInt(atomicValue == null ? 0 : getValue(atomicValue));
+
+        for (final Connection watcher : idWatchers) {
+            try {
+                watcher.send(NOTIFICATION_REQUEST_ID, OP_NOTIFY, notification);
+            } catch (final IOException e) {
+                // the watcher has gone away
+                watcher.close();
+            }
+        }
+    }
+
+    private static AtomicType requireType(final byte b) throws IOException {
+        final AtomicType atomicType = decodeType(b);
+        if (atomicType == null) {
+            throw new IOException("Missing Atomic Type");
+        }
+        return atomicType;
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (final IOException e) {
+            // no-op
+        }
+    }
+
+    private boolean isSecretValid(final String clientSecret) {
+        return secret == null || MessageDigest.isEqual(secret, clientSecret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private class Connection implements Runnable {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;  // only written by the handshake, and then by the writer thread
+        private final Thread writer;
+        private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(MAX_QUEUED_FRAMES);
+        private final AtomicBoolean open = new AtomicBoolean(true);
+        private final Set<String> watching = ConcurrentHashMap.newKeySet();
+
+        Connection(final Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.writer = new Thread(this::writeFrames, "atomics-coordinator-writer-" + socket.getRemoteSocketAddress());
+            this.writer.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                final boolean accepted = in.readInt() == MAGIC && in.readByte() == VERSION && isSecretValid(in.readUTF());
+                out.writeByte(accepted ? STATUS_OK : STATUS_ERROR);
+                out.flush();
+                if (!accepted) {
+                    return;
+                }
+
+                writer.start();
+                while (!closed) {
+                    handle(readFrame(in));
+                }
+            } catch (final IOException e) {
+                // the connection was closed or is broken
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Queues a frame to be written to the client by the writer thread.
+         *
+         * @throws IOException if the connection is closed, or too many frames are already queued
+         */
+        void send(final int requestId, final byte op, final ByteArrayOutputStream payload) throws IOException {
+            if (!open.get()) {
+                throw new IOException("The connection is closed");
+            }
+            if (!queue.offer(encodeFrame(requestId, op, payload))) {
+                throw new IOException("The client is not reading its responses, more than " + MAX_QUEUED_FRAMES + " frames are queued");
+            }
+        }
+
+        private void writeFrames() {
+            try {
+                while (open.get()) {
+                    out.write(queue.take());
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (final InterruptedException | IOException e) {
+                // the connection was closed or is broken
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            if (!open.compareAndSet(true, false)) {
+                return;
+            }
+            writer.interrupt();
+            connections.remove(this);
+            for (final String id : watching) {
+                watchers.computeIfPresent(id, (k, idWatchers) -> {
+                    idWatchers.remove(this);
+                    return idWatchers.isEmpty() ? null : idWatchers;
+                });
+            }
+            closeQuietly(socket);
+        }
+
+        private void handle(final CoordinatorProtocol.Frame frame) throws IOException {
+            final DataInputStream request = new DataInputStream(new ByteArrayInputStream(frame.payload));
+            try {
+                switch (frame.op) {
+                    case OP_GET:
+                        get(frame, request);
+                        break;
+
+                    case OP_GET_OR_CREATE:
+                        getOrCreate(frame, request);
+                        break;
+
+                    case OP_COMPARE_AND_SET:
+                        compareAndSet(frame, request);
+                        break;
+
+                    case OP_REMOVE:
+                        remove(frame, request);
+                        break;
+
+                    case OP_BATCH_GET:
+                        batchGet(frame, request);
+                        break;
+
+                    case OP_BATCH_COMPARE_AND_SET:
+                        batchCompareAndSet(frame, request);
+                        break;
+
+                    case OP_BATCH_GET_OR_CREATE:
+                        batchGetOrCreate(frame, request);
+                        break;
+
+                    case OP_WATCH:
+                        watch(frame, request);
+                        break;
+
+                    default:
+                        throw new IOException("Unknown op: " + frame.op);
+                }
+            } catch (final IllegalArgumentException | IllegalStateException e) {
+                final ByteArrayOutputStream response = new ByteArrayOutputStream();
+                final DataOutputStream os = new DataOutputStream(response);
+                os.writeByte(STATUS_ERROR);
+                os.writeUTF(String.valueOf(e.getMessage()));
+                send(frame.requestId, frame.op, response);
+            }
+        }
+
+        private void get(final CoordinatorProtocol.Frame frame, final DataInputStream request) throws IOException {
+            final AtomicType atomicType = requireType(request.readByte());
+            final String id = request.readUTF();
+
+            final AtomicValue atomicValue = storage.getAtomic(id, atomicType);
+
+            final ByteArrayOutputStream response = new ByteArrayOutputStream();
+            final DataOutputStream os = new DataOutputStream(response);
+            if (atomicValue == null) {
+                os.writeByte(STATUS_NOT_FOUND);
+            } else {
+                os.writeByte(STATUS_OK);
+                os.writeInt(getValue(atomicValue));
+            }
+            send(frame.requestId, frame.op, response);
+        }
+
+        private void getOrCreate(final CoordinatorProtocol.Frame frame, final DataInputStream request) throws IOException {
+            final AtomicType atomicType = requireType(request.readByte());
+            final String id = request.readUTF();
+            final String initialValue = request.readUTF();
+
+            final ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                AtomicValue atomicValue = storage.getAtomic(id, atomicType);
+                if (atomicValue == null) {
+                    atomicValue = storage.getOrCreateAtomic(id, atomicType, initialValue);
+                    notifyWatchers(id, AtomicListener.Event.CREATED, atomicValue);
+                }
+
+                final ByteArrayOutputStream response = new ByteArrayOutputStream();
+                final DataOutputStream os = new DataOutputStream(response);
+                os.writeByte(STATUS_OK);
+                os.writeInt(getValue(atomicValue));
+                send(frame.requestId, frame.op, response);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void compareAndSet(final CoordinatorProtocol.Frame frame, final DataInputStream request) throws IOException {
+            final AtomicType atomicType = requireType(request.readByte());
+            final String id = request.readUTF();
+            final int expect = request.readInt();
+            final int update = request.readInt();
+
+            final ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                final ByteArrayOutputStream response = new ByteArrayOutputStream();
+                final DataOutputStream os = new DataOutputStream(response);
+
+                final AtomicValue atomicValue = storage.getAtomic(id, atomicType);
+                if (atomicValue == null) {
+                    os.writeByte(STATUS_NOT_FOUND);
+                } else {
+                    final boolean set = compareAndSetValue(atomicValue, expect, update);
+                    if (set) {
+                        notifyWatchers(id, AtomicListener.Event.CHANGED, atomicValue);
+                        storage.notifyChanged(id);
+                    }
+                    os.writeByte(STATUS_OK);
+                    os.writeBoolean(set);
+                    os.writeInt(getValue(atomicValue));
+                }
+                send(frame.requestId, frame.op, response);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove(final CoordinatorProtocol.Frame frame, final DataInputStream request) throws IOException {
+            final String id = request.readUTF();
+
+            final ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                final boolean removed = storage.removeAtomic(id);
+                if (removed) {
+                    notifyWatchers(id, AtomicListener.Event.REMOVED, null);
+                }
+
+                final ByteArrayOutputStream response = new ByteArrayOutputStream();
+                final DataOutputStream os = new DataOutputStream(response);
+                os.writeByte(STATUS_OK);
+                os.writeBoolean(removed);
+                send(frame.requestId, frame.op, response);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void batchGet(final CoordinatorProtocol.Frame frame, final DataInputStream request) throws IOException {
+            final AtomicType atomicType = requireType(request.readByte());
+            final int count = request.readInt();
+
+            final ByteArrayOutputStream response = new ByteArrayOutputStream();
+            final DataOutputStream os = new DataOutputStream(response);
+            os.writeByte(STATUS_OK);
+            os.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                final AtomicValue atomicValue = storage.getAtomic(request.readUTF(), atomicType);
+                if (atomicValue == null) {
+                    os.writeByte(STATUS_NOT_FOUND);
+                    os.writeInt(0);
+                } else {
+                    os.writeByte(STATUS_OK);
+                    os.writeInt(getValue(atomicValue));
+                }
+            }
+            send(frame.requestId, frame.op, response);
+        }
+
+        private void batchCompareAndSet(final CoordinatorProtocol.Frame frame, final DataInputStream request) throws IOException {
+            final AtomicType atomicType = requireType(request.readByte());
+            final int count = request.readInt();
+            final List<String> ids = new ArrayList<>(count);
+            final int[] expects = new int[count];
+            final int[] updates = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids.add(request.readUTF());
+                expects[i] = request.readInt();
+                updates[i] = request.readInt();
+            }
+
+            final int[] taken = lockAll(ids);
+            try {
+                // 1) find all of the atomics first, so that a type mismatch changes nothing
+                final AtomicValue[] atomicValues = new AtomicValue[count];
+                for (int i = 0; i < count; i++) {
+                    atomicValues[i] = storage.getAtomic(ids.get(i), atomicType);
+                }
+
+                // 2) compare and set each atomic
+                final ByteArrayOutputStream response = new ByteArrayOutputStream();
+                final DataOutputStream os = new DataOutputStream(response);
+                os.writeByte(STATUS_OK);
+                os.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    final AtomicValue atomicValue = atomicValues[i];
+                    if (atomicValue == null) {
+                        os.writeByte(STATUS_NOT_FOUND);
+                        os.writeBoolean(false);
+                        os.writeInt(0);
+                    } else {
+                        final boolean set = compareAndSetValue(atomicValue, expects[i], updates[i]);
+                        if (set) {
+                            notifyWatchers(ids.get(i), AtomicListener.Event.CHANGED, atomicValue);
+                            storage.notifyChanged(ids.get(i));
+                        }
+                        os.writeByte(STATUS_OK);
+                        os.writeBoolean(set);
+                        os.writeInt(getValue(atomicValue));
+                    }
+                }
+                send(frame.requestId, frame.op, response);
+            } finally {
+                unlockAll(taken);
+            }
+        }
+
+        private void batchGetOrCreate(final CoordinatorProtocol.Frame frame, final DataInputStream request) throws IOException {
+            final AtomicType atomicType = requireType(request.readByte());
+            final int count = request.readInt();
+            final List<String> ids = new ArrayList<>(count);
+            final List<Map.Entry<String, String>> batch = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final String id = request.readUTF();
+                ids.add(id);
+                batch.add(new AbstractMap.SimpleImmutableEntry<>(id, request.readUTF()));
+            }
+
+            final int[] taken = lockAll(ids);
+            try {
+                // 1) find which of the watched atomics do not yet exist
+                final List<String> watchedAbsent = new ArrayList<>();
+                for (final String id : ids) {
+                    if (watchers.containsKey(id) && storage.getAtomic(id, atomicType) == null) {
+                        watchedAbsent.add(id);
+                    }
+                }
+
+                // 2) create the atomics
+                final int created = storage.getOrCreateAll(atomicType, batch);
+
+                // 3) notify the watchers of those that were created
+                for (final String id : watchedAbsent) {
+                    final AtomicValue atomicValue = storage.getAtomic(id, atomicType);
+                    if (atomicValue != null) {
+                        notifyWatchers(id, AtomicListener.Event.CREATED, atomicValue);
+                    }
+                }
+
+                final ByteArrayOutputStream response = new ByteArrayOutputStream();
+                final DataOutputStream os = new DataOutputStream(response);
+                os.writeByte(STATUS_OK);
+                os.writeInt(created);
+                send(frame.requestId, frame.op, response);
+            } finally {
+                unlockAll(taken);
+            }
+        }
+
+        private void watch(final CoordinatorProtocol.Frame frame, final DataInputStream request) throws IOException {
+            final AtomicType atomicType = decodeType(request.readByte());
+            final String id = request.readUTF();
+
+            final ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                watchers.compute(id, (k, idWatchers) -> {
+                    if (idWatchers == null) {
+                        idWatchers = ConcurrentHashMap.newKeySet();
+                    }
+                    idWatchers.add(this);
+                    return idWatchers;
+                });
+                watching.add(id);
+
+                final ByteArrayOutputStream response = new ByteArrayOutputStream();
+                final DataOutputStream os = new DataOutputStream(response);
+                final AtomicValue atomicValue = atomicType == null ? null : storage.getAtomic(id, atomicType);
+                if (atomicValue == null) {
+                    os.writeByte(STATUS_NOT_FOUND);
+                } else {
+                    os.writeByte(STATUS_OK);
+                    os.writeInt(getValue(atomicValue));
+                }
+                send(frame.requestId, frame.op, response);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.coordinator;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicListener;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageProvider;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An {@link AtomicStorageProvider} which stores every
+ * Atomic Value in a remote {@link CoordinatorServer},
+ * so that they may be shared by the Carte slave servers
+ * of a clustered transformation.
+ *
+ * The client is configured by {@link CoordinatorConfig}, and
+ * connects when the provider is first used. If the connection
+ * fails, then a new connection is made on the next use.
+ *
+ * Atomic Values in the near-cached namespaces are watched, so
+ * reading them does not require a round-trip to the server;
+ * Compare and Set always goes to the server.
+ */
+@ThreadSafe
+public class CoordinatorStorageProvider implements AtomicStorageProvider {
+
+    public static final String PROVIDER_NAME = "coordinator";
+
+    private final Object lock = new Object();
+    @GuardedBy("lock") @Nullable private volatile CoordinatorConfig config;
+    @GuardedBy("lock") @Nullable private volatile CoordinatorClient client;
+    private final ConcurrentMap<String, List<AtomicListener>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a provider which is configured from
+     * the System Properties when it is first used.
+     */
+    public CoordinatorStorageProvider() {
+        this(null);
+    }
+
+    /**
+     * Creates a provider.
+     *
+     * @param config the configuration, or null to read the
+     *     configuration from the System Properties when the
+     *     provider is first used
+     */
+    public CoordinatorStorageProvider(@Nullable final CoordinatorConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public String getName() {
+        return PROVIDER_NAME;
+    }
+
+    @Override
+    public @Nullable AtomicValue getAtomic(final String id, final AtomicType atomicType) throws IllegalArgumentException {
+        final CoordinatorClient localClient = getClient();
+        final Integer value;
+        if (config.isNearCached(id)) {
+            value = localClient.watch(id, atomicType).getValue();
+        } else {
+            value = localClient.get(id, atomicType);
+        }
+
+        if (value == null) {
+            return null;
+        }
+        return newRemoteValue(id, atomicType);
+    }
+
+    @Override
+    public AtomicValue getOrCreateAtomic(final String id, final AtomicType atomicType, final String initialValue) throws IllegalArgumentException {
+        atomicType.checkValidValue(initialValue);
+        getClient().getOrCreate(id, atomicType, initialValue);
+        return newRemoteValue(id, atomicType);
+    }
+
+    @Override
+    public int getOrCreateAll(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> batch) throws IllegalArgumentException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        for (final Map.Entry<String, String> idAndInitialValue : batch) {
+            atomicType.checkValidValue(idAndInitialValue.getValue());
+        }
+        return getClient().getOrCreateAll(atomicType, batch);
+    }
+
+    @Override
+    public boolean removeAtomic(final String id) {
+        return getClient().remove(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Events are pushed by the coordinator server, and are
+     * reported for changes made through the server by any JVM.
+     */
+    @Override
+    public boolean addListener(final String id, final AtomicListener listener) {
+        listeners.compute(id, (k, idListeners) -> {
+            if (idListeners == null) {
+                idListeners = new CopyOnWriteArrayList<>();
+            }
+            idListeners.add(listener);
+            return idListeners;
+        });
+        getClient().subscribe(id);
+        return true;
+    }
+
+    @Override
+    public boolean removeListener(final String id, final AtomicListener listener) {
+        final boolean[] removed = { false };
+        listeners.computeIfPresent(id, (k, idListeners) -> {
+            removed[0] = idListeners.remove(listener);
+            return idListeners.isEmpty() ? null : idListeners;
+        });
+        return removed[0];
+    }
+
+    private void fireEvent(final String id, final AtomicListener.Event event) {
+        final List<AtomicListener> idListeners = listeners.get(id);
+        if (idListeners != null) {
+            for (final AtomicListener listener : idListeners) {
+                listener.onEvent(id, event);
+            }
+        }
+    }
+
+    private AtomicValue newRemoteValue(final String id, final AtomicType atomicType) {
+        if (atomicType == AtomicType.Boolean) {
+            return new RemoteBooleanValue(this, id);
+        } else {
+            return new RemoteIntegerValue(this, id);
+        }
+    }
+
+    /**
+     * Get the current value of an Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     *
+     * @return the value
+     *
+     * @throws IllegalStateException if there is no such Atomic Value
+     */
+    int getValue(final String id, final AtomicType atomicType) throws IllegalStateException {
+        final CoordinatorClient localClient = getClient();
+        final Integer value;
+        if (config.isNearCached(id)) {
+            value = localClient.watch(id, atomicType).getValue();
+        } else {
+            value = localClient.get(id, atomicType);
+        }
+
+        if (value == null) {
+            throw new IllegalStateException("The Atomic Value has been removed: " + id);
+        }
+        return value;
+    }
+
+    boolean compareAndSetValue(final String id, final AtomicType atomicType, final int expect, final int update) {
+        return getClient().compareAndSet(id, atomicType, expect, update);
+    }
+
+    /**
+     * Get the client, connecting if needed.
+     *
+     * @return the client
+     *
+     * @throws IllegalStateException if the coordinator is not configured
+     * @throws UncheckedIOException if the client cannot connect to the coordinator server
+     */
+    private CoordinatorClient getClient() throws IllegalStateException, UncheckedIOException {
+        CoordinatorClient localClient = client;
+        if (localClient == null || localClient.isClosed()) {
+            synchronized (lock) {
+                localClient = client;
+                if (localClient == null || localClient.isClosed()) {
+                    CoordinatorConfig localConfig = config;
+                    if (localConfig == null) {
+                        localConfig = CoordinatorConfig.fromSystemProperties();
+                        config = localConfig;
+                    }
+                    final String host = localConfig.getHost();
+                    if (host == null) {
+                        throw new IllegalStateException("The " + PROVIDER_NAME + " Atomic Storage Provider requires " + CoordinatorConfig.PROP_COORDINATOR_HOST + " to be set");
+                    }
+
+                    try {
+                        localClient = CoordinatorClient.connect(host, localConfig.getPort(), localConfig.getTimeout(), localConfig.getSecret());
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException("Unable to connect to the Atomics Coordinator: " + host + ":" + localConfig.getPort(), e);
+                    }
+                    localClient.setNotificationListener(this::fireEvent);
+
+                    // re-subscribe after reconnecting
+                    for (final String id : listeners.keySet()) {
+                        localClient.subscribe(id);
+                    }
+
+                    client = localClient;
+                }
+            }
+        }
+        return localClient;
+    }
+}
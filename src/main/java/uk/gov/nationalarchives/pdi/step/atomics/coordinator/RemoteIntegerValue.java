@@ -0,0 +1,64 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.coordinator;
+
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicIntegerValue;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+
+/**
+ * An {@link AtomicIntegerValue} whose value is held
+ * by a {@link CoordinatorServer}.
+ */
+@ThreadSafe
+public class RemoteIntegerValue extends AtomicIntegerValue {
+
+    private final CoordinatorStorageProvider provider;
+    private final String id;
+
+    RemoteIntegerValue(final CoordinatorStorageProvider provider, final String id) {
+        this.provider = provider;
+        this.id = id;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the Atomic Value has been removed
+     * @throws java.io.UncheckedIOException if the coordinator server cannot be reached
+     */
+    @Override
+    public int get() {
+        return provider.getValue(id, AtomicType.Integer);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.io.UncheckedIOException if the coordinator server cannot be reached
+     */
+    @Override
+    public boolean compareAndSet(final int expect, final int update) {
+        return provider.compareAndSetValue(id, AtomicType.Integer, expect, update);
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.jfr;
+
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+
+/**
+ * Emits events about the synchronisation of steps
+ * on Atomic Values to Java Flight Recorder.
+ *
+ * JFR events are only emitted on Java 11+ runtimes (or
+ * Java 8 runtimes with the JFR backport), on other runtimes,
+ * or if {@link #PROP_JFR_EVENTS} is {@code false}, the events
+ * are no-ops.
+ */
+public interface AtomicEvents {
+
+    /**
+     * Set to {@code false} to disable JFR events.
+     */
+    String PROP_JFR_EVENTS = "ATOMICS_JFR_EVENTS";
+
+    /**
+     * A wait which is ended by {@link #end(String)}.
+     */
+    @FunctionalInterface
+    interface Wait {
+        /**
+         * End the wait.
+         *
+         * @param outcome the outcome of the wait
+         */
+        void end(String outcome);
+    }
+
+    Wait NO_OP_WAIT = outcome -> {};
+
+    /**
+     * Get the events implementation for the runtime.
+     *
+     * @return the events implementation
+     */
+    static AtomicEvents get() {
+        return JfrSupport.EVENTS;
+    }
+
+    /**
+     * Determines if events are emitted to JFR.
+     *
+     * @return true if JFR is available and events are not disabled
+     */
+    boolean isAvailable();
+
+    /**
+     * Begin a wait for an Atomic Value.
+     *
+     * @param stepName the name of the step
+     * @param copy the copy number of the step
+     * @param kind the kind of wait, e.g. {@code time-to-match}
+     * @param atomicId the identifier of the Atomic Value
+     * @param awaitedValues a description of the values that are awaited
+     *
+     * @return the wait, which must be ended
+     */
+    Wait beginWait(String stepName, int copy, String kind, String atomicId, String awaitedValues);
+
+    /**
+     * Record an attempt to compare and set an Atomic Value.
+     *
+     * @param stepName the name of the step
+     * @param copy the copy number of the step
+     * @param atomicId the identifier of the Atomic Value
+     * @param expect the expected value
+     * @param update the new value
+     * @param set true if the value was set, false if the attempt failed
+     */
+    void casAttempt(String stepName, int copy, String atomicId, String expect, String update, boolean set);
+
+    /**
+     * Record the creation of an Atomic Value.
+     *
+     * @param atomicId the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     */
+    void created(String atomicId, AtomicType atomicType);
+
+    /**
+     * Record the removal of an Atomic Value.
+     *
+     * @param atomicId the identifier of the Atomic Value
+     */
+    void removed(String atomicId);
+
+    /**
+     * Record that a wait timed out, and the row was routed to a target.
+     *
+     * @param stepName the name of the step
+     * @param copy the copy number of the step
+     * @param kind the kind of wait, e.g. {@code time-to-match}
+     * @param atomicId the identifier of the Atomic Value
+     * @param waitedMillis the time waited in milliseconds
+     * @param route the target that the row was routed to
+     */
+    void timeout(String stepName, int copy, String kind, String atomicId, long waitedMillis, String route);
+}
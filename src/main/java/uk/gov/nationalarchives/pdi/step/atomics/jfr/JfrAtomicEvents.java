@@ -0,0 +1,190 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+
+/**
+ * Emits the events to JFR.
+ *
+ * Only loaded by {@link JfrSupport} when {@code jdk.jfr} is available.
+ * Events are only allocated when their type is enabled in a recording.
+ */
+final class JfrAtomicEvents implements AtomicEvents {
+
+    static final String CATEGORY = "Kettle";
+    static final String SUB_CATEGORY = "Atomics";
+    static final String NAME_PREFIX = "uk.gov.nationalarchives.pdi.step.atomics.";
+
+    private static final EventType WAIT = EventType.getEventType(WaitEvent.class);
+    private static final EventType CAS = EventType.getEventType(CasEvent.class);
+    private static final EventType CREATED = EventType.getEventType(CreatedEvent.class);
+    private static final EventType REMOVED = EventType.getEventType(RemovedEvent.class);
+    private static final EventType TIMEOUT = EventType.getEventType(TimeoutEvent.class);
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public Wait beginWait(final String stepName, final int copy, final String kind, final String atomicId, final String awaitedValues) {
+        if (!WAIT.isEnabled()) {
+            return NO_OP_WAIT;
+        }
+        final WaitEvent event = new WaitEvent();
+        event.step = stepName;
+        event.copy = copy;
+        event.kind = kind;
+        event.atomicId = atomicId;
+        event.awaitedValues = awaitedValues;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void casAttempt(final String stepName, final int copy, final String atomicId, final String expect, final String update, final boolean set) {
+        if (!CAS.isEnabled()) {
+            return;
+        }
+        final CasEvent event = new CasEvent();
+        event.step = stepName;
+        event.copy = copy;
+        event.atomicId = atomicId;
+        event.expect = expect;
+        event.update = update;
+        event.set = set;
+        event.commit();
+    }
+
+    @Override
+    public void created(final String atomicId, final AtomicType atomicType) {
+        if (!CREATED.isEnabled()) {
+            return;
+        }
+        final CreatedEvent event = new CreatedEvent();
+        event.atomicId = atomicId;
+        event.atomicType = atomicType.name();
+        event.commit();
+    }
+
+    @Override
+    public void removed(final String atomicId) {
+        if (!REMOVED.isEnabled()) {
+            return;
+        }
+        final RemovedEvent event = new RemovedEvent();
+        event.atomicId = atomicId;
+        event.commit();
+    }
+
+    @Override
+    public void timeout(final String stepName, final int copy, final String kind, final String atomicId, final long waitedMillis, final String route) {
+        if (!TIMEOUT.isEnabled()) {
+            return;
+        }
+        final TimeoutEvent event = new TimeoutEvent();
+        event.step = stepName;
+        event.copy = copy;
+        event.kind = kind;
+        event.atomicId = atomicId;
+        event.waited = waitedMillis;
+        event.route = route;
+        event.commit();
+    }
+
+    @Name(NAME_PREFIX + "Wait")
+    @Label("Atomic Wait")
+    @Description("A step waiting for an Atomic Value")
+    @Category({CATEGORY, SUB_CATEGORY})
+    @Threshold("1 ms")
+    static final class WaitEvent extends Event implements Wait {
+        @Label("Step") String step;
+        @Label("Copy") int copy;
+        @Label("Kind") String kind;
+        @Label("Atomic ID") String atomicId;
+        @Label("Awaited Values") String awaitedValues;
+        @Label("Outcome") String outcome;
+
+        @Override
+        public void end(final String outcome) {
+            this.outcome = outcome;
+            commit();
+        }
+    }
+
+    @Name(NAME_PREFIX + "CompareAndSet")
+    @Label("Atomic Compare And Set")
+    @Description("An attempt by a step to compare and set an Atomic Value")
+    @Category({CATEGORY, SUB_CATEGORY})
+    @StackTrace(false)
+    static final class CasEvent extends Event {
+        @Label("Step") String step;
+        @Label("Copy") int copy;
+        @Label("Atomic ID") String atomicId;
+        @Label("Expected Value") String expect;
+        @Label("New Value") String update;
+        @Label("Set") boolean set;
+    }
+
+    @Name(NAME_PREFIX + "Created")
+    @Label("Atomic Created")
+    @Description("An Atomic Value was created")
+    @Category({CATEGORY, SUB_CATEGORY})
+    @StackTrace(false)
+    static final class CreatedEvent extends Event {
+        @Label("Atomic ID") String atomicId;
+        @Label("Atomic Type") String atomicType;
+    }
+
+    @Name(NAME_PREFIX + "Removed")
+    @Label("Atomic Removed")
+    @Description("An Atomic Value was removed")
+    @Category({CATEGORY, SUB_CATEGORY})
+    @StackTrace(false)
+    static final class RemovedEvent extends Event {
+        @Label("Atomic ID") String atomicId;
+    }
+
+    @Name(NAME_PREFIX + "Timeout")
+    @Label("Atomic Wait Timeout")
+    @Description("A step timed out waiting for an Atomic Value, and routed the row")
+    @Category({CATEGORY, SUB_CATEGORY})
+    static final class TimeoutEvent extends Event {
+        @Label("Step") String step;
+        @Label("Copy") int copy;
+        @Label("Kind") String kind;
+        @Label("Atomic ID") String atomicId;
+        @Label("Waited") @Timespan(Timespan.MILLISECONDS) long waited;
+        @Label("Route") String route;
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.jfr;
+
+/**
+ * Selects the {@link AtomicEvents} implementation for the runtime.
+ *
+ * {@link JfrAtomicEvents} is only loaded reflectively, so that
+ * runtimes without {@code jdk.jfr} never link against it.
+ */
+final class JfrSupport {
+
+    static final AtomicEvents EVENTS = load();
+
+    private JfrSupport() {
+    }
+
+    private static AtomicEvents load() {
+        if ("false".equalsIgnoreCase(System.getProperty(AtomicEvents.PROP_JFR_EVENTS))) {
+            return NoOpAtomicEvents.INSTANCE;
+        }
+
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (AtomicEvents) Class.forName(JfrSupport.class.getPackage().getName() + ".JfrAtomicEvents")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (final ReflectiveOperationException | LinkageError | SecurityException e) {
+            // JFR is not available on this runtime
+            return NoOpAtomicEvents.INSTANCE;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.jfr;
+
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+
+/**
+ * Used when JFR is not available.
+ */
+enum NoOpAtomicEvents implements AtomicEvents {
+    INSTANCE;
+
+    @Override
+    public boolean isAvailable() {
+        return false;
+    }
+
+    @Override
+    public Wait beginWait(final String stepName, final int copy, final String kind, final String atomicId, final String awaitedValues) {
+        return NO_OP_WAIT;
+    }
+
+    @Override
+    public void casAttempt(final String stepName, final int copy, final String atomicId, final String expect, final String update, final boolean set) {
+    }
+
+    @Override
+    public void created(final String atomicId, final AtomicType atomicType) {
+    }
+
+    @Override
+    public void removed(final String atomicId) {
+    }
+
+    @Override
+    public void timeout(final String stepName, final int copy, final String kind, final String atomicId, final long waitedMillis, final String route) {
+    }
+}
@@ -0,0 +1,736 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.journal;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicBooleanValue;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicIntegerValue;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * An append-only journal of changes to durable Atomic Values.
+ *
+ * Records are appended to an in-memory buffer, and are written
+ * to the current journal file and forced to disk by whichever
+ * thread first waits for them to become durable; any other
+ * threads waiting at the same time are satisfied by that same
+ * write (i.e. group commit).
+ *
+ * Periodically the journal is compacted by starting a new
+ * journal file (generation) and writing a snapshot of all of
+ * the durable Atomic Values, after which the older journal
+ * files are deleted. On startup the latest snapshot is loaded
+ * and any newer journal files are replayed on top of it.
+ *
+ * Each record is framed by its length and a CRC32 checksum,
+ * so a partially written record at the end of a journal file
+ * (e.g. after a crash) is detected and discarded.
+ */
+@ThreadSafe
+public class Journal implements Closeable {
+
+    static final byte OP_CREATE = 1;
+    static final byte OP_SET = 2;
+    static final byte OP_REMOVE = 3;
+
+    private static final byte TYPE_NONE = 0;
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_INTEGER = 2;
+
+    static final String SNAPSHOT_FILENAME = "atomics.snapshot";
+    static final String SNAPSHOT_TMP_FILENAME = "atomics.snapshot.tmp";
+    static final String JOURNAL_FILENAME_PREFIX = "atomics-";
+    static final String JOURNAL_FILENAME_SUFFIX = ".journal";
+
+    private static final int SNAPSHOT_MAGIC = 0x41544D53;  // "ATMS"
+    private static final int SNAPSHOT_HEADER_SIZE = 4 + 8 + 4;  // magic + generation + record count
+    private static final int RECORD_HEADER_SIZE = 4 + 4;  // payload length + crc32
+    private static final int RECORD_PAYLOAD_FIXED_SIZE = 1 + 1 + 4 + 4;  // op + type + value + id length
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final JournalConfig config;
+    private final Map<String, Entry> recovered;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    @GuardedBy("lock") private FileChannel channel;
+    @GuardedBy("lock") private long generation;
+    @GuardedBy("lock") private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    @GuardedBy("lock") private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    @GuardedBy("lock") private long appendedSeq;
+    @GuardedBy("lock") private long durableSeq;
+    @GuardedBy("lock") private boolean flushing;
+    @GuardedBy("lock") private long recordsSinceSnapshot;
+    @GuardedBy("lock") @Nullable private IOException failure;
+
+    private final Object snapshotLock = new Object();
+    @GuardedBy("snapshotLock") @Nullable private ScheduledExecutorService snapshotter;
+
+    private Journal(final JournalConfig config, final Map<String, Entry> recovered, final FileChannel channel, final long generation) {
+        this.config = config;
+        this.recovered = recovered;
+        this.channel = channel;
+        this.generation = generation;
+    }
+
+    /**
+     * Opens the journal, recovering the state of the durable
+     * Atomic Values from any existing snapshot and journal files.
+     *
+     * @param config the journal configuration
+     *
+     * @return the journal
+     *
+     * @throws IOException if the journal cannot be opened or recovered
+     */
+    public static Journal open(final JournalConfig config) throws IOException {
+        final Path directory = config.getDirectory();
+        Files.createDirectories(directory);
+
+        // an incomplete snapshot is never used
+        Files.deleteIfExists(directory.resolve(SNAPSHOT_TMP_FILENAME));
+
+        // 1) load the latest snapshot
+        final Map<String, Entry> state = new LinkedHashMap<>();
+        final long snapshotGeneration = readSnapshot(directory.resolve(SNAPSHOT_FILENAME), state);
+
+        // 2) replay the journals which are newer than the snapshot
+        long maxGeneration = snapshotGeneration - 1;
+        for (final Map.Entry<Long, Path> journalFile : listJournals(directory).entrySet()) {
+            final long journalGeneration = journalFile.getKey();
+            if (journalGeneration < snapshotGeneration) {
+                // already compacted into the snapshot
+                Files.delete(journalFile.getValue());
+            } else {
+                replayJournal(journalFile.getValue(), state);
+                maxGeneration = journalGeneration;
+            }
+        }
+
+        // 3) always start a fresh journal file, never append after a possibly torn record
+        final long generation = maxGeneration + 1;
+        final FileChannel channel = openJournal(directory, generation);
+
+        return new Journal(config, state, channel, generation);
+    }
+
+    /**
+     * Get the state of the durable Atomic Values that was
+     * recovered when the journal was opened.
+     *
+     * @return the recovered Atomic Values, keyed by id
+     */
+    public Map<String, Entry> getRecovered() {
+        return Collections.unmodifiableMap(recovered);
+    }
+
+    /**
+     * Determines if an Atomic Value should be journaled.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return true if the Atomic Value is durable
+     */
+    public boolean isDurable(final String id) {
+        return config.isDurable(id);
+    }
+
+    /**
+     * Starts periodically compacting the journal into a snapshot.
+     *
+     * @param source supplies the current Atomic Values when a snapshot is taken
+     */
+    public void startSnapshots(final Supplier<Map<String, AtomicValue>> source) {
+        synchronized (snapshotLock) {
+            if (snapshotter != null) {
+                return;
+            }
+            snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "atomics-journal-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotter.scheduleWithFixedDelay(() -> {
+                try {
+                    if (hasRecordsSinceSnapshot()) {
+                        snapshot(source);
+                    }
+                } catch (final IOException e) {
+                    // the journal is still intact, so we will try again on the next period
+                }
+            }, config.getSnapshotPeriod(), config.getSnapshotPeriod(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Appends a record of the creation of an Atomic Value.
+     *
+     * The record is not durable until {@link #awaitDurable(long)} returns.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicValue the Atomic Value
+     *
+     * @return the sequence number of the record
+     *
+     * @throws IOException if the journal has previously failed
+     */
+    public long appendCreate(final String id, final AtomicValue atomicValue) throws IOException {
+        return append(OP_CREATE, id, atomicValue.getType(), valueOf(atomicValue));
+    }
+
+    /**
+     * Appends a record of setting the value of an Atomic Value.
+     *
+     * The record is not durable until {@link #awaitDurable(long)} returns.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     * @param value the new value, where a boolean is encoded as 0 or 1
+     *
+     * @return the sequence number of the record
+     *
+     * @throws IOException if the journal has previously failed
+     */
+    public long appendSet(final String id, final AtomicType atomicType, final int value) throws IOException {
+        return append(OP_SET, id, atomicType, value);
+    }
+
+    /**
+     * Appends a record of the removal of an Atomic Value.
+     *
+     * The record is not durable until {@link #awaitDurable(long)} returns.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return the sequence number of the record
+     *
+     * @throws IOException if the journal has previously failed
+     */
+    public long appendRemove(final String id) throws IOException {
+        return append(OP_REMOVE, id, null, 0);
+    }
+
+    /**
+     * Appends records of the creation of several Atomic Values.
+     *
+     * Either all of the records are appended, or none of them are.
+     * The records are not durable until {@link #awaitDurable(long)} returns.
+     *
+     * @param atomics pairs of the identifier and the Atomic Value
+     *
+     * @return the sequence number of the last record
+     *
+     * @throws IOException if the journal has previously failed
+     */
+    public long appendCreateAll(final List<? extends Map.Entry<String, AtomicValue>> atomics) throws IOException {
+        final byte[][] idBytes = new byte[atomics.size()][];
+        int size = 0;
+        for (int i = 0; i < idBytes.length; i++) {
+            idBytes[i] = atomics.get(i).getKey().getBytes(UTF_8);
+            size += RECORD_HEADER_SIZE + RECORD_PAYLOAD_FIXED_SIZE + idBytes[i].length;
+        }
+
+        lock.lock();
+        try {
+            checkNotFailed();
+            pending = ensureRemaining(pending, size);
+            for (int i = 0; i < idBytes.length; i++) {
+                final AtomicValue atomicValue = atomics.get(i).getValue();
+                writeRecord(pending, OP_CREATE, atomicValue.getType(), valueOf(atomicValue), idBytes[i]);
+            }
+            recordsSinceSnapshot += idBytes.length;
+            appendedSeq += idBytes.length;
+            return appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long append(final byte op, final String id, @Nullable final AtomicType atomicType, final int value) throws IOException {
+        final byte[] idBytes = id.getBytes(UTF_8);
+        lock.lock();
+        try {
+            checkNotFailed();
+            pending = ensureRemaining(pending, RECORD_HEADER_SIZE + RECORD_PAYLOAD_FIXED_SIZE + idBytes.length);
+            writeRecord(pending, op, atomicType, value, idBytes);
+            recordsSinceSnapshot++;
+            return ++appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every record that has been appended so far is durable.
+     *
+     * @throws IOException if the records could not be written
+     */
+    public void sync() throws IOException {
+        final long seq;
+        lock.lock();
+        try {
+            seq = appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+    }
+
+    /**
+     * Waits until the record with the sequence number is durable.
+     *
+     * If no other thread is currently writing, then this thread writes
+     * all pending records, otherwise it waits for the other thread.
+     *
+     * @param seq the sequence number of the record
+     *
+     * @throws IOException if the record could not be written
+     */
+    public void awaitDurable(final long seq) throws IOException {
+        lock.lock();
+        try {
+            while (durableSeq < seq) {
+                checkNotFailed();
+
+                if (flushing) {
+                    flushed.awaitUninterruptibly();
+                    continue;
+                }
+
+                // become the leader of this group commit
+                flushing = true;
+                final ByteBuffer buffer = pending;
+                pending = spare;
+                final long upTo = appendedSeq;
+                final FileChannel currentChannel = channel;
+
+                IOException error = null;
+                lock.unlock();
+                try {
+                    writeFully(currentChannel, buffer);
+                    currentChannel.force(false);
+                } catch (final IOException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                }
+
+                buffer.clear();
+                spare = buffer;
+                flushing = false;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableSeq = upTo;
+                }
+                flushed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private void checkNotFailed() throws IOException {
+        if (failure != null) {
+            throw new IOException("Journal has failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    private boolean hasRecordsSinceSnapshot() {
+        lock.lock();
+        try {
+            return recordsSinceSnapshot > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Compacts the journal by writing a snapshot of the durable
+     * Atomic Values, and then deleting the older journal files.
+     *
+     * @param source supplies the current Atomic Values
+     *
+     * @throws IOException if the snapshot could not be written
+     */
+    public void snapshot(final Supplier<Map<String, AtomicValue>> source) throws IOException {
+        synchronized (snapshotLock) {
+            final Path directory = config.getDirectory();
+
+            // 1) start a new journal generation, any change after this point is in the new journal
+            final long snapshotGeneration = rotate();
+
+            // 2) capture the current values, these are at least as new as the old journals
+            final Map<String, AtomicValue> atomics = source.get();
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(INITIAL_BUFFER_SIZE, SNAPSHOT_HEADER_SIZE));
+            buffer.putInt(SNAPSHOT_MAGIC);
+            buffer.putLong(snapshotGeneration);
+            final int recordCountPosition = buffer.position();
+            buffer.putInt(0);
+            int recordCount = 0;
+            for (final Map.Entry<String, AtomicValue> atomic : atomics.entrySet()) {
+                if (!config.isDurable(atomic.getKey())) {
+                    continue;
+                }
+                final byte[] idBytes = atomic.getKey().getBytes(UTF_8);
+                buffer = ensureRemaining(buffer, RECORD_HEADER_SIZE + RECORD_PAYLOAD_FIXED_SIZE + idBytes.length);
+                writeRecord(buffer, OP_CREATE, atomic.getValue().getType(), valueOf(atomic.getValue()), idBytes);
+                recordCount++;
+            }
+            buffer.putInt(recordCountPosition, recordCount);
+
+            // 3) write the snapshot and atomically replace the previous one
+            final Path tmpSnapshot = directory.resolve(SNAPSHOT_TMP_FILENAME);
+            try (final FileChannel snapshotChannel = FileChannel.open(tmpSnapshot, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeFully(snapshotChannel, buffer);
+                snapshotChannel.force(true);
+            }
+            Files.move(tmpSnapshot, directory.resolve(SNAPSHOT_FILENAME), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            // 4) the older journals are now redundant
+            for (final Map.Entry<Long, Path> journalFile : listJournals(directory).entrySet()) {
+                if (journalFile.getKey() < snapshotGeneration) {
+                    Files.deleteIfExists(journalFile.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes all pending records durable in the current journal file,
+     * and then switches to a new journal file.
+     *
+     * @return the generation of the new journal file
+     */
+    private long rotate() throws IOException {
+        lock.lock();
+        try {
+            while (flushing) {
+                flushed.awaitUninterruptibly();
+            }
+            checkNotFailed();
+
+            try {
+                writeFully(channel, pending);
+                channel.force(false);
+                pending.clear();
+                channel.close();
+
+                generation++;
+                channel = openJournal(config.getDirectory(), generation);
+            } catch (final IOException e) {
+                failure = e;
+                throw e;
+            }
+
+            durableSeq = appendedSeq;
+            recordsSinceSnapshot = 0;
+            flushed.signalAll();
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (snapshotLock) {
+            if (snapshotter != null) {
+                snapshotter.shutdownNow();
+                snapshotter = null;
+            }
+        }
+
+        sync();
+
+        lock.lock();
+        try {
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static FileChannel openJournal(final Path directory, final long generation) throws IOException {
+        return FileChannel.open(directory.resolve(journalFilename(generation)), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    static String journalFilename(final long generation) {
+        return JOURNAL_FILENAME_PREFIX + String.format("%019d", generation) + JOURNAL_FILENAME_SUFFIX;
+    }
+
+    private static SortedMap<Long, Path> listJournals(final Path directory) throws IOException {
+        final SortedMap<Long, Path> journals = new TreeMap<>();
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory, JOURNAL_FILENAME_PREFIX + "*" + JOURNAL_FILENAME_SUFFIX)) {
+            for (final Path file : files) {
+                final String filename = file.getFileName().toString();
+                final String strGeneration = filename.substring(JOURNAL_FILENAME_PREFIX.length(), filename.length() - JOURNAL_FILENAME_SUFFIX.length());
+                try {
+                    journals.put(Long.parseLong(strGeneration), file);
+                } catch (final NumberFormatException e) {
+                    // not one of our journal files
+                }
+            }
+        }
+        return journals;
+    }
+
+    /**
+     * Reads the snapshot (if any) into the state.
+     *
+     * @return the generation of the first journal that is newer than the snapshot
+     */
+    private static long readSnapshot(final Path snapshotFile, final Map<String, Entry> state) throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return 0;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+        if (buffer.remaining() < SNAPSHOT_HEADER_SIZE || buffer.getInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Snapshot is not valid: " + snapshotFile);
+        }
+        final long generation = buffer.getLong();
+        final int recordCount = buffer.getInt();
+
+        final int read = readRecords(buffer, state);
+        if (read != recordCount || buffer.hasRemaining()) {
+            throw new IOException("Snapshot is corrupt, expected " + recordCount + " records but found " + read + ": " + snapshotFile);
+        }
+        return generation;
+    }
+
+    /**
+     * Replays a journal into the state, discarding any torn
+     * records at the end of the journal.
+     */
+    private static void replayJournal(final Path journalFile, final Map<String, Entry> state) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journalFile));
+        readRecords(buffer, state);
+        if (buffer.hasRemaining()) {
+            // discard the torn record(s) so they are never mistaken for valid data
+            try (final FileChannel journalChannel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                journalChannel.truncate(buffer.position());
+                journalChannel.force(true);
+            }
+        }
+    }
+
+    /**
+     * Reads and applies records to the state until the end of the
+     * buffer or the first invalid record.
+     *
+     * @return the number of records that were read, the position
+     *     of the buffer is left after the last valid record
+     */
+    private static int readRecords(final ByteBuffer buffer, final Map<String, Entry> state) {
+        final CRC32 crc = new CRC32();
+        int count = 0;
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            final int start = buffer.position();
+            final int payloadLength = buffer.getInt();
+            final int checksum = buffer.getInt();
+            if (payloadLength < RECORD_PAYLOAD_FIXED_SIZE || payloadLength > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+
+            crc.reset();
+            crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), payloadLength);
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(start);
+                break;
+            }
+
+            final byte op = buffer.get();
+            final byte type = buffer.get();
+            final int value = buffer.getInt();
+            final int idLength = buffer.getInt();
+            if (idLength != payloadLength - RECORD_PAYLOAD_FIXED_SIZE) {
+                buffer.position(start);
+                break;
+            }
+            final String id = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), idLength, UTF_8);
+            buffer.position(buffer.position() + idLength);
+
+            switch (op) {
+                case OP_CREATE:
+                case OP_SET:
+                    final AtomicType atomicType = decodeType(type);
+                    if (atomicType == null) {
+                        buffer.position(start);
+                        return count;
+                    }
+                    if (op == OP_CREATE || state.containsKey(id)) {
+                        state.put(id, new Entry(atomicType, value));
+                    }
+                    // NOTE: otherwise it is a set on an Atomic Value that was already removed (e.g. via a stale handle), which must not recreate it
+                    break;
+
+                case OP_REMOVE:
+                    state.remove(id);
+                    break;
+
+                default:
+                    buffer.position(start);
+                    return count;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static void writeRecord(final ByteBuffer buffer, final byte op, @Nullable final AtomicType atomicType, final int value, final byte[] idBytes) {
+        final int payloadLength = RECORD_PAYLOAD_FIXED_SIZE + idBytes.length;
+        final int checksumPosition = buffer.position() + 4;
+        buffer.putInt(payloadLength);
+        buffer.putInt(0);
+        final int payloadPosition = buffer.position();
+        buffer.put(op);
+        buffer.put(encodeType(atomicType));
+        buffer.putInt(value);
+        buffer.putInt(idBytes.length);
+        buffer.put(idBytes);
+
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + payloadPosition, payloadLength);
+        buffer.putInt(checksumPosition, (int) crc.getValue());
+    }
+
+    private static ByteBuffer ensureRemaining(final ByteBuffer buffer, final int required) {
+        if (buffer.remaining() >= required) {
+            return buffer;
+        }
+        int newCapacity = buffer.capacity() * 2;
+        while (newCapacity - buffer.position() < required) {
+            newCapacity *= 2;
+        }
+        final ByteBuffer newBuffer = ByteBuffer.allocate(newCapacity);
+        buffer.flip();
+        newBuffer.put(buffer);
+        return newBuffer;
+    }
+
+    /**
+     * Writes the content of the buffer (from zero to its position) to the channel.
+     */
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte encodeType(@Nullable final AtomicType atomicType) {
+        if (atomicType == null) {
+            return TYPE_NONE;
+        }
+        switch (atomicType) {
+            case Boolean:
+                return TYPE_BOOLEAN;
+
+            case Integer:
+                return TYPE_INTEGER;
+
+            default:
+                throw new IllegalArgumentException("No such AtomicType: " + atomicType);
+        }
+    }
+
+    private static @Nullable AtomicType decodeType(final byte type) {
+        switch (type) {
+            case TYPE_BOOLEAN:
+                return AtomicType.Boolean;
+
+            case TYPE_INTEGER:
+                return AtomicType.Integer;
+
+            default:
+                return null;
+        }
+    }
+
+    private static int valueOf(final AtomicValue atomicValue) {
+        switch (atomicValue.getType()) {
+            case Boolean:
+                return ((AtomicBooleanValue) atomicValue).get() ? 1 : 0;
+
+            case Integer:
+                return ((AtomicIntegerValue) atomicValue).get();
+
+            default:
+                throw new IllegalArgumentException("No such AtomicType: " + atomicValue.getType());
+        }
+    }
+
+    /**
+     * The recovered state of a durable Atomic Value.
+     */
+    @Immutable
+    public static class Entry {
+        private final AtomicType type;
+        private final int value;
+
+        Entry(final AtomicType type, final int value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        public AtomicType getType() {
+            return type;
+        }
+
+        /**
+         * Get the value.
+         *
+         * @return the value, where a boolean is encoded as 0 or 1
+         */
+        public int getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.journal;
+
+import net.jcip.annotations.Immutable;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.*;
+
+/**
+ * Configuration for the durable journal of Atomic Values.
+ *
+ * Durability is configured per-namespace, see
+ * {@link uk.gov.nationalarchives.pdi.step.atomics.Util#namespaceOf(String)}.
+ * Atomic Values in namespaces
+ * that are not durable are kept only in memory as before.
+ *
+ * The configuration is read from System Properties, which
+ * KETTLE also populates from {@code kettle.properties}.
+ */
+@Immutable
+public class JournalConfig {
+
+    /**
+     * The directory to write the journal and snapshots into.
+     * If not set then no Atomic Values are durable.
+     */
+    public static final String PROP_JOURNAL_DIR = "ATOMICS_JOURNAL_DIR";
+
+    /**
+     * A comma separated list of durable namespaces, or {@link uk.gov.nationalarchives.pdi.step.atomics.Util#ALL_NAMESPACES}.
+     */
+    public static final String PROP_JOURNAL_NAMESPACES = "ATOMICS_JOURNAL_NAMESPACES";
+
+    /**
+     * The period in milliseconds between compacting the journal into a snapshot.
+     */
+    public static final String PROP_JOURNAL_SNAPSHOT_PERIOD = "ATOMICS_JOURNAL_SNAPSHOT_PERIOD";
+
+    public static final long DEFAULT_SNAPSHOT_PERIOD = 60_000;
+
+    private final Path directory;
+    private final Set<String> namespaces;
+    private final long snapshotPeriod;
+
+    public JournalConfig(final Path directory, final Set<String> namespaces, final long snapshotPeriod) {
+        if (snapshotPeriod < 1) {
+            throw new IllegalArgumentException("Snapshot period must be greater than zero");
+        }
+        this.directory = directory;
+        this.namespaces = Collections.unmodifiableSet(new HashSet<>(namespaces));
+        this.snapshotPeriod = snapshotPeriod;
+    }
+
+    /**
+     * Reads the journal configuration from the System Properties.
+     *
+     * @return the configuration, or null if the journal is not enabled
+     *
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public static @Nullable JournalConfig fromSystemProperties() throws IllegalArgumentException {
+        final String dir = System.getProperty(PROP_JOURNAL_DIR);
+        if (isNullOrEmpty(dir)) {
+            return null;
+        }
+
+        final Set<String> namespaces = parseNamespaces(System.getProperty(PROP_JOURNAL_NAMESPACES, ALL_NAMESPACES));
+
+        final long snapshotPeriod;
+        final String strSnapshotPeriod = System.getProperty(PROP_JOURNAL_SNAPSHOT_PERIOD);
+        if (isNullOrEmpty(strSnapshotPeriod)) {
+            snapshotPeriod = DEFAULT_SNAPSHOT_PERIOD;
+        } else {
+            try {
+                snapshotPeriod = Long.parseLong(strSnapshotPeriod.trim());
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException(PROP_JOURNAL_SNAPSHOT_PERIOD + " must be a number, but was: " + strSnapshotPeriod, e);
+            }
+        }
+
+        return new JournalConfig(Paths.get(dir), namespaces, snapshotPeriod);
+    }
+
+    /**
+     * Determines if an Atomic Value should be journaled.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return true if the namespace of the Atomic Value is durable
+     */
+    public boolean isDurable(final String id) {
+        return isInNamespaces(id, namespaces);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Set<String> getNamespaces() {
+        return namespaces;
+    }
+
+    public long getSnapshotPeriod() {
+        return snapshotPeriod;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.journal;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicIntegerValue;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * An {@link AtomicIntegerValue} whose changes
+ * are recorded in the {@link Journal}.
+ */
+@ThreadSafe
+public class JournaledIntegerValue extends AtomicIntegerValue implements JournaledValue {
+
+    private final Journal journal;
+    private final String id;
+    @GuardedBy("this") private boolean removed;
+
+    /**
+     * Creates a new Journaled Integer Value.
+     *
+     * @param journal the journal to record changes to
+     * @param id the identifier of the Atomic Value
+     * @param initialValue the initial value
+     */
+    public JournaledIntegerValue(final Journal journal, final String id, final int initialValue) {
+        super(initialValue);
+        this.journal = journal;
+        this.id = id;
+    }
+
+    /**
+     * See {@link AtomicIntegerValue#compareAndSet(int, int)}.
+     *
+     * If the value is changed, this does not return
+     * until the change is durable in the journal. If the change
+     * cannot be appended to the journal, then it is undone.
+     * If it is appended but cannot be made durable, then the
+     * journal has failed: the change is kept in memory, as other
+     * threads may already have seen it, but this and every later
+     * change throws {@link UncheckedIOException}.
+     *
+     * Once the Atomic Value has been removed, see {@link #appendRemove()},
+     * its changes are no longer journaled.
+     *
+     * @param expect the expected value
+     * @param update the new value
+     * @return {@code true} if successful.
+     *
+     * @throws UncheckedIOException if the change could not be written to the journal
+     */
+    @Override
+    public boolean compareAndSet(final int expect, final int update) {
+        final long seq;
+
+        // the change and its journal record must be ordered the same as any other change to this value
+        synchronized (this) {
+            if (!super.compareAndSet(expect, update)) {
+                return false;
+            }
+            if (expect == update || removed) {
+                return true;
+            }
+
+            try {
+                seq = journal.appendSet(id, AtomicType.Integer, update);
+            } catch (final IOException e) {
+                // undo the change, no other change can have been made whilst holding the lock
+                super.compareAndSet(update, expect);
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // wait outside of the lock, so that concurrent changes share the same write to disk
+        try {
+            journal.awaitDurable(seq);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized long appendRemove() throws IOException {
+        removed = true;
+        return journal.appendRemove(id);
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.journal;
+
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+
+import java.io.IOException;
+
+/**
+ * An {@link AtomicValue} whose changes are recorded in the {@link Journal}.
+ */
+public interface JournaledValue extends AtomicValue {
+
+    /**
+     * Records the removal of the Atomic Value in the journal.
+     *
+     * Once removed, any further change through a stale reference
+     * to the Atomic Value is not journaled, so that it cannot be
+     * applied to an Atomic Value which is later created with the same id.
+     *
+     * The record is not durable until {@link Journal#awaitDurable(long)} returns.
+     *
+     * @return the sequence number of the record
+     *
+     * @throws IOException if the journal has previously failed
+     */
+    long appendRemove() throws IOException;
+}
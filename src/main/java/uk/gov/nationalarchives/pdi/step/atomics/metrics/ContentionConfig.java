@@ -0,0 +1,112 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import net.jcip.annotations.Immutable;
+
+import javax.annotation.Nullable;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.isNullOrEmpty;
+
+/**
+ * Configuration for the contention profiler of Atomic Values,
+ * see {@link ContentionProfiler}.
+ *
+ * The configuration is read from System Properties, which
+ * KETTLE also populates from {@code kettle.properties}.
+ */
+@Immutable
+public class ContentionConfig {
+
+    /**
+     * Set to {@code false} to disable the contention profiler,
+     * by default it is enabled.
+     */
+    public static final String PROP_CONTENTION_PROFILER = "ATOMICS_CONTENTION_PROFILER";
+
+    /**
+     * The maximum number of ids that the profiler tracks.
+     */
+    public static final String PROP_CONTENTION_CAPACITY = "ATOMICS_CONTENTION_CAPACITY";
+
+    /**
+     * Record only 1 in every N contention events, each recorded
+     * event is then weighted by N. If not set (or 1) then
+     * every event is recorded.
+     */
+    public static final String PROP_CONTENTION_SAMPLE_RATE = "ATOMICS_CONTENTION_SAMPLE_RATE";
+
+    static final int DEFAULT_CAPACITY = 1_000;
+    static final int DEFAULT_SAMPLE_RATE = 1;
+
+    private final int capacity;
+    private final int sampleRate;
+
+    public ContentionConfig(final int capacity, final int sampleRate) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Sample rate must be at least 1");
+        }
+        this.capacity = capacity;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Reads the contention configuration from the System Properties.
+     *
+     * @return the configuration, or null if the contention profiler is disabled
+     *
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public static @Nullable ContentionConfig fromSystemProperties() throws IllegalArgumentException {
+        if ("false".equalsIgnoreCase(System.getProperty(PROP_CONTENTION_PROFILER))) {
+            return null;
+        }
+
+        final int capacity = intProperty(PROP_CONTENTION_CAPACITY, DEFAULT_CAPACITY);
+        final int sampleRate = intProperty(PROP_CONTENTION_SAMPLE_RATE, DEFAULT_SAMPLE_RATE);
+        return new ContentionConfig(capacity, sampleRate);
+    }
+
+    private static int intProperty(final String name, final int defaultValue) throws IllegalArgumentException {
+        final String str = System.getProperty(name);
+        if (isNullOrEmpty(str)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(str.trim());
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number, but was: " + str, e);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+}
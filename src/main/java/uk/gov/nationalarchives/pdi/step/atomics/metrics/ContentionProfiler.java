@@ -0,0 +1,313 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Profiles contention on Atomic Values by id, i.e. how often
+ * a step failed to compare and set an Atomic Value, or woke up
+ * from waiting for an Atomic Value to find it still did not match.
+ *
+ * The most contended ids are found with the Space-Saving algorithm
+ * (Metwally, Agrawal and El Abbadi, 2005), so memory is bounded
+ * by the capacity regardless of how many ids are contended.
+ * When a new id is seen and the profiler is full, the least
+ * contended id is evicted and the new id inherits its count,
+ * which is recorded as the error of the new id's count.
+ * The true count of an id is therefore between
+ * {@code count - error} and {@code count}.
+ *
+ * Optionally events may be sampled, in which case
+ * only 1 in every {@code sampleRate} events is recorded,
+ * with a weight of {@code sampleRate}.
+ */
+@ThreadSafe
+public class ContentionProfiler {
+
+    /**
+     * The kinds of contention.
+     */
+    public enum Kind {
+        /**
+         * None of the compare values of a Compare and Set step matched.
+         */
+        CAS_FAILURE,
+
+        /**
+         * A step woke up from waiting, and the Atomic Value was still not as expected.
+         */
+        WAKE_UP
+    }
+
+    private final int capacity;
+    private final int sampleRate;
+    private final LongAdder total = new LongAdder();
+
+    @GuardedBy("this") private final Map<String, Counter> counters;
+    @GuardedBy("this") private final Counter[] heap;  // min-heap ordered by count
+    @GuardedBy("this") private int size;
+
+    public ContentionProfiler(final ContentionConfig config) {
+        this.capacity = config.getCapacity();
+        this.sampleRate = config.getSampleRate();
+        this.counters = new HashMap<>(capacity * 4 / 3 + 1);
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * Record contention on an Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param kind the kind of contention
+     */
+    public void record(final String id, final Kind kind) {
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        total.add(sampleRate);
+        offer(id, kind, sampleRate);
+    }
+
+    private synchronized void offer(final String id, final Kind kind, final long weight) {
+        Counter counter = counters.get(id);
+        if (counter == null) {
+            if (size < capacity) {
+                counter = new Counter(id, 0);
+                counter.index = size;
+                heap[size++] = counter;
+                siftUp(counter.index);
+            } else {
+                // evict the least contended id, its count becomes the error of the new id
+                counter = heap[0];
+                counters.remove(counter.id);
+                counter.replace(id);
+            }
+            counters.put(id, counter);
+        }
+
+        counter.count += weight;
+        counter.byKind[kind.ordinal()] += weight;
+        siftDown(counter.index);
+    }
+
+    @GuardedBy("this")
+    private void siftUp(int index) {
+        final Counter counter = heap[index];
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            move(heap[parent], index);
+            index = parent;
+        }
+        move(counter, index);
+    }
+
+    @GuardedBy("this")
+    private void siftDown(int index) {
+        final Counter counter = heap[index];
+        while (true) {
+            int child = (index << 1) + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            move(heap[child], index);
+            index = child;
+        }
+        move(counter, index);
+    }
+
+    @GuardedBy("this")
+    private void move(final Counter counter, final int index) {
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    /**
+     * Get the most contended ids.
+     *
+     * @param limit the maximum number of ids to return
+     *
+     * @return the most contended ids, in descending order of contention
+     */
+    public List<Entry> top(final int limit) {
+        if (limit < 1) {
+            return new ArrayList<>();
+        }
+
+        final List<Entry> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                final Counter counter = heap[i];
+                entries.add(new Entry(counter.id, counter.count, counter.error, counter.byKind[Kind.CAS_FAILURE.ordinal()], counter.byKind[Kind.WAKE_UP.ordinal()]));
+            }
+        }
+
+        entries.sort(Comparator.comparingLong(Entry::getCount).reversed());
+        return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+    }
+
+    /**
+     * Get the total (estimated, if sampling) number of contention events on all ids.
+     *
+     * @return the total number of contention events
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Discard all contention counts.
+     */
+    public synchronized void reset() {
+        counters.clear();
+        for (int i = 0; i < size; i++) {
+            heap[i] = null;
+        }
+        size = 0;
+        total.reset();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("total=").append(getTotal());
+        for (final Entry entry : top(capacity)) {
+            builder.append(", ").append(entry);
+        }
+        return builder.toString();
+    }
+
+    private static class Counter {
+        String id;
+        long count;
+        long error;
+        final long[] byKind = new long[Kind.values().length];
+        int index;
+
+        Counter(final String id, final long count) {
+            this.id = id;
+            this.count = count;
+        }
+
+        void replace(final String id) {
+            this.id = id;
+            this.error = count;
+            for (int i = 0; i < byKind.length; i++) {
+                byKind[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * The contention on an Atomic Value.
+     */
+    @Immutable
+    public static class Entry {
+        private final String id;
+        private final long count;
+        private final long error;
+        private final long casFailures;
+        private final long wakeUps;
+
+        Entry(final String id, final long count, final long error, final long casFailures, final long wakeUps) {
+            this.id = id;
+            this.count = count;
+            this.error = error;
+            this.casFailures = casFailures;
+            this.wakeUps = wakeUps;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Get the estimated contention, which may over-count by at most {@link #getError()}.
+         *
+         * @return the estimated contention
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the maximum over-count of {@link #getCount()}.
+         *
+         * @return the maximum error
+         */
+        public long getError() {
+            return error;
+        }
+
+        /**
+         * Get the number of CAS failures since the id was last tracked.
+         *
+         * @return the CAS failures
+         */
+        public long getCasFailures() {
+            return casFailures;
+        }
+
+        /**
+         * Get the number of wake-ups since the id was last tracked.
+         *
+         * @return the wake-ups
+         */
+        public long getWakeUps() {
+            return wakeUps;
+        }
+
+        @Override
+        public String toString() {
+            return id + "=" + count + " (error=" + error + ", cas-failures=" + casFailures + ", wake-ups=" + wakeUps + ")";
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import net.jcip.annotations.Immutable;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.isNullOrEmpty;
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.nullIfEmpty;
+
+/**
+ * Configuration for recording and exporting the
+ * latency histograms of steps, see {@link StepLatencies}.
+ *
+ * The configuration is read from System Properties, which
+ * KETTLE also populates from {@code kettle.properties}.
+ */
+@Immutable
+public class LatencyConfig {
+
+    /**
+     * Set to {@code true} to also record latencies
+     * for each namespace of the Atomic IDs.
+     */
+    public static final String PROP_LATENCY_BY_NAMESPACE = "ATOMICS_LATENCY_BY_NAMESPACE";
+
+    /**
+     * The interval in milliseconds at which each step exports its latencies,
+     * if not set (or 0) then latencies are not periodically exported.
+     */
+    public static final String PROP_LATENCY_EXPORT_INTERVAL = "ATOMICS_LATENCY_EXPORT_INTERVAL";
+
+    /**
+     * A directory to which latencies are exported as CSV,
+     * if not set then latencies are only exported to the log.
+     */
+    public static final String PROP_LATENCY_CSV_DIRECTORY = "ATOMICS_LATENCY_CSV_DIRECTORY";
+
+    /**
+     * Set to {@code false} to keep accumulating latencies after they are exported,
+     * by default the histograms are reset after each export.
+     */
+    public static final String PROP_LATENCY_RESET_ON_EXPORT = "ATOMICS_LATENCY_RESET_ON_EXPORT";
+
+    private final boolean byNamespace;
+    private final long exportInterval;
+    @Nullable private final Path csvDirectory;
+    private final boolean resetOnExport;
+
+    public LatencyConfig(final boolean byNamespace, final long exportInterval, @Nullable final Path csvDirectory, final boolean resetOnExport) {
+        if (exportInterval < 0) {
+            throw new IllegalArgumentException("Export interval must not be negative");
+        }
+        this.byNamespace = byNamespace;
+        this.exportInterval = exportInterval;
+        this.csvDirectory = csvDirectory;
+        this.resetOnExport = resetOnExport;
+    }
+
+    /**
+     * Reads the latency configuration from the System Properties.
+     *
+     * @return the configuration
+     *
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public static LatencyConfig fromSystemProperties() throws IllegalArgumentException {
+        final boolean byNamespace = Boolean.parseBoolean(System.getProperty(PROP_LATENCY_BY_NAMESPACE));
+
+        final String strExportInterval = System.getProperty(PROP_LATENCY_EXPORT_INTERVAL);
+        final long exportInterval;
+        if (isNullOrEmpty(strExportInterval)) {
+            exportInterval = 0;
+        } else {
+            try {
+                exportInterval = Long.parseLong(strExportInterval.trim());
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException(PROP_LATENCY_EXPORT_INTERVAL + " must be a number, but was: " + strExportInterval, e);
+            }
+        }
+
+        final String strCsvDirectory = nullIfEmpty(System.getProperty(PROP_LATENCY_CSV_DIRECTORY));
+        final Path csvDirectory = strCsvDirectory == null ? null : Paths.get(strCsvDirectory);
+
+        final boolean resetOnExport = !"false".equalsIgnoreCase(System.getProperty(PROP_LATENCY_RESET_ON_EXPORT));
+
+        return new LatencyConfig(byNamespace, exportInterval, csvDirectory, resetOnExport);
+    }
+
+    public boolean isByNamespace() {
+        return byNamespace;
+    }
+
+    public long getExportInterval() {
+        return exportInterval;
+    }
+
+    /**
+     * Determines if latencies are periodically exported.
+     *
+     * @return true if latencies are periodically exported
+     */
+    public boolean isExportEnabled() {
+        return exportInterval > 0;
+    }
+
+    public @Nullable Path getCsvDirectory() {
+        return csvDirectory;
+    }
+
+    public boolean isResetOnExport() {
+        return resetOnExport;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically exports the latencies of a step copy
+ * to the log, and optionally to a CSV file.
+ *
+ * Each step copy has its own exporter, which is only
+ * used by the thread of the step copy.
+ */
+@NotThreadSafe
+public class LatencyExporter {
+
+    /**
+     * The name of the CSV file within {@link LatencyConfig#getCsvDirectory()}.
+     */
+    public static final String CSV_FILE_NAME = "atomic-latencies.csv";
+
+    static final String CSV_HEADER = "timestamp,transformation,step,copy,latency,namespace,count,mean_ms,p50_ms,p90_ms,p99_ms,p99.9_ms,max_ms";
+
+    /**
+     * The namespace column for the latencies of the whole step copy.
+     */
+    static final String ALL_NAMESPACES = "*";
+
+    // all step copies in the JVM append to the same file
+    private static final Object CSV_LOCK = new Object();
+
+    private final LatencyConfig config;
+    private final String transformationName;
+    private final String stepName;
+    private final int copy;
+    private long nextExportNanos;
+
+    public LatencyExporter(final LatencyConfig config, @Nullable final String transformationName, final String stepName, final int copy) {
+        this.config = config;
+        this.transformationName = transformationName == null ? "" : transformationName;
+        this.stepName = stepName;
+        this.copy = copy;
+        this.nextExportNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getExportInterval());
+    }
+
+    /**
+     * Determines if the latencies should be exported now.
+     *
+     * @return true if the export interval has elapsed since the last export
+     */
+    public boolean isDue() {
+        return config.isExportEnabled() && System.nanoTime() - nextExportNanos >= 0;
+    }
+
+    /**
+     * Exports the latencies to the CSV file if one is configured,
+     * and then resets them if configured.
+     *
+     * @param latencies the latencies of the step copy
+     *
+     * @return a summary of the latencies which is suitable for logging
+     *
+     * @throws IOException if the latencies cannot be written to the CSV file
+     */
+    public String export(final StepLatencies latencies) throws IOException {
+        nextExportNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getExportInterval());
+
+        final String summary = latencies.toString();
+        try {
+            final Path csvDirectory = config.getCsvDirectory();
+            if (csvDirectory != null) {
+                writeCsv(csvDirectory.resolve(CSV_FILE_NAME), latencies, System.currentTimeMillis());
+            }
+        } finally {
+            if (config.isResetOnExport()) {
+                latencies.reset();
+            }
+        }
+        return summary;
+    }
+
+    private void writeCsv(final Path csvFile, final StepLatencies latencies, final long timestamp) throws IOException {
+        final StringBuilder rows = new StringBuilder();
+        for (final StepLatencies.Latency latency : StepLatencies.Latency.values()) {
+            appendCsvRow(rows, timestamp, latency, ALL_NAMESPACES, latencies.getHistogram(latency));
+            for (final Map.Entry<String, LatencyHistogram> namespace : latencies.getHistogramsByNamespace(latency).entrySet()) {
+                appendCsvRow(rows, timestamp, latency, namespace.getKey(), namespace.getValue());
+            }
+        }
+
+        synchronized (CSV_LOCK) {
+            Files.createDirectories(csvFile.getParent());
+            final boolean newFile = !Files.exists(csvFile) || Files.size(csvFile) == 0;
+            try (final Writer writer = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (newFile) {
+                    writer.write(CSV_HEADER);
+                    writer.write('\n');
+                }
+                writer.write(rows.toString());
+            }
+        }
+    }
+
+    private void appendCsvRow(final StringBuilder rows, final long timestamp, final StepLatencies.Latency latency, final String namespace, final LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        rows.append(timestamp)
+                .append(',').append(csvEscape(transformationName))
+                .append(',').append(csvEscape(stepName))
+                .append(',').append(copy)
+                .append(',').append(latency.getLabel())
+                .append(',').append(csvEscape(namespace))
+                .append(',').append(histogram.getCount())
+                .append(',').append(millis(histogram.getMean()))
+                .append(',').append(millis(histogram.getValueAtPercentile(50)))
+                .append(',').append(millis(histogram.getValueAtPercentile(90)))
+                .append(',').append(millis(histogram.getValueAtPercentile(99)))
+                .append(',').append(millis(histogram.getValueAtPercentile(99.9)))
+                .append(',').append(millis(histogram.getMax()))
+                .append('\n');
+    }
+
+    private static String millis(final double nanos) {
+        return String.format(Locale.ROOT, "%.3f", LatencyHistogram.toMillis(nanos));
+    }
+
+    static String csvEscape(final String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
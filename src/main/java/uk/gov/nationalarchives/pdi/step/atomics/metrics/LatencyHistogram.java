@@ -0,0 +1,218 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds.
+ *
+ * Similar to an HdrHistogram, the buckets are
+ * log-linear: each power of two is divided into
+ * {@link #SUB_BUCKET_COUNT} buckets, so values are recorded
+ * with a relative error of at most 1/{@value #SUB_BUCKET_COUNT},
+ * across the entire range of a {@code long}, in a fixed amount of memory.
+ *
+ * Recording is lock-free and does not allocate.
+ * Reading is not atomic with respect to concurrent recording,
+ * so percentiles may include some, but not all, of the
+ * concurrently recorded values.
+ */
+@ThreadSafe
+public class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // values below this are recorded exactly
+    private static final int LINEAR_BUCKET_COUNT = SUB_BUCKET_COUNT << 1;
+    private static final int LINEAR_BITS = SUB_BUCKET_BITS + 1;
+    static final int BUCKET_COUNT = LINEAR_BUCKET_COUNT + (Long.SIZE - 1 - LINEAR_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos the latency in nanoseconds, negative values are recorded as zero
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Get the number of recorded latencies.
+     *
+     * @return the number of recorded latencies
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the mean of the recorded latencies.
+     *
+     * @return the mean in nanoseconds, or 0 if there are no recorded latencies
+     */
+    public double getMean() {
+        final long n = count.sum();
+        return n == 0 ? 0 : total.sum() / (double) n;
+    }
+
+    /**
+     * Get the sum of the recorded latencies.
+     *
+     * @return the sum in nanoseconds
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Get the maximum recorded latency.
+     *
+     * @return the maximum in nanoseconds, or 0 if there are no recorded latencies
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the latency at a percentile.
+     *
+     * @param percentile the percentile, between 0 and 100
+     *
+     * @return the highest latency in nanoseconds that is equivalent to the latency at the percentile,
+     *     or 0 if there are no recorded latencies
+     */
+    public long getValueAtPercentile(final double percentile) {
+        long n = 0;
+        final long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        final double clamped = Math.min(100, Math.max(0, percentile));
+        final long rank = Math.max(1, (long) Math.ceil(clamped / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // never report more than the actual maximum
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Get the cumulative number of recorded latencies at or below each of a set of bounds.
+     *
+     * A latency is counted against a bound if it is equivalent to, or lower than, the bound,
+     * so the counts may include latencies up to 1/{@value #SUB_BUCKET_COUNT} above each bound.
+     *
+     * @param upperBounds the bounds in nanoseconds, in ascending order
+     *
+     * @return the number of recorded latencies at or below each bound
+     */
+    public long[] getCumulativeCounts(final long[] upperBounds) {
+        final long[] cumulativeCounts = new long[upperBounds.length];
+        long seen = 0;
+        int bucket = 0;
+        for (int i = 0; i < upperBounds.length; i++) {
+            final int lastBucket = bucketIndex(Math.max(0, upperBounds[i]));
+            for (; bucket <= lastBucket; bucket++) {
+                seen += buckets.get(bucket);
+            }
+            cumulativeCounts[i] = seen;
+        }
+        return cumulativeCounts;
+    }
+
+    /**
+     * Discard all recorded latencies.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < LINEAR_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return LINEAR_BUCKET_COUNT + (exponent - LINEAR_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestEquivalentValue(final int bucketIndex) {
+        if (bucketIndex < LINEAR_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+        final int exponent = (bucketIndex - LINEAR_BUCKET_COUNT) / SUB_BUCKET_COUNT + LINEAR_BITS;
+        final int subBucket = (bucketIndex - LINEAR_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final long lowest = ((long) (SUB_BUCKET_COUNT + subBucket)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.3fms, p50=%.3fms, p90=%.3fms, p99=%.3fms, p99.9=%.3fms, max=%.3fms",
+                getCount(), toMillis(getMean()), toMillis(getValueAtPercentile(50)), toMillis(getValueAtPercentile(90)),
+                toMillis(getValueAtPercentile(99)), toMillis(getValueAtPercentile(99.9)), toMillis(getMax()));
+    }
+
+    /**
+     * Convert nanoseconds to milliseconds.
+     *
+     * @param nanos a duration in nanoseconds
+     *
+     * @return the duration in milliseconds
+     */
+    public static double toMillis(final double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import javax.annotation.Nullable;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers the MBeans of the plugins with the platform MBean server.
+ */
+public final class MBeans {
+
+    /**
+     * The JMX domain of the MBeans.
+     */
+    public static final String DOMAIN = "uk.gov.nationalarchives.pdi.step.atomics";
+
+    private MBeans() {
+    }
+
+    /**
+     * Get the name of the MBean for the metrics of a step copy.
+     *
+     * @param transformationName the name of the transformation
+     * @param stepName the name of the step
+     * @param copy the copy number of the step
+     *
+     * @return the name of the MBean
+     */
+    public static ObjectName stepMetricsName(@Nullable final String transformationName, final String stepName, final int copy) {
+        return name("type=StepMetrics"
+                + ",transformation=" + ObjectName.quote(transformationName == null ? "" : transformationName)
+                + ",step=" + ObjectName.quote(stepName)
+                + ",copy=" + copy);
+    }
+
+    /**
+     * Get the name of an MBean in the {@link #DOMAIN}.
+     *
+     * @param keyProperties the key properties of the name
+     *
+     * @return the name of the MBean
+     *
+     * @throws IllegalArgumentException if the key properties are invalid
+     */
+    public static ObjectName name(final String keyProperties) throws IllegalArgumentException {
+        try {
+            return new ObjectName(DOMAIN + ":" + keyProperties);
+        } catch (final MalformedObjectNameException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Register an MBean.
+     *
+     * @param mbean the MBean
+     * @param name the name of the MBean
+     *
+     * @return true if the MBean was registered, or false if an MBean with the name is already registered
+     *
+     * @throws IllegalStateException if the MBean cannot be registered
+     */
+    public static boolean register(final Object mbean, final ObjectName name) throws IllegalStateException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(mbean, name);
+            return true;
+        } catch (final InstanceAlreadyExistsException e) {
+            return false;
+        } catch (final JMException e) {
+            throw new IllegalStateException("Unable to register MBean: " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Unregister an MBean, if it is registered.
+     *
+     * @param name the name of the MBean
+     */
+    public static void unregister(final ObjectName name) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(name);
+        } catch (final InstanceNotFoundException e) {
+            // no-op, already unregistered
+        } catch (final JMException e) {
+            throw new IllegalStateException("Unable to unregister MBean: " + name + ": " + e.getMessage(), e);
+        }
+    }
+}
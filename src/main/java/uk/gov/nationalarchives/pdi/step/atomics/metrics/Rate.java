@@ -0,0 +1,105 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the occurrences of an operation, and
+ * calculates the rate at which they occur.
+ *
+ * Marking an occurrence is lock-free, the rate is
+ * only calculated when it is read, and is the mean
+ * rate over the interval since it was last calculated,
+ * which is at least {@link #MIN_INTERVAL_NANOS}.
+ */
+@ThreadSafe
+public class Rate {
+
+    /**
+     * The minimum interval over which the rate is calculated.
+     */
+    static final long MIN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final LongAdder count = new LongAdder();
+
+    @GuardedBy("this") private long intervalStartNanos = System.nanoTime();
+    @GuardedBy("this") private long intervalStartCount;
+    @GuardedBy("this") private double rate;
+
+    /**
+     * Record an occurrence.
+     */
+    public void mark() {
+        count.increment();
+    }
+
+    /**
+     * Record many occurrences.
+     *
+     * @param n the number of occurrences
+     */
+    public void mark(final long n) {
+        count.add(n);
+    }
+
+    /**
+     * Get the total number of occurrences.
+     *
+     * @return the number of occurrences
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the rate of occurrences.
+     *
+     * @return the mean number of occurrences per second
+     */
+    public synchronized double getRatePerSecond() {
+        final long now = System.nanoTime();
+        final long elapsed = now - intervalStartNanos;
+        if (elapsed >= MIN_INTERVAL_NANOS) {
+            final long total = count.sum();
+            rate = (total - intervalStartCount) / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+            intervalStartNanos = now;
+            intervalStartCount = total;
+        }
+        return rate;
+    }
+
+    /**
+     * Reset the count and rate to zero.
+     */
+    public synchronized void reset() {
+        count.reset();
+        intervalStartNanos = System.nanoTime();
+        intervalStartCount = 0;
+        rate = 0;
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import net.jcip.annotations.ThreadSafe;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.namespaceOf;
+
+/**
+ * Latency histograms of a step copy, and optionally
+ * of each namespace of the Atomic IDs that it uses.
+ */
+@ThreadSafe
+public class StepLatencies {
+
+    /**
+     * The latencies that are recorded.
+     */
+    public enum Latency {
+        /**
+         * Time to get an Atomic Value when waiting for it to be created,
+         * i.e. {@code ActionIfNoAtomic.Wait}.
+         */
+        ACQUIRE("time-to-acquire"),
+
+        /**
+         * Time for an Atomic Value to match one of the await values.
+         */
+        MATCH("time-to-match"),
+
+        /**
+         * Time to compare and set an Atomic Value.
+         */
+        CAS("time-to-cas");
+
+        private final String label;
+
+        Latency(final String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * The maximum number of namespaces with their own histograms,
+     * the latencies of any further namespaces are recorded under {@link #OTHER_NAMESPACES}.
+     */
+    static final int MAX_NAMESPACES = 100;
+
+    public static final String OTHER_NAMESPACES = "(other)";
+
+    private static final Latency[] LATENCIES = Latency.values();
+
+    private final LatencyHistogram[] histograms = newHistograms();
+    @Nullable private final ConcurrentMap<String, LatencyHistogram[]> byNamespace;
+
+    /**
+     * @param byNamespace true to also record the latencies of each namespace
+     */
+    public StepLatencies(final boolean byNamespace) {
+        this.byNamespace = byNamespace ? new ConcurrentHashMap<>() : null;
+    }
+
+    private static LatencyHistogram[] newHistograms() {
+        final LatencyHistogram[] histograms = new LatencyHistogram[LATENCIES.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param latency the latency that was measured
+     * @param id the identifier of the Atomic Value
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(final Latency latency, final String id, final long nanos) {
+        histograms[latency.ordinal()].record(nanos);
+        if (byNamespace != null) {
+            namespaceHistograms(namespaceOf(id))[latency.ordinal()].record(nanos);
+        }
+    }
+
+    private LatencyHistogram[] namespaceHistograms(final String namespace) {
+        LatencyHistogram[] namespaceHistograms = byNamespace.get(namespace);
+        if (namespaceHistograms == null) {
+            final String key = byNamespace.size() < MAX_NAMESPACES ? namespace : OTHER_NAMESPACES;
+            namespaceHistograms = byNamespace.computeIfAbsent(key, k -> newHistograms());
+        }
+        return namespaceHistograms;
+    }
+
+    /**
+     * Get the histogram of a latency for the step copy.
+     *
+     * @param latency the latency
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getHistogram(final Latency latency) {
+        return histograms[latency.ordinal()];
+    }
+
+    /**
+     * Get the histograms of a latency for each namespace.
+     *
+     * @param latency the latency
+     *
+     * @return the histograms by namespace, or an empty map if latencies are not recorded by namespace
+     */
+    public Map<String, LatencyHistogram> getHistogramsByNamespace(final Latency latency) {
+        if (byNamespace == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, LatencyHistogram> namespaceHistograms = new TreeMap<>();
+        for (final Map.Entry<String, LatencyHistogram[]> entry : byNamespace.entrySet()) {
+            namespaceHistograms.put(entry.getKey(), entry.getValue()[latency.ordinal()]);
+        }
+        return namespaceHistograms;
+    }
+
+    /**
+     * Discard all recorded latencies.
+     */
+    public void reset() {
+        for (final LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        if (byNamespace != null) {
+            byNamespace.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (final Latency latency : LATENCIES) {
+            final LatencyHistogram histogram = histograms[latency.ordinal()];
+            if (histogram.getCount() > 0) {
+                if (builder.length() > 0) {
+                    builder.append("; ");
+                }
+                builder.append(latency.getLabel()).append(": ").append(histogram);
+            }
+        }
+        return builder.toString();
+    }
+}
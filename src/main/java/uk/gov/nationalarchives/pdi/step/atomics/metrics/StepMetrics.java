@@ -0,0 +1,281 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import net.jcip.annotations.ThreadSafe;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers for a single step copy.
+ *
+ * Recording uses striped {@link LongAdder}s so that it does not
+ * allocate on the hot path, and is cheap even when the metrics
+ * are read concurrently, e.g. via JMX.
+ */
+@ThreadSafe
+public class StepMetrics implements StepMetricsMXBean {
+
+    // <editor-fold desc="names of the fixed output targets">
+    public static final String TARGET_DEFAULT = "(default)";
+    public static final String TARGET_CONTINUE = "(continue)";
+    public static final String TARGET_TIMEOUT = "(timeout)";
+    public static final String TARGET_SKIP = "(skip)";
+    public static final String TARGET_ERROR = "(error)";
+    public static final String TARGET_UNNAMED = "(unnamed)";
+    // </editor-fold>
+
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder lookupMisses = new LongAdder();
+    private final LongAdder initialisations = new LongAdder();
+    private final LongAdder creations = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitTimeNanos = new LongAdder();
+    private final LongAccumulator maxWaitTimeNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder casAttempts = new LongAdder();
+    private final LongAdder casFailures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder interrupts = new LongAdder();
+    private final LongAdder stuckWaits = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> rowsByTarget = new ConcurrentHashMap<>();
+    private final StepLatencies latencies;
+
+    public StepMetrics() {
+        this(false);
+    }
+
+    /**
+     * @param latenciesByNamespace true to also record latencies for each namespace of the Atomic IDs
+     */
+    public StepMetrics(final boolean latenciesByNamespace) {
+        this.latencies = new StepLatencies(latenciesByNamespace);
+    }
+
+    // <editor-fold desc="recording">
+    public void recordLookup(final boolean found) {
+        lookups.increment();
+        if (!found) {
+            lookupMisses.increment();
+        }
+    }
+
+    public void recordInitialisation() {
+        initialisations.increment();
+    }
+
+    public void recordCreations(final int count) {
+        creations.add(count);
+    }
+
+    public void recordWait(final long nanos) {
+        waits.increment();
+        waitTimeNanos.add(nanos);
+        maxWaitTimeNanos.accumulate(nanos);
+    }
+
+    public void recordCasAttempt(final boolean set) {
+        casAttempts.increment();
+        if (!set) {
+            casFailures.increment();
+        }
+    }
+
+    public void recordTimeout() {
+        timeouts.increment();
+    }
+
+    public void recordInterrupt() {
+        interrupts.increment();
+    }
+
+    public void recordStuckWait() {
+        stuckWaits.increment();
+    }
+
+    /**
+     * Record that a row was sent to an output target.
+     *
+     * @param target the name of the target step, or one of the {@code TARGET_*} constants
+     */
+    public void recordRow(@Nullable final String target) {
+        final String key = target != null ? target : TARGET_UNNAMED;
+        LongAdder rows = rowsByTarget.get(key);
+        if (rows == null) {
+            // only allocates the first time a target is seen
+            rows = rowsByTarget.computeIfAbsent(key, k -> new LongAdder());
+        }
+        rows.increment();
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="StepMetricsMXBean">
+    @Override
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    @Override
+    public long getLookupMisses() {
+        return lookupMisses.sum();
+    }
+
+    @Override
+    public long getInitialisations() {
+        return initialisations.sum();
+    }
+
+    @Override
+    public long getCreations() {
+        return creations.sum();
+    }
+
+    @Override
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    @Override
+    public double getWaitTimeMillis() {
+        return waitTimeNanos.sum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxWaitTimeMillis() {
+        return maxWaitTimeNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getCasAttempts() {
+        return casAttempts.sum();
+    }
+
+    @Override
+    public long getCasFailures() {
+        return casFailures.sum();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public long getInterrupts() {
+        return interrupts.sum();
+    }
+
+    @Override
+    public long getStuckWaits() {
+        return stuckWaits.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRowsByTarget() {
+        final Map<String, Long> snapshot = new TreeMap<>();
+        for (final Map.Entry<String, LongAdder> rows : rowsByTarget.entrySet()) {
+            snapshot.put(rows.getKey(), rows.getValue().sum());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param latency the latency that was measured
+     * @param id the identifier of the Atomic Value
+     * @param nanos the latency in nanoseconds
+     */
+    public void recordLatency(final StepLatencies.Latency latency, final String id, final long nanos) {
+        latencies.record(latency, id, nanos);
+    }
+
+    public StepLatencies getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyPercentilesMillis() {
+        final Map<String, Double> percentiles = new TreeMap<>();
+        for (final StepLatencies.Latency latency : StepLatencies.Latency.values()) {
+            final LatencyHistogram histogram = latencies.getHistogram(latency);
+            percentiles.put(latency.getLabel() + ".p50", histogram.getValueAtPercentile(50) / NANOS_PER_MILLI);
+            percentiles.put(latency.getLabel() + ".p90", histogram.getValueAtPercentile(90) / NANOS_PER_MILLI);
+            percentiles.put(latency.getLabel() + ".p99", histogram.getValueAtPercentile(99) / NANOS_PER_MILLI);
+            percentiles.put(latency.getLabel() + ".p99.9", histogram.getValueAtPercentile(99.9) / NANOS_PER_MILLI);
+            percentiles.put(latency.getLabel() + ".max", histogram.getMax() / NANOS_PER_MILLI);
+        }
+        return percentiles;
+    }
+
+    @Override
+    public void reset() {
+        lookups.reset();
+        lookupMisses.reset();
+        initialisations.reset();
+        creations.reset();
+        waits.reset();
+        waitTimeNanos.reset();
+        maxWaitTimeNanos.reset();
+        casAttempts.reset();
+        casFailures.reset();
+        timeouts.reset();
+        interrupts.reset();
+        stuckWaits.reset();
+        for (final LongAdder rows : rowsByTarget.values()) {
+            rows.reset();
+        }
+        latencies.reset();
+    }
+    // </editor-fold>
+
+    /**
+     * A summary of the metrics which is suitable for logging.
+     *
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        return "lookups=" + getLookups()
+                + ", lookupMisses=" + getLookupMisses()
+                + ", initialisations=" + getInitialisations()
+                + ", creations=" + getCreations()
+                + ", waits=" + getWaits()
+                + ", waitTimeMillis=" + getWaitTimeMillis()
+                + ", maxWaitTimeMillis=" + getMaxWaitTimeMillis()
+                + ", casAttempts=" + getCasAttempts()
+                + ", casFailures=" + getCasFailures()
+                + ", timeouts=" + getTimeouts()
+                + ", interrupts=" + getInterrupts()
+                + ", stuckWaits=" + getStuckWaits()
+                + ", rowsByTarget=" + getRowsByTarget()
+                + ", latencies={" + latencies + "}";
+    }
+}
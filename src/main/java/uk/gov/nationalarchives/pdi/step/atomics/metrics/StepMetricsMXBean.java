@@ -0,0 +1,109 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link StepMetrics} of a step copy.
+ *
+ * Times are reported in milliseconds.
+ */
+public interface StepMetricsMXBean {
+
+    /**
+     * @return the number of times an Atomic Value was looked up in storage
+     */
+    long getLookups();
+
+    /**
+     * @return the number of lookups which found no Atomic Value
+     */
+    long getLookupMisses();
+
+    /**
+     * @return the number of times an Atomic Value was got or initialised
+     */
+    long getInitialisations();
+
+    /**
+     * @return the number of Atomic Values that were created by the step
+     */
+    long getCreations();
+
+    /**
+     * @return the number of times the step slept whilst waiting
+     */
+    long getWaits();
+
+    /**
+     * @return the total time that the step spent waiting
+     */
+    double getWaitTimeMillis();
+
+    /**
+     * @return the longest single wait
+     */
+    double getMaxWaitTimeMillis();
+
+    /**
+     * @return the number of Compare And Set attempts
+     */
+    long getCasAttempts();
+
+    /**
+     * @return the number of Compare And Set attempts that did not set the value, i.e. retries
+     */
+    long getCasFailures();
+
+    /**
+     * @return the number of rows that timed out whilst waiting
+     */
+    long getTimeouts();
+
+    /**
+     * @return the number of rows whose wait was interrupted
+     */
+    long getInterrupts();
+
+    /**
+     * @return the number of rows whose wait was reported as stuck by the watchdog
+     */
+    long getStuckWaits();
+
+    /**
+     * @return the number of rows sent to each output target
+     */
+    Map<String, Long> getRowsByTarget();
+
+    /**
+     * @return the percentiles of each latency in milliseconds, keyed by {@code <latency>.<percentile>},
+     *     e.g. {@code time-to-match.p99}
+     */
+    Map<String, Double> getLatencyPercentilesMillis();
+
+    /**
+     * Resets all of the metrics to zero.
+     */
+    void reset();
+}
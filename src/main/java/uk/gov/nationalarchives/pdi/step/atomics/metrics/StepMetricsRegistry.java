@@ -0,0 +1,72 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import javax.management.ObjectName;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The metrics of the running step copies, so that
+ * exporters can read them without going through JMX.
+ *
+ * Each step copy is registered by the same name as its MBean,
+ * see {@link MBeans#stepMetricsName(String, String, int)}.
+ */
+public final class StepMetricsRegistry {
+
+    private static final ConcurrentMap<ObjectName, StepMetrics> REGISTERED = new ConcurrentHashMap<>();
+
+    private StepMetricsRegistry() {
+    }
+
+    /**
+     * Register the metrics of a step copy.
+     *
+     * @param name the name of the metrics
+     * @param metrics the metrics
+     */
+    public static void register(final ObjectName name, final StepMetrics metrics) {
+        REGISTERED.put(name, metrics);
+    }
+
+    /**
+     * Unregister the metrics of a step copy, if they are registered.
+     *
+     * @param name the name of the metrics
+     */
+    public static void unregister(final ObjectName name) {
+        REGISTERED.remove(name);
+    }
+
+    /**
+     * Get the metrics of the running step copies.
+     *
+     * @return a view of the metrics by their names, which reflects concurrent registrations
+     */
+    public static Map<ObjectName, StepMetrics> getRegistered() {
+        return Collections.unmodifiableMap(REGISTERED);
+    }
+}
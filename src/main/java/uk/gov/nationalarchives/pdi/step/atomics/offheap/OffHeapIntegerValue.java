@@ -0,0 +1,63 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.offheap;
+
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicIntegerValue;
+
+/**
+ * An {@link AtomicIntegerValue} whose value is
+ * stored off-heap in an {@link OffHeapStore}.
+ */
+@ThreadSafe
+public class OffHeapIntegerValue extends AtomicIntegerValue {
+
+    private final OffHeapSlot slot;
+
+    OffHeapIntegerValue(final OffHeapSlot slot) {
+        this.slot = slot;
+    }
+
+    @Override
+    public int get() {
+        return slot.get();
+    }
+
+    @Override
+    public boolean compareAndSet(final int expect, final int update) {
+        return slot.compareAndSet(expect, update);
+    }
+
+    /**
+     * Values are views of their slot, so are equal if they view the same slot for the same Atomic Value.
+     */
+    @Override
+    public boolean equals(final Object other) {
+        return other instanceof OffHeapIntegerValue && ((OffHeapIntegerValue) other).slot.equals(slot);
+    }
+
+    @Override
+    public int hashCode() {
+        return slot.hashCode();
+    }
+}
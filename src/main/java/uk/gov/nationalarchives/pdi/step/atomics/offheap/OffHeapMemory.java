@@ -0,0 +1,119 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.offheap;
+
+import net.jcip.annotations.ThreadSafe;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+
+/**
+ * Direct access to memory which is allocated outside of the Java heap.
+ *
+ * {@link java.nio.ByteBuffer#allocateDirect(int)} is limited to 2 GB per
+ * buffer, does not offer compare-and-set, and only frees its memory when
+ * the buffer is garbage collected, so the memory is allocated, accessed
+ * and freed directly by its address.
+ *
+ * Addresses are not checked, callers must only access memory that
+ * they have allocated and not yet freed.
+ */
+@ThreadSafe
+final class OffHeapMemory {
+
+    private static final Unsafe UNSAFE;
+    private static final long BYTE_ARRAY_OFFSET;
+    static {
+        try {
+            final Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            UNSAFE = (Unsafe) theUnsafe.get(null);
+            BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+        } catch (final ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private OffHeapMemory() {
+    }
+
+    /**
+     * Allocates memory, and fills it.
+     *
+     * @param bytes the number of bytes to allocate
+     * @param fill the value of every byte of the memory
+     *
+     * @return the address of the memory
+     *
+     * @throws OutOfMemoryError if the memory cannot be allocated
+     */
+    static long allocate(final long bytes, final byte fill) throws OutOfMemoryError {
+        final long address = UNSAFE.allocateMemory(bytes);
+        UNSAFE.setMemory(address, bytes, fill);
+        return address;
+    }
+
+    static void free(final long address) {
+        UNSAFE.freeMemory(address);
+    }
+
+    static int getInt(final long address) {
+        return UNSAFE.getInt(address);
+    }
+
+    static void putInt(final long address, final int value) {
+        UNSAFE.putInt(address, value);
+    }
+
+    static long getLong(final long address) {
+        return UNSAFE.getLong(address);
+    }
+
+    static void putLong(final long address, final long value) {
+        UNSAFE.putLong(address, value);
+    }
+
+    static long getLongVolatile(final long address) {
+        return UNSAFE.getLongVolatile(null, address);
+    }
+
+    static void putLongVolatile(final long address, final long value) {
+        UNSAFE.putLongVolatile(null, address, value);
+    }
+
+    static boolean compareAndSetLong(final long address, final long expect, final long update) {
+        return UNSAFE.compareAndSwapLong(null, address, expect, update);
+    }
+
+    static byte getByte(final long address) {
+        return UNSAFE.getByte(address);
+    }
+
+    static void copy(final long fromAddress, final long toAddress, final long bytes) {
+        UNSAFE.copyMemory(fromAddress, toAddress, bytes);
+    }
+
+    static void copy(final byte[] from, final long toAddress) {
+        UNSAFE.copyMemory(from, BYTE_ARRAY_OFFSET, null, toAddress, from.length);
+    }
+}
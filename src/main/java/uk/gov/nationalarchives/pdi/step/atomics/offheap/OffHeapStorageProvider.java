@@ -0,0 +1,106 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.offheap;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageProvider;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.MBeans;
+
+import javax.annotation.Nullable;
+import javax.management.ObjectName;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link AtomicStorageProvider} which stores every
+ * Atomic Value off-heap in an {@link OffHeapStore}.
+ *
+ * The store is created when the provider is first used,
+ * and is registered with the platform MBean server as
+ * {@link #MBEAN_NAME} to report its memory usage.
+ */
+@ThreadSafe
+public class OffHeapStorageProvider implements AtomicStorageProvider {
+
+    public static final String PROVIDER_NAME = "off-heap";
+
+    public static final ObjectName MBEAN_NAME = MBeans.name("type=OffHeapStorage");
+
+    private final Object lock = new Object();
+    @GuardedBy("lock") @Nullable private volatile OffHeapStore store;
+
+    @Override
+    public String getName() {
+        return PROVIDER_NAME;
+    }
+
+    @Override
+    public @Nullable AtomicValue getAtomic(final String id, final AtomicType atomicType) throws IllegalArgumentException {
+        return getStore().get(id, atomicType);
+    }
+
+    @Override
+    public AtomicValue getOrCreateAtomic(final String id, final AtomicType atomicType, final String initialValue) throws IllegalArgumentException {
+        return getStore().getOrCreate(id, atomicType, initialValue);
+    }
+
+    @Override
+    public int getOrCreateAll(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> batch) throws IllegalArgumentException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        return getStore().getOrCreateAll(atomicType, batch);
+    }
+
+    @Override
+    public boolean removeAtomic(final String id) {
+        return getStore().remove(id);
+    }
+
+    /**
+     * Get the off-heap store, creating it if needed.
+     *
+     * @return the off-heap store
+     */
+    private OffHeapStore getStore() {
+        OffHeapStore localStore = store;
+        if (localStore == null) {
+            synchronized (lock) {
+                localStore = store;
+                if (localStore == null) {
+                    localStore = new OffHeapStore();
+                    try {
+                        MBeans.register(localStore, MBEAN_NAME);
+                    } catch (final IllegalStateException e) {
+                        // no-op, the store is not manageable via JMX
+                    }
+                    store = localStore;
+                }
+            }
+        }
+        return localStore;
+    }
+}
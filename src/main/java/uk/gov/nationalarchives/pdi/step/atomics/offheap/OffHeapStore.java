@@ -0,0 +1,654 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.offheap;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Storage for Atomic Values in memory outside of the Java heap,
+ * so that very large numbers of long-lived Atomic Values add
+ * nothing to the work of the garbage collector.
+ *
+ * Each value is a 64-bit slot of fixed-size segments of off-heap
+ * memory, which holds the value together with a generation, see
+ * {@link OffHeapSlot}, so values are updated by a lock-free
+ * compare-and-set of their slot. Segments are allocated as they
+ * are needed, and are never moved.
+ *
+ * Ids are mapped to their slot by an off-heap open-addressing
+ * hash table, whose entries hold the hash of the id, the address
+ * of the id, and the index of its slot. The type and UTF-8 encoded
+ * bytes of each id are packed end-to-end into large off-heap chunks.
+ * Creating and removing Atomic Values takes the write lock, and
+ * finding them takes the read lock.
+ *
+ * The slot of a removed Atomic Value is linked into a free list,
+ * and is reused by the next Atomic Value that is created. Removing
+ * an Atomic Value increments the generation of its slot, so a stale
+ * reference to a removed Atomic Value becomes detached, and can never
+ * change the value of a different Atomic Value. The space used by
+ * the ids of removed Atomic Values is reclaimed when the table is
+ * next resized, see {@link #getFragmentation()}.
+ */
+@ThreadSafe
+public class OffHeapStore implements OffHeapStoreMXBean {
+
+    /**
+     * The maximum length in bytes of the UTF-8 encoded id of an off-heap Atomic Value.
+     */
+    public static final int MAX_ID_LENGTH = 0xFFFF;
+
+    // each segment of values holds 2^16 slots
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_SLOTS = 1 << SEGMENT_SHIFT;
+    private static final long SEGMENT_SIZE = (long) SEGMENT_SLOTS * Long.BYTES;
+
+    // the end of the free list of slots
+    private static final int NO_FREE_SLOT = -1;
+
+    // each chunk of ids holds 1 MB, an id is a header of its type and length followed by its bytes, padded to 4 bytes
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int RECORD_HEADER_SIZE = 4;
+
+    // table entry layout
+    private static final int ENTRY_SIZE = 16;
+    private static final int ENTRY_VALUE_INDEX_OFFSET = 0;
+    private static final int ENTRY_HASH_OFFSET = 4;
+    private static final int ENTRY_ID_ADDRESS_OFFSET = 8;
+
+    // a new table is filled with 0xFF bytes, so every entry is empty
+    private static final int ENTRY_EMPTY = -1;
+    private static final int ENTRY_REMOVED = -2;
+
+    private static final int TYPE_BOOLEAN = 1;
+    private static final int TYPE_INTEGER = 2;
+
+    // leave some empty entries so that probing stays short
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+    private static final int MIN_CAPACITY = 16;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @GuardedBy("lock") private long tableAddress;
+    @GuardedBy("lock") private int capacity;
+    @GuardedBy("lock") private int live;
+    @GuardedBy("lock") private int used;
+
+    @GuardedBy("lock") private long[] chunkAddresses = new long[1];
+    @GuardedBy("lock") private int chunkCount;
+    @GuardedBy("lock") private int chunkEnd;
+    @GuardedBy("lock") private long liveIdBytes;
+    @GuardedBy("lock") private long removedIdBytes;
+
+    @GuardedBy("lock") private long[] segmentAddresses = new long[1];
+    @GuardedBy("lock") private int segmentCount;
+    @GuardedBy("lock") private int nextValueIndex;
+    @GuardedBy("lock") private int freeValueIndex = NO_FREE_SLOT;
+    @GuardedBy("lock") private long freeValues;
+
+    @GuardedBy("lock") private boolean closed;
+
+    public OffHeapStore() {
+        this.tableAddress = OffHeapMemory.allocate((long) MIN_CAPACITY * ENTRY_SIZE, (byte) 0xFF);
+        this.capacity = MIN_CAPACITY;
+    }
+
+    /**
+     * Get an Atomic Value from the store.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     *
+     * @return null if there is no such atomic with the provided id, otherwise the AtomicValue
+     *
+     * @throws IllegalArgumentException if the the Atomic Value exists but has a different AtomicType to that which was requested
+     * @throws IllegalStateException if the store has been closed
+     */
+    public @Nullable AtomicValue get(final String id, final AtomicType atomicType) throws IllegalArgumentException, IllegalStateException {
+        final byte[] idBytes = encodeId(id);
+        final int hash = hash(idBytes);
+        lock.readLock().lock();
+        try {
+            final int entry = find(idBytes, hash);
+            if (entry == -1) {
+                return null;
+            }
+            return valueAt(entry, id, atomicType);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get an Atomic Value from the store,
+     * or Create it if there is no existing Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     * @param initialValue the initial value for the Atomic Value if it is created
+     *
+     * @return the existing or newly created AtomicValue
+     *
+     * @throws IllegalArgumentException if the the Atomic Value exists but has a different AtomicType to that which was requested
+     * @throws IllegalStateException if the store is full, or has been closed
+     */
+    public AtomicValue getOrCreate(final String id, final AtomicType atomicType, final String initialValue) throws IllegalArgumentException, IllegalStateException {
+        final byte[] idBytes = encodeId(id);
+        final int hash = hash(idBytes);
+
+        // 1) optimistically try and get the value
+        lock.readLock().lock();
+        try {
+            final int existingEntry = find(idBytes, hash);
+            if (existingEntry != -1) {
+                return valueAt(existingEntry, id, atomicType);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // 2) no such value, lock for create
+        final int value = encodeValue(atomicType, initialValue);
+        lock.writeLock().lock();
+        try {
+
+            // 2.1) another thread may have created it before we took the lock
+            final int entry = find(idBytes, hash);
+            if (entry != -1) {
+                return valueAt(entry, id, atomicType);
+            }
+
+            // 3) still no value, so create one
+            return valueAt(create(idBytes, hash, atomicType, value), id, atomicType);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get or Create a batch of Atomic Values in the store.
+     *
+     * The write lock is taken only once for the entire batch.
+     *
+     * @param atomicType the type of the Atomic Values
+     * @param batch pairs of the identifier and initial value of each Atomic Value
+     *
+     * @return the number of Atomic Values that were created, i.e. excluding those that already existed
+     *
+     * @throws IllegalArgumentException if an initial value is invalid for the AtomicType,
+     *     or if an Atomic Value exists but has a different AtomicType to that which was requested
+     * @throws IllegalStateException if the store is full, or has been closed
+     */
+    public int getOrCreateAll(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> batch) throws IllegalArgumentException, IllegalStateException {
+        final byte[][] idBytes = new byte[batch.size()][];
+        final int[] hashes = new int[batch.size()];
+        final int[] values = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            idBytes[i] = encodeId(batch.get(i).getKey());
+            hashes[i] = hash(idBytes[i]);
+            values[i] = encodeValue(atomicType, batch.get(i).getValue());
+        }
+
+        lock.writeLock().lock();
+        try {
+            // check the type of any existing atomics before modifying the store
+            for (int i = 0; i < idBytes.length; i++) {
+                final int entry = find(idBytes[i], hashes[i]);
+                if (entry != -1) {
+                    valueAt(entry, batch.get(i).getKey(), atomicType);
+                }
+            }
+
+            int created = 0;
+            for (int i = 0; i < idBytes.length; i++) {
+                if (find(idBytes[i], hashes[i]) == -1) {
+                    create(idBytes[i], hashes[i], atomicType, values[i]);
+                    created++;
+                }
+            }
+            return created;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove an Atomic Value from the store.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return true if the Atomic Value was removed, false if there was no such Atomic Value
+     *
+     * @throws IllegalStateException if the store has been closed
+     */
+    public boolean remove(final String id) throws IllegalStateException {
+        final byte[] idBytes = encodeId(id);
+        final int hash = hash(idBytes);
+        lock.writeLock().lock();
+        try {
+            final int entry = find(idBytes, hash);
+            if (entry == -1) {
+                return false;
+            }
+
+            final long entryAddress = entryAddress(entry);
+            final long recordSize = recordSize(OffHeapMemory.getInt(OffHeapMemory.getLong(entryAddress + ENTRY_ID_ADDRESS_OFFSET)) & MAX_ID_LENGTH);
+            liveIdBytes -= recordSize;
+            removedIdBytes += recordSize;
+
+            freeSlot(OffHeapMemory.getInt(entryAddress + ENTRY_VALUE_INDEX_OFFSET));
+            OffHeapMemory.putInt(entryAddress + ENTRY_VALUE_INDEX_OFFSET, ENTRY_REMOVED);
+            live--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Frees all of the off-heap memory of the store.
+     *
+     * Must only be called when there are no remaining
+     * references to the Atomic Values of the store.
+     */
+    void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            OffHeapMemory.free(tableAddress);
+            for (int i = 0; i < chunkCount; i++) {
+                OffHeapMemory.free(chunkAddresses[i]);
+            }
+            for (int i = 0; i < segmentCount; i++) {
+                OffHeapMemory.free(segmentAddresses[i]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long getCount() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return 0;
+            }
+            return ((long) capacity * ENTRY_SIZE) + ((long) chunkCount * CHUNK_SIZE) + (segmentCount * SEGMENT_SIZE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getUsedBytes() {
+        lock.readLock().lock();
+        try {
+            return liveIdBytes + removedIdBytes + ((long) nextValueIndex * Long.BYTES);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public double getFragmentation() {
+        lock.readLock().lock();
+        try {
+            final long usedBytes = liveIdBytes + removedIdBytes + ((long) nextValueIndex * Long.BYTES);
+            if (usedBytes == 0) {
+                return 0;
+            }
+            return (removedIdBytes + (freeValues * Long.BYTES)) / (double) usedBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the live entry for an id.
+     *
+     * Must only be called whilst holding the read or write lock.
+     *
+     * @return the index of the entry, or -1 if there is no live entry for the id
+     */
+    @GuardedBy("lock")
+    private int find(final byte[] idBytes, final int hash) throws IllegalStateException {
+        if (closed) {
+            throw new IllegalStateException("The off-heap store has been closed");
+        }
+
+        final int mask = capacity - 1;
+        int entry = hash & mask;
+
+        // the load factor guarantees that there is always an empty entry
+        while (true) {
+            final long entryAddress = entryAddress(entry);
+            final int valueIndex = OffHeapMemory.getInt(entryAddress + ENTRY_VALUE_INDEX_OFFSET);
+            if (valueIndex == ENTRY_EMPTY) {
+                return -1;
+            }
+            if (valueIndex != ENTRY_REMOVED
+                    && OffHeapMemory.getInt(entryAddress + ENTRY_HASH_OFFSET) == hash
+                    && idEquals(OffHeapMemory.getLong(entryAddress + ENTRY_ID_ADDRESS_OFFSET), idBytes)) {
+                return entry;
+            }
+            entry = (entry + 1) & mask;
+        }
+    }
+
+    /**
+     * Creates an Atomic Value for an id which is not in the store.
+     *
+     * Must only be called whilst holding the write lock.
+     *
+     * @return the index of the entry
+     */
+    @GuardedBy("lock")
+    private int create(final byte[] idBytes, final int hash, final AtomicType atomicType, final int value) throws IllegalStateException {
+        if (freeValueIndex == NO_FREE_SLOT && nextValueIndex == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Off-heap store is full, it has " + live + " Atomic Values");
+        }
+        if (used + 1 > (int) (capacity * MAX_LOAD_FACTOR)) {
+            resize(live + 1);
+        }
+
+        final int valueIndex;
+        final int generation;
+        if (freeValueIndex != NO_FREE_SLOT) {
+            // reuse the slot of a removed Atomic Value, its generation was incremented when it was removed
+            valueIndex = freeValueIndex;
+            final long freeWord = OffHeapMemory.getLongVolatile(valueAddress(valueIndex));
+            freeValueIndex = OffHeapSlot.valueOf(freeWord);
+            freeValues--;
+            generation = OffHeapSlot.generationOf(freeWord);
+
+        } else {
+            valueIndex = nextValueIndex;
+            final int segment = valueIndex >>> SEGMENT_SHIFT;
+            if (segment == segmentCount) {
+                if (segmentCount == segmentAddresses.length) {
+                    segmentAddresses = Arrays.copyOf(segmentAddresses, segmentAddresses.length * 2);
+                }
+                segmentAddresses[segmentCount++] = OffHeapMemory.allocate(SEGMENT_SIZE, (byte) 0);
+            }
+            nextValueIndex++;
+            generation = 0;
+        }
+
+        final long idAddress = reserve(recordSize(idBytes.length));
+        OffHeapMemory.putInt(idAddress, (encodeType(atomicType) << 16) | idBytes.length);
+        OffHeapMemory.copy(idBytes, idAddress + RECORD_HEADER_SIZE);
+
+        OffHeapMemory.putLongVolatile(valueAddress(valueIndex), OffHeapSlot.word(generation, value));
+
+        // the id is known to be absent, so the first removed entry may be reused
+        final int entry = insert(hash, idAddress, valueIndex);
+        live++;
+        return entry;
+    }
+
+    /**
+     * Links the slot of a removed Atomic Value into the free list.
+     *
+     * The generation of the slot is incremented, so that any stale references
+     * to the removed Atomic Value become detached, and whilst the slot is free
+     * its value is the index of the next free slot.
+     *
+     * Must only be called whilst holding the write lock.
+     */
+    @GuardedBy("lock")
+    private void freeSlot(final int valueIndex) {
+        final long wordAddress = valueAddress(valueIndex);
+        long word;
+        do {
+            // NOTE: a stale reference may still compare-and-set the slot until its generation is incremented
+            word = OffHeapMemory.getLongVolatile(wordAddress);
+        } while (!OffHeapMemory.compareAndSetLong(wordAddress, word, OffHeapSlot.word(OffHeapSlot.generationOf(word) + 1, freeValueIndex)));
+
+        freeValueIndex = valueIndex;
+        freeValues++;
+    }
+
+    @GuardedBy("lock")
+    private int insert(final int hash, final long idAddress, final int valueIndex) {
+        final int mask = capacity - 1;
+        int entry = hash & mask;
+        while (OffHeapMemory.getInt(entryAddress(entry) + ENTRY_VALUE_INDEX_OFFSET) >= 0) {
+            entry = (entry + 1) & mask;
+        }
+
+        final long entryAddress = entryAddress(entry);
+        if (OffHeapMemory.getInt(entryAddress + ENTRY_VALUE_INDEX_OFFSET) == ENTRY_EMPTY) {
+            used++;
+        }
+        OffHeapMemory.putInt(entryAddress + ENTRY_HASH_OFFSET, hash);
+        OffHeapMemory.putLong(entryAddress + ENTRY_ID_ADDRESS_OFFSET, idAddress);
+        OffHeapMemory.putInt(entryAddress + ENTRY_VALUE_INDEX_OFFSET, valueIndex);
+        return entry;
+    }
+
+    /**
+     * Rebuilds the table and the chunks of ids with only the live Atomic Values,
+     * so that at most half of the entries are used, and then frees the old
+     * table and chunks.
+     */
+    @GuardedBy("lock")
+    private void resize(final int required) throws IllegalStateException {
+        final int newCapacity = ceilingPowerOfTwo(Math.max(MIN_CAPACITY, (long) required * 2));
+
+        final long oldTableAddress = tableAddress;
+        final int oldCapacity = capacity;
+        final long[] oldChunkAddresses = chunkAddresses;
+        final int oldChunkCount = chunkCount;
+
+        tableAddress = OffHeapMemory.allocate((long) newCapacity * ENTRY_SIZE, (byte) 0xFF);
+        capacity = newCapacity;
+        used = 0;
+        chunkAddresses = new long[Math.max(1, oldChunkCount)];
+        chunkCount = 0;
+        chunkEnd = 0;
+        liveIdBytes = 0;
+        removedIdBytes = 0;
+
+        for (int oldEntry = 0; oldEntry < oldCapacity; oldEntry++) {
+            final long oldEntryAddress = oldTableAddress + ((long) oldEntry * ENTRY_SIZE);
+            final int valueIndex = OffHeapMemory.getInt(oldEntryAddress + ENTRY_VALUE_INDEX_OFFSET);
+            if (valueIndex >= 0) {
+                final long oldIdAddress = OffHeapMemory.getLong(oldEntryAddress + ENTRY_ID_ADDRESS_OFFSET);
+                final long recordSize = recordSize(OffHeapMemory.getInt(oldIdAddress) & MAX_ID_LENGTH);
+                final long idAddress = reserve(recordSize);
+                OffHeapMemory.copy(oldIdAddress, idAddress, recordSize);
+                insert(OffHeapMemory.getInt(oldEntryAddress + ENTRY_HASH_OFFSET), idAddress, valueIndex);
+            }
+        }
+
+        OffHeapMemory.free(oldTableAddress);
+        for (int i = 0; i < oldChunkCount; i++) {
+            OffHeapMemory.free(oldChunkAddresses[i]);
+        }
+    }
+
+    /**
+     * Reserves space in the chunks for the record of an id.
+     *
+     * @return the address of the record
+     */
+    @GuardedBy("lock")
+    private long reserve(final long recordSize) {
+        if (chunkCount == 0 || chunkEnd + recordSize > CHUNK_SIZE) {
+            if (chunkCount == chunkAddresses.length) {
+                chunkAddresses = Arrays.copyOf(chunkAddresses, chunkAddresses.length * 2);
+            }
+            chunkAddresses[chunkCount++] = OffHeapMemory.allocate(CHUNK_SIZE, (byte) 0);
+            chunkEnd = 0;
+        }
+
+        final long idAddress = chunkAddresses[chunkCount - 1] + chunkEnd;
+        chunkEnd += recordSize;
+        liveIdBytes += recordSize;
+        return idAddress;
+    }
+
+    @GuardedBy("lock")
+    private AtomicValue valueAt(final int entry, final String id, final AtomicType atomicType) throws IllegalArgumentException {
+        final long entryAddress = entryAddress(entry);
+        final long idAddress = OffHeapMemory.getLong(entryAddress + ENTRY_ID_ADDRESS_OFFSET);
+        final AtomicType existingType = decodeType(OffHeapMemory.getInt(idAddress) >>> 16);
+        if (atomicType != existingType) {
+            throw new IllegalArgumentException("Requested type: " + atomicType + " but found type: " + existingType + " for id: " + id);
+        }
+
+        // NOTE: the slot cannot be removed whilst we hold the lock, so its generation is that of this Atomic Value
+        final long wordAddress = valueAddress(OffHeapMemory.getInt(entryAddress + ENTRY_VALUE_INDEX_OFFSET));
+        final long word = OffHeapMemory.getLongVolatile(wordAddress);
+        final OffHeapSlot slot = new OffHeapSlot(wordAddress, OffHeapSlot.generationOf(word), OffHeapSlot.valueOf(word));
+        switch (atomicType) {
+            case Boolean:
+                return new OffHeapBooleanValue(slot);
+
+            case Integer:
+                return new OffHeapIntegerValue(slot);
+
+            default:
+                throw new IllegalArgumentException("No such AtomicType: " + atomicType);
+        }
+    }
+
+    @GuardedBy("lock")
+    private boolean idEquals(final long idAddress, final byte[] idBytes) {
+        if ((OffHeapMemory.getInt(idAddress) & MAX_ID_LENGTH) != idBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < idBytes.length; i++) {
+            if (OffHeapMemory.getByte(idAddress + RECORD_HEADER_SIZE + i) != idBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @GuardedBy("lock")
+    private long entryAddress(final int entry) {
+        return tableAddress + ((long) entry * ENTRY_SIZE);
+    }
+
+    @GuardedBy("lock")
+    private long valueAddress(final int valueIndex) {
+        return segmentAddresses[valueIndex >>> SEGMENT_SHIFT] + ((long) (valueIndex & (SEGMENT_SLOTS - 1)) * Long.BYTES);
+    }
+
+    private static long recordSize(final int idLength) {
+        return (RECORD_HEADER_SIZE + idLength + 3) & ~3L;
+    }
+
+    private static int hash(final byte[] idBytes) {
+        int h = 0;
+        for (final byte b : idBytes) {
+            h = 31 * h + b;
+        }
+        // spread the low bits, as the ids of a population often differ only in their last few characters
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static byte[] encodeId(final String id) throws IllegalArgumentException {
+        final byte[] idBytes = id.getBytes(UTF_8);
+        if (idBytes.length > MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("The id of an off-heap Atomic Value must be no longer than " + MAX_ID_LENGTH + " bytes, but was " + idBytes.length + ": " + id);
+        }
+        return idBytes;
+    }
+
+    private static int encodeValue(final AtomicType atomicType, final String value) throws IllegalArgumentException {
+        atomicType.checkValidValue(value);
+        switch (atomicType) {
+            case Boolean:
+                return Boolean.parseBoolean(value) ? 1 : 0;
+
+            case Integer:
+                return Integer.parseInt(value);
+
+            default:
+                throw new IllegalArgumentException("No such AtomicType: " + atomicType);
+        }
+    }
+
+    private static int encodeType(final AtomicType atomicType) {
+        switch (atomicType) {
+            case Boolean:
+                return TYPE_BOOLEAN;
+
+            case Integer:
+                return TYPE_INTEGER;
+
+            default:
+                throw new IllegalArgumentException("No such AtomicType: " + atomicType);
+        }
+    }
+
+    private static @Nullable AtomicType decodeType(final int type) {
+        switch (type) {
+            case TYPE_BOOLEAN:
+                return AtomicType.Boolean;
+
+            case TYPE_INTEGER:
+                return AtomicType.Integer;
+
+            default:
+                return null;
+        }
+    }
+
+    private static int ceilingPowerOfTwo(final long n) throws IllegalStateException {
+        if (n > (1 << 30)) {
+            throw new IllegalStateException("Off-heap store is full, capacity is too large: " + n);
+        }
+        return n <= 1 ? 1 : Integer.highestOneBit((int) n - 1) << 1;
+    }
+}
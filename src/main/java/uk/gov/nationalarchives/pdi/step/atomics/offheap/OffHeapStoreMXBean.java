@@ -0,0 +1,61 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.offheap;
+
+/**
+ * JMX management interface of {@link OffHeapStore}.
+ */
+public interface OffHeapStoreMXBean {
+
+    /**
+     * Get the number of Atomic Values.
+     *
+     * @return the number of Atomic Values
+     */
+    long getCount();
+
+    /**
+     * Get the off-heap memory which is allocated by the store,
+     * including its hash table, ids and values.
+     *
+     * @return the number of bytes
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Get the off-heap memory which is used by the ids and values
+     * of Atomic Values, including those which have been removed
+     * but whose space has not yet been reclaimed.
+     *
+     * @return the number of bytes
+     */
+    long getUsedBytes();
+
+    /**
+     * Get the fraction of the used bytes which belong to
+     * Atomic Values that have been removed.
+     *
+     * @return the fragmentation, between 0 and 1
+     */
+    double getFragmentation();
+}
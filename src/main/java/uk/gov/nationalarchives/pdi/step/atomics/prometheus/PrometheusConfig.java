@@ -0,0 +1,138 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.prometheus;
+
+import net.jcip.annotations.Immutable;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.isNullOrEmpty;
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.nullIfEmpty;
+
+/**
+ * Configuration for exporting metrics in the Prometheus
+ * text format, see {@link PrometheusExporter}.
+ *
+ * The configuration is read from System Properties, which
+ * KETTLE also populates from {@code kettle.properties}.
+ */
+@Immutable
+public class PrometheusConfig {
+
+    /**
+     * The port of an HTTP endpoint, bound to localhost, which serves the metrics.
+     * If not set (or 0) then the endpoint is not started.
+     */
+    public static final String PROP_PROMETHEUS_PORT = "ATOMICS_PROMETHEUS_PORT";
+
+    /**
+     * A file which is periodically rewritten with the metrics,
+     * e.g. for the textfile collector of node_exporter.
+     * If not set then no file is written.
+     */
+    public static final String PROP_PROMETHEUS_FILE = "ATOMICS_PROMETHEUS_FILE";
+
+    /**
+     * The interval in milliseconds at which the file is rewritten.
+     */
+    public static final String PROP_PROMETHEUS_FILE_INTERVAL = "ATOMICS_PROMETHEUS_FILE_INTERVAL";
+
+    static final long DEFAULT_FILE_INTERVAL = 15_000;
+
+    private final int port;
+    @Nullable private final Path file;
+    private final long fileInterval;
+
+    public PrometheusConfig(final int port, @Nullable final Path file, final long fileInterval) {
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("Port must be between 0 and 65535");
+        }
+        if (fileInterval < 1) {
+            throw new IllegalArgumentException("File interval must be at least 1 millisecond");
+        }
+        this.port = port;
+        this.file = file;
+        this.fileInterval = fileInterval;
+    }
+
+    /**
+     * Reads the Prometheus configuration from the System Properties.
+     *
+     * @return the configuration, or null if neither the endpoint nor the file is enabled
+     *
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public static @Nullable PrometheusConfig fromSystemProperties() throws IllegalArgumentException {
+        final String strPort = System.getProperty(PROP_PROMETHEUS_PORT);
+        final int port;
+        if (isNullOrEmpty(strPort)) {
+            port = 0;
+        } else {
+            try {
+                port = Integer.parseInt(strPort.trim());
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException(PROP_PROMETHEUS_PORT + " must be a number, but was: " + strPort, e);
+            }
+        }
+
+        final String strFile = nullIfEmpty(System.getProperty(PROP_PROMETHEUS_FILE));
+        final Path file = strFile == null ? null : Paths.get(strFile);
+
+        if (port == 0 && file == null) {
+            return null;
+        }
+
+        final String strFileInterval = System.getProperty(PROP_PROMETHEUS_FILE_INTERVAL);
+        final long fileInterval;
+        if (isNullOrEmpty(strFileInterval)) {
+            fileInterval = DEFAULT_FILE_INTERVAL;
+        } else {
+            try {
+                fileInterval = Long.parseLong(strFileInterval.trim());
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException(PROP_PROMETHEUS_FILE_INTERVAL + " must be a number, but was: " + strFileInterval, e);
+            }
+        }
+
+        return new PrometheusConfig(port, file, fileInterval);
+    }
+
+    /**
+     * Get the port of the HTTP endpoint.
+     *
+     * @return the port, or 0 if the endpoint is not enabled
+     */
+    public int getPort() {
+        return port;
+    }
+
+    public @Nullable Path getFile() {
+        return file;
+    }
+
+    public long getFileInterval() {
+        return fileInterval;
+    }
+}
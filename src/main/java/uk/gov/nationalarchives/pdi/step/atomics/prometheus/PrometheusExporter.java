@@ -0,0 +1,252 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.prometheus;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorage;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageMXBean;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepMetricsRegistry;
+
+import javax.annotation.Nullable;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Exports metrics in the Prometheus text format, see {@link PrometheusRenderer}.
+ *
+ * The metrics may be served by a minimal HTTP endpoint which is
+ * only bound to the loopback address, and/or periodically written
+ * to a file for the textfile collector of node_exporter. The file is
+ * written to a temporary file and then moved into place, so that
+ * the collector never reads a partially written file.
+ *
+ * There is at most one exporter per-JVM, which is started by
+ * the first step that is initialised, see {@link #startIfConfigured()}.
+ * All of its threads are daemon threads.
+ */
+@ThreadSafe
+public class PrometheusExporter implements Closeable {
+
+    private static final int SOCKET_TIMEOUT = 5_000;
+
+    @GuardedBy("PrometheusExporter.class") @Nullable private static PrometheusExporter instance;
+
+    private final Supplier<String> metrics;
+    @Nullable private final ServerSocket serverSocket;
+    @Nullable private final ScheduledExecutorService fileWriter;
+    private volatile boolean closed;
+
+    private PrometheusExporter(final Supplier<String> metrics, @Nullable final ServerSocket serverSocket, @Nullable final ScheduledExecutorService fileWriter) {
+        this.metrics = metrics;
+        this.serverSocket = serverSocket;
+        this.fileWriter = fileWriter;
+    }
+
+    /**
+     * Starts the exporter of this JVM, if it is configured
+     * and has not already been started.
+     *
+     * @return the exporter, or null if it is not configured
+     *
+     * @throws IllegalArgumentException if the configuration is invalid
+     * @throws IllegalStateException if the exporter cannot be started
+     */
+    public static synchronized @Nullable PrometheusExporter startIfConfigured() throws IllegalArgumentException, IllegalStateException {
+        if (instance == null) {
+            final PrometheusConfig config = PrometheusConfig.fromSystemProperties();
+            if (config == null) {
+                return null;
+            }
+
+            try {
+                instance = start(config, PrometheusExporter::render);
+            } catch (final IOException e) {
+                throw new IllegalStateException("Unable to start the Prometheus endpoint on port: " + config.getPort() + ": " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Starts an exporter.
+     *
+     * @param config the configuration
+     * @param metrics supplies the rendered metrics
+     *
+     * @return the running exporter
+     *
+     * @throws IOException if the endpoint cannot listen on the port
+     */
+    static PrometheusExporter start(final PrometheusConfig config, final Supplier<String> metrics) throws IOException {
+        ServerSocket serverSocket = null;
+        if (config.getPort() > 0) {
+            serverSocket = new ServerSocket(config.getPort(), 0, InetAddress.getLoopbackAddress());
+        }
+
+        ScheduledExecutorService fileWriter = null;
+        final Path file = config.getFile();
+        if (file != null) {
+            fileWriter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "atomics-prometheus-file-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        final PrometheusExporter exporter = new PrometheusExporter(metrics, serverSocket, fileWriter);
+        if (serverSocket != null) {
+            final Thread acceptor = new Thread(exporter::acceptConnections, "atomics-prometheus-endpoint");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+        if (fileWriter != null) {
+            fileWriter.scheduleWithFixedDelay(() -> exporter.writeFile(file), 0, config.getFileInterval(), TimeUnit.MILLISECONDS);
+        }
+        return exporter;
+    }
+
+    /**
+     * Renders the metrics of {@link AtomicStorage#INSTANCE}
+     * and of the steps in the {@link StepMetricsRegistry}.
+     *
+     * @return the rendered metrics
+     */
+    private static String render() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final AtomicStorageMXBean storage = server.isRegistered(AtomicStorage.MBEAN_NAME)
+                ? JMX.newMXBeanProxy(server, AtomicStorage.MBEAN_NAME, AtomicStorageMXBean.class)
+                : null;
+        return PrometheusRenderer.render(storage, StepMetricsRegistry.getRegistered());
+    }
+
+    /**
+     * Get the port that the endpoint is listening on.
+     *
+     * @return the port, or 0 if the endpoint is not enabled
+     */
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (fileWriter != null) {
+            fileWriter.shutdownNow();
+        }
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try (final Socket socket = serverSocket.accept()) {
+                socket.setSoTimeout(SOCKET_TIMEOUT);
+                serve(socket);
+            } catch (final IOException e) {
+                // either closed, or unable to serve this connection
+            }
+        }
+    }
+
+    /**
+     * Serves a single HTTP request, and then closes the connection.
+     *
+     * @param socket the connection
+     *
+     * @throws IOException if the request cannot be read or the response cannot be written
+     */
+    private void serve(final Socket socket) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        final String requestLine = reader.readLine();
+        if (requestLine == null) {
+            return;
+        }
+
+        // discard the headers
+        String header;
+        do {
+            header = reader.readLine();
+        } while (header != null && !header.isEmpty());
+
+        final String[] parts = requestLine.split(" ");
+        final String status;
+        final String contentType;
+        final byte[] body;
+        if (parts.length < 2 || !("GET".equals(parts[0]) || "HEAD".equals(parts[0]))) {
+            status = "405 Method Not Allowed";
+            contentType = "text/plain; charset=utf-8";
+            body = new byte[0];
+        } else if (!("/metrics".equals(parts[1]) || "/".equals(parts[1]))) {
+            status = "404 Not Found";
+            contentType = "text/plain; charset=utf-8";
+            body = new byte[0];
+        } else {
+            status = "200 OK";
+            contentType = PrometheusRenderer.CONTENT_TYPE;
+            body = metrics.get().getBytes(StandardCharsets.UTF_8);
+        }
+
+        final OutputStream os = new BufferedOutputStream(socket.getOutputStream());
+        final String headers = "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n"
+                + "\r\n";
+        os.write(headers.getBytes(StandardCharsets.US_ASCII));
+        if (!"HEAD".equals(parts[0])) {
+            os.write(body);
+        }
+        os.flush();
+    }
+
+    private void writeFile(final Path file) {
+        final Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(tmpFile, metrics.get().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (final IOException | RuntimeException e) {
+            // no-op, try again at the next interval; an exception would cancel all further writes
+        }
+    }
+}
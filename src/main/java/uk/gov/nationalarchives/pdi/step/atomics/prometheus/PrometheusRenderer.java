@@ -0,0 +1,248 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.prometheus;
+
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageMXBean;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.LatencyHistogram;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepLatencies;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepMetrics;
+
+import javax.annotation.Nullable;
+import javax.management.ObjectName;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Renders the metrics of the Atomic Storage and of the running
+ * step copies in the Prometheus text exposition format (version 0.0.4).
+ *
+ * Every value is read from counters which are maintained as the
+ * metrics are recorded, so rendering never locks the storage.
+ */
+public final class PrometheusRenderer {
+
+    /**
+     * The content type of the rendered metrics.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    static final String PREFIX = "kettle_atomics_";
+
+    // upper bounds of the latency histogram buckets
+    static final double[] LATENCY_BUCKETS_SECONDS = { 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60, 300 };
+    private static final long[] LATENCY_BUCKETS_NANOS = new long[LATENCY_BUCKETS_SECONDS.length];
+    private static final String[] LATENCY_BUCKETS_LABELS = new String[LATENCY_BUCKETS_SECONDS.length];
+    static {
+        for (int i = 0; i < LATENCY_BUCKETS_SECONDS.length; i++) {
+            LATENCY_BUCKETS_NANOS[i] = (long) (LATENCY_BUCKETS_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+            LATENCY_BUCKETS_LABELS[i] = BigDecimal.valueOf(LATENCY_BUCKETS_SECONDS[i]).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final double MILLIS_PER_SECOND = TimeUnit.SECONDS.toMillis(1);
+
+    private PrometheusRenderer() {
+    }
+
+    /**
+     * Render the metrics.
+     *
+     * @param storage the management interface of the Atomic Storage, or null to omit its metrics
+     * @param stepMetrics the metrics of the running step copies, by the names that they were registered with
+     *
+     * @return the metrics in the Prometheus text format
+     */
+    public static String render(@Nullable final AtomicStorageMXBean storage, final Map<ObjectName, StepMetrics> stepMetrics) {
+        final StringBuilder builder = new StringBuilder(4096);
+
+        if (storage != null) {
+            family(builder, "values", "gauge", "The number of in-memory Atomic values.");
+            for (final Map.Entry<String, Long> countByType : storage.getCountsByType().entrySet()) {
+                sample(builder, "values", "{type=\"" + escape(countByType.getKey()) + "\"}", countByType.getValue());
+            }
+            gauge(builder, "estimated_heap_bytes", "An estimate of the heap memory used by the in-memory Atomic values.", storage.getEstimatedHeapBytes());
+            counter(builder, "lookups_total", "The number of lookups of Atomic values.", storage.getLookups());
+            counter(builder, "creations_total", "The number of Atomic values created.", storage.getCreations());
+            counter(builder, "removals_total", "The number of Atomic values removed.", storage.getRemovals());
+            counter(builder, "contention_total", "The number of CAS failures and wake-ups on Atomic values.", storage.getTotalContention());
+        }
+
+        // snapshot the step copies, so that each family has the same series
+        final List<Step> steps = new ArrayList<>(stepMetrics.size());
+        for (final Map.Entry<ObjectName, StepMetrics> entry : stepMetrics.entrySet()) {
+            steps.add(new Step(labels(entry.getKey()), entry.getValue()));
+        }
+
+        stepCounter(builder, steps, "step_lookups_total", "The number of lookups of Atomic values by a step copy.", StepMetrics::getLookups);
+        stepCounter(builder, steps, "step_lookup_misses_total", "The number of lookups by a step copy that found no Atomic value.", StepMetrics::getLookupMisses);
+        stepCounter(builder, steps, "step_creations_total", "The number of Atomic values created by a step copy.", StepMetrics::getCreations);
+        stepCounter(builder, steps, "step_waits_total", "The number of times a step copy waited.", StepMetrics::getWaits);
+        stepCounter(builder, steps, "step_wait_seconds_total", "The total time a step copy spent waiting.", metrics -> metrics.getWaitTimeMillis() / MILLIS_PER_SECOND);
+        stepCounter(builder, steps, "step_timeouts_total", "The number of times a step copy timed out waiting.", StepMetrics::getTimeouts);
+        stepCounter(builder, steps, "step_interrupts_total", "The number of times a step copy was interrupted waiting.", StepMetrics::getInterrupts);
+        stepCounter(builder, steps, "step_stuck_waits_total", "The number of waits of a step copy reported as stuck by the watchdog.", StepMetrics::getStuckWaits);
+
+        family(builder, "step_cas_total", "counter", "The number of compare and set attempts by a step copy, by outcome.");
+        for (final Step step : steps) {
+            final long attempts = step.metrics.getCasAttempts();
+            final long failures = step.metrics.getCasFailures();
+            sample(builder, "step_cas_total", "{" + step.labels + ",outcome=\"set\"}", attempts - failures);
+            sample(builder, "step_cas_total", "{" + step.labels + ",outcome=\"failed\"}", failures);
+        }
+
+        family(builder, "step_rows_total", "counter", "The number of rows sent by a step copy, by target.");
+        for (final Step step : steps) {
+            for (final Map.Entry<String, Long> rows : step.metrics.getRowsByTarget().entrySet()) {
+                sample(builder, "step_rows_total", "{" + step.labels + ",target=\"" + escape(rows.getKey()) + "\"}", rows.getValue());
+            }
+        }
+
+        family(builder, "step_latency_seconds", "histogram", "The time rows spent acquiring, matching, or compare and setting Atomic values.");
+        for (final Step step : steps) {
+            for (final StepLatencies.Latency latency : StepLatencies.Latency.values()) {
+                final String labels = step.labels + ",latency=\"" + latency.getLabel() + "\"";
+                histogram(builder, "step_latency_seconds", labels, step.metrics.getLatencies().getHistogram(latency));
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static void histogram(final StringBuilder builder, final String name, final String labels, final LatencyHistogram histogram) {
+        // the count and the buckets are not read atomically, so the +Inf bucket is the larger of them
+        final long count = histogram.getCount();
+        final long total = histogram.getTotal();
+        final long[] cumulativeCounts = histogram.getCumulativeCounts(LATENCY_BUCKETS_NANOS);
+        long inf = count;
+        for (int i = 0; i < cumulativeCounts.length; i++) {
+            sample(builder, name + "_bucket", "{" + labels + ",le=\"" + LATENCY_BUCKETS_LABELS[i] + "\"}", cumulativeCounts[i]);
+            inf = Math.max(inf, cumulativeCounts[i]);
+        }
+        sample(builder, name + "_bucket", "{" + labels + ",le=\"+Inf\"}", inf);
+        sample(builder, name + "_sum", "{" + labels + "}", total / NANOS_PER_SECOND);
+        sample(builder, name + "_count", "{" + labels + "}", inf);
+    }
+
+    private static void stepCounter(final StringBuilder builder, final List<Step> steps, final String name, final String help, final ToDoubleFunction<StepMetrics> value) {
+        family(builder, name, "counter", help);
+        for (final Step step : steps) {
+            sample(builder, name, "{" + step.labels + "}", value.applyAsDouble(step.metrics));
+        }
+    }
+
+    private static void gauge(final StringBuilder builder, final String name, final String help, final double value) {
+        family(builder, name, "gauge", help);
+        sample(builder, name, "", value);
+    }
+
+    private static void counter(final StringBuilder builder, final String name, final String help, final double value) {
+        family(builder, name, "counter", help);
+        sample(builder, name, "", value);
+    }
+
+    private static void family(final StringBuilder builder, final String name, final String type, final String help) {
+        builder.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(final StringBuilder builder, final String name, final String labels, final double value) {
+        builder.append(PREFIX).append(name).append(labels).append(' ');
+        if (value == (long) value) {
+            builder.append((long) value);
+        } else {
+            builder.append(value);
+        }
+        builder.append('\n');
+    }
+
+    /**
+     * Get the labels of a step copy from the name of its metrics.
+     *
+     * @param name the name of the metrics
+     *
+     * @return the labels
+     */
+    private static String labels(final ObjectName name) {
+        return "transformation=\"" + escape(unquote(name.getKeyProperty("transformation")))
+                + "\",step=\"" + escape(unquote(name.getKeyProperty("step")))
+                + "\",copy=\"" + escape(unquote(name.getKeyProperty("copy"))) + "\"";
+    }
+
+    private static String unquote(@Nullable final String value) {
+        if (value == null) {
+            return "";
+        }
+        try {
+            return ObjectName.unquote(value);
+        } catch (final IllegalArgumentException e) {
+            // not quoted
+            return value;
+        }
+    }
+
+    /**
+     * Escapes a label value.
+     *
+     * @param value the label value
+     *
+     * @return the escaped label value
+     */
+    static String escape(final String value) {
+        final StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+
+                case '"':
+                    builder.append("\\\"");
+                    break;
+
+                case '\n':
+                    builder.append("\\n");
+                    break;
+
+                default:
+                    builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static class Step {
+        final String labels;
+        final StepMetrics metrics;
+
+        Step(final String labels, final StepMetrics metrics) {
+            this.labels = labels;
+            this.metrics = metrics;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.shared;
+
+import net.jcip.annotations.ThreadSafe;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Atomic access to the ints and longs of a memory-mapped file.
+ *
+ * {@link java.nio.ByteBuffer} does not offer compare-and-set,
+ * and VarHandles are not available on Java 8, so the
+ * mapped memory is accessed directly via its address.
+ */
+@ThreadSafe
+final class MappedMemory {
+
+    private static final Unsafe UNSAFE;
+    private static final long BUFFER_ADDRESS_OFFSET;
+    static {
+        try {
+            final Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            UNSAFE = (Unsafe) theUnsafe.get(null);
+            BUFFER_ADDRESS_OFFSET = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (final ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // NOTE: we must hold a reference to the buffer, otherwise the memory could be unmapped
+    private final MappedByteBuffer buffer;
+    private final long address;
+    private final long size;
+
+    MappedMemory(final MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.address = UNSAFE.getLong(buffer, BUFFER_ADDRESS_OFFSET);
+        this.size = buffer.capacity();
+    }
+
+    int getIntVolatile(final long offset) {
+        return UNSAFE.getIntVolatile(null, address + checkIntOffset(offset));
+    }
+
+    void putIntVolatile(final long offset, final int value) {
+        UNSAFE.putIntVolatile(null, address + checkIntOffset(offset), value);
+    }
+
+    boolean compareAndSetInt(final long offset, final int expect, final int update) {
+        return UNSAFE.compareAndSwapInt(null, address + checkIntOffset(offset), expect, update);
+    }
+
+    long getLongVolatile(final long offset) {
+        return UNSAFE.getLongVolatile(null, address + checkLongOffset(offset));
+    }
+
+    void putLongVolatile(final long offset, final long value) {
+        UNSAFE.putLongVolatile(null, address + checkLongOffset(offset), value);
+    }
+
+    boolean compareAndSetLong(final long offset, final long expect, final long update) {
+        return UNSAFE.compareAndSwapLong(null, address + checkLongOffset(offset), expect, update);
+    }
+
+    byte getByte(final long offset) {
+        return buffer.get(checkByteOffset(offset));
+    }
+
+    void putByte(final long offset, final byte value) {
+        buffer.put(checkByteOffset(offset), value);
+    }
+
+    private long checkIntOffset(final long offset) {
+        if (offset < 0 || offset > size - 4 || (offset & 3) != 0) {
+            throw new IndexOutOfBoundsException("Invalid int offset: " + offset);
+        }
+        return offset;
+    }
+
+    private long checkLongOffset(final long offset) {
+        if (offset < 0 || offset > size - 8 || (offset & 7) != 0) {
+            throw new IndexOutOfBoundsException("Invalid long offset: " + offset);
+        }
+        return offset;
+    }
+
+    private int checkByteOffset(final long offset) {
+        if (offset < 0 || offset >= size) {
+            throw new IndexOutOfBoundsException("Invalid byte offset: " + offset);
+        }
+        return (int) offset;
+    }
+}
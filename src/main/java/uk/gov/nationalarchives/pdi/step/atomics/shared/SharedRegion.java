@@ -0,0 +1,536 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.shared;
+
+import com.evolvedbinary.j8fu.function.SupplierE;
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Storage for Atomic Values in a memory-mapped file,
+ * which allows them to be shared by all of the JVMs
+ * on the same host that map the same file.
+ *
+ * The file contains a header followed by a fixed number of
+ * fixed-size slots, which form an open-addressing hash table
+ * from id to value. Each value is updated in place by a
+ * compare-and-set on the mapped memory, so reads and writes of
+ * values are lock-free. Creating and removing Atomic Values
+ * takes a file lock on the header, which excludes other
+ * processes, and is released by the OS if a process dies.
+ *
+ * A removed Atomic Value leaves a tombstone, which is reused by the next
+ * Atomic Value created on the same probe path (e.g. when the same id is
+ * recreated), and tombstones at the end of a probe path are emptied. Each
+ * slot holds a generation alongside its value, which is incremented when
+ * the slot is reused, so a stale reference to a removed Atomic Value can
+ * never change the value of a different Atomic Value, see {@link SharedSlot}.
+ */
+@ThreadSafe
+public class SharedRegion {
+
+    private static final int MAGIC = 0x41544D52;  // "ATMR"
+    private static final int VERSION = 2;
+
+    // header layout
+    static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC_OFFSET = 0;
+    private static final int HEADER_VERSION_OFFSET = 4;
+    private static final int HEADER_CAPACITY_OFFSET = 8;
+    private static final int HEADER_LIVE_OFFSET = 12;
+
+    // slot layout
+    static final int SLOT_SIZE = 256;
+    private static final int SLOT_STATE_OFFSET = 0;
+    private static final int SLOT_TYPE_OFFSET = 4;
+    private static final int SLOT_WORD_OFFSET = 8;  // generation (high 32 bits) and value (low 32 bits)
+    private static final int SLOT_ID_LENGTH_OFFSET = 16;
+    private static final int SLOT_ID_OFFSET = 20;
+
+    /**
+     * The maximum length in bytes of the UTF-8 encoded id of a shared Atomic Value.
+     */
+    public static final int MAX_ID_LENGTH = SLOT_SIZE - SLOT_ID_OFFSET;
+
+    private static final int STATE_EMPTY = 0;
+    private static final int STATE_LIVE = 1;
+    private static final int STATE_REMOVED = 2;
+
+    private static final int TYPE_BOOLEAN = 1;
+    private static final int TYPE_INTEGER = 2;
+
+    // leave some empty slots so that probing stays short
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+
+    // a FileLock is held on behalf of the whole JVM, so threads within the JVM must also exclude each other
+    private static final ReentrantLock JVM_LOCK = new ReentrantLock();
+
+    private final SharedRegionConfig config;
+    private final MappedMemory memory;
+    private final int capacity;
+
+    private SharedRegion(final SharedRegionConfig config, final MappedMemory memory, final int capacity) {
+        this.config = config;
+        this.memory = memory;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Opens the shared region, creating the file if it does not exist.
+     *
+     * If the file already exists, then its capacity is used
+     * instead of the capacity from the configuration.
+     *
+     * @param config the shared region configuration
+     *
+     * @return the shared region
+     *
+     * @throws IOException if the file cannot be opened, or is not a valid shared region
+     */
+    public static SharedRegion open(final SharedRegionConfig config) throws IOException {
+        return withFileLock(config.getFile(), () -> {
+            try (final FileChannel channel = FileChannel.open(config.getFile(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (channel.size() == 0) {
+                    // new file
+                    final int capacity = ceilingPowerOfTwo(config.getCapacity());
+                    final long size = HEADER_SIZE + ((long) capacity * SLOT_SIZE);
+                    channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+
+                    final MappedMemory memory = new MappedMemory(channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+                    memory.putIntVolatile(HEADER_VERSION_OFFSET, VERSION);
+                    memory.putIntVolatile(HEADER_CAPACITY_OFFSET, capacity);
+                    memory.putIntVolatile(HEADER_LIVE_OFFSET, 0);
+                    memory.putIntVolatile(HEADER_MAGIC_OFFSET, MAGIC);
+                    return new SharedRegion(config, memory, capacity);
+                }
+
+                // existing file
+                if (channel.size() < HEADER_SIZE) {
+                    throw new IOException("Not a valid shared region: " + config.getFile());
+                }
+                final MappedMemory header = new MappedMemory(channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE));
+                if (header.getIntVolatile(HEADER_MAGIC_OFFSET) != MAGIC) {
+                    throw new IOException("Not a valid shared region: " + config.getFile());
+                }
+                if (header.getIntVolatile(HEADER_VERSION_OFFSET) != VERSION) {
+                    throw new IOException("Unsupported version of shared region: " + header.getIntVolatile(HEADER_VERSION_OFFSET));
+                }
+                final int capacity = header.getIntVolatile(HEADER_CAPACITY_OFFSET);
+                final long size = HEADER_SIZE + ((long) capacity * SLOT_SIZE);
+                if (Integer.bitCount(capacity) != 1 || channel.size() != size) {
+                    throw new IOException("Shared region is corrupt: " + config.getFile());
+                }
+
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                return new SharedRegion(config, new MappedMemory(buffer), capacity);
+            }
+        });
+    }
+
+    /**
+     * Determines if an Atomic Value should be stored in the shared region.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return true if the Atomic Value is shared
+     */
+    public boolean isShared(final String id) {
+        return config.isShared(id);
+    }
+
+    /**
+     * Get an Atomic Value from the shared region.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     *
+     * @return null if there is no such atomic with the provided id, otherwise the AtomicValue
+     *
+     * @throws IllegalArgumentException if the the Atomic Value exists but has a different AtomicType to that which was requested
+     */
+    public @Nullable AtomicValue get(final String id, final AtomicType atomicType) throws IllegalArgumentException {
+        final byte[] idBytes = encodeId(id);
+        final long ref = find(idBytes);
+        if (ref == -1) {
+            return null;
+        }
+        return valueAt(ref, id, atomicType);
+    }
+
+    /**
+     * Get an Atomic Value from the shared region,
+     * or Create it if there is no existing Atomic Value.
+     *
+     * @param id the identifier of the Atomic Value
+     * @param atomicType the type of the Atomic Value
+     * @param initialValue the initial value for the Atomic Value if it is created
+     *
+     * @return the existing or newly created AtomicValue
+     *
+     * @throws IllegalArgumentException if the the Atomic Value exists but has a different AtomicType to that which was requested
+     * @throws IllegalStateException if the shared region is full
+     * @throws UncheckedIOException if the shared region could not be locked
+     */
+    public AtomicValue getOrCreate(final String id, final AtomicType atomicType, final String initialValue) throws IllegalArgumentException, IllegalStateException {
+        final byte[] idBytes = encodeId(id);
+
+        // 1) optimistically try and get the value
+        final long existingRef = find(idBytes);
+        if (existingRef != -1) {
+            return valueAt(existingRef, id, atomicType);
+        }
+
+        // 2) no such value, lock for create
+        final int value = encodeValue(atomicType, initialValue);
+        return withFileLockUnchecked(() -> {
+
+            // 2.1) another process or thread may have created it before we took the lock
+            final long ref = find(idBytes);
+            if (ref != -1) {
+                return valueAt(ref, id, atomicType);
+            }
+
+            // 3) still no value, so create one
+            return valueAt(create(idBytes, atomicType, value), id, atomicType);
+        });
+    }
+
+    /**
+     * Get or Create a batch of Atomic Values in the shared region.
+     *
+     * The file lock is taken only once for the entire batch.
+     *
+     * @param atomicType the type of the Atomic Values
+     * @param batch pairs of the identifier and initial value of each Atomic Value
+     *
+     * @return the number of Atomic Values that were created, i.e. excluding those that already existed
+     *
+     * @throws IllegalArgumentException if an initial value is invalid for the AtomicType,
+     *     or if an Atomic Value exists but has a different AtomicType to that which was requested
+     * @throws IllegalStateException if the shared region is full
+     * @throws UncheckedIOException if the shared region could not be locked
+     */
+    public int getOrCreateAll(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> batch) throws IllegalArgumentException, IllegalStateException {
+        final byte[][] idBytes = new byte[batch.size()][];
+        final int[] values = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            idBytes[i] = encodeId(batch.get(i).getKey());
+            values[i] = encodeValue(atomicType, batch.get(i).getValue());
+        }
+
+        return withFileLockUnchecked(() -> {
+            // check the type of any existing atomics before modifying the region
+            for (int i = 0; i < idBytes.length; i++) {
+                final long ref = find(idBytes[i]);
+                if (ref != -1) {
+                    valueAt(ref, batch.get(i).getKey(), atomicType);
+                }
+            }
+
+            int created = 0;
+            for (int i = 0; i < idBytes.length; i++) {
+                if (find(idBytes[i]) == -1) {
+                    create(idBytes[i], atomicType, values[i]);
+                    created++;
+                }
+            }
+            return created;
+        });
+    }
+
+    /**
+     * Remove an Atomic Value from the shared region.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return true if the Atomic Value was removed, false if there was no such Atomic Value
+     *
+     * @throws UncheckedIOException if the shared region could not be locked
+     */
+    public boolean remove(final String id) {
+        final byte[] idBytes = encodeId(id);
+        return withFileLockUnchecked(() -> {
+            final long ref = find(idBytes);
+            if (ref == -1) {
+                return false;
+            }
+            final int slot = slotOf(ref);
+            memory.putIntVolatile(slotOffset(slot) + SLOT_STATE_OFFSET, STATE_REMOVED);
+
+            memory.putIntVolatile(HEADER_LIVE_OFFSET, memory.getIntVolatile(HEADER_LIVE_OFFSET) - 1);
+
+            // tombstones followed by an empty slot are not on the probe path of any live slot, so can be emptied to keep probing short
+            final int mask = capacity - 1;
+            if (stateAt((slot + 1) & mask) == STATE_EMPTY) {
+                for (int tombstone = slot; stateAt(tombstone) == STATE_REMOVED; tombstone = (tombstone - 1) & mask) {
+                    memory.putIntVolatile(slotOffset(tombstone) + SLOT_STATE_OFFSET, STATE_EMPTY);
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Get the number of live Atomic Values.
+     *
+     * @return the number of live slots
+     */
+    int getLive() {
+        return memory.getIntVolatile(HEADER_LIVE_OFFSET);
+    }
+
+    long getWord(final long wordOffset) {
+        return memory.getLongVolatile(wordOffset);
+    }
+
+    boolean compareAndSetWord(final long wordOffset, final long expect, final long update) {
+        return memory.compareAndSetLong(wordOffset, expect, update);
+    }
+
+    static long word(final int generation, final int value) {
+        return ((long) generation << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    static int generationOf(final long word) {
+        return (int) (word >>> 32);
+    }
+
+    static int valueOf(final long word) {
+        return (int) word;
+    }
+
+    /**
+     * Find the live slot for an id.
+     *
+     * @return a reference to the slot, i.e. its generation and index, or -1 if there is no live slot for the id
+     */
+    private long find(final byte[] idBytes) {
+        final int mask = capacity - 1;
+        int slot = hash(idBytes) & mask;
+        for (int probes = 0; probes < capacity; probes++) {
+            final long slotOffset = slotOffset(slot);
+            final int state = memory.getIntVolatile(slotOffset + SLOT_STATE_OFFSET);
+            if (state == STATE_EMPTY) {
+                return -1;
+            }
+            if (state == STATE_LIVE) {
+                final int generation = generationOf(memory.getLongVolatile(slotOffset + SLOT_WORD_OFFSET));
+                // NOTE: the slot may be removed and reused whilst we compare the id, in which case its generation changes
+                if (idEquals(slotOffset, idBytes)
+                        && memory.getIntVolatile(slotOffset + SLOT_STATE_OFFSET) == STATE_LIVE
+                        && generationOf(memory.getLongVolatile(slotOffset + SLOT_WORD_OFFSET)) == generation) {
+                    return ((long) generation << 32) | slot;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Creates an Atomic Value in the first tombstone or empty slot on the probe path of the id.
+     *
+     * Must only be called whilst holding the file lock, and only if there is no live slot for the id.
+     *
+     * @return a reference to the slot, i.e. its generation and index
+     */
+    private long create(final byte[] idBytes, final AtomicType atomicType, final int value) throws IllegalStateException {
+        final int live = memory.getIntVolatile(HEADER_LIVE_OFFSET);
+        if (live >= (int) (capacity * MAX_LOAD_FACTOR)) {
+            throw new IllegalStateException("Shared region is full, used " + live + " of " + capacity + " slots: " + config.getFile());
+        }
+
+        // NOTE: there is always a slot which is not live, as at most MAX_LOAD_FACTOR of the slots are live
+        final int mask = capacity - 1;
+        int slot = hash(idBytes) & mask;
+        while (stateAt(slot) == STATE_LIVE) {
+            slot = (slot + 1) & mask;
+        }
+
+        // the generation is kept whilst a slot is a tombstone or empty, so it is never repeated
+        final long slotOffset = slotOffset(slot);
+        final int generation = generationOf(memory.getLongVolatile(slotOffset + SLOT_WORD_OFFSET)) + 1;
+        memory.putIntVolatile(slotOffset + SLOT_TYPE_OFFSET, encodeType(atomicType));
+        memory.putIntVolatile(slotOffset + SLOT_ID_LENGTH_OFFSET, idBytes.length);
+        for (int i = 0; i < idBytes.length; i++) {
+            memory.putByte(slotOffset + SLOT_ID_OFFSET + i, idBytes[i]);
+        }
+        memory.putLongVolatile(slotOffset + SLOT_WORD_OFFSET, word(generation, value));
+
+        // publish the slot, readers do not look at a slot until it is live
+        memory.putIntVolatile(slotOffset + SLOT_STATE_OFFSET, STATE_LIVE);
+        memory.putIntVolatile(HEADER_LIVE_OFFSET, live + 1);
+        return ((long) generation << 32) | slot;
+    }
+
+    private AtomicValue valueAt(final long ref, final String id, final AtomicType atomicType) throws IllegalArgumentException {
+        final long slotOffset = slotOffset(slotOf(ref));
+        final AtomicType existingType = decodeType(memory.getIntVolatile(slotOffset + SLOT_TYPE_OFFSET));
+        if (atomicType != existingType) {
+            throw new IllegalArgumentException("Requested type: " + atomicType + " but found type: " + existingType + " for id: " + id);
+        }
+
+        // NOTE: if the slot has since been reused then the reference is detached straight away, as though it were removed after we found it
+        final SharedSlot sharedSlot = new SharedSlot(this, slotOffset + SLOT_WORD_OFFSET, generationOf(ref), valueOf(memory.getLongVolatile(slotOffset + SLOT_WORD_OFFSET)));
+        switch (atomicType) {
+            case Boolean:
+                return new SharedBooleanValue(sharedSlot);
+
+            case Integer:
+                return new SharedIntegerValue(sharedSlot);
+
+            default:
+                throw new IllegalArgumentException("No such AtomicType: " + atomicType);
+        }
+    }
+
+    private int stateAt(final int slot) {
+        return memory.getIntVolatile(slotOffset(slot) + SLOT_STATE_OFFSET);
+    }
+
+    private static int slotOf(final long ref) {
+        return (int) ref;
+    }
+
+    private boolean idEquals(final long slotOffset, final byte[] idBytes) {
+        if (memory.getIntVolatile(slotOffset + SLOT_ID_LENGTH_OFFSET) != idBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < idBytes.length; i++) {
+            if (memory.getByte(slotOffset + SLOT_ID_OFFSET + i) != idBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long slotOffset(final int slot) {
+        return HEADER_SIZE + ((long) slot * SLOT_SIZE);
+    }
+
+    /**
+     * Must be the same in every JVM, so does not use {@link Object#hashCode()}.
+     */
+    private static int hash(final byte[] idBytes) {
+        int h = 0;
+        for (final byte b : idBytes) {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static byte[] encodeId(final String id) throws IllegalArgumentException {
+        final byte[] idBytes = id.getBytes(UTF_8);
+        if (idBytes.length > MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("The id of a shared Atomic Value must be no longer than " + MAX_ID_LENGTH + " bytes, but was " + idBytes.length + ": " + id);
+        }
+        return idBytes;
+    }
+
+    private static int encodeValue(final AtomicType atomicType, final String value) throws IllegalArgumentException {
+        atomicType.checkValidValue(value);
+        switch (atomicType) {
+            case Boolean:
+                return Boolean.parseBoolean(value) ? 1 : 0;
+
+            case Integer:
+                return Integer.parseInt(value);
+
+            default:
+                throw new IllegalArgumentException("No such AtomicType: " + atomicType);
+        }
+    }
+
+    private static int encodeType(final AtomicType atomicType) {
+        switch (atomicType) {
+            case Boolean:
+                return TYPE_BOOLEAN;
+
+            case Integer:
+                return TYPE_INTEGER;
+
+            default:
+                throw new IllegalArgumentException("No such AtomicType: " + atomicType);
+        }
+    }
+
+    private static @Nullable AtomicType decodeType(final int type) {
+        switch (type) {
+            case TYPE_BOOLEAN:
+                return AtomicType.Boolean;
+
+            case TYPE_INTEGER:
+                return AtomicType.Integer;
+
+            default:
+                return null;
+        }
+    }
+
+    private static int ceilingPowerOfTwo(final int n) {
+        if (n > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity is too large: " + n);
+        }
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    private <T> T withFileLockUnchecked(final SupplierE<T, RuntimeException> supplier) {
+        try {
+            return withFileLock(config.getFile(), supplier::get);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Executes the supplier whilst holding an exclusive lock on the header of the file.
+     *
+     * A new channel is opened for each lock, as interrupting a thread
+     * which is waiting for a file lock closes the channel.
+     */
+    private static <T> T withFileLock(final Path file, final SupplierE<T, IOException> supplier) throws IOException {
+        JVM_LOCK.lock();
+        try (final FileChannel lockChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             final FileLock ignored = lockChannel.lock(0, HEADER_SIZE, false)) {
+            return supplier.get();
+        } finally {
+            JVM_LOCK.unlock();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.shared;
+
+import net.jcip.annotations.Immutable;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.*;
+
+/**
+ * Configuration for the {@link SharedRegion} of Atomic Values.
+ *
+ * Sharing is configured per-namespace, see
+ * {@link uk.gov.nationalarchives.pdi.step.atomics.Util#namespaceOf(String)}.
+ * Atomic Values in namespaces that are not shared are kept
+ * only in the memory of the JVM as before.
+ *
+ * The configuration is read from System Properties, which
+ * KETTLE also populates from {@code kettle.properties}.
+ */
+@Immutable
+public class SharedRegionConfig {
+
+    /**
+     * The file to memory-map for the shared region.
+     * If not set then no Atomic Values are shared.
+     */
+    public static final String PROP_SHARED_REGION_FILE = "ATOMICS_SHARED_REGION_FILE";
+
+    /**
+     * A comma separated list of shared namespaces, or {@link uk.gov.nationalarchives.pdi.step.atomics.Util#ALL_NAMESPACES}.
+     */
+    public static final String PROP_SHARED_NAMESPACES = "ATOMICS_SHARED_NAMESPACES";
+
+    /**
+     * The maximum number of Atomic Values in the shared region,
+     * only used when the file is first created.
+     */
+    public static final String PROP_SHARED_REGION_CAPACITY = "ATOMICS_SHARED_REGION_CAPACITY";
+
+    public static final int DEFAULT_CAPACITY = 65_536;
+
+    private final Path file;
+    private final Set<String> namespaces;
+    private final int capacity;
+
+    public SharedRegionConfig(final Path file, final Set<String> namespaces, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be greater than zero");
+        }
+        this.file = file;
+        this.namespaces = Collections.unmodifiableSet(new HashSet<>(namespaces));
+        this.capacity = capacity;
+    }
+
+    /**
+     * Reads the shared region configuration from the System Properties.
+     *
+     * @return the configuration, or null if the shared region is not enabled
+     *
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public static @Nullable SharedRegionConfig fromSystemProperties() throws IllegalArgumentException {
+        final String file = System.getProperty(PROP_SHARED_REGION_FILE);
+        if (isNullOrEmpty(file)) {
+            return null;
+        }
+
+        final Set<String> namespaces = parseNamespaces(System.getProperty(PROP_SHARED_NAMESPACES, ALL_NAMESPACES));
+
+        final int capacity;
+        final String strCapacity = System.getProperty(PROP_SHARED_REGION_CAPACITY);
+        if (isNullOrEmpty(strCapacity)) {
+            capacity = DEFAULT_CAPACITY;
+        } else {
+            try {
+                capacity = Integer.parseInt(strCapacity.trim());
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException(PROP_SHARED_REGION_CAPACITY + " must be a number, but was: " + strCapacity, e);
+            }
+        }
+
+        return new SharedRegionConfig(Paths.get(file), namespaces, capacity);
+    }
+
+    /**
+     * Determines if an Atomic Value should be stored in the shared region.
+     *
+     * @param id the identifier of the Atomic Value
+     *
+     * @return true if the namespace of the Atomic Value is shared
+     */
+    public boolean isShared(final String id) {
+        return isInNamespaces(id, namespaces);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Set<String> getNamespaces() {
+        return namespaces;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.shared;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageProvider;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link AtomicStorageProvider} which stores every
+ * Atomic Value in the {@link SharedRegion}, regardless
+ * of its namespace.
+ *
+ * The shared region is configured by {@link SharedRegionConfig},
+ * and is opened when the provider is first used.
+ */
+@ThreadSafe
+public class SharedRegionStorageProvider implements AtomicStorageProvider {
+
+    public static final String PROVIDER_NAME = "shared-region";
+
+    private final Object lock = new Object();
+    @GuardedBy("lock") @Nullable private volatile SharedRegion region;
+
+    @Override
+    public String getName() {
+        return PROVIDER_NAME;
+    }
+
+    @Override
+    public @Nullable AtomicValue getAtomic(final String id, final AtomicType atomicType) throws IllegalArgumentException {
+        return getRegion().get(id, atomicType);
+    }
+
+    @Override
+    public AtomicValue getOrCreateAtomic(final String id, final AtomicType atomicType, final String initialValue) throws IllegalArgumentException {
+        return getRegion().getOrCreate(id, atomicType, initialValue);
+    }
+
+    @Override
+    public int getOrCreateAll(final AtomicType atomicType, final List<? extends Map.Entry<String, String>> batch) throws IllegalArgumentException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        return getRegion().getOrCreateAll(atomicType, batch);
+    }
+
+    @Override
+    public boolean removeAtomic(final String id) {
+        return getRegion().remove(id);
+    }
+
+    /**
+     * Get the shared region, opening it if needed.
+     *
+     * @return the shared region
+     *
+     * @throws IllegalStateException if the shared region is not configured, or cannot be opened
+     */
+    private SharedRegion getRegion() throws IllegalStateException {
+        SharedRegion localRegion = region;
+        if (localRegion == null) {
+            synchronized (lock) {
+                localRegion = region;
+                if (localRegion == null) {
+                    final SharedRegionConfig config = SharedRegionConfig.fromSystemProperties();
+                    if (config == null) {
+                        throw new IllegalStateException("The " + PROVIDER_NAME + " Atomic Storage Provider requires " + SharedRegionConfig.PROP_SHARED_REGION_FILE + " to be set");
+                    }
+                    try {
+                        localRegion = SharedRegion.open(config);
+                    } catch (final IOException e) {
+                        throw new IllegalStateException("Unable to open the shared region of Atomic Values: " + config.getFile(), e);
+                    }
+                    region = localRegion;
+                }
+            }
+        }
+        return localRegion;
+    }
+}
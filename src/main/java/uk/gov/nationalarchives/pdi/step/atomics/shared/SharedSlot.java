@@ -0,0 +1,106 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.shared;
+
+import net.jcip.annotations.ThreadSafe;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference to the value of a shared Atomic Value
+ * in a slot of a {@link SharedRegion}.
+ *
+ * Each slot holds its value together with a generation, which is incremented
+ * whenever the slot is reused for a new Atomic Value. Once the Atomic Value
+ * has been removed and its slot reused, this reference becomes detached: it
+ * continues from the last value that it saw, and no longer changes the slot.
+ * Unlike a reference to a removed non-shared Atomic Value, each stale reference
+ * is detached on its own, so a change made through one stale reference is not
+ * seen by another.
+ */
+@ThreadSafe
+final class SharedSlot {
+
+    private final SharedRegion region;
+    private final long wordOffset;
+    private final int generation;
+    private volatile int lastValue;
+    @Nullable private volatile AtomicInteger detached;
+
+    SharedSlot(final SharedRegion region, final long wordOffset, final int generation, final int value) {
+        this.region = region;
+        this.wordOffset = wordOffset;
+        this.generation = generation;
+        this.lastValue = value;
+    }
+
+    int get() {
+        final AtomicInteger detachedValue = detached;
+        if (detachedValue != null) {
+            return detachedValue.get();
+        }
+
+        final long word = region.getWord(wordOffset);
+        if (SharedRegion.generationOf(word) != generation) {
+            return detach().get();
+        }
+        return observe(SharedRegion.valueOf(word));
+    }
+
+    boolean compareAndSet(final int expect, final int update) {
+        final AtomicInteger detachedValue = detached;
+        if (detachedValue != null) {
+            return detachedValue.compareAndSet(expect, update);
+        }
+
+        if (region.compareAndSetWord(wordOffset, SharedRegion.word(generation, expect), SharedRegion.word(generation, update))) {
+            observe(update);
+            return true;
+        }
+
+        // either the value did not match, or the slot has been reused
+        final long word = region.getWord(wordOffset);
+        if (SharedRegion.generationOf(word) != generation) {
+            return detach().compareAndSet(expect, update);
+        }
+        observe(SharedRegion.valueOf(word));
+        return false;
+    }
+
+    private int observe(final int value) {
+        if (value != lastValue) {
+            lastValue = value;
+        }
+        return value;
+    }
+
+    private synchronized AtomicInteger detach() {
+        AtomicInteger detachedValue = detached;
+        if (detachedValue == null) {
+            detachedValue = new AtomicInteger(lastValue);
+            detached = detachedValue;
+        }
+        return detachedValue;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.watchdog;
+
+import net.jcip.annotations.Immutable;
+
+import javax.annotation.Nullable;
+
+/**
+ * Identifies a copy of a step within a transformation.
+ */
+@Immutable
+public final class StepCopy {
+    private final String transformationName;
+    private final String stepName;
+    private final int copy;
+
+    public StepCopy(@Nullable final String transformationName, final String stepName, final int copy) {
+        this.transformationName = transformationName == null ? "" : transformationName;
+        this.stepName = stepName;
+        this.copy = copy;
+    }
+
+    public String getTransformationName() {
+        return transformationName;
+    }
+
+    public String getStepName() {
+        return stepName;
+    }
+
+    public int getCopy() {
+        return copy;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final StepCopy other = (StepCopy) o;
+        return copy == other.copy
+                && transformationName.equals(other.transformationName)
+                && stepName.equals(other.stepName);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = transformationName.hashCode();
+        result = 31 * result + stepName.hashCode();
+        result = 31 * result + copy;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return transformationName + "/" + stepName + "." + copy;
+    }
+}
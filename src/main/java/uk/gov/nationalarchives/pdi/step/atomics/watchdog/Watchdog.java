@@ -0,0 +1,410 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.watchdog;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects step copies which are stuck waiting on Atomic Values.
+ *
+ * Steps report when they start and stop waiting on an Atomic Value, and
+ * which step copy last set (or created) each Atomic Value, its holder. The
+ * watchdog periodically builds a wait-for graph from the waits that have
+ * exceeded {@link WatchdogConfig#getStuckAfter()}, where a waiting step copy
+ * waits for the holder of the awaited Atomic Value if that holder is
+ * itself waiting. A step copy with several workers may have several waits
+ * at once, each of which is an edge of the graph. It then reports:
+ *
+ * <ul>
+ *     <li>{@link FindingKind#DEADLOCK} for each wait that is part of a cycle in the graph.</li>
+ *     <li>{@link FindingKind#ORPHANED} for each wait on an Atomic Value which is not held by a running step copy.</li>
+ * </ul>
+ *
+ * The holder is only a heuristic, a wait on an Atomic Value whose holder is
+ * the waiting step copy itself is never reported.
+ *
+ * Findings are attached to the {@link Waiter}, so that the waiting step can
+ * log them, and fail over to its error target according to {@link WatchdogConfig#getFailover()}.
+ *
+ * There is at most one watchdog per-JVM, which is started by
+ * the first step that is initialised, see {@link #startIfConfigured()}.
+ * Its thread is a daemon thread.
+ */
+@ThreadSafe
+public class Watchdog implements Closeable {
+
+    @GuardedBy("Watchdog.class") @Nullable private static Watchdog instance;
+
+    private final WatchdogConfig config;
+    private final long stuckAfterNanos;
+    private final Set<StepCopy> running = ConcurrentHashMap.newKeySet();
+    private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, StepCopy> holders = new ConcurrentHashMap<>();
+    @Nullable private ScheduledExecutorService checker;
+
+    Watchdog(final WatchdogConfig config) {
+        this.config = config;
+        this.stuckAfterNanos = TimeUnit.MILLISECONDS.toNanos(config.getStuckAfter());
+    }
+
+    /**
+     * Starts the watchdog of this JVM, if it is configured
+     * and has not already been started.
+     *
+     * @return the watchdog, or null if it is not configured
+     *
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public static synchronized @Nullable Watchdog startIfConfigured() throws IllegalArgumentException {
+        if (instance == null) {
+            final WatchdogConfig config = WatchdogConfig.fromSystemProperties();
+            if (config == null) {
+                return null;
+            }
+
+            final Watchdog watchdog = new Watchdog(config);
+            watchdog.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "atomics-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watchdog.checker.scheduleWithFixedDelay(() -> watchdog.check(System.nanoTime()), config.getInterval(), config.getInterval(), TimeUnit.MILLISECONDS);
+            instance = watchdog;
+        }
+        return instance;
+    }
+
+    public WatchdogConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Register a running step copy.
+     *
+     * @param stepCopy the step copy
+     */
+    public void register(final StepCopy stepCopy) {
+        running.add(stepCopy);
+    }
+
+    /**
+     * Unregister a step copy which has finished, it no longer holds any Atomic Values.
+     *
+     * @param stepCopy the step copy
+     */
+    public void unregister(final StepCopy stepCopy) {
+        running.remove(stepCopy);
+        holders.values().removeIf(stepCopy::equals);
+    }
+
+    /**
+     * Record that a step copy set an Atomic Value.
+     *
+     * @param stepCopy the step copy
+     * @param atomicId the id of the Atomic Value
+     */
+    public void recordSet(final StepCopy stepCopy, final String atomicId) {
+        holders.put(atomicId, stepCopy);
+    }
+
+    /**
+     * Record that a step copy got or created an Atomic Value,
+     * it becomes the holder if the Atomic Value has no holder.
+     *
+     * @param stepCopy the step copy
+     * @param atomicId the id of the Atomic Value
+     */
+    public void recordCreation(final StepCopy stepCopy, final String atomicId) {
+        holders.putIfAbsent(atomicId, stepCopy);
+    }
+
+    /**
+     * Record that an Atomic Value was removed.
+     *
+     * @param atomicId the id of the Atomic Value
+     */
+    public void recordRemoval(final String atomicId) {
+        holders.remove(atomicId);
+    }
+
+    /**
+     * Create a waiter for a step copy which may wait on an Atomic Value.
+     *
+     * @param stepCopy the step copy
+     * @param atomicId the id of the Atomic Value
+     * @param awaitedValues a description of the values that are awaited
+     *
+     * @return the waiter, which must be ended
+     */
+    public Waiter newWaiter(final StepCopy stepCopy, final String atomicId, final String awaitedValues) {
+        return new Waiter(this, stepCopy, atomicId, awaitedValues);
+    }
+
+    /**
+     * Checks the waiting step copies, and attaches any findings to their waiters.
+     *
+     * @param now the current time from {@link System#nanoTime()}
+     */
+    void check(final long now) {
+        final List<Waiter> stuck = new ArrayList<>();
+        for (final Waiter waiter : waiters) {
+            if (now - waiter.since >= stuckAfterNanos) {
+                stuck.add(waiter);
+            }
+        }
+
+        final Map<Waiter, Finding> findings = analyse(stuck, holders, running);
+        for (final Waiter waiter : stuck) {
+            waiter.finding = findings.get(waiter);
+        }
+    }
+
+    /**
+     * Builds the wait-for graph of the stuck waiters, and finds
+     * the deadlocked and orphaned waits.
+     *
+     * @param stuck the waiters which have been waiting for longer than the stuck threshold
+     * @param holders the holder of each Atomic Value
+     * @param running the step copies which are running
+     *
+     * @return the findings for each stuck waiter which has a finding
+     */
+    static Map<Waiter, Finding> analyse(final Collection<Waiter> stuck, final Map<String, StepCopy> holders, final Set<StepCopy> running) {
+        final Map<Waiter, Finding> findings = new HashMap<>();
+
+        // a step copy may have several stuck waiters, each of which is an edge to the holder of its Atomic Value
+        final Set<StepCopy> waiting = new HashSet<>();
+        for (final Waiter waiter : stuck) {
+            waiting.add(waiter.stepCopy);
+        }
+        final Map<StepCopy, List<Waiter>> edges = new HashMap<>();
+        final Map<Waiter, StepCopy> waitsFor = new HashMap<>();
+        for (final Waiter waiter : stuck) {
+            final StepCopy holder = holders.get(waiter.atomicId);
+            if (holder == null || !running.contains(holder)) {
+                findings.put(waiter, new Finding(FindingKind.ORPHANED, waiter.describe() + ", but no running step copy holds it"));
+            } else if (!holder.equals(waiter.stepCopy) && waiting.contains(holder)) {
+                waitsFor.put(waiter, holder);
+                edges.computeIfAbsent(waiter.stepCopy, k -> new ArrayList<>()).add(waiter);
+            }
+        }
+
+        // a wait is part of a cycle if there is a path from its holder back to its step copy
+        for (final List<Waiter> copyEdges : edges.values()) {
+            for (final Waiter waiter : copyEdges) {
+                final List<Waiter> path = findPath(edges, waitsFor, waitsFor.get(waiter), waiter.stepCopy);
+                if (path != null) {
+                    final StringBuilder description = new StringBuilder();
+                    description.append(waiter.describe()).append(" held by ");
+                    for (final Waiter member : path) {
+                        description.append(member.describe()).append(" held by ");
+                    }
+                    description.append(waiter.stepCopy);
+                    findings.put(waiter, new Finding(FindingKind.DEADLOCK, description.toString()));
+                }
+            }
+        }
+
+        return findings;
+    }
+
+    /**
+     * Finds a shortest path of waits through the wait-for graph.
+     *
+     * @param edges the waits of each step copy
+     * @param waitsFor the holder that each wait waits for
+     * @param from the step copy to start from
+     * @param to the step copy to reach
+     *
+     * @return the waits along the path, or null if there is no path
+     */
+    private static @Nullable List<Waiter> findPath(final Map<StepCopy, List<Waiter>> edges, final Map<Waiter, StepCopy> waitsFor, final StepCopy from, final StepCopy to) {
+        final Map<StepCopy, Waiter> reachedBy = new HashMap<>();
+        final Deque<StepCopy> queue = new ArrayDeque<>();
+        queue.add(from);
+        reachedBy.put(from, null);
+        while (!queue.isEmpty()) {
+            final StepCopy node = queue.remove();
+            if (node.equals(to)) {
+                final LinkedList<Waiter> path = new LinkedList<>();
+                for (Waiter edge = reachedBy.get(node); edge != null; edge = reachedBy.get(edge.stepCopy)) {
+                    path.addFirst(edge);
+                }
+                return path;
+            }
+            for (final Waiter edge : edges.getOrDefault(node, Collections.emptyList())) {
+                final StepCopy holder = waitsFor.get(edge);
+                if (!reachedBy.containsKey(holder)) {
+                    reachedBy.put(holder, edge);
+                    queue.add(holder);
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    /**
+     * The kinds of stuck wait.
+     */
+    public enum FindingKind {
+        DEADLOCK,
+        ORPHANED
+    }
+
+    /**
+     * A stuck wait found by the watchdog.
+     */
+    @Immutable
+    public static final class Finding {
+        private final FindingKind kind;
+        private final String description;
+
+        Finding(final FindingKind kind, final String description) {
+            this.kind = kind;
+            this.description = description;
+        }
+
+        public FindingKind getKind() {
+            return kind;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public String toString() {
+            return kind + ": " + description;
+        }
+    }
+
+    /**
+     * A possible wait of a step copy on an Atomic Value.
+     *
+     * The wait is only visible to the watchdog once {@link #waiting()}
+     * has been called, so that waits which complete without sleeping
+     * have little overhead. A step copy may have several waiters at once,
+     * one for each of its workers. The methods of a waiter must only be
+     * called by the thread which waits.
+     */
+    @NotThreadSafe
+    public static final class Waiter {
+
+        /**
+         * A waiter for when there is no watchdog.
+         */
+        public static final Waiter NONE = new Waiter(null, null, null, null);
+
+        @Nullable private final Watchdog watchdog;
+        private final StepCopy stepCopy;
+        private final String atomicId;
+        private final String awaitedValues;
+        private volatile long since;
+        @Nullable private volatile Finding finding;
+        private boolean registered;
+        private boolean reported;
+
+        private Waiter(@Nullable final Watchdog watchdog, final StepCopy stepCopy, final String atomicId, final String awaitedValues) {
+            this.watchdog = watchdog;
+            this.stepCopy = stepCopy;
+            this.atomicId = atomicId;
+            this.awaitedValues = awaitedValues;
+        }
+
+        /**
+         * Signal that the step copy is about to wait, the first call starts the wait.
+         */
+        public void waiting() {
+            if (watchdog != null && !registered) {
+                since = System.nanoTime();
+                watchdog.waiters.add(this);
+                registered = true;
+            }
+        }
+
+        /**
+         * End the wait.
+         */
+        public void end() {
+            if (registered) {
+                watchdog.waiters.remove(this);
+                registered = false;
+            }
+        }
+
+        /**
+         * Get the finding of the watchdog for the wait.
+         *
+         * @return the finding, or null if the wait is not stuck
+         */
+        public @Nullable Finding getFinding() {
+            return finding;
+        }
+
+        /**
+         * Marks the finding of the wait as reported.
+         *
+         * @return true if the finding had not already been reported
+         */
+        public boolean markReported() {
+            if (reported) {
+                return false;
+            }
+            reported = true;
+            return true;
+        }
+
+        /**
+         * Determines if the wait should fail over to the error target.
+         *
+         * @return true if the wait has a finding which the failover policy covers
+         */
+        public boolean isFailOver() {
+            final Finding finding = this.finding;
+            return finding != null && watchdog.config.getFailover().covers(finding.getKind());
+        }
+
+        String describe() {
+            return stepCopy + " awaits " + atomicId + "=[" + awaitedValues + "]";
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.watchdog;
+
+import net.jcip.annotations.Immutable;
+
+import javax.annotation.Nullable;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.Util.isNullOrEmpty;
+
+/**
+ * Configuration for the {@link Watchdog} which detects stuck waits.
+ *
+ * The configuration is read from System Properties, which
+ * KETTLE also populates from {@code kettle.properties}.
+ */
+@Immutable
+public class WatchdogConfig {
+
+    /**
+     * The interval in milliseconds at which the watchdog checks the waiting steps.
+     * If not set (or 0) then the watchdog is not started.
+     */
+    public static final String PROP_WATCHDOG_INTERVAL = "ATOMICS_WATCHDOG_INTERVAL";
+
+    /**
+     * The time in milliseconds that a step copy must have been waiting
+     * before the watchdog considers whether it is stuck.
+     */
+    public static final String PROP_WATCHDOG_STUCK_AFTER = "ATOMICS_WATCHDOG_STUCK_AFTER";
+
+    /**
+     * Which stuck waits are failed over to the error target of the step,
+     * one of {@code NONE}, {@code DEADLOCK}, or {@code ALL}.
+     */
+    public static final String PROP_WATCHDOG_FAILOVER = "ATOMICS_WATCHDOG_FAILOVER";
+
+    static final long DEFAULT_STUCK_AFTER = 60_000;
+
+    /**
+     * Policy for failing over stuck waits to the error target.
+     */
+    public enum Failover {
+        /**
+         * Stuck waits are only reported.
+         */
+        NONE,
+
+        /**
+         * Waits which are part of a deadlock are failed over.
+         */
+        DEADLOCK,
+
+        /**
+         * All stuck waits are failed over.
+         */
+        ALL;
+
+        /**
+         * Determines if a finding is failed over by this policy.
+         *
+         * @param kind the kind of the finding
+         *
+         * @return true if the wait should be failed over
+         */
+        public boolean covers(final Watchdog.FindingKind kind) {
+            switch (this) {
+                case DEADLOCK:
+                    return kind == Watchdog.FindingKind.DEADLOCK;
+
+                case ALL:
+                    return true;
+
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private final long interval;
+    private final long stuckAfter;
+    private final Failover failover;
+
+    public WatchdogConfig(final long interval, final long stuckAfter, final Failover failover) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Interval must be at least 1 millisecond");
+        }
+        if (stuckAfter < 1) {
+            throw new IllegalArgumentException("Stuck after must be at least 1 millisecond");
+        }
+        this.interval = interval;
+        this.stuckAfter = stuckAfter;
+        this.failover = failover;
+    }
+
+    /**
+     * Reads the watchdog configuration from the System Properties.
+     *
+     * @return the configuration, or null if the watchdog is not enabled
+     *
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public static @Nullable WatchdogConfig fromSystemProperties() throws IllegalArgumentException {
+        final long interval = getLong(PROP_WATCHDOG_INTERVAL, 0);
+        if (interval == 0) {
+            return null;
+        }
+
+        final long stuckAfter = getLong(PROP_WATCHDOG_STUCK_AFTER, DEFAULT_STUCK_AFTER);
+
+        final String strFailover = System.getProperty(PROP_WATCHDOG_FAILOVER);
+        final Failover failover;
+        if (isNullOrEmpty(strFailover)) {
+            failover = Failover.NONE;
+        } else {
+            try {
+                failover = Failover.valueOf(strFailover.trim().toUpperCase());
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException(PROP_WATCHDOG_FAILOVER + " must be one of NONE, DEADLOCK, or ALL, but was: " + strFailover, e);
+            }
+        }
+
+        return new WatchdogConfig(interval, stuckAfter, failover);
+    }
+
+    private static long getLong(final String propertyName, final long defaultValue) {
+        final String str = System.getProperty(propertyName);
+        if (isNullOrEmpty(str)) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(str.trim());
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(propertyName + " must be a number, but was: " + str, e);
+        }
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public long getStuckAfter() {
+        return stuckAfter;
+    }
+
+    public Failover getFailover() {
+        return failover;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads on which steps wait for Atomic values,
+ * e.g. the workers of the Await step.
+ *
+ * This is the Java 21 implementation, which is used from the Multi-Release JAR,
+ * and creates virtual threads, unless {@link #PROP_VIRTUAL_THREADS} is {@code false}.
+ * A step that waits parks or sleeps between its checks of an Atomic value, either of
+ * which parks a virtual thread and releases its carrier thread, so many waits can be
+ * in progress at once without an OS thread for each.
+ */
+public final class WaitThreads {
+
+    /**
+     * Set to {@code false} to use platform threads rather than virtual threads on Java 21 or newer.
+     */
+    public static final String PROP_VIRTUAL_THREADS = "ATOMICS_VIRTUAL_THREADS";
+
+    private WaitThreads() {
+    }
+
+    /**
+     * @return true if the threads are virtual threads.
+     */
+    public static boolean isVirtual() {
+        return !"false".equalsIgnoreCase(System.getProperty(PROP_VIRTUAL_THREADS));
+    }
+
+    /**
+     * Creates a factory for threads on which steps wait.
+     *
+     * @param namePrefix the prefix of the names of the threads
+     *
+     * @return the thread factory
+     */
+    public static ThreadFactory newThreadFactory(final String namePrefix) {
+        if (isVirtual()) {
+            return Thread.ofVirtual().name(namePrefix + "-", 0).factory();
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, namePrefix + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates an executor which runs each of its tasks on its own thread
+     * on which a step waits. When the threads are virtual, each task has
+     * a new virtual thread, otherwise the threads of completed tasks are reused.
+     *
+     * @param namePrefix the prefix of the names of the threads
+     *
+     * @return the executor
+     */
+    public static ExecutorService newExecutor(final String namePrefix) {
+        if (isVirtual()) {
+            return Executors.newThreadPerTaskExecutor(newThreadFactory(namePrefix));
+        }
+        return Executors.newCachedThreadPool(newThreadFactory(namePrefix));
+    }
+}
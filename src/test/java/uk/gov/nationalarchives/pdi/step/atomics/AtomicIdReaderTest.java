@@ -0,0 +1,141 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import org.junit.jupiter.api.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AtomicIdReaderTest {
+
+    @Test
+    public void parseFieldNames() {
+        assertArrayEquals(new String[] { "id" }, AtomicIdReader.parseFieldNames("id"));
+        assertArrayEquals(new String[] { "batch", "item" }, AtomicIdReader.parseFieldNames("batch, item"));
+        assertArrayEquals(new String[] { "batch", "item" }, AtomicIdReader.parseFieldNames(" batch,,item, "));
+        assertArrayEquals(new String[0], AtomicIdReader.parseFieldNames(" , "));
+    }
+
+    @Test
+    public void noFields() {
+        assertThrows(IllegalArgumentException.class, () -> new AtomicIdReader(new String[0], new int[0]));
+        assertThrows(IllegalArgumentException.class, () -> new AtomicIdReader(new String[] { "id" }, new int[] { 0, 1 }));
+    }
+
+    @Test
+    public void stringField() throws KettleException {
+        final AtomicIdReader reader = new AtomicIdReader(new String[] { "id" }, new int[] { 1 });
+        final String atomicId = "batch:42";
+        assertSame(atomicId, reader.read(new Object[] { "other", atomicId }));
+
+        // another instance of a recently read Atomic ID is replaced by the first
+        assertSame(atomicId, reader.read(new Object[] { "other", new String(atomicId) }));
+        assertEquals("42", reader.read(new Object[] { "other", 42L }));
+    }
+
+    @Test
+    public void integerField() throws KettleException {
+        final AtomicIdReader reader = new AtomicIdReader(new String[] { "id" }, new int[] { 0 });
+        final String atomicId = reader.read(new Object[] { 42L });
+        assertEquals("42", atomicId);
+        assertEquals("-7", reader.read(new Object[] { -7 }));
+
+        // a recently read Atomic ID is not allocated again
+        assertSame(atomicId, reader.read(new Object[] { 42L }));
+    }
+
+    @Test
+    public void integerFieldCollision() throws KettleException {
+        final AtomicIdReader reader = new AtomicIdReader(new String[] { "id" }, new int[] { 0 });
+        assertEquals("1", reader.read(new Object[] { 1L }));
+        assertEquals(Long.toString(1L + AtomicIdReader.CACHE_SIZE), reader.read(new Object[] { 1L + AtomicIdReader.CACHE_SIZE }));
+        assertEquals("1", reader.read(new Object[] { 1L }));
+    }
+
+    @Test
+    public void compositeFields() throws KettleException {
+        final AtomicIdReader reader = new AtomicIdReader(new String[] { "batch", "item" }, new int[] { 2, 0 });
+        final String atomicId = reader.read(new Object[] { 42L, "other", "b1" });
+        assertEquals("b1:42", atomicId);
+        assertEquals("b1:43", reader.read(new Object[] { 43L, "other", "b1" }));
+        assertEquals("b2:42", reader.read(new Object[] { 42L, "other", "b2" }));
+
+        // a recently read Atomic ID is not allocated again
+        assertSame(atomicId, reader.read(new Object[] { 42L, "other", "b1" }));
+    }
+
+    @Test
+    public void repeatedRowsShareAtomicIds() throws KettleException {
+        final int distinctIds = AtomicIdReader.CACHE_SIZE / 2;
+        final int repeats = 10;
+
+        // each row carries its own values, as rows read from a file would, and the rows of an Atomic ID are near each other
+        final AtomicIdReader stringReader = new AtomicIdReader(new String[] { "id" }, new int[] { 0 });
+        final AtomicIdReader compositeReader = new AtomicIdReader(new String[] { "batch", "item" }, new int[] { 0, 1 });
+        final Set<String> stringIds = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<String> compositeIds = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<String> uncachedIds = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (long item = 0; item < distinctIds; item++) {
+            for (int repeat = 0; repeat < repeats; repeat++) {
+                final String rowId = "b1:" + item;
+                uncachedIds.add(rowId);
+                stringIds.add(stringReader.read(new Object[] { rowId }));
+                compositeIds.add(compositeReader.read(new Object[] { new String("b1"), item }));
+            }
+        }
+
+        // one instance of each Atomic ID is held, rather than one for each row
+        assertEquals(distinctIds * repeats, uncachedIds.size());
+        assertEquals(distinctIds, stringIds.size());
+        assertEquals(distinctIds, compositeIds.size());
+        assertEquals(estimatedBytes(uncachedIds) / repeats, estimatedBytes(stringIds));
+        assertEquals(estimatedBytes(uncachedIds) / repeats, estimatedBytes(compositeIds));
+    }
+
+    /**
+     * Estimates the heap used by Latin-1 Strings: the header and fields of
+     * each String, and its byte array, each aligned to 8 bytes.
+     */
+    private static long estimatedBytes(final Set<String> ids) {
+        long bytes = 0;
+        for (final String id : ids) {
+            bytes += 24 + ((16 + id.length() + 7) & ~7);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void invalidField() {
+        final AtomicIdReader reader = new AtomicIdReader(new String[] { "id" }, new int[] { 0 });
+        assertThrows(KettleException.class, () -> reader.read(new Object[] { 1.5d }));
+        assertThrows(KettleException.class, () -> reader.read(new Object[] { null }));
+
+        final AtomicIdReader compositeReader = new AtomicIdReader(new String[] { "batch", "item" }, new int[] { 0, 1 });
+        assertThrows(KettleException.class, () -> compositeReader.read(new Object[] { "b1", null }));
+    }
+}
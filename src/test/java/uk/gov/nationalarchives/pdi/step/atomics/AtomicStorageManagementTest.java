@@ -0,0 +1,142 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.ContentionProfiler;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AtomicStorageManagementTest {
+
+    private final AtomicStorageMXBean management = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), AtomicStorage.MBEAN_NAME, AtomicStorageMXBean.class);
+
+    @AfterEach
+    public void resetStorage() {
+        AtomicStorage.INSTANCE.clear();
+        management.resetStatistics();
+    }
+
+    @Test
+    public void registered() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(server.isRegistered(AtomicStorage.MBEAN_NAME));
+    }
+
+    @Test
+    public void counts() {
+        AtomicStorage.INSTANCE.getOrCreateAtomic("int1", AtomicType.Integer, "1");
+        AtomicStorage.INSTANCE.getOrCreateAtomic("int2", AtomicType.Integer, "2");
+        AtomicStorage.INSTANCE.getOrCreateAtomic("bool1", AtomicType.Boolean, "true");
+        AtomicStorage.INSTANCE.getOrCreateAtomic("int1", AtomicType.Integer, "1");
+
+        assertEquals(3, management.getCount());
+        final Map<String, Long> countsByType = management.getCountsByType();
+        assertEquals(2L, countsByType.get(AtomicType.Integer.name()));
+        assertEquals(1L, countsByType.get(AtomicType.Boolean.name()));
+        assertEquals(4, management.getLookups());
+        assertEquals(3, management.getCreations());
+        assertTrue(management.getEstimatedHeapBytes() > 0);
+
+        AtomicStorage.INSTANCE.removeAtomic("int2");
+        assertEquals(2, management.getCount());
+        assertEquals(1, management.getRemovals());
+
+        AtomicStorage.INSTANCE.clear();
+        assertEquals(0, management.getCount());
+    }
+
+    @Test
+    public void lookupAndForceSet() {
+        AtomicStorage.INSTANCE.getOrCreateAtomic("int1", AtomicType.Integer, "1");
+        AtomicStorage.INSTANCE.getOrCreateAtomic("bool1", AtomicType.Boolean, "false");
+
+        assertEquals("1", management.lookup("int1"));
+        assertEquals("false", management.lookup("bool1"));
+        assertNull(management.lookup("no-such-id"));
+
+        management.forceSet("int1", "99");
+        management.forceSet("bool1", "true");
+        assertEquals(99, ((AtomicIntegerValue) AtomicStorage.INSTANCE.getAtomic("int1", AtomicType.Integer)).get());
+        assertTrue(((AtomicBooleanValue) AtomicStorage.INSTANCE.getAtomic("bool1", AtomicType.Boolean)).get());
+
+        assertThrows(IllegalArgumentException.class, () -> management.forceSet("no-such-id", "1"));
+        assertThrows(IllegalArgumentException.class, () -> management.forceSet("bool1", "not-a-boolean"));
+    }
+
+    @Test
+    public void removeByPrefix() {
+        AtomicStorage.INSTANCE.getOrCreateAtomic("flow1:a", AtomicType.Integer, "1");
+        AtomicStorage.INSTANCE.getOrCreateAtomic("flow1:b", AtomicType.Boolean, "true");
+        AtomicStorage.INSTANCE.getOrCreateAtomic("flow2:a", AtomicType.Integer, "1");
+
+        assertTrue(management.remove("flow2:a"));
+        assertFalse(management.remove("flow2:a"));
+
+        assertEquals(2, management.removeByPrefix("flow1:"));
+        assertEquals(0, management.removeByPrefix("flow1:"));
+        assertEquals(0, management.getCount());
+        assertEquals(3, management.getRemovals());
+
+        assertThrows(IllegalArgumentException.class, () -> management.removeByPrefix(""));
+    }
+
+    @Test
+    public void topContendedIds() {
+        for (int i = 0; i < 3; i++) {
+            AtomicStorage.INSTANCE.recordContention("hot", ContentionProfiler.Kind.CAS_FAILURE);
+        }
+        AtomicStorage.INSTANCE.recordContention("warm", ContentionProfiler.Kind.WAKE_UP);
+        AtomicStorage.INSTANCE.recordContention("warm", ContentionProfiler.Kind.CAS_FAILURE);
+        AtomicStorage.INSTANCE.recordContention("cold", ContentionProfiler.Kind.WAKE_UP);
+
+        final List<AtomicStorageMXBean.ContendedId> top = management.topContendedIds(2);
+        assertEquals(2, top.size());
+        assertEquals("hot", top.get(0).getId());
+        assertEquals(3, top.get(0).getContention());
+        assertEquals(3, top.get(0).getCasFailures());
+        assertEquals(0, top.get(0).getWakeUps());
+        assertEquals(0, top.get(0).getError());
+        assertEquals("warm", top.get(1).getId());
+        assertEquals(2, top.get(1).getContention());
+        assertEquals(1, top.get(1).getCasFailures());
+        assertEquals(1, top.get(1).getWakeUps());
+
+        assertEquals(3, management.getTopContendedIds().size());
+        assertEquals(6, management.getTotalContention());
+
+        final String report = management.contentionReport(1);
+        assertTrue(report.contains("1. hot=3"));
+        assertFalse(report.contains("warm"));
+
+        management.resetStatistics();
+        assertTrue(management.getTopContendedIds().isEmpty());
+    }
+}
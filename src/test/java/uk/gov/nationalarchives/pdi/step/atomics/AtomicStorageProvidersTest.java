@@ -0,0 +1,93 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import uk.gov.nationalarchives.pdi.step.atomics.compact.CompactBooleanStorageProvider;
+import uk.gov.nationalarchives.pdi.step.atomics.compact.CompactIntegerStorageProvider;
+import uk.gov.nationalarchives.pdi.step.atomics.shared.SharedRegionStorageProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AtomicStorageProvidersTest {
+
+    @AfterEach
+    public void resetStorage() {
+        AtomicStorage.INSTANCE.clear();
+    }
+
+    @Test
+    public void getDefault() {
+        assertSame(AtomicStorage.INSTANCE, AtomicStorageProviders.get(null));
+        assertSame(AtomicStorage.INSTANCE, AtomicStorageProviders.get(""));
+        assertSame(AtomicStorage.INSTANCE, AtomicStorageProviders.get(AtomicStorage.PROVIDER_NAME));
+    }
+
+    @Test
+    public void getDiscovered() {
+        final AtomicStorageProvider provider = AtomicStorageProviders.get(SharedRegionStorageProvider.PROVIDER_NAME);
+        assertTrue(provider instanceof SharedRegionStorageProvider);
+        assertEquals(SharedRegionStorageProvider.PROVIDER_NAME, provider.getName());
+    }
+
+    @Test
+    public void getNoSuchProvider() {
+        assertThrows(IllegalArgumentException.class, () -> AtomicStorageProviders.get("no-such-provider"));
+    }
+
+    @Test
+    public void getNames() {
+        final Iterator<String> names = AtomicStorageProviders.getNames().iterator();
+        assertEquals(AtomicStorage.PROVIDER_NAME, names.next());
+        assertTrue(AtomicStorageProviders.getNames().contains(SharedRegionStorageProvider.PROVIDER_NAME));
+        assertTrue(AtomicStorageProviders.getNames().contains(CompactBooleanStorageProvider.PROVIDER_NAME));
+        assertTrue(AtomicStorageProviders.getNames().contains(CompactIntegerStorageProvider.PROVIDER_NAME));
+    }
+
+    @Test
+    public void listenerCreatedAndRemoved() {
+        final List<AtomicListener.Event> events = new ArrayList<>();
+        final AtomicListener listener = (id, event) -> events.add(event);
+
+        assertTrue(AtomicStorage.INSTANCE.addListener("atomicInt1", listener));
+        try {
+            AtomicStorage.INSTANCE.getOrCreateAtomic("atomicInt1", AtomicType.Integer, "1");
+            AtomicStorage.INSTANCE.getOrCreateAtomic("atomicInt1", AtomicType.Integer, "1");  // already exists, no event
+            AtomicStorage.INSTANCE.getOrCreateAtomic("atomicInt2", AtomicType.Integer, "2");  // not listened to
+            AtomicStorage.INSTANCE.removeAtomic("atomicInt1");
+        } finally {
+            assertTrue(AtomicStorage.INSTANCE.removeListener("atomicInt1", listener));
+        }
+
+        AtomicStorage.INSTANCE.getOrCreateAtomic("atomicInt1", AtomicType.Integer, "1");  // no longer listened to
+
+        assertEquals(Arrays.asList(AtomicListener.Event.CREATED, AtomicListener.Event.REMOVED), events);
+        assertFalse(AtomicStorage.INSTANCE.removeListener("atomicInt1", listener));
+    }
+}
@@ -24,6 +24,13 @@ package uk.gov.nationalarchives.pdi.step.atomics;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -34,6 +41,30 @@ public class AtomicStorageTest {
         AtomicStorage.INSTANCE.clear();
     }
 
+    @Test
+    public void storedIdIsTheReadId() throws KettleException {
+        final AtomicIdReader reader = new AtomicIdReader(new String[] { "id" }, new int[] { 0 });
+        final String id = reader.read(new Object[] { 42L });
+        AtomicStorage.INSTANCE.getOrCreateAtomic(id, AtomicType.Integer, "1");
+
+        // the stored id is the instance that was read, and is shared by the later rows with the same id
+        final String storedId = AtomicStorage.INSTANCE.copy().keySet().iterator().next();
+        assertSame(id, storedId);
+        assertSame(storedId, reader.read(new Object[] { 42L }));
+
+        // another row's instance of a String id is replaced by the stored id, also when the Atomic Value is discarded and recreated
+        final AtomicIdReader stringReader = new AtomicIdReader(new String[] { "id" }, new int[] { 0 });
+        final String stringId = stringReader.read(new Object[] { new String("string1") });
+        AtomicStorage.INSTANCE.getOrCreateAtomic(stringId, AtomicType.Integer, "1");
+        AtomicStorage.INSTANCE.removeAtomic(stringReader.read(new Object[] { new String("string1") }));
+        AtomicStorage.INSTANCE.getOrCreateAtomic(stringReader.read(new Object[] { new String("string1") }), AtomicType.Integer, "2");
+        for (final String key : AtomicStorage.INSTANCE.copy().keySet()) {
+            if (key.equals("string1")) {
+                assertSame(stringId, key);
+            }
+        }
+    }
+
     @Test
     public void getNoSuchAtomic() {
         assertNull(AtomicStorage.INSTANCE.getAtomic("no-such-id", AtomicType.Integer));
@@ -206,4 +237,74 @@ public class AtomicStorageTest {
         // 2nd call - get
         assertNull(AtomicStorage.INSTANCE.getAtomic("atomicBool1", AtomicType.Boolean));
     }
+
+    @Test
+    public void getOrCreateAllInteger() {
+        final List<Map.Entry<String, String>> batch = Arrays.asList(
+                new AbstractMap.SimpleEntry<>("atomicInt1", "1"),
+                new AbstractMap.SimpleEntry<>("atomicInt2", "2"),
+                new AbstractMap.SimpleEntry<>("atomicInt3", "3")
+        );
+        assertEquals(3, AtomicStorage.INSTANCE.getOrCreateAll(AtomicType.Integer, batch));
+
+        for (int i = 1; i <= 3; i++) {
+            final AtomicValue atomicInt = AtomicStorage.INSTANCE.getAtomic("atomicInt" + i, AtomicType.Integer);
+            assertNotNull(atomicInt);
+            assertTrue(atomicInt instanceof AtomicIntegerValue);
+            assertEquals(i, ((AtomicIntegerValue) atomicInt).get());
+        }
+    }
+
+    @Test
+    public void getOrCreateAllExisting() {
+        // 1st prepare the storage
+        final AtomicValue atomicBool1 = AtomicStorage.INSTANCE.getOrCreateAtomic("atomicBool1", AtomicType.Boolean, "true");
+
+        // 2nd call - only atomicBool2 should be created
+        final List<Map.Entry<String, String>> batch = Arrays.asList(
+                new AbstractMap.SimpleEntry<>("atomicBool1", "false"),
+                new AbstractMap.SimpleEntry<>("atomicBool2", "false")
+        );
+        assertEquals(1, AtomicStorage.INSTANCE.getOrCreateAll(AtomicType.Boolean, batch));
+
+        final AtomicValue atomicBool11 = AtomicStorage.INSTANCE.getAtomic("atomicBool1", AtomicType.Boolean);
+        assertTrue(atomicBool11 == atomicBool1);
+        assertTrue(((AtomicBooleanValue) atomicBool11).get());
+
+        final AtomicValue atomicBool2 = AtomicStorage.INSTANCE.getAtomic("atomicBool2", AtomicType.Boolean);
+        assertNotNull(atomicBool2);
+        assertFalse(((AtomicBooleanValue) atomicBool2).get());
+    }
+
+    @Test
+    public void getOrCreateAllInvalidType() {
+        // 1st prepare the storage
+        AtomicStorage.INSTANCE.getOrCreateAtomic("atomicInt2", AtomicType.Integer, "2");
+
+        // 2nd call - the whole batch should be rejected
+        final List<Map.Entry<String, String>> batch = Arrays.asList(
+                new AbstractMap.SimpleEntry<>("atomicBool1", "true"),
+                new AbstractMap.SimpleEntry<>("atomicInt2", "true")
+        );
+        assertThrows(IllegalArgumentException.class,
+                () -> AtomicStorage.INSTANCE.getOrCreateAll(AtomicType.Boolean, batch)
+        );
+        assertNull(AtomicStorage.INSTANCE.getAtomic("atomicBool1", AtomicType.Boolean));
+    }
+
+    @Test
+    public void getOrCreateAllInBatches() {
+        final List<Map.Entry<String, String>> idsAndInitialValues = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            idsAndInitialValues.add(new AbstractMap.SimpleEntry<>("atomicInt" + i, Integer.toString(i)));
+        }
+        assertEquals(1_000, AtomicStorage.INSTANCE.getOrCreateAll(AtomicType.Integer, idsAndInitialValues.iterator(), 64));
+
+        // 2nd call - everything already exists
+        assertEquals(0, AtomicStorage.INSTANCE.getOrCreateAll(AtomicType.Integer, idsAndInitialValues.iterator(), 64));
+
+        final AtomicValue atomicInt999 = AtomicStorage.INSTANCE.getAtomic("atomicInt999", AtomicType.Integer);
+        assertNotNull(atomicInt999);
+        assertEquals(999, ((AtomicIntegerValue) atomicInt999).get());
+    }
 }
@@ -0,0 +1,57 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SlowWaitLogTest {
+
+    @Test
+    public void rateLimited() {
+        final long start = 1_000;
+        final SlowWaitLog slowWaitLog = new SlowWaitLog(start);
+
+        // a burst is allowed
+        for (int i = 0; i < SlowWaitLog.BURST; i++) {
+            assertEquals(0, slowWaitLog.tryAcquire(start));
+        }
+
+        // then further slow waits are suppressed
+        assertEquals(-1, slowWaitLog.tryAcquire(start));
+        assertEquals(-1, slowWaitLog.tryAcquire(start + SlowWaitLog.INTERVAL_NANOS - 1));
+
+        // until the interval has elapsed, when the suppressed slow waits are reported
+        assertEquals(2, slowWaitLog.tryAcquire(start + SlowWaitLog.INTERVAL_NANOS));
+        assertEquals(-1, slowWaitLog.tryAcquire(start + SlowWaitLog.INTERVAL_NANOS));
+
+        // the burst is refilled after a quiet period, but no further
+        final long later = start + SlowWaitLog.INTERVAL_NANOS * 100;
+        assertEquals(1, slowWaitLog.tryAcquire(later));
+        for (int i = 1; i < SlowWaitLog.BURST; i++) {
+            assertEquals(0, slowWaitLog.tryAcquire(later));
+        }
+        assertEquals(-1, slowWaitLog.tryAcquire(later));
+    }
+}
@@ -24,6 +24,8 @@ package uk.gov.nationalarchives.pdi.step.atomics;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class UtilTest {
@@ -128,4 +130,22 @@ public class UtilTest {
         assertEquals("123", Util.unknownStrToIntegerStr("123"));
     }
 
+
+    @Test
+    public void namespaceOf() {
+        assertEquals("", Util.namespaceOf("atomicId1"));
+        assertEquals("ns1", Util.namespaceOf("ns1:atomicId1"));
+        assertEquals("ns1", Util.namespaceOf("ns1:atomicId1:a"));
+        assertEquals("", Util.namespaceOf(":atomicId1"));
+    }
+
+    @Test
+    public void isInNamespaces() {
+        final Set<String> namespaces = Util.parseNamespaces("ns1, ns2");
+        assertTrue(Util.isInNamespaces("ns1:atomicId1", namespaces));
+        assertTrue(Util.isInNamespaces("ns2:atomicId1", namespaces));
+        assertFalse(Util.isInNamespaces("ns3:atomicId1", namespaces));
+        assertFalse(Util.isInNamespaces("atomicId1", namespaces));
+        assertTrue(Util.isInNamespaces("atomicId1", Util.parseNamespaces(Util.ALL_NAMESPACES)));
+    }
 }
@@ -0,0 +1,222 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WaitPauseTest {
+
+    @AfterEach
+    public void clear() {
+        AtomicStorage.INSTANCE.clear();
+    }
+
+    @Test
+    public void sleep() {
+        final WaitPause pause = new WaitPause(WaitStrategy.Sleep, "atomicId1", AtomicStorage.INSTANCE, null, 10, 25);
+        assertEquals(WaitPause.Outcome.PAUSED, pause.pause());
+        assertTrue(pause.isWakeUp());
+        assertEquals(10, pause.getWaited());
+        assertEquals(WaitPause.Outcome.PAUSED, pause.pause());
+        assertEquals(20, pause.getWaited());
+        assertEquals(WaitPause.Outcome.TIMEOUT, pause.pause());
+        pause.end();
+    }
+
+    @Test
+    public void spinTimeout() {
+        final WaitPause pause = new WaitPause(WaitStrategy.Spin, "atomicId1", AtomicStorage.INSTANCE, null, 100, 5);
+        WaitPause.Outcome outcome;
+        do {
+            outcome = pause.pause();
+            assertFalse(pause.isWakeUp());
+        } while (outcome == WaitPause.Outcome.PAUSED);
+        assertEquals(WaitPause.Outcome.TIMEOUT, outcome);
+        assertTrue(pause.getWaited() > 5);
+        pause.end();
+    }
+
+    @Test
+    public void parkNotified() throws InterruptedException {
+        final String atomicId = "atomicId1";
+        final WaitPause pause = new WaitPause(WaitStrategy.Park, atomicId, AtomicStorage.INSTANCE, null, TimeUnit.MINUTES.toMillis(1), -1);
+
+        final Thread creator = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            AtomicStorage.INSTANCE.getOrCreateAtomic(atomicId, AtomicType.Boolean, "false");
+        });
+        creator.start();
+
+        // the park is ended early by the creation of the Atomic Value
+        final long start = System.nanoTime();
+        WaitPause.Outcome outcome;
+        do {
+            outcome = pause.pause();
+        } while (outcome == WaitPause.Outcome.PAUSED && AtomicStorage.INSTANCE.getAtomic(atomicId, AtomicType.Boolean) == null);
+        assertEquals(WaitPause.Outcome.PAUSED, outcome);
+        assertTrue(pause.isWakeUp());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+        pause.end();
+
+        creator.join();
+    }
+
+    @Test
+    public void parkNotifiedOfChange() throws InterruptedException {
+        final String atomicId = "atomicId1";
+        final AtomicBooleanValue atomicValue = (AtomicBooleanValue) AtomicStorage.INSTANCE.getOrCreateAtomic(atomicId, AtomicType.Boolean, "false");
+        final long period = TimeUnit.MINUTES.toMillis(1);
+        final WaitPause pause = new WaitPause(WaitStrategy.Park, atomicId, AtomicStorage.INSTANCE, null, period, -1);
+
+        final Thread setter = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // as the Compare and Set step does after a successful CAS
+            assertTrue(atomicValue.compareAndSet(false, true));
+            AtomicStorage.INSTANCE.notifyChanged(atomicId);
+        });
+        setter.start();
+
+        // the park is ended early by the change of the Atomic Value
+        final long start = System.nanoTime();
+        WaitPause.Outcome outcome;
+        do {
+            outcome = pause.pause();
+        } while (outcome == WaitPause.Outcome.PAUSED && !atomicValue.get());
+        assertEquals(WaitPause.Outcome.PAUSED, outcome);
+        assertTrue(pause.isWakeUp());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(period / 4));
+        pause.end();
+
+        setter.join();
+    }
+
+    @Test
+    public void pauseUntilWokenEarly() throws InterruptedException {
+        // NOTE: even when sleeping, a pause until a condition holds may be woken by an unpark
+        final WaitPause pause = new WaitPause(WaitStrategy.Sleep, "atomicId1", AtomicStorage.INSTANCE, null, TimeUnit.MINUTES.toMillis(1), -1);
+        final Thread waiter = Thread.currentThread();
+        final AtomicBoolean ready = new AtomicBoolean();
+
+        final Thread waker = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            ready.set(true);
+            LockSupport.unpark(waiter);
+        });
+        waker.start();
+
+        final long start = System.nanoTime();
+        assertEquals(WaitPause.Outcome.PAUSED, pause.pauseUntil(ready::get));
+        assertTrue(ready.get());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+        pause.end();
+
+        waker.join();
+    }
+
+    @Test
+    public void pauseUntilTimeout() {
+        final WaitPause pause = new WaitPause(WaitStrategy.Sleep, "atomicId1", AtomicStorage.INSTANCE, null, 10, 25);
+        WaitPause.Outcome outcome;
+        do {
+            outcome = pause.pauseUntil(() -> false);
+        } while (outcome == WaitPause.Outcome.PAUSED);
+        assertEquals(WaitPause.Outcome.TIMEOUT, outcome);
+        assertTrue(pause.getWaited() > 25);
+        pause.end();
+    }
+
+    @Test
+    public void interrupted() {
+        final WaitPause pause = new WaitPause(WaitStrategy.Park, "atomicId1", AtomicStorage.INSTANCE, null, TimeUnit.MINUTES.toMillis(1), -1);
+        Thread.currentThread().interrupt();
+        try {
+            assertEquals(WaitPause.Outcome.INTERRUPTED, pause.pause());
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();  // clear interrupted flag
+            pause.end();
+        }
+    }
+
+    @Test
+    public void adaptiveParksWhenLongWaitExpected() {
+        final WaitHistory history = new WaitHistory();
+        history.record("atomicId1", TimeUnit.SECONDS.toNanos(1));
+
+        final WaitPause pause = new WaitPause(WaitStrategy.Adaptive, "atomicId1", AtomicStorage.INSTANCE, history, 1, -1);
+        assertEquals(WaitPause.Outcome.PAUSED, pause.pause());
+        assertTrue(pause.isWakeUp());
+        pause.end();
+    }
+
+    @Test
+    public void adaptiveSpinsWhenShortWaitExpected() {
+        final WaitHistory history = new WaitHistory();
+        history.record("atomicId1", TimeUnit.MICROSECONDS.toNanos(500));
+
+        final WaitPause pause = new WaitPause(WaitStrategy.Adaptive, "atomicId1", AtomicStorage.INSTANCE, history, 10, -1);
+        assertEquals(WaitPause.Outcome.PAUSED, pause.pause());
+        assertFalse(pause.isWakeUp());  // spun or yielded
+        pause.end();
+
+        // the duration of the wait is learnt
+        assertTrue(history.expected("atomicId1") < TimeUnit.MICROSECONDS.toNanos(500));
+    }
+
+    @Test
+    public void history() {
+        final WaitHistory history = new WaitHistory();
+        assertEquals(-1, history.expected("atomicId1"));
+
+        history.record("atomicId1", 1000);
+        assertEquals(1000, history.expected("atomicId1"));
+
+        history.record("atomicId1", 0);
+        assertEquals(750, history.expected("atomicId1"));
+
+        history.record("atomicId1", 1750);
+        assertEquals(1000, history.expected("atomicId1"));
+    }
+}
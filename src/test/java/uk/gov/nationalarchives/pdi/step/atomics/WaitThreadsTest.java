@@ -0,0 +1,76 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WaitThreadsTest {
+
+    @Test
+    public void platformThreads() {
+        // the classes under test are not from a Multi-Release JAR, so are always the Java 8 implementation
+        assertFalse(WaitThreads.isVirtual());
+
+        final ThreadFactory threadFactory = WaitThreads.newThreadFactory("waiter");
+        final Thread first = threadFactory.newThread(() -> {});
+        final Thread second = threadFactory.newThread(() -> {});
+        assertEquals("waiter-0", first.getName());
+        assertEquals("waiter-1", second.getName());
+        assertTrue(first.isDaemon());
+    }
+
+    @Test
+    public void executorRunsEachTaskOnItsOwnThread() throws InterruptedException {
+        final ExecutorService executor = WaitThreads.newExecutor("waiter");
+        try {
+            // the tasks can only complete if they are all running at once
+            final int tasks = 50;
+            final CountDownLatch running = new CountDownLatch(tasks);
+            final CountDownLatch completed = new CountDownLatch(tasks);
+            for (int i = 0; i < tasks; i++) {
+                executor.execute(() -> {
+                    running.countDown();
+                    try {
+                        running.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    completed.countDown();
+                });
+            }
+            assertTrue(completed.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics;
+
+import org.junit.jupiter.api.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WaitWorkerPoolTest {
+
+    @Test
+    public void orderedOutput() throws KettleException, InterruptedException {
+        final WaitWorkerPool pool = new WaitWorkerPool(4, true, WaitThreads.newThreadFactory("orderedOutput"));
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final String blockedId = "blocked";
+            final String otherId = "other";
+
+            final List<Integer> output = new ArrayList<>();
+            submit(pool, blockedId, release, 0, output);
+            for (int i = 1; i < 10; i++) {
+                submit(pool, otherId, null, i, output);
+            }
+
+            // the later tasks complete, but are held back by the first task
+            Thread.sleep(50);
+            pool.emitCompleted(0);
+            assertTrue(output.isEmpty());
+            assertFalse(pool.isIdle());
+
+            release.countDown();
+            drain(pool);
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), output);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void unorderedOutput() throws KettleException, InterruptedException {
+        final WaitWorkerPool pool = new WaitWorkerPool(4, false, WaitThreads.newThreadFactory("unorderedOutput"));
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final String blockedId = "blocked";
+            final String otherId = "other";
+
+            final List<Integer> output = new ArrayList<>();
+            submit(pool, blockedId, release, 0, output);
+            for (int i = 1; i < 10; i++) {
+                submit(pool, otherId, null, i, output);
+            }
+
+            // the later tasks are output without waiting for the first task
+            while (output.size() < 9) {
+                pool.emitCompleted(10);
+            }
+            assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9), output);
+            assertFalse(pool.isIdle());
+
+            release.countDown();
+            drain(pool);
+            assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 0), output);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void sameIdRunInTurn() throws KettleException, InterruptedException {
+        final WaitWorkerPool pool = new WaitWorkerPool(4, false, WaitThreads.newThreadFactory("sameIdRunInTurn"));
+        try {
+            final List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+            for (int i = 0; i < 100; i++) {
+                final int task = i;
+                pool.submit("atomicId1", puts -> ran.add(task));
+            }
+            drain(pool);
+
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, ran.get(i).intValue());
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void failure() throws KettleException, InterruptedException {
+        final WaitWorkerPool pool = new WaitWorkerPool(2, true, WaitThreads.newThreadFactory("failure"));
+        try {
+            pool.submit("atomicId1", puts -> {
+                throw new KettleException("failed");
+            });
+
+            final KettleException e = assertThrows(KettleException.class, () -> drain(pool));
+            assertTrue(e.getMessage().contains("failed"));
+            assertTrue(pool.isIdle());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void differentIdsDoNotBlockEachOther() throws KettleException, InterruptedException {
+        final WaitWorkerPool pool = new WaitWorkerPool(1, false, WaitThreads.newThreadFactory("differentIdsDoNotBlockEachOther"));
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<Integer> output = new ArrayList<>();
+            submit(pool, "blocked", release, 0, output);
+            submit(pool, "blocked", null, 1, output);
+            for (int i = 2; i < 10; i++) {
+                submit(pool, "atomicId" + i, null, i, output);
+            }
+
+            // even with a single worker, the tasks of the other ids are not held up by the blocked id
+            while (output.size() < 8) {
+                pool.emitCompleted(10);
+            }
+            assertEquals(new HashSet<>(Arrays.asList(2, 3, 4, 5, 6, 7, 8, 9)), new HashSet<>(output));
+
+            release.countDown();
+            drain(pool);
+            assertEquals(Arrays.asList(0, 1), output.subList(8, 10));
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void error() throws KettleException, InterruptedException {
+        final WaitWorkerPool pool = new WaitWorkerPool(1, true, WaitThreads.newThreadFactory("error"));
+        try {
+            pool.submit("atomicId1", puts -> {
+                throw new StackOverflowError();
+            });
+            final List<Integer> output = new ArrayList<>();
+            submit(pool, "atomicId1", null, 1, output);
+
+            final KettleException e = assertThrows(KettleException.class, () -> drain(pool));
+            assertTrue(e.getCause() instanceof StackOverflowError);
+
+            // the lane carries on with the next task
+            drain(pool);
+            assertEquals(Collections.singletonList(1), output);
+            assertTrue(pool.isIdle());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void closeWaitsForWorkers() throws KettleException, InterruptedException {
+        final WaitWorkerPool pool = new WaitWorkerPool(1, true, WaitThreads.newThreadFactory("closeWaitsForWorkers"));
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean finished = new AtomicBoolean();
+        pool.submit("atomicId1", puts -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (final InterruptedException e) {
+                // the pool was closed
+            }
+            finished.set(true);
+        });
+        started.await();
+
+        pool.close();
+        assertTrue(finished.get());
+    }
+
+    @Test
+    public void maxInFlight() throws KettleException, InterruptedException {
+        final WaitWorkerPool pool = new WaitWorkerPool(2, true, WaitThreads.newThreadFactory("maxInFlight"));
+        try {
+            final List<Integer> output = new ArrayList<>();
+            final int tasks = WaitWorkerPool.MAX_IN_FLIGHT_PER_WORKER * 2 * 3;
+            for (int i = 0; i < tasks; i++) {
+                submit(pool, "atomicId" + i, null, i, output);
+            }
+
+            // submit emitted completed tasks to make space for the later tasks
+            assertTrue(output.size() >= tasks - WaitWorkerPool.MAX_IN_FLIGHT_PER_WORKER * 2);
+
+            drain(pool);
+            assertEquals(tasks, output.size());
+            for (int i = 0; i < tasks; i++) {
+                assertEquals(i, output.get(i).intValue());
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    private static void submit(final WaitWorkerPool pool, final String atomicId, final CountDownLatch release,
+            final int task, final List<Integer> output) throws KettleException, InterruptedException {
+        pool.submit(atomicId, puts -> {
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new KettleException(e);
+                }
+            }
+            puts.add(() -> output.add(task));
+        });
+    }
+
+    private static void drain(final WaitWorkerPool pool) throws KettleException, InterruptedException {
+        while (!pool.isIdle()) {
+            pool.emitCompleted(10);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.analysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SynchronisationAnalysisTest {
+
+    @Test
+    public void awaitSatisfied() {
+        final SynchronisationAnalysis analysis = SynchronisationAnalysis.analyse(Arrays.asList(
+                source("gen1"),
+                compareAndSet("cas", "gen1", "x", "false", "true"),
+                source("gen2"),
+                await("await", "gen2", "x", "true")
+        ));
+
+        assertEquals(set("x"), analysis.getAtomicIds());
+        assertTrue(analysis.getFindings("cas").isEmpty());
+        assertTrue(analysis.getFindings("await").isEmpty());
+    }
+
+    @Test
+    public void awaitUnsettable() {
+        final SynchronisationAnalysis analysis = SynchronisationAnalysis.analyse(Arrays.asList(
+                source("gen1"),
+                compareAndSet("cas", "gen1", "x", "false", "true"),
+                source("gen2"),
+                await("await", "gen2", "x", "2")
+        ));
+
+        final List<SynchronisationAnalysis.Finding> findings = analysis.getFindings("await");
+        assertEquals(1, findings.size());
+        assertEquals(SynchronisationAnalysis.FindingKind.UNSETTABLE, findings.get(0).getKind());
+        assertEquals("x", findings.get(0).getAtomicId());
+        assertEquals("2", findings.get(0).getAwaitedValues());
+    }
+
+    @Test
+    public void awaitCreationUnsettable() {
+        final SynchronisationAnalysis analysis = SynchronisationAnalysis.analyse(Arrays.asList(
+                source("gen"),
+                new StepFacts("await", list("gen"), set("x"), true, set("true"), set(), set(), false)
+        ));
+
+        final List<SynchronisationAnalysis.Finding> findings = analysis.getFindings("await");
+        assertEquals(1, findings.size());
+        assertEquals(SynchronisationAnalysis.FindingKind.UNSETTABLE, findings.get(0).getKind());
+        assertEquals(SynchronisationAnalysis.AWAITED_CREATION, findings.get(0).getAwaitedValues());
+    }
+
+    @Test
+    public void cyclicWait() {
+        // await1 waits for x, before cas1 sets y; await2 waits for y, before cas2 sets x
+        final SynchronisationAnalysis analysis = SynchronisationAnalysis.analyse(Arrays.asList(
+                new StepFacts("init", list(), set("x", "y"), false, set(), set("false"), set(), false),
+                source("gen1"),
+                await("await1", "gen1", "x", "true"),
+                compareAndSet("cas1", "await1", "y", "false", "true"),
+                source("gen2"),
+                await("await2", "gen2", "y", "true"),
+                compareAndSet("cas2", "await2", "x", "false", "true")
+        ));
+
+        final List<SynchronisationAnalysis.Finding> findings1 = analysis.getFindings("await1");
+        assertEquals(1, findings1.size());
+        assertEquals(SynchronisationAnalysis.FindingKind.CYCLIC_WAIT, findings1.get(0).getKind());
+        assertEquals("cas2", findings1.get(0).getBlockingSteps());
+
+        final List<SynchronisationAnalysis.Finding> findings2 = analysis.getFindings("await2");
+        assertEquals(1, findings2.size());
+        assertEquals(SynchronisationAnalysis.FindingKind.CYCLIC_WAIT, findings2.get(0).getKind());
+        assertEquals("cas1", findings2.get(0).getBlockingSteps());
+
+        // the cas steps never receive rows, so are not reported
+        assertTrue(analysis.getFindings("cas1").isEmpty());
+        assertTrue(analysis.getFindings("cas2").isEmpty());
+    }
+
+    @Test
+    public void blocked() {
+        // await1 can never proceed, so cas1 never sets y, which await2 waits for
+        final SynchronisationAnalysis analysis = SynchronisationAnalysis.analyse(Arrays.asList(
+                source("gen1"),
+                await("await1", "gen1", "x", "true"),
+                compareAndSet("cas1", "await1", "y", "false", "true"),
+                source("gen2"),
+                await("await2", "gen2", "y", "true")
+        ));
+
+        assertEquals(SynchronisationAnalysis.FindingKind.UNSETTABLE, analysis.getFindings("await1").get(0).getKind());
+        assertEquals(SynchronisationAnalysis.FindingKind.BLOCKED, analysis.getFindings("await2").get(0).getKind());
+        assertEquals("cas1", analysis.getFindings("await2").get(0).getBlockingSteps());
+    }
+
+    @Test
+    public void dynamicAtomicIds() {
+        // a step whose Atomic IDs are unknown may set any Atomic ID, and is assumed to progress
+        final SynchronisationAnalysis analysis = SynchronisationAnalysis.analyse(Arrays.asList(
+                source("gen1"),
+                new StepFacts("cas", list("gen1"), null, false, set("false"), set("false"), set("true"), false),
+                source("gen2"),
+                await("await", "gen2", "x", "true")
+        ));
+
+        assertTrue(analysis.getFindings("cas").isEmpty());
+        assertTrue(analysis.getFindings("await").isEmpty());
+    }
+
+    @Test
+    public void relations() {
+        final SynchronisationAnalysis analysis = SynchronisationAnalysis.analyse(Arrays.asList(
+                source("gen"),
+                compareAndSet("cas", "gen", "x", "false", "true"),
+                new StepFacts("await", list("cas"), set("x"), true, set("true"), set(), set(), true)
+        ));
+
+        assertEquals("[awaits x=false, creates x=false, sets x=true]", analysis.getRelations("cas").toString());
+        assertEquals("[awaits x, awaits x=true, discards x]", analysis.getRelations("await").toString());
+        assertTrue(analysis.getRelations("gen").isEmpty());
+    }
+
+    private static StepFacts source(final String name) {
+        return new StepFacts(name, list());
+    }
+
+    private static StepFacts await(final String name, final String previousStep, final String atomicId, final String value) {
+        return new StepFacts(name, list(previousStep), set(atomicId), false, set(value), set(), set(), false);
+    }
+
+    private static StepFacts compareAndSet(final String name, final String previousStep, final String atomicId, final String compareValue, final String setValue) {
+        // initialises with the compare value, and loops until it can be set
+        return new StepFacts(name, list(previousStep), set(atomicId), false, set(compareValue), set(compareValue), set(setValue), false);
+    }
+
+    private static List<String> list(final String... values) {
+        return Arrays.asList(values);
+    }
+
+    private static Set<String> set(final String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
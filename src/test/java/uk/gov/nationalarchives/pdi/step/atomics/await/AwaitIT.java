@@ -24,6 +24,7 @@ package uk.gov.nationalarchives.pdi.step.atomics.await;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.EnumSource;
@@ -39,6 +40,7 @@ import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.TransTestFactory;
 import uk.gov.nationalarchives.pdi.step.atomics.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -471,9 +473,106 @@ public class AwaitIT {
         }
     }
 
-    private List<RowMetaAndData> generateInputData(final String atomicIdFieldName, final String atomicIdFieldValue) {
+    @Test
+    public void awaitBatch() throws KettleException {
+        final String stepName = "awaitBatch";
+        final String atomicIdFieldName = "atomicIdField";
+
+        final AwaitStepMeta awaitStepMeta = new AwaitStepMeta();
+        awaitStepMeta.setAtomicIdFieldName(atomicIdFieldName);
+        awaitStepMeta.setActionIfNoAtomic(ActionIfNoAtomic.Initialise);
+        awaitStepMeta.setAtomicType(AtomicType.Integer);
+        awaitStepMeta.setInitialiseAtomicValue("1");
+        awaitStepMeta.setAwaitValues(Arrays.asList(new AwaitTarget("1", false, TransTestFactory.DUMMY_STEPNAME)));
+        awaitStepMeta.setBatchSize(10);
+
+        final TransMeta transMeta = TransTestFactory.generateTestTransformation(new Variables(), awaitStepMeta, stepName);
+        final List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(
+                transMeta,
+                TransTestFactory.INJECTOR_STEPNAME,
+                stepName,
+                TransTestFactory.DUMMY_STEPNAME,
+                generateInputData(atomicIdFieldName, "atomicId1", "atomicId2", "atomicId1", "atomicId3", "atomicId1"));
+        assertEquals(5, result.size());
+
+        // the rows are output in the order that they were read, even though they are grouped by Atomic ID
+        final String[] expectedAtomicIds = { "atomicId1", "atomicId2", "atomicId1", "atomicId3", "atomicId1" };
+        for (int i = 0; i < expectedAtomicIds.length; i++) {
+            assertEquals(expectedAtomicIds[i], result.get(i).getString(atomicIdFieldName, null));
+        }
+
+        final Map<String, AtomicValue> stored = AtomicStorageTestHelper.copy();
+        assertEquals(3, stored.size());
+        for (final AtomicValue atomicValue : stored.values()) {
+            assertEquals(1, ((AtomicIntegerValue) atomicValue).get());
+        }
+    }
+
+    @Test
+    public void awaitBatchDiscard() throws KettleException {
+        final String stepName = "awaitBatchDiscard";
+        final String atomicIdFieldName = "atomicIdField";
+
+        final AwaitStepMeta awaitStepMeta = new AwaitStepMeta();
+        awaitStepMeta.setAtomicIdFieldName(atomicIdFieldName);
+        awaitStepMeta.setActionIfNoAtomic(ActionIfNoAtomic.Initialise);
+        awaitStepMeta.setAtomicType(AtomicType.Integer);
+        awaitStepMeta.setInitialiseAtomicValue("1");
+        awaitStepMeta.setAwaitValues(Arrays.asList(new AwaitTarget("1", true, TransTestFactory.DUMMY_STEPNAME)));
+        awaitStepMeta.setBatchSize(10);
+
+        final TransMeta transMeta = TransTestFactory.generateTestTransformation(new Variables(), awaitStepMeta, stepName);
+        final List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(
+                transMeta,
+                TransTestFactory.INJECTOR_STEPNAME,
+                stepName,
+                TransTestFactory.DUMMY_STEPNAME,
+                generateInputData(atomicIdFieldName, "atomicId1", "atomicId1", "atomicId1"));
+
+        // each row must initialise, await, and then discard the atomic in turn
+        assertEquals(3, result.size());
+        assertTrue(AtomicStorageTestHelper.copy().isEmpty());
+    }
+
+    @Test
+    public void awaitWorkers() throws KettleException {
+        final String stepName = "awaitWorkers";
+        final String atomicIdFieldName = "atomicIdField";
+
+        final AwaitStepMeta awaitStepMeta = new AwaitStepMeta();
+        awaitStepMeta.setAtomicIdFieldName(atomicIdFieldName);
+        awaitStepMeta.setActionIfNoAtomic(ActionIfNoAtomic.Initialise);
+        awaitStepMeta.setAtomicType(AtomicType.Integer);
+        awaitStepMeta.setInitialiseAtomicValue("1");
+        awaitStepMeta.setAwaitValues(Arrays.asList(new AwaitTarget("1", false, TransTestFactory.DUMMY_STEPNAME)));
+        awaitStepMeta.setWorkers(4);
+
+        final TransMeta transMeta = TransTestFactory.generateTestTransformation(new Variables(), awaitStepMeta, stepName);
+        final List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(
+                transMeta,
+                TransTestFactory.INJECTOR_STEPNAME,
+                stepName,
+                TransTestFactory.DUMMY_STEPNAME,
+                generateInputData(atomicIdFieldName, "atomicId1", "atomicId2", "atomicId1", "atomicId3", "atomicId1"));
+
+        // the rows are output in the order that they were read
+        assertEquals(5, result.size());
+        final String[] expectedAtomicIds = { "atomicId1", "atomicId2", "atomicId1", "atomicId3", "atomicId1" };
+        for (int i = 0; i < expectedAtomicIds.length; i++) {
+            assertEquals(expectedAtomicIds[i], result.get(i).getString(atomicIdFieldName, null));
+        }
+
+        final Map<String, AtomicValue> stored = AtomicStorageTestHelper.copy();
+        assertEquals(3, stored.size());
+    }
+
+    private List<RowMetaAndData> generateInputData(final String atomicIdFieldName, final String... atomicIdFieldValues) {
         final RowMeta rowMeta = new RowMeta();
         rowMeta.addValueMeta(new ValueMetaString(atomicIdFieldName));
-        return Arrays.asList(new RowMetaAndData(rowMeta, new Object[] { atomicIdFieldValue }));
+        final List<RowMetaAndData> inputData = new ArrayList<>(atomicIdFieldValues.length);
+        for (final String atomicIdFieldValue : atomicIdFieldValues) {
+            inputData.add(new RowMetaAndData(rowMeta, new Object[] { atomicIdFieldValue }));
+        }
+        return inputData;
     }
 }
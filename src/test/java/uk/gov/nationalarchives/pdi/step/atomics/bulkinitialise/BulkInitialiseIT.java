@@ -0,0 +1,182 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.bulkinitialise;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.variables.Variables;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransTestFactory;
+import uk.gov.nationalarchives.pdi.step.atomics.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkInitialiseIT {
+
+    @BeforeAll
+    public static void setup() throws KettleException {
+        KettleClientEnvironment.init();
+    }
+
+    @AfterEach
+    public void resetStorage() {
+        AtomicStorageTestHelper.clear();
+    }
+
+    @SuppressWarnings("unused")
+    private static Stream<Arguments> initialiseArgs() {
+        return Stream.of(
+                Arguments.of(AtomicType.Integer, "1", 3),
+                Arguments.of(AtomicType.Boolean, "true", 3),
+                Arguments.of(AtomicType.Integer, "1", 1),
+                Arguments.of(AtomicType.Boolean, "true", 1000)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("initialiseArgs")
+    public void initialise(final AtomicType atomicType, final String initialiseValue, final int batchSize) throws KettleException {
+        final String stepName = "initialise";
+        final String atomicIdFieldName = "atomicIdField";
+        final int numRows = 10;
+
+        final BulkInitialiseStepMeta bulkInitialiseStepMeta = new BulkInitialiseStepMeta();
+        bulkInitialiseStepMeta.setAtomicIdFieldName(atomicIdFieldName);
+        bulkInitialiseStepMeta.setAtomicType(atomicType);
+        bulkInitialiseStepMeta.setInitialiseAtomicValue(initialiseValue);
+        bulkInitialiseStepMeta.setBatchSize(batchSize);
+
+        final TransMeta transMeta = TransTestFactory.generateTestTransformation(new Variables(), bulkInitialiseStepMeta, stepName);
+        final List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(
+                transMeta,
+                TransTestFactory.INJECTOR_STEPNAME,
+                stepName,
+                TransTestFactory.DUMMY_STEPNAME,
+                generateInputData(atomicIdFieldName, null, numRows));
+        assertEquals(numRows, result.size());
+
+        final Map<String, AtomicValue> stored = AtomicStorageTestHelper.copy();
+        assertEquals(numRows, stored.size());
+        for (int i = 0; i < numRows; i++) {
+            final AtomicValue atomicValue = stored.get("atomicId" + i);
+            assertNotNull(atomicValue);
+            assertEquals(atomicType, atomicValue.getType());
+            if (atomicType == AtomicType.Integer) {
+                assertEquals(Integer.valueOf(initialiseValue), ((AtomicIntegerValue) atomicValue).get());
+            } else {
+                assertEquals(Boolean.valueOf(initialiseValue), ((AtomicBooleanValue) atomicValue).get());
+            }
+        }
+    }
+
+    @Test
+    public void initialiseFromField() throws KettleException {
+        final String stepName = "initialiseFromField";
+        final String atomicIdFieldName = "atomicIdField";
+        final String initialiseValueFieldName = "initialiseValueField";
+        final int numRows = 10;
+
+        final BulkInitialiseStepMeta bulkInitialiseStepMeta = new BulkInitialiseStepMeta();
+        bulkInitialiseStepMeta.setAtomicIdFieldName(atomicIdFieldName);
+        bulkInitialiseStepMeta.setAtomicType(AtomicType.Integer);
+        bulkInitialiseStepMeta.setInitialiseAtomicValue("0");
+        bulkInitialiseStepMeta.setInitialiseAtomicValueFieldName(initialiseValueFieldName);
+        bulkInitialiseStepMeta.setBatchSize(4);
+
+        final TransMeta transMeta = TransTestFactory.generateTestTransformation(new Variables(), bulkInitialiseStepMeta, stepName);
+        final List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(
+                transMeta,
+                TransTestFactory.INJECTOR_STEPNAME,
+                stepName,
+                TransTestFactory.DUMMY_STEPNAME,
+                generateInputData(atomicIdFieldName, initialiseValueFieldName, numRows));
+        assertEquals(numRows, result.size());
+
+        final Map<String, AtomicValue> stored = AtomicStorageTestHelper.copy();
+        assertEquals(numRows, stored.size());
+        for (int i = 0; i < numRows; i++) {
+            final AtomicValue atomicValue = stored.get("atomicId" + i);
+            assertNotNull(atomicValue);
+            assertEquals(i, ((AtomicIntegerValue) atomicValue).get());
+        }
+    }
+
+    @Test
+    public void initialiseExistingAtomic() throws KettleException {
+        final String stepName = "initialiseExistingAtomic";
+        final String atomicIdFieldName = "atomicIdField";
+        final int numRows = 5;
+
+        // prepare the storage
+        final AtomicIntegerValue existing = new AtomicIntegerValue(99);
+        AtomicStorageTestHelper.set("atomicId2", existing);
+
+        final BulkInitialiseStepMeta bulkInitialiseStepMeta = new BulkInitialiseStepMeta();
+        bulkInitialiseStepMeta.setAtomicIdFieldName(atomicIdFieldName);
+        bulkInitialiseStepMeta.setAtomicType(AtomicType.Integer);
+        bulkInitialiseStepMeta.setInitialiseAtomicValue("1");
+
+        final TransMeta transMeta = TransTestFactory.generateTestTransformation(new Variables(), bulkInitialiseStepMeta, stepName);
+        final List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(
+                transMeta,
+                TransTestFactory.INJECTOR_STEPNAME,
+                stepName,
+                TransTestFactory.DUMMY_STEPNAME,
+                generateInputData(atomicIdFieldName, null, numRows));
+        assertEquals(numRows, result.size());
+
+        final Map<String, AtomicValue> stored = AtomicStorageTestHelper.copy();
+        assertEquals(numRows, stored.size());
+        assertSame(existing, stored.get("atomicId2"));
+        assertEquals(99, existing.get());
+    }
+
+    private List<RowMetaAndData> generateInputData(final String atomicIdFieldName, final String initialiseValueFieldName, final int numRows) {
+        final RowMeta rowMeta = new RowMeta();
+        rowMeta.addValueMeta(new ValueMetaString(atomicIdFieldName));
+        if (initialiseValueFieldName != null) {
+            rowMeta.addValueMeta(new ValueMetaString(initialiseValueFieldName));
+        }
+
+        final List<RowMetaAndData> rows = new ArrayList<>(numRows);
+        for (int i = 0; i < numRows; i++) {
+            final Object[] row = initialiseValueFieldName != null ? new Object[] { "atomicId" + i, Integer.toString(i) } : new Object[] { "atomicId" + i };
+            rows.add(new RowMetaAndData(rowMeta, row));
+        }
+        return rows;
+    }
+}
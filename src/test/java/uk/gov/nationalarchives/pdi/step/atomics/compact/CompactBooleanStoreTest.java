@@ -0,0 +1,265 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.compact;
+
+import org.junit.jupiter.api.Test;
+import uk.gov.nationalarchives.pdi.step.atomics.*;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactBooleanStoreTest {
+
+    @Test
+    public void getNoSuchAtomic() {
+        final CompactBooleanStore store = new CompactBooleanStore();
+        assertNull(store.get("no-such-id", AtomicType.Boolean));
+        assertNull(store.get("no-such-id", AtomicType.Integer));
+    }
+
+    @Test
+    public void getOrCreate() {
+        final CompactBooleanStore store = new CompactBooleanStore();
+
+        final AtomicValue atomicBool1 = store.getOrCreate("atomicBool1", AtomicType.Boolean, "false");
+        assertTrue(atomicBool1 instanceof CompactBooleanValue);
+        assertFalse(((AtomicBooleanValue) atomicBool1).get());
+
+        final AtomicValue atomicBool2 = store.getOrCreate("atomicBool2", AtomicType.Boolean, "true");
+        assertTrue(((AtomicBooleanValue) atomicBool2).get());
+
+        // the existing value is returned, and its initial value is ignored
+        final AtomicValue atomicBool11 = store.getOrCreate("atomicBool1", AtomicType.Boolean, "true");
+        assertTrue(((AtomicBooleanValue) atomicBool11).compareAndSet(false, true));
+        assertTrue(((AtomicBooleanValue) atomicBool1).get());
+        assertFalse(((AtomicBooleanValue) atomicBool1).compareAndSet(false, true));
+        assertTrue(((AtomicBooleanValue) atomicBool1).compareAndSet(true, true));
+
+        // neighbouring bits are unaffected
+        assertTrue(((AtomicBooleanValue) atomicBool2).compareAndSet(true, false));
+        assertTrue(((AtomicBooleanValue) store.get("atomicBool1", AtomicType.Boolean)).get());
+        assertFalse(((AtomicBooleanValue) store.get("atomicBool2", AtomicType.Boolean)).get());
+
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void getOrCreateInvalidType() {
+        final CompactBooleanStore store = new CompactBooleanStore();
+        assertThrows(IllegalArgumentException.class, () -> store.getOrCreate("atomicInt1", AtomicType.Integer, "1"));
+        assertNull(store.get("atomicInt1", AtomicType.Integer));
+
+        store.getOrCreate("atomicBool1", AtomicType.Boolean, "true");
+        assertThrows(IllegalArgumentException.class, () -> store.getOrCreate("atomicBool1", AtomicType.Integer, "1"));
+        assertThrows(IllegalArgumentException.class, () -> store.get("atomicBool1", AtomicType.Integer));
+        assertThrows(IllegalArgumentException.class, () -> store.getOrCreate("atomicBool2", AtomicType.Boolean, "maybe"));
+    }
+
+    @Test
+    public void getOrCreateAll() {
+        final CompactBooleanStore store = new CompactBooleanStore();
+        store.getOrCreate("atomicBool1", AtomicType.Boolean, "true");
+
+        final List<Map.Entry<String, String>> batch = Arrays.asList(
+                new AbstractMap.SimpleImmutableEntry<>("atomicBool1", "false"),
+                new AbstractMap.SimpleImmutableEntry<>("atomicBool2", "true"),
+                new AbstractMap.SimpleImmutableEntry<>("atomicBool2", "false"),
+                new AbstractMap.SimpleImmutableEntry<>("atomicBool3", "false"));
+        assertEquals(2, store.getOrCreateAll(AtomicType.Boolean, batch));
+
+        assertTrue(((AtomicBooleanValue) store.get("atomicBool1", AtomicType.Boolean)).get());
+        assertTrue(((AtomicBooleanValue) store.get("atomicBool2", AtomicType.Boolean)).get());
+        assertFalse(((AtomicBooleanValue) store.get("atomicBool3", AtomicType.Boolean)).get());
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    public void staleReferenceIsDetached() {
+        final CompactBooleanStore store = new CompactBooleanStore();
+        final AtomicBooleanValue removed = (AtomicBooleanValue) store.getOrCreate("atomicBool1", AtomicType.Boolean, "false");
+
+        assertTrue(store.remove("atomicBool1"));
+        assertFalse(store.remove("atomicBool1"));
+        assertNull(store.get("atomicBool1", AtomicType.Boolean));
+        assertEquals(0, store.size());
+
+        // a stale reference to the removed value must not change the re-created value
+        final AtomicBooleanValue recreated = (AtomicBooleanValue) store.getOrCreate("atomicBool1", AtomicType.Boolean, "false");
+        assertTrue(removed.compareAndSet(false, true));
+        assertFalse(recreated.get());
+        assertTrue(removed.get());
+
+        assertTrue(recreated.compareAndSet(false, true));
+        assertTrue(removed.compareAndSet(true, false));
+        assertTrue(recreated.get());
+    }
+
+    @Test
+    public void removeReusesLane() {
+        final CompactBooleanStore store = new CompactBooleanStore();
+        final AtomicBooleanValue first = (AtomicBooleanValue) store.getOrCreate("atomicBool0", AtomicType.Boolean, "false");
+
+        // discarding and recreating Atomic Values reuses their lanes
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(store.remove("atomicBool" + i));
+            store.getOrCreate("atomicBool" + (i + 1), AtomicType.Boolean, Boolean.toString(i % 2 == 0));
+        }
+        assertEquals(1, store.size());
+        assertEquals(100_001 / (CompactBooleanValue.GENERATIONS - 1) + 1, store.lanes());  // a lane is retired after its last generation
+        assertFalse(((AtomicBooleanValue) store.get("atomicBool100000", AtomicType.Boolean)).get());
+
+        // the lane has been reused many times, but the first reference stays detached
+        assertFalse(first.get());
+        assertTrue(first.compareAndSet(false, true));
+        assertFalse(((AtomicBooleanValue) store.get("atomicBool100000", AtomicType.Boolean)).get());
+    }
+
+    @Test
+    public void laneIsRetiredBeforeItsGenerationWraps() {
+        final CompactBooleanStore store = new CompactBooleanStore();
+        final AtomicBooleanValue stale = (AtomicBooleanValue) store.getOrCreate("atomicBool1", AtomicType.Boolean, "false");
+
+        // discard and recreate one hot id until its lane has reached its last generation
+        for (int i = 1; i < CompactBooleanValue.GENERATIONS - 1; i++) {
+            assertTrue(store.remove("atomicBool1"));
+            store.getOrCreate("atomicBool1", AtomicType.Boolean, "false");
+            assertEquals(1, store.lanes());
+        }
+        assertTrue(store.remove("atomicBool1"));
+
+        // the lane is retired, rather than wrapping around to the generation of the stale reference
+        final AtomicBooleanValue recreated = (AtomicBooleanValue) store.getOrCreate("atomicBool1", AtomicType.Boolean, "false");
+        assertEquals(2, store.lanes());
+        assertTrue(stale.compareAndSet(false, true));
+        assertFalse(recreated.get());
+        for (int i = 0; i < CompactBooleanValue.GENERATIONS; i++) {
+            assertTrue(store.remove("atomicBool1"));
+            store.getOrCreate("atomicBool1", AtomicType.Boolean, "false");
+        }
+        assertTrue(stale.compareAndSet(true, false));
+        assertTrue(stale.compareAndSet(false, true));
+        assertFalse(((AtomicBooleanValue) store.get("atomicBool1", AtomicType.Boolean)).get());
+    }
+
+    @Test
+    public void staleReferencesAreDetachedOnTheirOwn() {
+        final CompactBooleanStore store = new CompactBooleanStore();
+        final AtomicBooleanValue stale1 = (AtomicBooleanValue) store.getOrCreate("atomicBool1", AtomicType.Boolean, "false");
+        final AtomicBooleanValue stale2 = (AtomicBooleanValue) store.getOrCreate("atomicBool1", AtomicType.Boolean, "false");
+        assertTrue(stale2.compareAndSet(false, true));
+        assertTrue(store.remove("atomicBool1"));
+
+        // each stale reference continues from the last value that it saw
+        assertTrue(stale2.get());
+        assertTrue(stale1.compareAndSet(false, true));
+        assertTrue(stale1.compareAndSet(true, false));
+        assertFalse(stale1.get());
+        assertTrue(stale2.get());
+    }
+
+    @Test
+    public void resizeKeepsValues() {
+        final CompactBooleanStore store = new CompactBooleanStore();
+        final int count = 100_000;
+        for (int i = 0; i < count; i++) {
+            store.getOrCreate("record:" + i, AtomicType.Boolean, Boolean.toString(i % 3 == 0));
+            if (i % 5 == 0) {
+                assertTrue(store.remove("record:" + i));
+            }
+        }
+
+        assertEquals(count - (count / 5), store.size());
+        for (int i = 0; i < count; i++) {
+            final AtomicBooleanValue value = (AtomicBooleanValue) store.get("record:" + i, AtomicType.Boolean);
+            if (i % 5 == 0) {
+                assertNull(value);
+            } else {
+                assertNotNull(value, "record:" + i);
+                assertEquals(i % 3 == 0, value.get(), "record:" + i);
+            }
+        }
+    }
+
+    @Test
+    public void nonAsciiAndLongIds() {
+        final CompactBooleanStore store = new CompactBooleanStore();
+        final char[] longId = new char[CompactBooleanStore.MAX_ID_LENGTH];
+        Arrays.fill(longId, 'x');
+
+        store.getOrCreate("atömïc", AtomicType.Boolean, "true");
+        store.getOrCreate(new String(longId), AtomicType.Boolean, "true");
+        assertTrue(((AtomicBooleanValue) store.get("atömïc", AtomicType.Boolean)).get());
+        assertNull(store.get("atomic", AtomicType.Boolean));
+        assertTrue(((AtomicBooleanValue) store.get(new String(longId), AtomicType.Boolean)).get());
+
+        assertThrows(IllegalArgumentException.class, () -> store.getOrCreate(new String(longId) + "x", AtomicType.Boolean, "true"));
+    }
+
+    @Test
+    public void concurrentCompareAndSetOfNeighbouringBits() throws InterruptedException {
+        final CompactBooleanStore store = new CompactBooleanStore();
+        final int threads = 8;
+        final int perThread = 1_000;
+
+        // every value shares a word with the values of the other threads
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger set = new AtomicInteger();
+        final List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            final Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    final String id = "atomicBool" + ((i * threads) + thread);
+                    final AtomicBooleanValue value = (AtomicBooleanValue) store.getOrCreate(id, AtomicType.Boolean, "false");
+                    if (value.compareAndSet(false, true)) {
+                        set.incrementAndGet();
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(threads * perThread, set.get());
+        for (int i = 0; i < threads * perThread; i++) {
+            assertTrue(((AtomicBooleanValue) store.get("atomicBool" + i, AtomicType.Boolean)).get());
+        }
+    }
+}
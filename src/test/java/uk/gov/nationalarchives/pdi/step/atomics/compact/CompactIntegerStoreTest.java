@@ -0,0 +1,224 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.compact;
+
+import org.junit.jupiter.api.Test;
+import uk.gov.nationalarchives.pdi.step.atomics.*;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactIntegerStoreTest {
+
+    @Test
+    public void getNoSuchAtomic() {
+        final CompactIntegerStore store = new CompactIntegerStore();
+        assertNull(store.get("no-such-id", AtomicType.Integer));
+        assertNull(store.get("no-such-id", AtomicType.Boolean));
+    }
+
+    @Test
+    public void getOrCreate() {
+        final CompactIntegerStore store = new CompactIntegerStore();
+
+        final AtomicValue atomicInt1 = store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        assertTrue(atomicInt1 instanceof CompactIntegerValue);
+        assertEquals(1, ((AtomicIntegerValue) atomicInt1).get());
+
+        final AtomicValue atomicInt2 = store.getOrCreate("atomicInt2", AtomicType.Integer, "-2");
+        assertEquals(-2, ((AtomicIntegerValue) atomicInt2).get());
+
+        // the existing value is returned, and its initial value is ignored
+        final AtomicValue atomicInt11 = store.getOrCreate("atomicInt1", AtomicType.Integer, "5");
+        assertTrue(((AtomicIntegerValue) atomicInt11).compareAndSet(1, 2));
+        assertEquals(2, ((AtomicIntegerValue) atomicInt1).get());
+        assertFalse(((AtomicIntegerValue) atomicInt1).compareAndSet(1, 3));
+
+        assertEquals(-2, ((AtomicIntegerValue) store.get("atomicInt2", AtomicType.Integer)).get());
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void getOrCreateInvalidType() {
+        final CompactIntegerStore store = new CompactIntegerStore();
+        assertThrows(IllegalArgumentException.class, () -> store.getOrCreate("atomicBool1", AtomicType.Boolean, "true"));
+        assertNull(store.get("atomicBool1", AtomicType.Boolean));
+
+        store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        assertThrows(IllegalArgumentException.class, () -> store.getOrCreate("atomicInt1", AtomicType.Boolean, "true"));
+        assertThrows(IllegalArgumentException.class, () -> store.get("atomicInt1", AtomicType.Boolean));
+        assertThrows(IllegalArgumentException.class, () -> store.getOrCreate("atomicInt2", AtomicType.Integer, "one"));
+    }
+
+    @Test
+    public void getOrCreateAll() {
+        final CompactIntegerStore store = new CompactIntegerStore();
+        store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+
+        final List<Map.Entry<String, String>> batch = new ArrayList<>();
+        batch.add(new AbstractMap.SimpleImmutableEntry<>("atomicInt1", "10"));
+        batch.add(new AbstractMap.SimpleImmutableEntry<>("atomicInt2", "2"));
+        batch.add(new AbstractMap.SimpleImmutableEntry<>("atomicInt2", "20"));
+        for (int i = 3; i <= 1_000; i++) {
+            batch.add(new AbstractMap.SimpleImmutableEntry<>("atomicInt" + i, Integer.toString(i)));
+        }
+        assertEquals(999, store.getOrCreateAll(AtomicType.Integer, batch));
+
+        // the first initial value of an id in the batch wins
+        for (int i = 1; i <= 1_000; i++) {
+            assertEquals(i, ((AtomicIntegerValue) store.get("atomicInt" + i, AtomicType.Integer)).get());
+        }
+        assertEquals(1_000, store.size());
+
+        // nothing is created if any of the initial values are invalid
+        assertThrows(IllegalArgumentException.class, () -> store.getOrCreateAll(AtomicType.Integer, Arrays.asList(
+                new AbstractMap.SimpleImmutableEntry<>("atomicInt1001", "1001"),
+                new AbstractMap.SimpleImmutableEntry<>("atomicInt1002", "one thousand and two"))));
+        assertNull(store.get("atomicInt1001", AtomicType.Integer));
+    }
+
+    @Test
+    public void staleReferencesAreDetachedOnTheirOwn() {
+        final CompactIntegerStore store = new CompactIntegerStore();
+        final AtomicIntegerValue stale1 = (AtomicIntegerValue) store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        final AtomicIntegerValue stale2 = (AtomicIntegerValue) store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        assertTrue(stale2.compareAndSet(1, 2));
+        assertTrue(store.remove("atomicInt1"));
+
+        // each stale reference continues from the last value that it saw
+        assertEquals(2, stale2.get());
+        assertTrue(stale1.compareAndSet(1, 3));
+        assertEquals(3, stale1.get());
+        assertEquals(2, stale2.get());
+    }
+
+    @Test
+    public void staleReferenceIsDetached() {
+        final CompactIntegerStore store = new CompactIntegerStore();
+        final AtomicIntegerValue removed = (AtomicIntegerValue) store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+
+        assertTrue(store.remove("atomicInt1"));
+        assertFalse(store.remove("atomicInt1"));
+        assertNull(store.get("atomicInt1", AtomicType.Integer));
+        assertEquals(0, store.size());
+
+        // a stale reference to the removed value must not change the re-created value
+        final AtomicIntegerValue recreated = (AtomicIntegerValue) store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        assertTrue(removed.compareAndSet(1, 2));
+        assertEquals(1, recreated.get());
+        assertEquals(2, removed.get());
+
+        assertTrue(recreated.compareAndSet(1, 3));
+        assertEquals(2, removed.get());
+    }
+
+    @Test
+    public void removeReusesSlot() {
+        final CompactIntegerStore store = new CompactIntegerStore();
+        for (int i = 0; i < 1_000; i++) {
+            store.getOrCreate("atomicInt" + i, AtomicType.Integer, Integer.toString(i));
+        }
+
+        // discarding and recreating Atomic Values reuses their slots
+        for (int round = 1; round <= 100; round++) {
+            for (int i = 0; i < 1_000; i++) {
+                assertTrue(store.remove("atomicInt" + i));
+                store.getOrCreate("atomicInt" + i, AtomicType.Integer, Integer.toString(round));
+            }
+        }
+        assertEquals(1_000, store.size());
+        assertEquals(1_000, store.slots());
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(100, ((AtomicIntegerValue) store.get("atomicInt" + i, AtomicType.Integer)).get());
+        }
+    }
+
+    @Test
+    public void resizeKeepsValues() {
+        final CompactIntegerStore store = new CompactIntegerStore();
+        final int count = 200_000;
+        for (int i = 0; i < count; i++) {
+            store.getOrCreate("record:" + i, AtomicType.Integer, Integer.toString(i));
+            if (i % 7 == 0) {
+                assertTrue(store.remove("record:" + i));
+            }
+        }
+
+        assertEquals(count - ((count + 6) / 7), store.size());
+        for (int i = 0; i < count; i++) {
+            final AtomicIntegerValue value = (AtomicIntegerValue) store.get("record:" + i, AtomicType.Integer);
+            if (i % 7 == 0) {
+                assertNull(value);
+            } else {
+                assertNotNull(value, "record:" + i);
+                assertEquals(i, value.get(), "record:" + i);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentIncrementsWhilstResizing() throws InterruptedException {
+        final CompactIntegerStore store = new CompactIntegerStore();
+        final int threads = 8;
+        final int increments = 10_000;
+        final AtomicIntegerValue counter = (AtomicIntegerValue) store.getOrCreate("counter", AtomicType.Integer, "0");
+
+        // each thread also creates its own ids, so that the shards resize whilst the counter is incremented
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            final Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < increments; i++) {
+                    store.getOrCreate("atomicInt" + thread + ":" + i, AtomicType.Integer, "0");
+                    final AtomicIntegerValue value = (AtomicIntegerValue) store.get("counter", AtomicType.Integer);
+                    int current;
+                    do {
+                        current = value.get();
+                    } while (!value.compareAndSet(current, current + 1));
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(threads * increments, counter.get());
+        assertEquals(1 + (threads * increments), store.size());
+    }
+}
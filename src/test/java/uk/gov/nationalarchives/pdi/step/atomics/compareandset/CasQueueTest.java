@@ -0,0 +1,150 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.compareandset;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CasQueueTest {
+
+    @Test
+    public void firstInFirstOut() {
+        final CasQueue casQueue = new CasQueue();
+        final CasQueue.Contender first = casQueue.join("id1");
+        final CasQueue.Contender second = casQueue.join("id1");
+        final CasQueue.Contender third = casQueue.join("id1");
+        assertEquals(3, casQueue.size("id1"));
+
+        assertTrue(first.isFirst());
+        assertFalse(second.isFirst());
+        assertFalse(third.isFirst());
+
+        first.leave();
+        assertTrue(second.isFirst());
+        assertFalse(third.isFirst());
+
+        second.leave();
+        assertTrue(third.isFirst());
+
+        third.leave();
+        assertEquals(0, casQueue.size("id1"));
+    }
+
+    @Test
+    public void leaveBeforeFirst() {
+        final CasQueue casQueue = new CasQueue();
+        final CasQueue.Contender first = casQueue.join("id1");
+        final CasQueue.Contender second = casQueue.join("id1");
+        final CasQueue.Contender third = casQueue.join("id1");
+
+        // e.g. the second contender timed out
+        second.leave();
+        assertTrue(first.isFirst());
+        assertFalse(third.isFirst());
+
+        first.leave();
+        assertTrue(third.isFirst());
+        third.leave();
+        assertEquals(0, casQueue.size("id1"));
+    }
+
+    @Test
+    public void separateKeys() {
+        final CasQueue casQueue = new CasQueue();
+        final CasQueue.Contender contender1 = casQueue.join("id1");
+        final CasQueue.Contender contender2 = casQueue.join("id2");
+        assertTrue(contender1.isFirst());
+        assertTrue(contender2.isFirst());
+        contender1.leave();
+        contender2.leave();
+    }
+
+    @Test
+    public void leaveWakesNext() throws InterruptedException {
+        final CasQueue casQueue = new CasQueue();
+        final CasQueue.Contender first = casQueue.join("id1");
+
+        final CountDownLatch joined = new CountDownLatch(1);
+        final long[] waited = new long[1];
+        final Thread thread = new Thread(() -> {
+            final CasQueue.Contender second = casQueue.join("id1");
+            joined.countDown();
+            final long start = System.nanoTime();
+            while (!second.isFirst()) {
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(10));
+            }
+            waited[0] = System.nanoTime() - start;
+            second.leave();
+        });
+        thread.start();
+
+        assertTrue(joined.await(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        first.leave();
+        thread.join(5000);
+
+        assertFalse(thread.isAlive());
+        assertTrue(waited[0] < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void servedInArrivalOrder() throws InterruptedException {
+        final CasQueue casQueue = new CasQueue();
+        final CasQueue.Contender holder = casQueue.join("id1");
+
+        final List<Integer> served = Collections.synchronizedList(new ArrayList<>());
+        final Thread[] threads = new Thread[5];
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+            final CountDownLatch joined = new CountDownLatch(1);
+            threads[i] = new Thread(() -> {
+                final CasQueue.Contender contender = casQueue.join("id1");
+                joined.countDown();
+                while (!contender.isFirst()) {
+                    Thread.yield();
+                }
+                served.add(n);
+                contender.leave();
+            });
+            threads[i].start();
+            assertTrue(joined.await(5, TimeUnit.SECONDS));
+        }
+
+        holder.leave();
+        for (final Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), served);
+        assertEquals(0, casQueue.size("id1"));
+    }
+}
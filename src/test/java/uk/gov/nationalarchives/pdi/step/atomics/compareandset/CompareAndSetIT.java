@@ -24,6 +24,7 @@ package uk.gov.nationalarchives.pdi.step.atomics.compareandset;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.EnumSource;
@@ -39,6 +40,7 @@ import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.TransTestFactory;
 import uk.gov.nationalarchives.pdi.step.atomics.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -729,9 +731,92 @@ public class CompareAndSetIT {
         }
     }
 
-    private List<RowMetaAndData> generateInputData(final String atomicIdFieldName, final String atomicIdFieldValue) {
+    @Test
+    public void casBatch() throws KettleException {
+        final String stepName = "casBatch";
+        final String atomicIdFieldName = "atomicIdField";
+
+        final CompareAndSetStepMeta compareAndSetStepMeta = new CompareAndSetStepMeta();
+        compareAndSetStepMeta.setAtomicIdFieldName(atomicIdFieldName);
+        compareAndSetStepMeta.setActionIfNoAtomic(ActionIfNoAtomic.Initialise);
+        compareAndSetStepMeta.setAtomicType(AtomicType.Integer);
+        compareAndSetStepMeta.setInitialiseAtomicValue("0");
+        compareAndSetStepMeta.setCompareAndSetValues(Arrays.asList(
+                new CompareAndSetTarget("0", "1", TransTestFactory.DUMMY_STEPNAME),
+                new CompareAndSetTarget("1", "2", TransTestFactory.DUMMY_STEPNAME),
+                new CompareAndSetTarget("2", "3", TransTestFactory.DUMMY_STEPNAME)
+        ));
+        compareAndSetStepMeta.setBatchSize(10);
+
+        final TransMeta transMeta = TransTestFactory.generateTestTransformation(new Variables(), compareAndSetStepMeta, stepName);
+        final List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(
+                transMeta,
+                TransTestFactory.INJECTOR_STEPNAME,
+                stepName,
+                TransTestFactory.DUMMY_STEPNAME,
+                generateInputData(atomicIdFieldName, "atomicId1", "atomicId2", "atomicId1", "atomicId1"));
+        assertEquals(4, result.size());
+
+        // the rows are output in the order that they were read
+        final String[] expectedAtomicIds = { "atomicId1", "atomicId2", "atomicId1", "atomicId1" };
+        for (int i = 0; i < expectedAtomicIds.length; i++) {
+            assertEquals(expectedAtomicIds[i], result.get(i).getString(atomicIdFieldName, null));
+        }
+
+        // each row in a batch is a separate CAS
+        final Map<String, AtomicValue> stored = AtomicStorageTestHelper.copy();
+        assertEquals(2, stored.size());
+        assertEquals(3, ((AtomicIntegerValue) stored.get("atomicId1")).get());
+        assertEquals(1, ((AtomicIntegerValue) stored.get("atomicId2")).get());
+    }
+
+    @Test
+    public void casWorkers() throws KettleException {
+        final String stepName = "casWorkers";
+        final String atomicIdFieldName = "atomicIdField";
+
+        final CompareAndSetStepMeta compareAndSetStepMeta = new CompareAndSetStepMeta();
+        compareAndSetStepMeta.setAtomicIdFieldName(atomicIdFieldName);
+        compareAndSetStepMeta.setActionIfNoAtomic(ActionIfNoAtomic.Initialise);
+        compareAndSetStepMeta.setAtomicType(AtomicType.Integer);
+        compareAndSetStepMeta.setInitialiseAtomicValue("0");
+        compareAndSetStepMeta.setCompareAndSetValues(Arrays.asList(
+                new CompareAndSetTarget("0", "1", TransTestFactory.DUMMY_STEPNAME),
+                new CompareAndSetTarget("1", "2", TransTestFactory.DUMMY_STEPNAME),
+                new CompareAndSetTarget("2", "3", TransTestFactory.DUMMY_STEPNAME)
+        ));
+        compareAndSetStepMeta.setWorkers(4);
+
+        final TransMeta transMeta = TransTestFactory.generateTestTransformation(new Variables(), compareAndSetStepMeta, stepName);
+        final List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(
+                transMeta,
+                TransTestFactory.INJECTOR_STEPNAME,
+                stepName,
+                TransTestFactory.DUMMY_STEPNAME,
+                generateInputData(atomicIdFieldName, "atomicId1", "atomicId2", "atomicId1", "atomicId3", "atomicId1"));
+
+        // the rows are output in the order that they were read
+        assertEquals(5, result.size());
+        final String[] expectedAtomicIds = { "atomicId1", "atomicId2", "atomicId1", "atomicId3", "atomicId1" };
+        for (int i = 0; i < expectedAtomicIds.length; i++) {
+            assertEquals(expectedAtomicIds[i], result.get(i).getString(atomicIdFieldName, null));
+        }
+
+        // the rows of each Atomic ID are CAS'd in turn
+        final Map<String, AtomicValue> stored = AtomicStorageTestHelper.copy();
+        assertEquals(3, stored.size());
+        assertEquals(3, ((AtomicIntegerValue) stored.get("atomicId1")).get());
+        assertEquals(1, ((AtomicIntegerValue) stored.get("atomicId2")).get());
+        assertEquals(1, ((AtomicIntegerValue) stored.get("atomicId3")).get());
+    }
+
+    private List<RowMetaAndData> generateInputData(final String atomicIdFieldName, final String... atomicIdFieldValues) {
         final RowMeta rowMeta = new RowMeta();
         rowMeta.addValueMeta(new ValueMetaString(atomicIdFieldName));
-        return Arrays.asList(new RowMetaAndData(rowMeta, new Object[] { atomicIdFieldValue }));
+        final List<RowMetaAndData> inputData = new ArrayList<>(atomicIdFieldValues.length);
+        for (final String atomicIdFieldValue : atomicIdFieldValues) {
+            inputData.add(new RowMetaAndData(rowMeta, new Object[] { atomicIdFieldValue }));
+        }
+        return inputData;
     }
 }
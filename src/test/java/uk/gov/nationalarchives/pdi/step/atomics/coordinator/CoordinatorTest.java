@@ -0,0 +1,274 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.coordinator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.gov.nationalarchives.pdi.step.atomics.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CoordinatorTest {
+
+    private CoordinatorServer server;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = CoordinatorServer.start(InetAddress.getLoopbackAddress(), 0, AtomicStorage.INSTANCE);
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        server.close();
+        AtomicStorageTestHelper.clear();
+    }
+
+    @Test
+    public void getNoSuchAtomic() {
+        assertNull(provider().getAtomic("no-such-id", AtomicType.Integer));
+    }
+
+    @Test
+    public void getOrCreateIsVisibleToOtherClient() {
+        final CoordinatorStorageProvider provider1 = provider();
+        final CoordinatorStorageProvider provider2 = provider();
+
+        final AtomicValue atomicInt1 = provider1.getOrCreateAtomic("atomicInt1", AtomicType.Integer, "1");
+        assertTrue(atomicInt1 instanceof RemoteIntegerValue);
+        assertEquals(1, ((AtomicIntegerValue) atomicInt1).get());
+
+        final AtomicValue atomicInt11 = provider2.getAtomic("atomicInt1", AtomicType.Integer);
+        assertNotNull(atomicInt11);
+        assertTrue(((AtomicIntegerValue) atomicInt11).compareAndSet(1, 2));
+        assertEquals(2, ((AtomicIntegerValue) atomicInt1).get());
+        assertFalse(((AtomicIntegerValue) atomicInt1).compareAndSet(1, 3));
+
+        // the server's storage holds the value
+        assertEquals(2, ((AtomicIntegerValue) AtomicStorage.INSTANCE.getAtomic("atomicInt1", AtomicType.Integer)).get());
+
+        final AtomicValue atomicBool1 = provider2.getOrCreateAtomic("atomicBool1", AtomicType.Boolean, "false");
+        assertTrue(((AtomicBooleanValue) atomicBool1).compareAndSet(false, true));
+        assertTrue(((AtomicBooleanValue) provider1.getOrCreateAtomic("atomicBool1", AtomicType.Boolean, "false")).get());
+
+        assertTrue(provider1.removeAtomic("atomicInt1"));
+        assertFalse(provider2.removeAtomic("atomicInt1"));
+        assertNull(provider2.getAtomic("atomicInt1", AtomicType.Integer));
+        assertThrows(IllegalStateException.class, () -> ((AtomicIntegerValue) atomicInt1).get());
+    }
+
+    @Test
+    public void getOrCreateInvalidType() {
+        final CoordinatorStorageProvider provider = provider();
+        provider.getOrCreateAtomic("atomicInt1", AtomicType.Integer, "1");
+        assertThrows(IllegalArgumentException.class, () -> provider.getOrCreateAtomic("atomicInt1", AtomicType.Boolean, "true"));
+        assertThrows(IllegalArgumentException.class, () -> provider.getAtomic("atomicInt1", AtomicType.Boolean));
+        assertThrows(IllegalArgumentException.class, () -> provider.getOrCreateAtomic("atomicInt2", AtomicType.Integer, "not-a-number"));
+    }
+
+    @Test
+    public void batchRequests() throws IOException {
+        final int created = provider().getOrCreateAll(AtomicType.Integer, Arrays.asList(
+                new AbstractMap.SimpleImmutableEntry<>("atomicInt1", "1"),
+                new AbstractMap.SimpleImmutableEntry<>("atomicInt2", "2")
+        ));
+        assertEquals(2, created);
+
+        try (final CoordinatorClient client = client()) {
+            final List<String> ids = Arrays.asList("atomicInt1", "atomicInt2", "no-such-id");
+            assertArrayEquals(new Integer[] { 1, 2, null }, client.getAll(AtomicType.Integer, ids));
+
+            final boolean[] set = client.compareAndSetAll(AtomicType.Integer, ids, new int[] { 1, 1, 0 }, new int[] { 10, 20, 30 });
+            assertArrayEquals(new boolean[] { true, false, false }, set);
+            assertArrayEquals(new Integer[] { 10, 2, null }, client.getAll(AtomicType.Integer, ids));
+
+            assertThrows(IllegalArgumentException.class, () -> client.getAll(AtomicType.Boolean, ids));
+        }
+    }
+
+    @Test
+    public void pipelinedRequests() throws IOException {
+        try (final CoordinatorClient client = client()) {
+            assertEquals(0, client.getOrCreate("atomicInt1", AtomicType.Integer, "0"));
+
+            // send every request before waiting for any response, they are processed in order
+            final List<CompletableFuture<Boolean>> responses = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                responses.add(client.compareAndSetAsync("atomicInt1", AtomicType.Integer, i, i + 1));
+            }
+            for (final CompletableFuture<Boolean> response : responses) {
+                assertTrue(response.join());
+            }
+            assertEquals(1000, client.get("atomicInt1", AtomicType.Integer));
+        }
+    }
+
+    @Test
+    public void concurrentIncrements() throws InterruptedException, ExecutionException {
+        final int threads = 4;
+        final int increments = 500;
+        provider().getOrCreateAtomic("atomicInt1", AtomicType.Integer, "0");
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final CoordinatorStorageProvider provider = provider();
+                futures.add(executorService.submit(() -> {
+                    final AtomicIntegerValue atomicInt1 = (AtomicIntegerValue) provider.getAtomic("atomicInt1", AtomicType.Integer);
+                    for (int i = 0; i < increments; i++) {
+                        int value;
+                        do {
+                            value = atomicInt1.get();
+                        } while (!atomicInt1.compareAndSet(value, value + 1));
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertEquals(threads * increments, ((AtomicIntegerValue) AtomicStorage.INSTANCE.getAtomic("atomicInt1", AtomicType.Integer)).get());
+    }
+
+    @Test
+    public void listenersReceivePushedEvents() throws InterruptedException {
+        final CoordinatorStorageProvider provider1 = provider();
+        final CoordinatorStorageProvider provider2 = provider();
+
+        final BlockingQueue<AtomicListener.Event> events = new LinkedBlockingQueue<>();
+        assertTrue(provider2.addListener("atomicInt1", (id, event) -> events.add(event)));
+
+        final AtomicIntegerValue atomicInt1 = (AtomicIntegerValue) provider1.getOrCreateAtomic("atomicInt1", AtomicType.Integer, "1");
+        assertEquals(AtomicListener.Event.CREATED, events.poll(5, TimeUnit.SECONDS));
+
+        assertTrue(atomicInt1.compareAndSet(1, 2));
+        assertEquals(AtomicListener.Event.CHANGED, events.poll(5, TimeUnit.SECONDS));
+
+        assertFalse(atomicInt1.compareAndSet(1, 3));  // no change, no event
+        assertTrue(provider1.removeAtomic("atomicInt1"));
+        assertEquals(AtomicListener.Event.REMOVED, events.poll(5, TimeUnit.SECONDS));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void nearCacheIsUpdatedByServer() throws InterruptedException {
+        final CoordinatorStorageProvider writer = provider();
+        final CoordinatorStorageProvider reader = provider(Collections.singleton("cached"));
+
+        assertNull(reader.getAtomic("cached:atomicInt1", AtomicType.Integer));
+
+        final AtomicIntegerValue written = (AtomicIntegerValue) writer.getOrCreateAtomic("cached:atomicInt1", AtomicType.Integer, "1");
+        final AtomicIntegerValue read = (AtomicIntegerValue) awaitAtomic(reader, "cached:atomicInt1");
+        assertTrue(read instanceof RemoteIntegerValue);
+        assertEquals(1, read.get());
+
+        assertTrue(written.compareAndSet(1, 2));
+        awaitValue(read, 2);
+
+        // a compare and set by the reader is visible to its own near-cache immediately
+        assertTrue(read.compareAndSet(2, 3));
+        assertEquals(3, read.get());
+        assertEquals(3, written.get());
+
+        assertTrue(writer.removeAtomic("cached:atomicInt1"));
+        final long deadline = System.currentTimeMillis() + 5_000;
+        while (reader.getAtomic("cached:atomicInt1", AtomicType.Integer) != null) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for removal");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void unconfiguredProvider() {
+        final CoordinatorStorageProvider provider = new CoordinatorStorageProvider(new CoordinatorConfig(null, CoordinatorConfig.DEFAULT_PORT, CoordinatorConfig.DEFAULT_TIMEOUT, Collections.emptySet(), false, null, null));
+        assertThrows(IllegalStateException.class, () -> provider.getAtomic("atomicInt1", AtomicType.Integer));
+    }
+
+    @Test
+    public void defaultsToLoopback() throws IOException {
+        try (final CoordinatorServer loopbackServer = CoordinatorServer.start(null, 0, AtomicStorage.INSTANCE)) {
+            assertTrue(loopbackServer.getAddress().isLoopbackAddress());
+        }
+    }
+
+    @Test
+    public void sharedSecret() throws IOException {
+        try (final CoordinatorServer secureServer = CoordinatorServer.start(null, 0, AtomicStorage.INSTANCE, "s3cret")) {
+            final String host = InetAddress.getLoopbackAddress().getHostAddress();
+
+            assertThrows(IOException.class, () -> CoordinatorClient.connect(host, secureServer.getPort(), 5_000));
+            assertThrows(IOException.class, () -> CoordinatorClient.connect(host, secureServer.getPort(), 5_000, "wrong"));
+
+            try (final CoordinatorClient client = CoordinatorClient.connect(host, secureServer.getPort(), 5_000, "s3cret")) {
+                assertEquals(1, client.getOrCreate("atomicInt1", AtomicType.Integer, "1"));
+            }
+
+            final CoordinatorStorageProvider provider = new CoordinatorStorageProvider(new CoordinatorConfig(host, secureServer.getPort(), 5_000, Collections.emptySet(), false, null, "s3cret"));
+            assertEquals(1, ((AtomicIntegerValue) provider.getAtomic("atomicInt1", AtomicType.Integer)).get());
+        }
+    }
+
+    private static AtomicValue awaitAtomic(final AtomicStorageProvider provider, final String id) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5_000;
+        AtomicValue atomicValue;
+        while ((atomicValue = provider.getAtomic(id, AtomicType.Integer)) == null) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for: " + id);
+            Thread.sleep(10);
+        }
+        return atomicValue;
+    }
+
+    private static void awaitValue(final AtomicIntegerValue atomicValue, final int expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5_000;
+        while (atomicValue.get() != expected) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for: " + expected);
+            Thread.sleep(10);
+        }
+    }
+
+    private CoordinatorStorageProvider provider() {
+        return provider(Collections.emptySet());
+    }
+
+    private CoordinatorStorageProvider provider(final Set<String> nearCacheNamespaces) {
+        return new CoordinatorStorageProvider(new CoordinatorConfig(InetAddress.getLoopbackAddress().getHostAddress(), server.getPort(), 5_000, nearCacheNamespaces, false, null, null));
+    }
+
+    private CoordinatorClient client() throws IOException {
+        return CoordinatorClient.connect(InetAddress.getLoopbackAddress().getHostAddress(), server.getPort(), 5_000);
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class AtomicEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void noOp() {
+        final AtomicEvents events = NoOpAtomicEvents.INSTANCE;
+        assertFalse(events.isAvailable());
+        assertSame(AtomicEvents.NO_OP_WAIT, events.beginWait("step", 0, "time-to-match", "id1", "true"));
+    }
+
+    @Test
+    public void recorded() throws Exception {
+        final AtomicEvents events = AtomicEvents.get();
+        assumeTrue(events.isAvailable(), "JFR is not available");
+
+        final Path file = tempDir.resolve("atomics.jfr");
+        try (final Recording recording = new Recording()) {
+            recording.enable(JfrAtomicEvents.NAME_PREFIX + "Wait").withThreshold(Duration.ZERO);
+            recording.enable(JfrAtomicEvents.NAME_PREFIX + "CompareAndSet");
+            recording.enable(JfrAtomicEvents.NAME_PREFIX + "Created");
+            recording.enable(JfrAtomicEvents.NAME_PREFIX + "Removed");
+            recording.enable(JfrAtomicEvents.NAME_PREFIX + "Timeout");
+            recording.start();
+
+            events.created("id1", AtomicType.Integer);
+            events.beginWait("step1", 1, "time-to-match", "id1", "1,2").end("MATCHED");
+            events.casAttempt("step2", 0, "id1", "1", "2", false);
+            events.timeout("step2", 0, "time-to-cas", "id1", 500, "(timeout)");
+            events.removed("id1");
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        final List<RecordedEvent> recorded = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().startsWith(JfrAtomicEvents.NAME_PREFIX))
+                .collect(Collectors.toList());
+        assertEquals(5, recorded.size());
+
+        final RecordedEvent created = find(recorded, "Created");
+        assertEquals("id1", created.getString("atomicId"));
+        assertEquals("Integer", created.getString("atomicType"));
+
+        final RecordedEvent wait = find(recorded, "Wait");
+        assertEquals("step1", wait.getString("step"));
+        assertEquals(1, wait.getInt("copy"));
+        assertEquals("1,2", wait.getString("awaitedValues"));
+        assertEquals("MATCHED", wait.getString("outcome"));
+
+        final RecordedEvent cas = find(recorded, "CompareAndSet");
+        assertFalse(cas.getBoolean("set"));
+        assertEquals("2", cas.getString("update"));
+
+        final RecordedEvent timeout = find(recorded, "Timeout");
+        assertEquals(Duration.ofMillis(500), timeout.getDuration("waited"));
+        assertEquals("(timeout)", timeout.getString("route"));
+
+        assertEquals("id1", find(recorded, "Removed").getString("atomicId"));
+    }
+
+    private static RecordedEvent find(final List<RecordedEvent> events, final String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(JfrAtomicEvents.NAME_PREFIX + name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No event: " + name));
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicBooleanValue;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicIntegerValue;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+import uk.gov.nationalarchives.pdi.step.atomics.Util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void namespaces() {
+        final JournalConfig config = new JournalConfig(tempDir, new HashSet<>(Arrays.asList("durable", "")), JournalConfig.DEFAULT_SNAPSHOT_PERIOD);
+        assertTrue(config.isDurable("durable:atomicId1"));
+        assertTrue(config.isDurable("atomicId1"));
+        assertFalse(config.isDurable("volatile:atomicId1"));
+
+        final JournalConfig allConfig = new JournalConfig(tempDir, Collections.singleton(Util.ALL_NAMESPACES), JournalConfig.DEFAULT_SNAPSHOT_PERIOD);
+        assertTrue(allConfig.isDurable("volatile:atomicId1"));
+    }
+
+    @Test
+    public void recoverFromJournal() throws IOException {
+        try (final Journal journal = Journal.open(config())) {
+            assertTrue(journal.getRecovered().isEmpty());
+
+            journal.appendCreate("atomicInt1", new AtomicIntegerValue(1));
+            journal.appendCreate("atomicBool1", new AtomicBooleanValue(false));
+            journal.appendCreate("atomicInt2", new AtomicIntegerValue(2));
+            journal.appendSet("atomicInt1", AtomicType.Integer, 11);
+            journal.appendSet("atomicBool1", AtomicType.Boolean, 1);
+            journal.awaitDurable(journal.appendRemove("atomicInt2"));
+        }
+
+        try (final Journal journal = Journal.open(config())) {
+            final Map<String, Journal.Entry> recovered = journal.getRecovered();
+            assertEquals(2, recovered.size());
+            assertEntry(AtomicType.Integer, 11, recovered.get("atomicInt1"));
+            assertEntry(AtomicType.Boolean, 1, recovered.get("atomicBool1"));
+            assertNull(recovered.get("atomicInt2"));
+        }
+    }
+
+    @Test
+    public void setAfterRemoveDoesNotRecreate() throws IOException {
+        try (final Journal journal = Journal.open(config())) {
+            journal.appendCreate("atomicInt1", new AtomicIntegerValue(1));
+            journal.appendRemove("atomicInt1");
+            // e.g. a CAS via a stale handle racing the removal
+            journal.awaitDurable(journal.appendSet("atomicInt1", AtomicType.Integer, 2));
+        }
+
+        try (final Journal journal = Journal.open(config())) {
+            assertTrue(journal.getRecovered().isEmpty());
+        }
+    }
+
+    @Test
+    public void staleCompareAndSetIsNotJournaled() throws IOException {
+        try (final Journal journal = Journal.open(config())) {
+            final JournaledIntegerValue removedInt = new JournaledIntegerValue(journal, "atomicInt1", 1);
+            journal.appendCreate("atomicInt1", removedInt);
+            final JournaledBooleanValue removedBool = new JournaledBooleanValue(journal, "atomicBool1", false);
+            journal.appendCreate("atomicBool1", removedBool);
+            removedInt.appendRemove();
+            removedBool.appendRemove();
+
+            // the ids are recreated, e.g. by another step
+            final JournaledIntegerValue recreatedInt = new JournaledIntegerValue(journal, "atomicInt1", 5);
+            journal.appendCreate("atomicInt1", recreatedInt);
+            journal.appendCreate("atomicBool1", new JournaledBooleanValue(journal, "atomicBool1", false));
+            assertTrue(recreatedInt.compareAndSet(5, 6));
+
+            // a CAS that was already running succeeds on the removed values, but is not journaled
+            assertTrue(removedInt.compareAndSet(1, 2));
+            assertEquals(2, removedInt.get());
+            assertTrue(removedBool.compareAndSet(false, true));
+            journal.sync();
+        }
+
+        try (final Journal journal = Journal.open(config())) {
+            final Map<String, Journal.Entry> recovered = journal.getRecovered();
+            assertEquals(2, recovered.size());
+            assertEntry(AtomicType.Integer, 6, recovered.get("atomicInt1"));
+            assertEntry(AtomicType.Boolean, 0, recovered.get("atomicBool1"));
+        }
+    }
+
+    @Test
+    public void failedCompareAndSet() throws IOException {
+        final Journal journal = Journal.open(config());
+        final JournaledIntegerValue atomicInt1 = new JournaledIntegerValue(journal, "atomicInt1", 1);
+        journal.awaitDurable(journal.appendCreate("atomicInt1", atomicInt1));
+        journal.close();
+
+        // the change is appended, but cannot be made durable, so it is kept and the journal fails
+        assertThrows(UncheckedIOException.class, () -> atomicInt1.compareAndSet(1, 2));
+        assertEquals(2, atomicInt1.get());
+
+        // the change cannot be appended to the failed journal, so it is undone
+        assertThrows(UncheckedIOException.class, () -> atomicInt1.compareAndSet(2, 3));
+        assertEquals(2, atomicInt1.get());
+    }
+
+    @Test
+    public void appendCreateAll() throws IOException {
+        try (final Journal journal = Journal.open(config())) {
+            final List<Map.Entry<String, AtomicValue>> atomics = Arrays.asList(
+                    new AbstractMap.SimpleImmutableEntry<>("atomicInt1", new AtomicIntegerValue(1)),
+                    new AbstractMap.SimpleImmutableEntry<>("atomicBool1", new AtomicBooleanValue(true))
+            );
+            journal.awaitDurable(journal.appendCreateAll(atomics));
+        }
+
+        try (final Journal journal = Journal.open(config())) {
+            final Map<String, Journal.Entry> recovered = journal.getRecovered();
+            assertEquals(2, recovered.size());
+            assertEntry(AtomicType.Integer, 1, recovered.get("atomicInt1"));
+            assertEntry(AtomicType.Boolean, 1, recovered.get("atomicBool1"));
+        }
+    }
+
+    @Test
+    public void recoverFromSnapshotAndJournal() throws IOException {
+        final Map<String, AtomicValue> atomics = new HashMap<>();
+        try (final Journal journal = Journal.open(config())) {
+            final JournaledIntegerValue atomicInt1 = new JournaledIntegerValue(journal, "atomicInt1", 1);
+            atomics.put("atomicInt1", atomicInt1);
+            journal.appendCreate("atomicInt1", atomicInt1);
+            final JournaledBooleanValue atomicBool1 = new JournaledBooleanValue(journal, "atomicBool1", false);
+            atomics.put("atomicBool1", atomicBool1);
+            journal.appendCreate("atomicBool1", atomicBool1);
+            assertTrue(atomicInt1.compareAndSet(1, 2));
+
+            journal.snapshot(() -> atomics);
+            assertTrue(Files.exists(tempDir.resolve(Journal.SNAPSHOT_FILENAME)));
+            assertFalse(Files.exists(tempDir.resolve(Journal.journalFilename(0))));
+
+            // changes after the snapshot are only in the newer journal
+            assertTrue(atomicInt1.compareAndSet(2, 3));
+            assertTrue(atomicBool1.compareAndSet(false, true));
+        }
+
+        try (final Journal journal = Journal.open(config())) {
+            final Map<String, Journal.Entry> recovered = journal.getRecovered();
+            assertEquals(2, recovered.size());
+            assertEntry(AtomicType.Integer, 3, recovered.get("atomicInt1"));
+            assertEntry(AtomicType.Boolean, 1, recovered.get("atomicBool1"));
+        }
+    }
+
+    @Test
+    public void tornRecordIsDiscarded() throws IOException {
+        try (final Journal journal = Journal.open(config())) {
+            journal.appendCreate("atomicInt1", new AtomicIntegerValue(1));
+            journal.appendSet("atomicInt1", AtomicType.Integer, 2);
+            journal.sync();
+        }
+
+        // simulate a crash whilst writing the next record
+        final Path journalFile = tempDir.resolve(Journal.journalFilename(0));
+        final long validLength = Files.size(journalFile);
+        Files.write(journalFile, new byte[] { 0, 0, 0, 30, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+        try (final Journal journal = Journal.open(config())) {
+            final Map<String, Journal.Entry> recovered = journal.getRecovered();
+            assertEquals(1, recovered.size());
+            assertEntry(AtomicType.Integer, 2, recovered.get("atomicInt1"));
+            assertEquals(validLength, Files.size(journalFile));
+        }
+    }
+
+    @Test
+    public void concurrentCompareAndSetIsDurable() throws Exception {
+        final int numThreads = 8;
+        final int numIncrements = 100;
+
+        try (final Journal journal = Journal.open(config())) {
+            final JournaledIntegerValue atomicInt1 = new JournaledIntegerValue(journal, "atomicInt1", 0);
+            journal.appendCreate("atomicInt1", atomicInt1);
+
+            final ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+            try {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < numThreads; i++) {
+                    futures.add(executorService.submit(() -> {
+                        for (int j = 0; j < numIncrements; j++) {
+                            int value;
+                            do {
+                                value = atomicInt1.get();
+                            } while (!atomicInt1.compareAndSet(value, value + 1));
+                        }
+                    }));
+                }
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executorService.shutdown();
+            }
+        }
+
+        try (final Journal journal = Journal.open(config())) {
+            assertEntry(AtomicType.Integer, numThreads * numIncrements, journal.getRecovered().get("atomicInt1"));
+        }
+    }
+
+    private JournalConfig config() {
+        return new JournalConfig(tempDir, Collections.singleton(Util.ALL_NAMESPACES), JournalConfig.DEFAULT_SNAPSHOT_PERIOD);
+    }
+
+    private static void assertEntry(final AtomicType expectedType, final int expectedValue, final Journal.Entry actual) {
+        assertNotNull(actual);
+        assertEquals(expectedType, actual.getType());
+        assertEquals(expectedValue, actual.getValue());
+    }
+}
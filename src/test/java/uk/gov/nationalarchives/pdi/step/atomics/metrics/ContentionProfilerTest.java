@@ -0,0 +1,124 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentionProfilerTest {
+
+    @Test
+    public void countsByKind() {
+        final ContentionProfiler profiler = new ContentionProfiler(new ContentionConfig(10, 1));
+        profiler.record("a", ContentionProfiler.Kind.CAS_FAILURE);
+        profiler.record("a", ContentionProfiler.Kind.WAKE_UP);
+        profiler.record("a", ContentionProfiler.Kind.WAKE_UP);
+        profiler.record("b", ContentionProfiler.Kind.CAS_FAILURE);
+
+        final List<ContentionProfiler.Entry> top = profiler.top(10);
+        assertEquals(2, top.size());
+        assertEquals("a", top.get(0).getId());
+        assertEquals(3, top.get(0).getCount());
+        assertEquals(0, top.get(0).getError());
+        assertEquals(1, top.get(0).getCasFailures());
+        assertEquals(2, top.get(0).getWakeUps());
+        assertEquals("b", top.get(1).getId());
+        assertEquals(1, top.get(1).getCount());
+        assertEquals(4, profiler.getTotal());
+
+        assertEquals(1, profiler.top(1).size());
+        assertTrue(profiler.top(0).isEmpty());
+    }
+
+    @Test
+    public void boundedCapacity() {
+        final int capacity = 8;
+        final ContentionProfiler profiler = new ContentionProfiler(new ContentionConfig(capacity, 1));
+
+        // a few heavy hitters amongst many ids which are only contended once
+        for (int i = 0; i < 1_000; i++) {
+            profiler.record("cold-" + i, ContentionProfiler.Kind.WAKE_UP);
+            if (i % 2 == 0) {
+                profiler.record("hot", ContentionProfiler.Kind.CAS_FAILURE);
+            }
+            if (i % 5 == 0) {
+                profiler.record("warm", ContentionProfiler.Kind.CAS_FAILURE);
+            }
+        }
+
+        final List<ContentionProfiler.Entry> top = profiler.top(Integer.MAX_VALUE);
+        assertEquals(capacity, top.size());
+
+        // space-saving guarantees that the true count is within [count - error, count]
+        assertEquals("hot", top.get(0).getId());
+        assertTrue(top.get(0).getCount() >= 500);
+        assertTrue(top.get(0).getCount() - top.get(0).getError() <= 500);
+        assertEquals("warm", top.get(1).getId());
+        assertTrue(top.get(1).getCount() >= 200);
+        assertTrue(top.get(1).getCount() - top.get(1).getError() <= 200);
+
+        long sum = 0;
+        for (final ContentionProfiler.Entry entry : top) {
+            sum += entry.getCount();
+        }
+        assertEquals(profiler.getTotal(), sum);
+    }
+
+    @Test
+    public void sampled() {
+        final ContentionProfiler profiler = new ContentionProfiler(new ContentionConfig(10, 4));
+        for (int i = 0; i < 10_000; i++) {
+            profiler.record("a", ContentionProfiler.Kind.CAS_FAILURE);
+        }
+
+        // each sample is weighted by the sample rate
+        final long count = profiler.top(1).get(0).getCount();
+        assertEquals(0, count % 4);
+        assertTrue(count > 8_000 && count < 12_000, "count was: " + count);
+    }
+
+    @Test
+    public void reset() {
+        final ContentionProfiler profiler = new ContentionProfiler(new ContentionConfig(2, 1));
+        profiler.record("a", ContentionProfiler.Kind.CAS_FAILURE);
+        profiler.record("b", ContentionProfiler.Kind.CAS_FAILURE);
+        profiler.record("c", ContentionProfiler.Kind.CAS_FAILURE);
+
+        profiler.reset();
+        assertTrue(profiler.top(10).isEmpty());
+        assertEquals(0, profiler.getTotal());
+
+        profiler.record("d", ContentionProfiler.Kind.WAKE_UP);
+        assertEquals(1, profiler.top(10).size());
+        assertEquals(0, profiler.top(10).get(0).getError());
+    }
+
+    @Test
+    public void invalidConfig() {
+        assertThrows(IllegalArgumentException.class, () -> new ContentionConfig(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ContentionConfig(1, 0));
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyExporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void exportCsv() throws Exception {
+        final LatencyConfig config = new LatencyConfig(true, 60_000, tempDir, true);
+        final StepLatencies latencies = new StepLatencies(config.isByNamespace());
+        latencies.record(StepLatencies.Latency.MATCH, "flow1:a", 2_000_000);
+        latencies.record(StepLatencies.Latency.MATCH, "flow2:a", 4_000_000);
+
+        final LatencyExporter exporter = new LatencyExporter(config, "trans, 1", "Await", 0);
+        assertFalse(exporter.isDue());
+
+        final String summary = exporter.export(latencies);
+        assertTrue(summary.startsWith(StepLatencies.Latency.MATCH.getLabel() + ": count=2"));
+
+        // reset on export
+        assertEquals(0, latencies.getHistogram(StepLatencies.Latency.MATCH).getCount());
+
+        final List<String> lines = Files.readAllLines(tempDir.resolve(LatencyExporter.CSV_FILE_NAME), StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertEquals(LatencyExporter.CSV_HEADER, lines.get(0));
+        assertTrue(lines.get(1).matches("\\d+,\"trans, 1\",Await,0,time-to-match,\\*,2,3\\.000,.*"), lines.get(1));
+        assertTrue(lines.get(2).contains(",time-to-match,flow1,1,2.000,"), lines.get(2));
+        assertTrue(lines.get(3).contains(",time-to-match,flow2,1,4.000,"), lines.get(3));
+
+        // nothing recorded, so only the header remains
+        exporter.export(latencies);
+        assertEquals(4, Files.readAllLines(tempDir.resolve(LatencyExporter.CSV_FILE_NAME), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void exportWithoutReset() throws Exception {
+        final LatencyConfig config = new LatencyConfig(false, 1, null, false);
+        final StepLatencies latencies = new StepLatencies(config.isByNamespace());
+        latencies.record(StepLatencies.Latency.CAS, "a", 1_000);
+
+        final LatencyExporter exporter = new LatencyExporter(config, null, "CAS", 1);
+        Thread.sleep(2);
+        assertTrue(exporter.isDue());
+        exporter.export(latencies);
+
+        assertEquals(1, latencies.getHistogram(StepLatencies.Latency.CAS).getCount());
+        assertTrue(latencies.getHistogramsByNamespace(StepLatencies.Latency.CAS).isEmpty());
+    }
+}
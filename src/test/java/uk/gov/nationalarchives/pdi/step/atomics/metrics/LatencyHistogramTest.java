@@ -0,0 +1,92 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketIndexIsMonotonic() {
+        int previous = LatencyHistogram.bucketIndex(0);
+        for (long value = 1; value < 1_000_000; value++) {
+            final int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index >= previous);
+            assertTrue(value <= LatencyHistogram.highestEquivalentValue(index));
+            previous = index;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestEquivalentValue(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void relativeError() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            final long value = Math.abs(random.nextLong()) >>> random.nextInt(63);
+            final long equivalent = LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(value));
+            assertTrue(equivalent >= value);
+            assertTrue(equivalent - value <= value / LatencyHistogram.SUB_BUCKET_COUNT + 1, "value: " + value + ", equivalent: " + equivalent);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+
+        for (long ms = 1; ms <= 100; ms++) {
+            histogram.record(ms * 1_000_000);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5 * 1_000_000, histogram.getMean(), 0.001);
+        assertEquals(100 * 1_000_000, histogram.getMax());
+        assertEquals(50 * 1_000_000, histogram.getValueAtPercentile(50), 50 * 1_000_000 / LatencyHistogram.SUB_BUCKET_COUNT);
+        assertEquals(99 * 1_000_000, histogram.getValueAtPercentile(99), 99 * 1_000_000 / LatencyHistogram.SUB_BUCKET_COUNT);
+        assertEquals(100 * 1_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void negativeIsRecordedAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void reset() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+}
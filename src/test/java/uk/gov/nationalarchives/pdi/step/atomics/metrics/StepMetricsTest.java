@@ -0,0 +1,119 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StepMetricsTest {
+
+    @Test
+    public void record() {
+        final StepMetrics metrics = new StepMetrics();
+        metrics.recordLookup(true);
+        metrics.recordLookup(false);
+        metrics.recordInitialisation();
+        metrics.recordCreations(3);
+        metrics.recordWait(TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.recordWait(TimeUnit.MILLISECONDS.toNanos(6));
+        metrics.recordCasAttempt(true);
+        metrics.recordCasAttempt(false);
+        metrics.recordCasAttempt(false);
+        metrics.recordTimeout();
+        metrics.recordInterrupt();
+
+        assertEquals(2, metrics.getLookups());
+        assertEquals(1, metrics.getLookupMisses());
+        assertEquals(1, metrics.getInitialisations());
+        assertEquals(3, metrics.getCreations());
+        assertEquals(2, metrics.getWaits());
+        assertEquals(8.0, metrics.getWaitTimeMillis(), 0.001);
+        assertEquals(6.0, metrics.getMaxWaitTimeMillis(), 0.001);
+        assertEquals(3, metrics.getCasAttempts());
+        assertEquals(2, metrics.getCasFailures());
+        assertEquals(1, metrics.getTimeouts());
+        assertEquals(1, metrics.getInterrupts());
+    }
+
+    @Test
+    public void rowsByTarget() {
+        final StepMetrics metrics = new StepMetrics();
+        metrics.recordRow("step1");
+        metrics.recordRow("step1");
+        metrics.recordRow(StepMetrics.TARGET_TIMEOUT);
+        metrics.recordRow(null);
+
+        final Map<String, Long> rowsByTarget = metrics.getRowsByTarget();
+        assertEquals(3, rowsByTarget.size());
+        assertEquals(2L, rowsByTarget.get("step1"));
+        assertEquals(1L, rowsByTarget.get(StepMetrics.TARGET_TIMEOUT));
+        assertEquals(1L, rowsByTarget.get(StepMetrics.TARGET_UNNAMED));
+    }
+
+    @Test
+    public void reset() {
+        final StepMetrics metrics = new StepMetrics();
+        metrics.recordLookup(false);
+        metrics.recordWait(1000);
+        metrics.recordCasAttempt(false);
+        metrics.recordRow("step1");
+
+        metrics.reset();
+
+        assertEquals(0, metrics.getLookups());
+        assertEquals(0, metrics.getLookupMisses());
+        assertEquals(0, metrics.getWaits());
+        assertEquals(0.0, metrics.getMaxWaitTimeMillis(), 0.0);
+        assertEquals(0, metrics.getCasAttempts());
+        assertEquals(0, metrics.getCasFailures());
+        assertEquals(0L, metrics.getRowsByTarget().get("step1"));
+    }
+
+    @Test
+    public void registerAndUnregister() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = MBeans.stepMetricsName("trans, \"1\"", "step:1", 0);
+
+        final StepMetrics metrics = new StepMetrics();
+        metrics.recordCasAttempt(false);
+        assertTrue(MBeans.register(metrics, name));
+        try {
+            assertFalse(MBeans.register(new StepMetrics(), name));
+            assertEquals(1L, server.getAttribute(name, "CasFailures"));
+        } finally {
+            MBeans.unregister(name);
+        }
+
+        assertFalse(server.isRegistered(name));
+
+        // unregistering again is a no-op
+        MBeans.unregister(name);
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.offheap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.gov.nationalarchives.pdi.step.atomics.*;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapStoreTest {
+
+    private OffHeapStore store;
+
+    @BeforeEach
+    public void createStore() {
+        store = new OffHeapStore();
+    }
+
+    @AfterEach
+    public void closeStore() {
+        store.close();
+    }
+
+    @Test
+    public void getNoSuchAtomic() {
+        assertNull(store.get("no-such-id", AtomicType.Integer));
+    }
+
+    @Test
+    public void getOrCreate() {
+        final AtomicValue atomicInt1 = store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        assertTrue(atomicInt1 instanceof OffHeapIntegerValue);
+        assertEquals(1, ((AtomicIntegerValue) atomicInt1).get());
+
+        final AtomicValue atomicInt11 = store.getOrCreate("atomicInt1", AtomicType.Integer, "5");
+        assertTrue(((AtomicIntegerValue) atomicInt11).compareAndSet(1, 2));
+        assertEquals(2, ((AtomicIntegerValue) atomicInt1).get());
+        assertFalse(((AtomicIntegerValue) atomicInt1).compareAndSet(1, 3));
+
+        final AtomicValue atomicBool1 = store.getOrCreate("atomicBool1", AtomicType.Boolean, "false");
+        assertTrue(atomicBool1 instanceof OffHeapBooleanValue);
+        assertTrue(((AtomicBooleanValue) atomicBool1).compareAndSet(false, true));
+        assertTrue(((AtomicBooleanValue) store.get("atomicBool1", AtomicType.Boolean)).get());
+
+        assertEquals(2, store.getCount());
+    }
+
+    @Test
+    public void getOrCreateInvalidType() {
+        store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        assertThrows(IllegalArgumentException.class, () -> store.getOrCreate("atomicInt1", AtomicType.Boolean, "true"));
+        assertThrows(IllegalArgumentException.class, () -> store.get("atomicInt1", AtomicType.Boolean));
+    }
+
+    @Test
+    public void getOrCreateAll() {
+        store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+
+        final List<Map.Entry<String, String>> batch = Arrays.asList(
+                new AbstractMap.SimpleImmutableEntry<>("atomicInt1", "10"),
+                new AbstractMap.SimpleImmutableEntry<>("atomicInt2", "2"),
+                new AbstractMap.SimpleImmutableEntry<>("atomicInt3", "3"));
+        assertEquals(2, store.getOrCreateAll(AtomicType.Integer, batch));
+        assertEquals(1, ((AtomicIntegerValue) store.get("atomicInt1", AtomicType.Integer)).get());
+        assertEquals(3, ((AtomicIntegerValue) store.get("atomicInt3", AtomicType.Integer)).get());
+
+        // nothing is created if any existing Atomic Value has a different type
+        assertThrows(IllegalArgumentException.class, () -> store.getOrCreateAll(AtomicType.Boolean, Arrays.asList(
+                new AbstractMap.SimpleImmutableEntry<>("atomicBool1", "true"),
+                new AbstractMap.SimpleImmutableEntry<>("atomicInt1", "true"))));
+        assertNull(store.get("atomicBool1", AtomicType.Boolean));
+    }
+
+    @Test
+    public void staleReferencesAreDetachedOnTheirOwn() {
+        final AtomicIntegerValue stale1 = (AtomicIntegerValue) store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        final AtomicIntegerValue stale2 = (AtomicIntegerValue) store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        assertTrue(stale2.compareAndSet(1, 2));
+        assertTrue(store.remove("atomicInt1"));
+
+        // each stale reference continues from the last value that it saw
+        assertEquals(2, stale2.get());
+        assertTrue(stale1.compareAndSet(1, 3));
+        assertEquals(3, stale1.get());
+        assertEquals(2, stale2.get());
+    }
+
+    @Test
+    public void staleReferenceIsDetached() {
+        final AtomicIntegerValue removed = (AtomicIntegerValue) store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+
+        assertTrue(store.remove("atomicInt1"));
+        assertFalse(store.remove("atomicInt1"));
+        assertNull(store.get("atomicInt1", AtomicType.Integer));
+        assertEquals(0, store.getCount());
+
+        // a stale reference to the removed value must not change the re-created value
+        final AtomicIntegerValue recreated = (AtomicIntegerValue) store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        assertTrue(removed.compareAndSet(1, 2));
+        assertEquals(1, recreated.get());
+        assertEquals(2, removed.get());
+        assertNotEquals(removed, recreated);
+
+        assertTrue(recreated.compareAndSet(1, 3));
+        assertEquals(2, removed.get());
+    }
+
+    @Test
+    public void removeReusesSlot() {
+        store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        final long usedBytes = store.getUsedBytes();
+
+        // discarding and recreating Atomic Values reuses their slots, and the space of their ids is reclaimed on resize
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(store.remove("atomicInt" + (i + 1)));
+            store.getOrCreate("atomicInt" + (i + 2), AtomicType.Integer, Integer.toString(i));
+        }
+        assertEquals(1, store.getCount());
+        assertEquals(99_999, ((AtomicIntegerValue) store.get("atomicInt100001", AtomicType.Integer)).get());
+        assertTrue(store.getUsedBytes() < usedBytes + 64 * 1024, "usedBytes: " + store.getUsedBytes());
+    }
+
+    @Test
+    public void resizeKeepsValuesAndReclaimsIds() {
+        final int count = 100_000;
+        for (int i = 0; i < count; i++) {
+            store.getOrCreate("record:" + i, AtomicType.Integer, Integer.toString(i));
+        }
+        assertEquals(0, store.getFragmentation());
+
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(store.remove("record:" + i));
+        }
+        final double fragmentation = store.getFragmentation();
+        assertTrue(fragmentation > 0.4 && fragmentation < 0.6, "fragmentation: " + fragmentation);
+
+        // creating more Atomic Values reuses the slots of the removed values, and resizes the table, which reclaims the space of the removed ids
+        for (int i = count; i < count * 2; i++) {
+            store.getOrCreate("record:" + i, AtomicType.Integer, Integer.toString(i));
+        }
+        assertTrue(store.getFragmentation() < fragmentation);
+
+        assertEquals(count + (count / 2), store.getCount());
+        for (int i = 0; i < count * 2; i++) {
+            final AtomicIntegerValue value = (AtomicIntegerValue) store.get("record:" + i, AtomicType.Integer);
+            if (i < count && i % 2 == 0) {
+                assertNull(value);
+            } else {
+                assertNotNull(value, "record:" + i);
+                assertEquals(i, value.get(), "record:" + i);
+            }
+        }
+
+        assertTrue(store.getUsedBytes() > 0);
+        assertTrue(store.getAllocatedBytes() >= store.getUsedBytes());
+    }
+
+    @Test
+    public void closed() {
+        store.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        store.close();
+        assertThrows(IllegalStateException.class, () -> store.get("atomicInt1", AtomicType.Integer));
+        assertThrows(IllegalStateException.class, () -> store.getOrCreate("atomicInt2", AtomicType.Integer, "2"));
+        assertEquals(0, store.getAllocatedBytes());
+    }
+
+    @Test
+    public void provider() {
+        final AtomicStorageProvider provider = AtomicStorageProviders.get(OffHeapStorageProvider.PROVIDER_NAME);
+        assertTrue(provider instanceof OffHeapStorageProvider);
+
+        final AtomicValue atomicInt1 = provider.getOrCreateAtomic("offHeapTest:atomicInt1", AtomicType.Integer, "1");
+        try {
+            assertTrue(((AtomicIntegerValue) atomicInt1).compareAndSet(1, 2));
+            assertEquals(2, ((AtomicIntegerValue) provider.getAtomic("offHeapTest:atomicInt1", AtomicType.Integer)).get());
+        } finally {
+            assertTrue(provider.removeAtomic("offHeapTest:atomicInt1"));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.prometheus;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrometheusExporterTest {
+
+    private static final String METRICS = "# TYPE kettle_atomics_test gauge\nkettle_atomics_test 1\n";
+
+    @Test
+    public void endpoint() throws IOException {
+        final int port;
+        try (final ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+
+        try (final PrometheusExporter exporter = PrometheusExporter.start(new PrometheusConfig(port, null, 1_000), () -> METRICS)) {
+            assertEquals(port, exporter.getPort());
+
+            final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/metrics").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(PrometheusRenderer.CONTENT_TYPE, connection.getContentType());
+            try (final InputStream is = connection.getInputStream()) {
+                assertEquals(METRICS, readAll(is));
+            }
+
+            final HttpURLConnection notFound = (HttpURLConnection) new URL("http://localhost:" + port + "/other").openConnection();
+            assertEquals(404, notFound.getResponseCode());
+        }
+    }
+
+    @Test
+    public void file(@TempDir final Path tempDir) throws IOException, InterruptedException {
+        final Path file = tempDir.resolve("atomics.prom");
+        try (final PrometheusExporter exporter = PrometheusExporter.start(new PrometheusConfig(0, file, 10), () -> METRICS)) {
+            assertEquals(0, exporter.getPort());
+
+            for (int i = 0; i < 500 && !Files.exists(file); i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(METRICS, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            assertFalse(Files.exists(tempDir.resolve("atomics.prom.tmp")));
+        }
+    }
+
+    private static String readAll(final InputStream is) throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        int read;
+        while ((read = is.read(buf)) != -1) {
+            os.write(buf, 0, read);
+        }
+        return new String(os.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
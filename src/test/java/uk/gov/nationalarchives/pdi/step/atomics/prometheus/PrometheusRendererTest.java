@@ -0,0 +1,85 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.prometheus;
+
+import org.junit.jupiter.api.Test;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.MBeans;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepLatencies;
+import uk.gov.nationalarchives.pdi.step.atomics.metrics.StepMetrics;
+
+import javax.management.ObjectName;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrometheusRendererTest {
+
+    @Test
+    public void stepMetrics() {
+        final StepMetrics metrics = new StepMetrics();
+        metrics.recordCasAttempt(true);
+        metrics.recordCasAttempt(false);
+        metrics.recordCasAttempt(false);
+        metrics.recordTimeout();
+        metrics.recordRow("next \"step\"");
+        metrics.recordLatency(StepLatencies.Latency.MATCH, "ns:id", TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.recordLatency(StepLatencies.Latency.MATCH, "ns:id", TimeUnit.SECONDS.toNanos(2));
+
+        final ObjectName name = MBeans.stepMetricsName("trans", "Await 1", 0);
+        final String rendered = PrometheusRenderer.render(null, Collections.singletonMap(name, metrics));
+
+        final String labels = "transformation=\"trans\",step=\"Await 1\",copy=\"0\"";
+        assertTrue(rendered.contains("# TYPE kettle_atomics_step_cas_total counter\n"));
+        assertTrue(rendered.contains("kettle_atomics_step_cas_total{" + labels + ",outcome=\"set\"} 1\n"));
+        assertTrue(rendered.contains("kettle_atomics_step_cas_total{" + labels + ",outcome=\"failed\"} 2\n"));
+        assertTrue(rendered.contains("kettle_atomics_step_timeouts_total{" + labels + "} 1\n"));
+        assertTrue(rendered.contains("kettle_atomics_step_rows_total{" + labels + ",target=\"next \\\"step\\\"\"} 1\n"));
+
+        final String latencyLabels = labels + ",latency=\"time-to-match\"";
+        assertTrue(rendered.contains("# TYPE kettle_atomics_step_latency_seconds histogram\n"));
+        assertTrue(rendered.contains("kettle_atomics_step_latency_seconds_bucket{" + latencyLabels + ",le=\"0.001\"} 0\n"));
+        assertTrue(rendered.contains("kettle_atomics_step_latency_seconds_bucket{" + latencyLabels + ",le=\"0.005\"} 1\n"));
+        assertTrue(rendered.contains("kettle_atomics_step_latency_seconds_bucket{" + latencyLabels + ",le=\"1\"} 1\n"));
+        assertTrue(rendered.contains("kettle_atomics_step_latency_seconds_bucket{" + latencyLabels + ",le=\"5\"} 2\n"));
+        assertTrue(rendered.contains("kettle_atomics_step_latency_seconds_bucket{" + latencyLabels + ",le=\"+Inf\"} 2\n"));
+        assertTrue(rendered.contains("kettle_atomics_step_latency_seconds_sum{" + latencyLabels + "} 2.002\n"));
+        assertTrue(rendered.contains("kettle_atomics_step_latency_seconds_count{" + latencyLabels + "} 2\n"));
+
+        // storage metrics are omitted
+        assertFalse(rendered.contains("kettle_atomics_values"));
+    }
+
+    @Test
+    public void eachFamilyOnce() {
+        final String rendered = PrometheusRenderer.render(null, Collections.singletonMap(MBeans.stepMetricsName("t", "s", 0), new StepMetrics()));
+        final int first = rendered.indexOf("# TYPE kettle_atomics_step_lookups_total");
+        assertTrue(first >= 0);
+        assertEquals(-1, rendered.indexOf("# TYPE kettle_atomics_step_lookups_total", first + 1));
+    }
+
+    @Test
+    public void escape() {
+        assertEquals("a\\\\b\\\"c\\nd", PrometheusRenderer.escape("a\\b\"c\nd"));
+    }
+}
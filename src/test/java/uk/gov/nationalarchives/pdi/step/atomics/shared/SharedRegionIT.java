@@ -0,0 +1,97 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicIntegerValue;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.Util;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that Atomic Values in a {@link SharedRegion} are
+ * correctly shared between separate JVM processes.
+ */
+public class SharedRegionIT {
+
+    private static final int NUM_PROCESSES = 4;
+    private static final int NUM_INCREMENTS = 10_000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void incrementFromManyProcesses() throws Exception {
+        final Path file = tempDir.resolve("atomics.region");
+
+        final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        final List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < NUM_PROCESSES; i++) {
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Incrementer.class.getName(), file.toString(), Integer.toString(NUM_INCREMENTS))
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                    .start());
+        }
+        for (final Process process : processes) {
+            assertTrue(process.waitFor(2, TimeUnit.MINUTES));
+            assertEquals(0, process.exitValue());
+        }
+
+        final SharedRegion region = SharedRegion.open(config(file));
+        final AtomicIntegerValue counter = (AtomicIntegerValue) region.get("counter", AtomicType.Integer);
+        assertNotNull(counter);
+        assertEquals(NUM_PROCESSES * NUM_INCREMENTS, counter.get());
+    }
+
+    private static SharedRegionConfig config(final Path file) {
+        return new SharedRegionConfig(file, Collections.singleton(Util.ALL_NAMESPACES), SharedRegionConfig.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Run in a separate process, increments the shared counter.
+     */
+    public static class Incrementer {
+        public static void main(final String[] args) throws Exception {
+            final SharedRegion region = SharedRegion.open(config(new File(args[0]).toPath()));
+            final int numIncrements = Integer.parseInt(args[1]);
+
+            final AtomicIntegerValue counter = (AtomicIntegerValue) region.getOrCreate("counter", AtomicType.Integer, "0");
+            for (int i = 0; i < numIncrements; i++) {
+                int value;
+                do {
+                    value = counter.get();
+                } while (!counter.compareAndSet(value, value + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.nationalarchives.pdi.step.atomics.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SharedRegionTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void getNoSuchAtomic() throws IOException {
+        final SharedRegion region = SharedRegion.open(config(16));
+        assertNull(region.get("no-such-id", AtomicType.Integer));
+    }
+
+    @Test
+    public void getOrCreateIsVisibleToOtherMapping() throws IOException {
+        final SharedRegion region1 = SharedRegion.open(config(16));
+        final SharedRegion region2 = SharedRegion.open(config(16));
+
+        final AtomicValue atomicInt1 = region1.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        assertTrue(atomicInt1 instanceof SharedIntegerValue);
+        assertEquals(1, ((AtomicIntegerValue) atomicInt1).get());
+
+        final AtomicValue atomicInt11 = region2.get("atomicInt1", AtomicType.Integer);
+        assertNotNull(atomicInt11);
+        assertTrue(((AtomicIntegerValue) atomicInt11).compareAndSet(1, 2));
+        assertEquals(2, ((AtomicIntegerValue) atomicInt1).get());
+        assertFalse(((AtomicIntegerValue) atomicInt1).compareAndSet(1, 3));
+
+        final AtomicValue atomicBool1 = region2.getOrCreate("atomicBool1", AtomicType.Boolean, "false");
+        assertTrue(((AtomicBooleanValue) atomicBool1).compareAndSet(false, true));
+        assertTrue(((AtomicBooleanValue) region1.getOrCreate("atomicBool1", AtomicType.Boolean, "false")).get());
+    }
+
+    @Test
+    public void getOrCreateInvalidType() throws IOException {
+        final SharedRegion region = SharedRegion.open(config(16));
+        region.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        assertThrows(IllegalArgumentException.class, () -> region.getOrCreate("atomicInt1", AtomicType.Boolean, "true"));
+        assertThrows(IllegalArgumentException.class, () -> region.get("atomicInt1", AtomicType.Boolean));
+    }
+
+    @Test
+    public void getOrCreateAll() throws IOException {
+        final SharedRegion region = SharedRegion.open(config(16));
+        region.getOrCreate("atomicInt1", AtomicType.Integer, "10");
+        assertEquals(2, region.getOrCreateAll(AtomicType.Integer, Arrays.asList(
+                new AbstractMap.SimpleEntry<>("atomicInt1", "1"),
+                new AbstractMap.SimpleEntry<>("atomicInt2", "2"),
+                new AbstractMap.SimpleEntry<>("atomicInt3", "3")
+        )));
+        assertEquals(10, ((AtomicIntegerValue) region.get("atomicInt1", AtomicType.Integer)).get());
+        assertEquals(3, ((AtomicIntegerValue) region.get("atomicInt3", AtomicType.Integer)).get());
+    }
+
+    @Test
+    public void removeThenRecreate() throws IOException {
+        final SharedRegion region = SharedRegion.open(config(16));
+        final AtomicValue atomicInt1 = region.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        assertTrue(region.remove("atomicInt1"));
+        assertFalse(region.remove("atomicInt1"));
+        assertNull(region.get("atomicInt1", AtomicType.Integer));
+
+        // a new atomic must not share the slot of the removed atomic
+        final AtomicValue atomicInt11 = region.getOrCreate("atomicInt1", AtomicType.Integer, "5");
+        assertTrue(((AtomicIntegerValue) atomicInt1).compareAndSet(1, 2));
+        assertEquals(5, ((AtomicIntegerValue) atomicInt11).get());
+    }
+
+    @Test
+    public void staleReferenceToReusedSlot() throws IOException {
+        final SharedRegion region = SharedRegion.open(config(16));
+        final AtomicIntegerValue atomicInt1 = (AtomicIntegerValue) region.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+        assertTrue(region.remove("atomicInt1"));
+        final AtomicIntegerValue atomicInt11 = (AtomicIntegerValue) region.getOrCreate("atomicInt1", AtomicType.Integer, "1");
+
+        // the stale reference continues from its last value, but does not change the new atomic
+        assertEquals(1, atomicInt1.get());
+        assertTrue(atomicInt1.compareAndSet(1, 2));
+        assertEquals(2, atomicInt1.get());
+        assertEquals(1, atomicInt11.get());
+        assertTrue(atomicInt11.compareAndSet(1, 3));
+        assertEquals(2, atomicInt1.get());
+    }
+
+    @Test
+    public void removeAndRecreateDoesNotFill() throws IOException {
+        final SharedRegion region = SharedRegion.open(config(4));
+        region.getOrCreate("atomicInt", AtomicType.Integer, "0");
+        for (int i = 0; i < 1000; i++) {
+            // e.g. the discard pattern of the Await step, with both the same and different ids
+            region.getOrCreate("atomicInt" + (i % 7), AtomicType.Integer, "0");
+            region.getOrCreate("atomicIntX", AtomicType.Integer, "0");
+            assertTrue(region.remove("atomicInt" + (i % 7)));
+            assertTrue(region.remove("atomicIntX"));
+        }
+        assertEquals(1, region.getLive());
+        assertEquals(0, ((AtomicIntegerValue) region.get("atomicInt", AtomicType.Integer)).get());
+    }
+
+    @Test
+    public void full() throws IOException {
+        final SharedRegion region = SharedRegion.open(config(4));
+        for (int i = 0; i < 3; i++) {
+            region.getOrCreate("atomicInt" + i, AtomicType.Integer, "0");
+        }
+        assertThrows(IllegalStateException.class, () -> region.getOrCreate("atomicInt3", AtomicType.Integer, "0"));
+    }
+
+    @Test
+    public void idTooLong() throws IOException {
+        final SharedRegion region = SharedRegion.open(config(16));
+        final char[] id = new char[SharedRegion.MAX_ID_LENGTH + 1];
+        Arrays.fill(id, 'a');
+        assertThrows(IllegalArgumentException.class, () -> region.getOrCreate(new String(id), AtomicType.Integer, "0"));
+    }
+
+    @Test
+    public void invalidFile() throws IOException {
+        final Path file = tempDir.resolve("atomics.region");
+        Files.write(file, new byte[SharedRegion.HEADER_SIZE]);
+        assertThrows(IOException.class, () -> SharedRegion.open(config(16)));
+    }
+
+    private SharedRegionConfig config(final int capacity) {
+        return new SharedRegionConfig(tempDir.resolve("atomics.region"), Collections.singleton(Util.ALL_NAMESPACES), capacity);
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.stress;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicBooleanValue;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicIntegerValue;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicStorageProvider;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicType;
+import uk.gov.nationalarchives.pdi.step.atomics.AtomicValue;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static uk.gov.nationalarchives.pdi.step.atomics.stress.StressHarness.assertOutcomes;
+import static uk.gov.nationalarchives.pdi.step.atomics.stress.StressHarness.outcomes;
+import static uk.gov.nationalarchives.pdi.step.atomics.stress.StressHarness.run;
+
+/**
+ * Concurrency stress tests of an {@link AtomicStorageProvider},
+ * see {@link StressHarness}.
+ *
+ * Each iteration uses its own Atomic ID, which is removed by the arbiter.
+ */
+public abstract class AbstractAtomicStorageProviderStress {
+
+    private static final long WAIT_DEADLINE = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * @return the storage provider to stress
+     */
+    protected abstract AtomicStorageProvider storage();
+
+    private String id(final String test, final int iteration) {
+        return "stress:" + getClass().getSimpleName() + ":" + test + ":" + iteration;
+    }
+
+    private static class State {
+        final String id;
+        volatile Object r1;
+        volatile Object r2;
+
+        State(final String id) {
+            this.id = id;
+        }
+    }
+
+    @Test
+    public void getOrCreateRace(final TestReporter reporter) {
+        // both actors must get the one Atomic Value that is stored, providers which return a view of the stored value must implement equals
+        final Map<String, Long> results = run("getOrCreateRace",
+                i -> new State(id("getOrCreateRace", i)),
+                state -> {
+                    final AtomicValue stored = storage().getAtomic(state.id, AtomicType.Boolean);
+                    final String outcome = Objects.equals(state.r1, state.r2) && Objects.equals(state.r1, stored) ? "same" : "different";
+                    storage().removeAtomic(state.id);
+                    return outcome;
+                },
+                state -> state.r1 = storage().getOrCreateAtomic(state.id, AtomicType.Boolean, "false"),
+                state -> state.r2 = storage().getOrCreateAtomic(state.id, AtomicType.Boolean, "false"));
+
+        assertOutcomes(reporter, "getOrCreateRace", results, outcomes("same"), outcomes());
+    }
+
+    @Test
+    public void getOrCreateRemoveRace(final TestReporter reporter) {
+        // either the create or the remove happens first
+        final Map<String, Long> results = run("getOrCreateRemoveRace",
+                i -> new State(id("getOrCreateRemoveRace", i)),
+                state -> {
+                    final boolean present = storage().getAtomic(state.id, AtomicType.Integer) != null;
+                    storage().removeAtomic(state.id);
+                    return "created=" + (state.r1 != null) + ", removed=" + state.r2 + ", present=" + present;
+                },
+                state -> state.r1 = storage().getOrCreateAtomic(state.id, AtomicType.Integer, "1"),
+                state -> state.r2 = storage().removeAtomic(state.id));
+
+        assertOutcomes(reporter, "getOrCreateRemoveRace", results,
+                outcomes("created=true, removed=true, present=false", "created=true, removed=false, present=true"),
+                outcomes());
+    }
+
+    @Test
+    public void compareAndSetRace(final TestReporter reporter) {
+        // exactly one actor sets the value
+        final Map<String, Long> results = run("compareAndSetRace",
+                i -> {
+                    final State state = new State(id("compareAndSetRace", i));
+                    storage().getOrCreateAtomic(state.id, AtomicType.Boolean, "false");
+                    return state;
+                },
+                state -> {
+                    final boolean value = ((AtomicBooleanValue) storage().getAtomic(state.id, AtomicType.Boolean)).get();
+                    storage().removeAtomic(state.id);
+                    return state.r1 + ", " + state.r2 + ", value=" + value;
+                },
+                state -> state.r1 = ((AtomicBooleanValue) storage().getAtomic(state.id, AtomicType.Boolean)).compareAndSet(false, true),
+                state -> state.r2 = ((AtomicBooleanValue) storage().getAtomic(state.id, AtomicType.Boolean)).compareAndSet(false, true));
+
+        assertOutcomes(reporter, "compareAndSetRace", results, outcomes("true, false, value=true", "false, true, value=true"), outcomes());
+    }
+
+    @Test
+    public void compareAndSetIncrementRace(final TestReporter reporter) {
+        // no increment is lost when each actor retries its compare and set
+        final Map<String, Long> results = run("compareAndSetIncrementRace",
+                i -> {
+                    final State state = new State(id("compareAndSetIncrementRace", i));
+                    storage().getOrCreateAtomic(state.id, AtomicType.Integer, "0");
+                    return state;
+                },
+                state -> {
+                    final int value = ((AtomicIntegerValue) storage().getAtomic(state.id, AtomicType.Integer)).get();
+                    storage().removeAtomic(state.id);
+                    return "value=" + value;
+                },
+                state -> increment(state.id),
+                state -> increment(state.id));
+
+        assertOutcomes(reporter, "compareAndSetIncrementRace", results, outcomes("value=2"), outcomes());
+    }
+
+    private void increment(final String id) {
+        final AtomicIntegerValue value = (AtomicIntegerValue) storage().getAtomic(id, AtomicType.Integer);
+        int current;
+        do {
+            current = value.get();
+        } while (!value.compareAndSet(current, current + 1));
+    }
+
+    @Test
+    public void compareAndSetRecreateRace(final TestReporter reporter) {
+        // like a Compare And Set step racing an Await step which discards and a step which re-initialises
+        final Map<String, Long> results = run("compareAndSetRecreateRace",
+                i -> {
+                    final State state = new State(id("compareAndSetRecreateRace", i));
+                    storage().getOrCreateAtomic(state.id, AtomicType.Boolean, "false");
+                    return state;
+                },
+                state -> {
+                    final boolean value = ((AtomicBooleanValue) storage().getAtomic(state.id, AtomicType.Boolean)).get();
+                    storage().removeAtomic(state.id);
+                    return "set=" + state.r1 + ", value=" + value;
+                },
+                state -> {
+                    final AtomicBooleanValue value = (AtomicBooleanValue) storage().getAtomic(state.id, AtomicType.Boolean);
+                    state.r1 = value == null ? "missing" : Boolean.toString(value.compareAndSet(false, true));
+                },
+                state -> {
+                    storage().removeAtomic(state.id);
+                    storage().getOrCreateAtomic(state.id, AtomicType.Boolean, "false");
+                });
+
+        assertOutcomes(reporter, "compareAndSetRecreateRace", results,
+                outcomes("set=true, value=true", "set=missing, value=false"),
+                // the set was made to the Atomic Value which was then removed, so is lost
+                outcomes("set=true, value=false"));
+    }
+
+    @Test
+    public void awaitDiscardRace(final TestReporter reporter) {
+        // like an Await step, which discards the Atomic Value once it matches, racing a waiter which must never be stuck
+        final Map<String, Long> results = run("awaitDiscardRace",
+                i -> {
+                    final State state = new State(id("awaitDiscardRace", i));
+                    storage().getOrCreateAtomic(state.id, AtomicType.Boolean, "false");
+                    return state;
+                },
+                state -> {
+                    final boolean present = storage().getAtomic(state.id, AtomicType.Boolean) != null;
+                    storage().removeAtomic(state.id);
+                    return "waiter=" + state.r1 + ", discarded=" + state.r2 + ", present=" + present;
+                },
+                state -> state.r1 = await(state.id),
+                state -> {
+                    ((AtomicBooleanValue) storage().getAtomic(state.id, AtomicType.Boolean)).compareAndSet(false, true);
+                    state.r2 = storage().removeAtomic(state.id);
+                });
+
+        assertOutcomes(reporter, "awaitDiscardRace", results,
+                outcomes("waiter=true, discarded=true, present=false", "waiter=null, discarded=true, present=false"),
+                outcomes());
+    }
+
+    /**
+     * Waits, in the same way as the Await step, for the value to become true, or to be discarded.
+     *
+     * @param id the id of the Atomic Value
+     *
+     * @return "true", "null" if the Atomic Value was discarded, or "stuck" if neither happened before the deadline
+     */
+    private String await(final String id) {
+        final long deadline = System.nanoTime() + WAIT_DEADLINE;
+        while (System.nanoTime() - deadline < 0) {
+            final AtomicBooleanValue value = (AtomicBooleanValue) storage().getAtomic(id, AtomicType.Boolean);
+            if (value == null) {
+                return "null";
+            }
+            if (value.get()) {
+                return "true";
+            }
+            Thread.yield();
+        }
+        return "stuck";
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.stress;
+
+import org.junit.jupiter.api.TestReporter;
+
+import java.util.*;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * A minimal harness for concurrency stress tests, in the style of jcstress.
+ *
+ * For each iteration a new state is created, the actors are released
+ * together on their own threads to race on the state, and once they
+ * have all finished the arbiter describes the outcome. The outcomes are
+ * counted, and then checked against the outcomes which are acceptable,
+ * i.e. those that can be produced by some sequential ordering of the actors
+ * (linearizable outcomes), and those that are interesting, i.e. allowed,
+ * but worth reporting.
+ *
+ * The number of iterations may be set by the System Property {@link #PROP_ITERATIONS}.
+ */
+final class StressHarness {
+
+    static final String PROP_ITERATIONS = "stress.iterations";
+    private static final int DEFAULT_ITERATIONS = 20_000;
+    private static final long BARRIER_TIMEOUT = 30;
+
+    private StressHarness() {
+    }
+
+    /**
+     * Runs a stress test.
+     *
+     * @param <S> the type of the state
+     * @param name the name of the test, for reporting
+     * @param newState creates the state for an iteration, given the iteration number
+     * @param actors the actors, each of which runs on its own thread
+     * @param arbiter describes the outcome of an iteration, after all actors have finished
+     *
+     * @return the number of times each outcome was observed
+     */
+    @SafeVarargs
+    static <S> Map<String, Long> run(final String name, final IntFunction<S> newState, final Function<S, String> arbiter, final Consumer<S>... actors) {
+        final int iterations = Integer.getInteger(PROP_ITERATIONS, DEFAULT_ITERATIONS);
+        final CyclicBarrier start = new CyclicBarrier(actors.length + 1);
+        final CyclicBarrier end = new CyclicBarrier(actors.length + 1);
+        final Object[] current = new Object[1];  // safely published by the barriers
+        final Throwable[] failure = new Throwable[1];
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int a = 0; a < actors.length; a++) {
+            final Consumer<S> actor = actors[a];
+            final Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < iterations; i++) {
+                        start.await(BARRIER_TIMEOUT, TimeUnit.SECONDS);
+                        try {
+                            @SuppressWarnings("unchecked") final S state = (S) current[0];
+                            actor.accept(state);
+                        } catch (final RuntimeException | Error e) {
+                            synchronized (failure) {
+                                failure[0] = e;
+                            }
+                        }
+                        end.await(BARRIER_TIMEOUT, TimeUnit.SECONDS);
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (final BrokenBarrierException | TimeoutException e) {
+                    // the test has failed
+                }
+            }, name + "-actor-" + a);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+
+        final Map<String, Long> outcomes = new TreeMap<>();
+        try {
+            for (int i = 0; i < iterations; i++) {
+                final S state = newState.apply(i);
+                current[0] = state;
+                start.await(BARRIER_TIMEOUT, TimeUnit.SECONDS);
+                end.await(BARRIER_TIMEOUT, TimeUnit.SECONDS);
+                synchronized (failure) {
+                    if (failure[0] != null) {
+                        throw new AssertionError(name + " actor failed in iteration " + i + ": " + failure[0], failure[0]);
+                    }
+                }
+                outcomes.merge(arbiter.apply(state), 1L, Long::sum);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(name + " was interrupted");
+        } catch (final BrokenBarrierException | TimeoutException e) {
+            fail(name + " actors did not finish within " + BARRIER_TIMEOUT + " seconds");
+        } finally {
+            for (final Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Checks that only acceptable, or interesting, outcomes were observed,
+     * and publishes the observed outcomes as a report entry of the test.
+     *
+     * @param reporter the reporter of the test
+     * @param name the name of the test, for reporting
+     * @param outcomes the number of times each outcome was observed
+     * @param acceptable the acceptable outcomes
+     * @param interesting the outcomes which are allowed, but worth reporting
+     */
+    static void assertOutcomes(final TestReporter reporter, final String name, final Map<String, Long> outcomes, final Set<String> acceptable, final Set<String> interesting) {
+        final StringBuilder report = new StringBuilder(name).append(':');
+        boolean forbidden = false;
+        for (final Map.Entry<String, Long> outcome : outcomes.entrySet()) {
+            final String grade;
+            if (acceptable.contains(outcome.getKey())) {
+                grade = "ACCEPTABLE";
+            } else if (interesting.contains(outcome.getKey())) {
+                grade = "INTERESTING";
+            } else {
+                grade = "FORBIDDEN";
+                forbidden = true;
+            }
+            report.append(System.lineSeparator()).append("  [").append(outcome.getKey()).append("] ")
+                    .append(outcome.getValue()).append(' ').append(grade);
+        }
+        reporter.publishEntry(name, report.toString());
+        if (forbidden) {
+            fail(report.toString());
+        }
+    }
+
+    static Set<String> outcomes(final String... outcomes) {
+        return new HashSet<>(Arrays.asList(outcomes));
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * The MIT License
+ * Copyright © 2021 The National Archives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package uk.gov.nationalarchives.pdi.step.atomics.watchdog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WatchdogTest {
+
+    private static final long STUCK_AFTER = 1_000;
+    private static final long LATER = TimeUnit.MILLISECONDS.toNanos(STUCK_AFTER * 10);
+
+    private final StepCopy a = new StepCopy("trans", "a", 0);
+    private final StepCopy b = new StepCopy("trans", "b", 0);
+    private final StepCopy c = new StepCopy("trans", "c", 0);
+
+    @Test
+    public void deadlock() {
+        final Watchdog watchdog = newWatchdog(WatchdogConfig.Failover.DEADLOCK);
+
+        // a holds x and waits on y, b holds y and waits on x
+        watchdog.recordSet(a, "x");
+        watchdog.recordSet(b, "y");
+        final Watchdog.Waiter waiterA = waiting(watchdog, a, "y", "false");
+        final Watchdog.Waiter waiterB = waiting(watchdog, b, "x", "false");
+
+        // not yet stuck
+        watchdog.check(System.nanoTime());
+        assertNull(waiterA.getFinding());
+        assertNull(waiterB.getFinding());
+
+        watchdog.check(System.nanoTime() + LATER);
+        assertEquals(Watchdog.FindingKind.DEADLOCK, waiterA.getFinding().getKind());
+        assertEquals(Watchdog.FindingKind.DEADLOCK, waiterB.getFinding().getKind());
+        assertTrue(waiterA.getFinding().getDescription().contains("trans/b.0 awaits x=[false]"));
+        assertTrue(waiterA.isFailOver());
+        assertTrue(waiterA.markReported());
+        assertFalse(waiterA.markReported());
+
+        // once a wait ends, the cycle is broken
+        waiterA.end();
+        watchdog.check(System.nanoTime() + LATER);
+        assertNull(waiterB.getFinding());
+        waiterB.end();
+    }
+
+    @Test
+    public void waitOnDeadlockIsNotPartOfCycle() {
+        final Watchdog watchdog = newWatchdog(WatchdogConfig.Failover.NONE);
+
+        watchdog.recordSet(a, "x");
+        watchdog.recordSet(b, "y");
+        final Watchdog.Waiter waiterA = waiting(watchdog, a, "y", "1");
+        final Watchdog.Waiter waiterB = waiting(watchdog, b, "x", "1");
+        final Watchdog.Waiter waiterC = waiting(watchdog, c, "x", "2");
+
+        watchdog.check(System.nanoTime() + LATER);
+        assertEquals(Watchdog.FindingKind.DEADLOCK, waiterA.getFinding().getKind());
+        assertFalse(waiterA.isFailOver());
+        assertEquals(Watchdog.FindingKind.DEADLOCK, waiterB.getFinding().getKind());
+        assertNull(waiterC.getFinding());
+    }
+
+    @Test
+    public void concurrentWaitersOfOneStepCopy() {
+        final Watchdog watchdog = newWatchdog(WatchdogConfig.Failover.DEADLOCK);
+
+        // two workers of a wait on y and z, b holds y and waits on x held by a, z is held by c which is not waiting
+        watchdog.recordSet(a, "x");
+        watchdog.recordSet(b, "y");
+        watchdog.recordSet(c, "z");
+        final Watchdog.Waiter waiterA1 = waiting(watchdog, a, "y", "1");
+        final Watchdog.Waiter waiterA2 = waiting(watchdog, a, "z", "1");
+        final Watchdog.Waiter waiterB = waiting(watchdog, b, "x", "1");
+
+        watchdog.check(System.nanoTime() + LATER);
+        assertEquals(Watchdog.FindingKind.DEADLOCK, waiterA1.getFinding().getKind());
+        assertTrue(waiterA1.isFailOver());
+        assertNull(waiterA2.getFinding());
+        assertEquals(Watchdog.FindingKind.DEADLOCK, waiterB.getFinding().getKind());
+        assertTrue(waiterB.getFinding().getDescription().contains("trans/a.0 awaits y=[1]"));
+
+        // ending the other wait of a does not end the deadlocked wait
+        waiterA2.end();
+        watchdog.check(System.nanoTime() + LATER);
+        assertEquals(Watchdog.FindingKind.DEADLOCK, waiterA1.getFinding().getKind());
+        assertEquals(Watchdog.FindingKind.DEADLOCK, waiterB.getFinding().getKind());
+
+        waiterA1.end();
+        watchdog.check(System.nanoTime() + LATER);
+        assertNull(waiterB.getFinding());
+        waiterB.end();
+    }
+
+    @Test
+    public void orphaned() {
+        final Watchdog watchdog = newWatchdog(WatchdogConfig.Failover.DEADLOCK);
+
+        // nobody holds x
+        final Watchdog.Waiter waiterA = waiting(watchdog, a, "x", "true");
+
+        // y is held by b which has finished
+        watchdog.recordCreation(b, "y");
+        watchdog.unregister(b);
+        final Watchdog.Waiter waiterC = waiting(watchdog, c, "y", "true");
+
+        watchdog.check(System.nanoTime() + LATER);
+        assertEquals(Watchdog.FindingKind.ORPHANED, waiterA.getFinding().getKind());
+        assertFalse(waiterA.isFailOver());
+        assertEquals(Watchdog.FindingKind.ORPHANED, waiterC.getFinding().getKind());
+    }
+
+    @Test
+    public void holdingSelfOrRunningHolder() {
+        final Watchdog watchdog = newWatchdog(WatchdogConfig.Failover.ALL);
+
+        // a waits on the value it set itself, b waits on a value held by a running step which is not waiting
+        watchdog.recordSet(a, "x");
+        watchdog.recordSet(c, "y");
+        watchdog.recordCreation(a, "y");  // does not replace the holder
+        final Watchdog.Waiter waiterA = waiting(watchdog, a, "x", "true");
+        final Watchdog.Waiter waiterB = waiting(watchdog, b, "y", "true");
+
+        watchdog.check(System.nanoTime() + LATER);
+        assertNull(waiterA.getFinding());
+        assertNull(waiterB.getFinding());
+
+        // once removed, nobody holds y
+        watchdog.recordRemoval("y");
+        watchdog.check(System.nanoTime() + LATER);
+        assertEquals(Watchdog.FindingKind.ORPHANED, waiterB.getFinding().getKind());
+        assertTrue(waiterB.isFailOver());
+    }
+
+    @Test
+    public void noWatchdog() {
+        final Watchdog.Waiter waiter = Watchdog.Waiter.NONE;
+        waiter.waiting();
+        assertNull(waiter.getFinding());
+        assertFalse(waiter.isFailOver());
+        waiter.end();
+    }
+
+    private Watchdog newWatchdog(final WatchdogConfig.Failover failover) {
+        final Watchdog watchdog = new Watchdog(new WatchdogConfig(STUCK_AFTER, STUCK_AFTER, failover));
+        watchdog.register(a);
+        watchdog.register(b);
+        watchdog.register(c);
+        return watchdog;
+    }
+
+    private static Watchdog.Waiter waiting(final Watchdog watchdog, final StepCopy stepCopy, final String atomicId, final String awaitedValues) {
+        final Watchdog.Waiter waiter = watchdog.newWaiter(stepCopy, atomicId, awaitedValues);
+        waiter.waiting();
+        return waiter;
+    }
+}